@@ -20,6 +20,15 @@ public @interface BucketChanged {
    */
   Type type() default Type.UPDATE;
 
+  /**
+   * Whether the change is limited to a single object key. If {@code true}, the second
+   * parameter of the annotated method must be the object key, and only the metadata
+   * of that key (objects and uploads) is persisted instead of the whole bucket.
+   *
+   * @return {@code true} if only the object key in the second parameter changed.
+   */
+  boolean keyScoped() default false;
+
   enum Type {
     CREATE, // Bucket created
 
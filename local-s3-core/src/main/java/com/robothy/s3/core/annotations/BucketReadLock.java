@@ -5,7 +5,22 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Denotes a method invocation that holds the bucket read lock.
+ * The first parameter of an annotated method must be the bucket name.
+ */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface BucketReadLock {
+
+  /**
+   * Whether the method only accesses a single object key. If {@code true}, the second
+   * parameter of the annotated method must be the object key; the invocation holds the
+   * bucket read lock and the read lock of the key, so that it runs concurrently with
+   * operations on other keys of the same bucket.
+   *
+   * @return {@code true} if the lock is scoped to the object key in the second parameter.
+   */
+  boolean keyScoped() default false;
+
 }
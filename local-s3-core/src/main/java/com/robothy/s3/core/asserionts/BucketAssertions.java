@@ -51,7 +51,7 @@ public class BucketAssertions {
    * @param bucketName bucket to validate.
    */
   public static void assertBucketNotExists(LocalS3Metadata s3Metadata, String bucketName) {
-    if (s3Metadata.getBucketMetadataMap().containsKey(bucketName)) {
+    if (s3Metadata.hasBucket(bucketName)) {
       throw new BucketAlreadyExistsException(bucketName);
     }
   }
@@ -1,10 +1,18 @@
 package com.robothy.s3.core.converters.deserializer;
 
-import com.robothy.s3.core.converters.MapToConcurrentSkipListMap;
+import com.fasterxml.jackson.databind.util.StdConverter;
+import com.robothy.s3.core.model.internal.ObjectIndex;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import java.util.Map;
 
 /**
- * Convert object metadata map to a {@linkplain java.util.concurrent.ConcurrentSkipListMap} instance.
+ * Convert object metadata map to an in-memory {@linkplain ObjectIndex} instance.
  */
-public class ObjectMetadataMapConverter extends MapToConcurrentSkipListMap<String, ObjectMetadata> {
+public class ObjectMetadataMapConverter extends StdConverter<Map<String, ObjectMetadata>, ObjectIndex<ObjectMetadata>> {
+
+  @Override
+  public ObjectIndex<ObjectMetadata> convert(Map<String, ObjectMetadata> value) {
+    return ObjectIndex.inMemory(value);
+  }
+
 }
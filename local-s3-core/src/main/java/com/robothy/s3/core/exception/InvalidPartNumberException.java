@@ -0,0 +1,13 @@
+package com.robothy.s3.core.exception;
+
+/**
+ * Throws if the requested part number of an object does not exist. Client side exception.
+ */
+public class InvalidPartNumberException extends LocalS3Exception {
+
+  public InvalidPartNumberException(int partNumber, int partsCount) {
+    super(S3ErrorCode.InvalidPartNumber, "The requested part number " + partNumber
+        + " is not satisfiable for the object of " + partsCount + " parts.");
+  }
+
+}
@@ -0,0 +1,13 @@
+package com.robothy.s3.core.exception;
+
+/**
+ * Throws if the requested range of an object cannot be satisfied. Client side exception.
+ */
+public class InvalidRangeException extends LocalS3Exception {
+
+  public InvalidRangeException(String range, long size) {
+    super(S3ErrorCode.InvalidRange, "The requested range '" + range + "' is not satisfiable for the object of "
+        + size + " bytes.");
+  }
+
+}
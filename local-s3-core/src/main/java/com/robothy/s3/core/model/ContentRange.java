@@ -0,0 +1,136 @@
+package com.robothy.s3.core.model;
+
+import com.robothy.s3.core.exception.InvalidRangeException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A byte range of an object, both {@code start} and {@code end} are inclusive. An empty range ends
+ * right before it starts.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class ContentRange {
+
+  private static final String BYTES_UNIT = "bytes";
+
+  private static final Pattern BYTE_RANGE_PATTERN = Pattern.compile(BYTES_UNIT + "=\\s*(\\d*)\\s*-\\s*(\\d*)");
+
+  private final long start;
+
+  private final long end;
+
+  private final long totalSize;
+
+  private ContentRange(long start, long end, long totalSize) {
+    this.start = start;
+    this.end = end;
+    this.totalSize = totalSize;
+  }
+
+  /**
+   * Create a range from {@code start} to {@code end} (inclusive) of an object.
+   *
+   * @param start the first byte position.
+   * @param end the last byte position.
+   * @param totalSize the object size.
+   * @return a new range.
+   */
+  public static ContentRange of(long start, long end, long totalSize) {
+    if (start < 0 || end < start || end >= totalSize) {
+      throw new IllegalArgumentException("Invalid range " + start + "-" + end + " of " + totalSize + " bytes.");
+    }
+    return new ContentRange(start, end, totalSize);
+  }
+
+  /**
+   * Create a range of no bytes at {@code start} of an object, e.g. an empty part of a multipart object.
+   *
+   * @param start the position of the range.
+   * @param totalSize the object size.
+   * @return a new range with a length of {@code 0}.
+   */
+  public static ContentRange empty(long start, long totalSize) {
+    if (start < 0 || start > totalSize) {
+      throw new IllegalArgumentException("Invalid range position " + start + " of " + totalSize + " bytes.");
+    }
+    return new ContentRange(start, start - 1, totalSize);
+  }
+
+  /**
+   * Resolve a <a href="https://www.rfc-editor.org/rfc/rfc9110#name-range">Range</a> header against an object.
+   * Like S3, only a single byte range is supported; a header that cannot be parsed is ignored.
+   *
+   * @param range the {@code Range} header value.
+   * @param totalSize the object size.
+   * @return the resolved range; or empty if the whole object should be returned.
+   * @throws InvalidRangeException if the range is valid but no byte of the object is in it.
+   */
+  public static Optional<ContentRange> parse(String range, long totalSize) {
+    if (Objects.isNull(range)) {
+      return Optional.empty();
+    }
+
+    Matcher matcher = BYTE_RANGE_PATTERN.matcher(range.trim());
+    if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+      return Optional.empty();
+    }
+
+    Long first = parsePosition(matcher.group(1));
+    Long last = parsePosition(matcher.group(2));
+    if (Objects.isNull(first)) {
+      // Suffix range: the last N bytes.
+      if (last == 0 || totalSize == 0) {
+        throw new InvalidRangeException(range, totalSize);
+      }
+      return Optional.of(new ContentRange(Math.max(0, totalSize - last), totalSize - 1, totalSize));
+    }
+
+    if (Objects.nonNull(last) && last < first) {
+      return Optional.empty();
+    }
+    if (first >= totalSize) {
+      throw new InvalidRangeException(range, totalSize);
+    }
+    long end = Objects.isNull(last) ? totalSize - 1 : Math.min(last, totalSize - 1);
+    return Optional.of(new ContentRange(first, end, totalSize));
+  }
+
+  private static Long parsePosition(String position) {
+    if (position.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return Long.parseLong(position);
+    } catch (NumberFormatException e) {
+      // Larger than any object.
+      return Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Get the number of bytes in this range.
+   */
+  public long length() {
+    return end - start + 1;
+  }
+
+  /**
+   * Format this range as a {@code Content-Range} header value. A range of no bytes has no first and last
+   * byte positions, so only the object size is given.
+   */
+  public String toHeaderValue() {
+    if (length() == 0) {
+      return BYTES_UNIT + " */" + totalSize;
+    }
+    return BYTES_UNIT + " " + start + "-" + end + "/" + totalSize;
+  }
+
+}
@@ -1,6 +1,11 @@
 package com.robothy.s3.core.model.answers;
 
+import com.robothy.s3.core.model.ContentRange;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import io.netty.buffer.ByteBuf;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import lombok.Builder;
@@ -26,9 +31,87 @@ public class GetObjectAns {
 
   private String etag;
 
+  /**
+   * The ID of the object content in the storage; or {@code null} if the content is stored as
+   * the parts of a multipart upload.
+   */
+  private Long fileId;
+
   private InputStream content;
 
+  /**
+   * The file channel of {@code content} if the object is stored as a file; {@code content} reads from this channel.
+   * The channel is positioned at the first byte of the returned range, or of the object.
+   */
+  private FileChannel fileChannel;
+
+  /**
+   * A read-only view of {@code content} if the object is stored in memory. The view and {@code content} share
+   * one reference to the memory, which is released once {@code content} is closed; retain the view to use it
+   * after that.
+   */
+  private ByteBuf contentBuffer;
+
+  /**
+   * The returned range of the object if only part of the object is returned; {@code size} is the object size.
+   */
+  private ContentRange contentRange;
+
+  /**
+   * The number of parts if the object was created by a multipart upload.
+   */
+  private Integer partsCount;
+
+  /**
+   * The parts in order if the object was created by a multipart upload.
+   */
+  private List<Part> parts;
+
   private Map<String, String> userMetadata;
 
   private int taggingCount;
+
+  private CheckSumAlgorithm checksumAlgorithm;
+
+  private String checksum;
+
+  public Optional<CheckSumAlgorithm> getChecksumAlgorithm() {
+    return Optional.ofNullable(checksumAlgorithm);
+  }
+
+  public Optional<FileChannel> getFileChannel() {
+    return Optional.ofNullable(fileChannel);
+  }
+
+  public Optional<ByteBuf> getContentBuffer() {
+    return Optional.ofNullable(contentBuffer);
+  }
+
+  public Optional<ContentRange> getContentRange() {
+    return Optional.ofNullable(contentRange);
+  }
+
+  public Optional<Integer> getPartsCount() {
+    return Optional.ofNullable(partsCount);
+  }
+
+  public Optional<List<Part>> getParts() {
+    return Optional.ofNullable(parts);
+  }
+
+  @Getter
+  @Builder
+  public static class Part {
+
+    private int partNumber;
+
+    private long size;
+
+    /**
+     * The ETag of the uploaded part; or {@code null} if the object was completed before part ETags were kept.
+     */
+    private String etag;
+
+  }
+
 }
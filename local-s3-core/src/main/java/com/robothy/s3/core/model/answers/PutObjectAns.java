@@ -1,5 +1,6 @@
 package com.robothy.s3.core.model.answers;
 
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import lombok.Builder;
 import lombok.Getter;
 
@@ -15,4 +16,8 @@ public class PutObjectAns {
 
   private long creationDate;
 
+  private CheckSumAlgorithm checksumAlgorithm;
+
+  private String checksum;
+
 }
@@ -22,8 +22,11 @@ public class BucketMetadata {
 
   }
 
+  /**
+   * key - object metadata.
+   */
   @JsonDeserialize(converter = ObjectMetadataMapConverter.class)
-  private ConcurrentSkipListMap<String, ObjectMetadata> objectMap = new ConcurrentSkipListMap<>();
+  private ObjectIndex<ObjectMetadata> objectMap = ObjectIndex.inMemory();
 
   private long creationDate;
 
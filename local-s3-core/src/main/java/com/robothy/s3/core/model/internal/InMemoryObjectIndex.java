@@ -0,0 +1,12 @@
+package com.robothy.s3.core.model.internal;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An {@linkplain ObjectIndex} that keeps all entries in memory.
+ *
+ * @param <V> the value type.
+ */
+final class InMemoryObjectIndex<V> extends ConcurrentSkipListMap<String, V> implements ObjectIndex<V> {
+
+}
@@ -6,24 +6,35 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Represents medata of a local-s3 service. The instance could be very large.
  * Therefore, one JVM usually has one {@linkplain LocalS3Metadata} instance.
+ *
+ * <p>A bucket can be added lazily with a loader, so that it exists before its metadata is read.
+ * Its metadata is loaded once, on the first access of the bucket.
  */
 public class LocalS3Metadata {
 
   /**
-   * Represents the version of {@linkplain LocalS3Metadata} model.
+   * Represents the version of {@linkplain LocalS3Metadata} model. Metadata files of version 1 are JSON,
+   * since version 2 they are binary encoded.
    */
-  public static final long VERSION = 1L;
+  public static final long VERSION = 2L;
 
   private static final Comparator<BucketMetadata> DEFAULT_BUCKET_METADATA_COMPARATOR = Comparator
       .comparing(BucketMetadata::getCreationDate);
   private final Map<String, BucketMetadata> bucketMetadataMap = new ConcurrentHashMap<>();
 
+  /**
+   * Buckets that were added lazily and not loaded yet.
+   */
+  private final Map<String, LazyBucketMetadata> lazyBuckets = new ConcurrentHashMap<>();
+
   /**
    * List ordered buckets with a comparator.
    *
@@ -31,7 +42,7 @@ public class LocalS3Metadata {
    * @return sorted bucket metadata.
    */
   public List<BucketMetadata> listBuckets(Comparator<BucketMetadata> comparator) {
-    ArrayList<BucketMetadata> bucketList = new ArrayList<>(bucketMetadataMap.values());
+    ArrayList<BucketMetadata> bucketList = new ArrayList<>(getBucketMetadataMap().values());
     bucketList.sort(comparator);
     return bucketList;
   }
@@ -48,11 +59,12 @@ public class LocalS3Metadata {
   /**
    * Get bucket metadata map of current {@linkplain LocalS3Metadata} instance.
    * The key represents the bucket name, while the value represents the
-   * bucket metadata.
+   * bucket metadata. Buckets that were not loaded yet are loaded first.
    *
    * @return a map of bucket metadata.
    */
   public Map<String, BucketMetadata> getBucketMetadataMap() {
+    lazyBuckets.values().forEach(LazyBucketMetadata::get);
     return bucketMetadataMap;
   }
 
@@ -63,7 +75,21 @@ public class LocalS3Metadata {
    * @return bucket metadata.
    */
   public Optional<BucketMetadata> getBucketMetadata(String bucketName) {
-    return Optional.ofNullable(bucketMetadataMap.get(bucketName));
+    BucketMetadata bucketMetadata = bucketMetadataMap.get(bucketName);
+    if (Objects.nonNull(bucketMetadata)) {
+      return Optional.of(bucketMetadata);
+    }
+    return Optional.ofNullable(lazyBuckets.get(bucketName)).map(LazyBucketMetadata::get);
+  }
+
+  /**
+   * Whether the bucket exists. A lazily added bucket is not loaded.
+   *
+   * @param bucketName the bucket name.
+   * @return {@code true} if the bucket exists.
+   */
+  public boolean hasBucket(String bucketName) {
+    return bucketMetadataMap.containsKey(bucketName) || lazyBuckets.containsKey(bucketName);
   }
 
   /**
@@ -77,4 +103,57 @@ public class LocalS3Metadata {
     this.bucketMetadataMap.put(bucketMetadata.getBucketName(), bucketMetadata);
   }
 
+  /**
+   * Add a bucket whose metadata is loaded on the first access.
+   *
+   * @param bucketName the bucket name.
+   * @param loader loads the bucket metadata; it is called at most once, unless it fails.
+   * @throws BucketAlreadyExistsException if the bucket name already used.
+   */
+  public void addLazyBucketMetadata(String bucketName, Supplier<BucketMetadata> loader) {
+    BucketAssertions.assertBucketNotExists(this, bucketName);
+    this.lazyBuckets.put(bucketName, new LazyBucketMetadata(bucketName, loader));
+  }
+
+  /**
+   * Remove a bucket.
+   *
+   * @param bucketName the bucket name.
+   * @return the removed bucket metadata; or {@code null} if the bucket doesn't exist or was not loaded.
+   */
+  public BucketMetadata removeBucketMetadata(String bucketName) {
+    lazyBuckets.remove(bucketName);
+    return bucketMetadataMap.remove(bucketName);
+  }
+
+  private final class LazyBucketMetadata {
+
+    private final String bucketName;
+
+    private final Supplier<BucketMetadata> loader;
+
+    private BucketMetadata bucketMetadata;
+
+    private LazyBucketMetadata(String bucketName, Supplier<BucketMetadata> loader) {
+      this.bucketName = bucketName;
+      this.loader = loader;
+    }
+
+    /**
+     * Load the metadata once and move it to the loaded buckets.
+     */
+    private synchronized BucketMetadata get() {
+      if (Objects.isNull(bucketMetadata)) {
+        BucketMetadata loaded = loader.get();
+        if (lazyBuckets.get(bucketName) == this) {
+          bucketMetadataMap.put(bucketName, loaded);
+          lazyBuckets.remove(bucketName, this);
+        }
+        bucketMetadata = loaded;
+      }
+      return bucketMetadata;
+    }
+
+  }
+
 }
@@ -0,0 +1,59 @@
+package com.robothy.s3.core.model.internal;
+
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+/**
+ * The entries of a bucket by object key. An index behaves as a {@linkplain ConcurrentNavigableMap} of all
+ * entries of the bucket, but it may keep only part of them in memory and read the others on access.
+ * Such an index releases entries with {@linkplain #unload(NavigableSet)} once they are persisted.
+ *
+ * @param <V> the value type.
+ */
+public interface ObjectIndex<V> extends ConcurrentNavigableMap<String, V> {
+
+  /**
+   * Create an index that keeps all entries in memory.
+   *
+   * @param <V> the value type.
+   * @return an empty {@linkplain ObjectIndex}.
+   */
+  static <V> ObjectIndex<V> inMemory() {
+    return new InMemoryObjectIndex<>();
+  }
+
+  /**
+   * Create an index that keeps all entries in memory.
+   *
+   * @param entries the initial entries.
+   * @param <V> the value type.
+   * @return an {@linkplain ObjectIndex} with the {@code entries}.
+   */
+  static <V> ObjectIndex<V> inMemory(Map<String, ? extends V> entries) {
+    InMemoryObjectIndex<V> index = new InMemoryObjectIndex<>();
+    index.putAll(entries);
+    return index;
+  }
+
+  /**
+   * Whether the index keeps more entries in memory than it is allowed to.
+   *
+   * @return {@code true} if {@linkplain #unload(NavigableSet)} would release entries.
+   */
+  default boolean isOverLoaded() {
+    return false;
+  }
+
+  /**
+   * Release entries from memory until the index is no longer over loaded; they are read again on access.
+   * The caller must have exclusive access to the index.
+   *
+   * @param pinned keys whose changes are not persisted yet; they are kept in memory.
+   * @return the number of released units, e.g. shards.
+   */
+  default int unload(NavigableSet<String> pinned) {
+    return 0;
+  }
+
+}
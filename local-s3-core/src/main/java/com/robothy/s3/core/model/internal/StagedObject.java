@@ -0,0 +1,93 @@
+package com.robothy.s3.core.model.internal;
+
+import com.robothy.s3.core.model.answers.GetObjectAns;
+import com.robothy.s3.core.storage.Storage;
+import com.robothy.s3.core.util.DigestingInputStream;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.InputStream;
+import java.util.Optional;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Object content that was written to the storage but is not referenced by any metadata yet.
+ *
+ * <p>Writing the content is the slow part of a write operation. Staging it before the
+ * operation acquires any bucket lock makes the locked part only swap the metadata in.
+ * The operation that receives a staged object owns it, and deletes it from the storage
+ * if the operation fails.
+ */
+@Getter
+@Builder
+public class StagedObject {
+
+  private Long fileId;
+
+  /**
+   * File IDs of uploaded parts in order if the content is composed of the parts of a multipart
+   * upload; {@code fileId} is {@code null} then. The parts stay owned by the upload until the
+   * staged object is committed.
+   */
+  private long[] partFileIds;
+
+  private String etag;
+
+  private long size;
+
+  private CheckSumAlgorithm checksumAlgorithm;
+
+  /**
+   * Base64 encoded checksum computed with {@code checksumAlgorithm}.
+   */
+  private String checksum;
+
+  /**
+   * Metadata of the source object if the content is copied from an existing object.
+   */
+  private GetObjectAns source;
+
+  /**
+   * Write the content to the storage under a new file ID.
+   *
+   * @param storage the storage to write to.
+   * @param content the object content.
+   * @return the staged object.
+   */
+  public static StagedObject stage(Storage storage, InputStream content) {
+    return stage(storage, content, null);
+  }
+
+  /**
+   * Write the content to the storage under a new file ID. The ETag and checksum are
+   * computed while the content is written, so the content is read only once.
+   *
+   * @param storage the storage to write to.
+   * @param content the object content.
+   * @param checksumAlgorithm the checksum algorithm; or {@code null} to compute the ETag only.
+   * @return the staged object.
+   */
+  public static StagedObject stage(Storage storage, InputStream content, CheckSumAlgorithm checksumAlgorithm) {
+    DigestingInputStream digestingContent = new DigestingInputStream(content, checksumAlgorithm);
+    Long fileId = storage.put(digestingContent);
+    return StagedObject.builder()
+        .fileId(fileId)
+        .etag(digestingContent.getMd5Hex())
+        .size(digestingContent.getCount())
+        .checksumAlgorithm(checksumAlgorithm)
+        .checksum(digestingContent.getChecksum())
+        .build();
+  }
+
+  public Optional<long[]> getPartFileIds() {
+    return Optional.ofNullable(partFileIds);
+  }
+
+  public Optional<GetObjectAns> getSource() {
+    return Optional.ofNullable(source);
+  }
+
+  public Optional<CheckSumAlgorithm> getChecksumAlgorithm() {
+    return Optional.ofNullable(checksumAlgorithm);
+  }
+
+}
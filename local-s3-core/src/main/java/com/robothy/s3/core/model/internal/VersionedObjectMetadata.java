@@ -1,8 +1,14 @@
 package com.robothy.s3.core.model.internal;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import lombok.Data;
 
 @Data
@@ -22,12 +28,39 @@ public class VersionedObjectMetadata {
   private boolean isDeleted;
 
   /**
-   * File ID in {@linkplain com.robothy.s3.core.storage.Storage}.
+   * File ID in {@linkplain com.robothy.s3.core.storage.Storage}; or {@code null} if the content is
+   * stored as {@code partFileIds}.
    */
   private Long fileId;
 
+  /**
+   * File IDs of the parts in order if the content is stored as the parts of a multipart upload;
+   * otherwise {@code null}. The offset of each part is the sum of the preceding {@code partSizes}.
+   */
+  private long[] partFileIds;
+
   private String[][] tagging;
 
+  /**
+   * The algorithm of {@code checksum}; or {@code null} if no checksum was requested on upload.
+   */
+  private CheckSumAlgorithm checksumAlgorithm;
+
+  /**
+   * Base64 encoded checksum of the object content.
+   */
+  private String checksum;
+
+  /**
+   * Sizes of the parts in order if the object was created by a multipart upload; otherwise {@code null}.
+   */
+  private long[] partSizes;
+
+  /**
+   * ETags of the parts in order if the object was created by a multipart upload; otherwise {@code null}.
+   */
+  private String[] partEtags;
+
   /**
    * <a href="https://docs.aws.amazon.com/AmazonS3/latest/userguide/UsingMetadata.html#UserMetadata">User-defined object metadata</a>.
    */
@@ -40,4 +73,45 @@ public class VersionedObjectMetadata {
     return Optional.ofNullable(tagging);
   }
 
+  /**
+   * Get the checksum algorithm.
+   */
+  public Optional<CheckSumAlgorithm> getChecksumAlgorithm() {
+    return Optional.ofNullable(checksumAlgorithm);
+  }
+
+  /**
+   * Get the sizes of the parts.
+   */
+  public Optional<long[]> getPartSizes() {
+    return Optional.ofNullable(partSizes);
+  }
+
+  /**
+   * Get the ETags of the parts.
+   */
+  public Optional<String[]> getPartEtags() {
+    return Optional.ofNullable(partEtags);
+  }
+
+  /**
+   * Get the file IDs of the parts.
+   */
+  public Optional<long[]> getPartFileIds() {
+    return Optional.ofNullable(partFileIds);
+  }
+
+  /**
+   * Get the IDs of all files that store the content; empty for a delete marker.
+   *
+   * @return file IDs in {@linkplain com.robothy.s3.core.storage.Storage}.
+   */
+  @JsonIgnore
+  public List<Long> getContentFileIds() {
+    if (Objects.nonNull(partFileIds)) {
+      return LongStream.of(partFileIds).boxed().collect(Collectors.toList());
+    }
+    return Objects.isNull(fileId) ? Collections.emptyList() : Collections.singletonList(fileId);
+  }
+
 }
@@ -1,5 +1,6 @@
 package com.robothy.s3.core.model.request;
 
+import com.robothy.s3.core.model.internal.StagedObject;
 import java.util.Optional;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
@@ -7,7 +8,7 @@ import lombok.Getter;
 
 @Getter
 @Builder
-@EqualsAndHashCode
+@EqualsAndHashCode(exclude = "stagedObject")
 public class CopyObjectOptions {
 
   private String sourceBucket;
@@ -16,8 +17,17 @@ public class CopyObjectOptions {
 
   private String sourceVersion;
 
+  /**
+   * The source content staged by {@linkplain com.robothy.s3.core.service.CopyObjectService#stageObjectCopy}.
+   */
+  private StagedObject stagedObject;
+
   public Optional<String> getSourceVersion() {
     return Optional.ofNullable(sourceVersion);
   }
 
+  public Optional<StagedObject> getStagedObject() {
+    return Optional.ofNullable(stagedObject);
+  }
+
 }
\ No newline at end of file
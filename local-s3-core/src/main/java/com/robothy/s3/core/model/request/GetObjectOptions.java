@@ -16,8 +16,26 @@ public class GetObjectOptions {
 
   private String versionId;
 
+  /**
+   * The <a href="https://www.rfc-editor.org/rfc/rfc9110#name-range">Range</a> header value.
+   */
+  private String range;
+
+  /**
+   * Part number of the object to get, starts from 1.
+   */
+  private Integer partNumber;
+
   public Optional<String> getVersionId() {
     return Optional.ofNullable(versionId);
   }
 
+  public Optional<String> getRange() {
+    return Optional.ofNullable(range);
+  }
+
+  public Optional<Integer> getPartNumber() {
+    return Optional.ofNullable(partNumber);
+  }
+
 }
@@ -1,5 +1,6 @@
 package com.robothy.s3.core.model.request;
 
+import com.robothy.s3.core.model.internal.StagedObject;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.Map;
@@ -10,7 +11,7 @@ import lombok.Getter;
 
 @Builder
 @Getter
-@EqualsAndHashCode(exclude = "content")
+@EqualsAndHashCode(exclude = {"content", "stagedObject"})
 public class PutObjectOptions {
 
   private String contentType;
@@ -23,6 +24,22 @@ public class PutObjectOptions {
 
   private Map<String, String> userMetadata;
 
+  /**
+   * The content staged by {@linkplain com.robothy.s3.core.service.StageObjectService}.
+   * If set, {@code content} is ignored.
+   */
+  private StagedObject stagedObject;
+
+  /**
+   * Sizes of the parts in order if the object is created by a multipart upload.
+   */
+  private long[] partSizes;
+
+  /**
+   * ETags of the parts in order if the object is created by a multipart upload.
+   */
+  private String[] partEtags;
+
   /**
    * Get tagging in the put object request.
    *
@@ -32,4 +49,16 @@ public class PutObjectOptions {
     return Optional.ofNullable(tagging);
   }
 
+  public Optional<StagedObject> getStagedObject() {
+    return Optional.ofNullable(stagedObject);
+  }
+
+  public Optional<long[]> getPartSizes() {
+    return Optional.ofNullable(partSizes);
+  }
+
+  public Optional<String[]> getPartEtags() {
+    return Optional.ofNullable(partEtags);
+  }
+
 }
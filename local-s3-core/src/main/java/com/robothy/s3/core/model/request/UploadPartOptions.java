@@ -1,5 +1,6 @@
 package com.robothy.s3.core.model.request;
 
+import com.robothy.s3.core.model.internal.StagedObject;
 import java.io.InputStream;
 import java.util.Optional;
 import lombok.Builder;
@@ -15,8 +16,18 @@ public class UploadPartOptions {
 
   private String etag;
 
+  /**
+   * The data staged by {@linkplain com.robothy.s3.core.service.StageObjectService}.
+   * If set, {@code data} is ignored.
+   */
+  private StagedObject stagedObject;
+
   public Optional<String> getETag() {
     return Optional.ofNullable(etag);
   }
 
+  public Optional<StagedObject> getStagedObject() {
+    return Optional.ofNullable(stagedObject);
+  }
+
 }
@@ -22,8 +22,8 @@ public interface AbortMultipartUploadService extends LocalS3MetadataApplicable,
    * @param objectKey object key.
    * @param uploadId upload ID.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default void abortMultipartUpload(String bucketName, String objectKey, String uploadId) {
     LocalS3Metadata s3Metadata = localS3Metadata();
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(s3Metadata, bucketName);
@@ -8,18 +8,19 @@ import com.robothy.s3.core.exception.InvalidPartOrderException;
 import com.robothy.s3.core.model.answers.CompleteMultipartUploadAns;
 import com.robothy.s3.core.model.answers.PutObjectAns;
 import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.internal.UploadMetadata;
 import com.robothy.s3.core.model.internal.UploadPartMetadata;
 import com.robothy.s3.core.model.request.CompleteMultipartUploadPartOption;
 import com.robothy.s3.core.model.request.PutObjectOptions;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.SequenceInputStream;
-import java.util.Collections;
+import com.robothy.s3.core.util.S3ObjectUtils;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * Complete a multipart upload.
@@ -35,8 +36,8 @@ public interface CompleteMultipartUploadService extends LocalS3MetadataApplicabl
    * @param completeParts multipart upload parts to complete.
    * @return result of the complete multipart operation.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default CompleteMultipartUploadAns completeMultipartUpload(String bucket, String key, String uploadId,
                                                              List<CompleteMultipartUploadPartOption> completeParts) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucket);
@@ -57,31 +58,38 @@ public interface CompleteMultipartUploadService extends LocalS3MetadataApplicabl
     }
 
     Map<Integer, UploadPartMetadata> uploadedParts = uploadMetadata.getParts();
-
-    List<InputStream> inputStreams = completeParts.stream().map(completePart -> uploadedParts.get(completePart.getPartNumber()))
-        .map(uploadPartMetadata -> storage().getInputStream(uploadPartMetadata.getFileId()))
+    List<UploadPartMetadata> parts = completeParts.stream()
+        .map(completePart -> uploadedParts.get(completePart.getPartNumber()))
         .collect(Collectors.toList());
+    long[] partSizes = parts.stream().mapToLong(UploadPartMetadata::getSize).toArray();
+    String[] partEtags = parts.stream().map(UploadPartMetadata::getEtag).toArray(String[]::new);
 
-    long size = completeParts.stream().map(CompleteMultipartUploadPartOption::getPartNumber)
-        .map(uploadedParts::get).map(UploadPartMetadata::getSize).reduce(0L, Long::sum);
-
-    PutObjectAns putObjectAns;
-    try(InputStream in = new SequenceInputStream(Collections.enumeration(inputStreams))) {
-      PutObjectOptions putObjectOptions = PutObjectOptions.builder()
-          .size(size)
-          .content(in)
-          .contentType(uploadMetadata.getContentType())
-          .tagging(uploadMetadata.getTagging().orElse(null))
-          .userMetadata(uploadMetadata.getUserMetadata())
-          .build();
-
-      putObjectAns = putObject(bucket, key, putObjectOptions);
-    } catch (IOException e) {
-      throw new IllegalStateException("Failed to concat multipart upload parts.", e);
-    }
+    // The object references the uploaded parts instead of a concatenated copy, and its etag is derived
+    // from the part etags, so that the content is not read.
+    StagedObject stagedObject = StagedObject.builder()
+        .partFileIds(parts.stream().mapToLong(UploadPartMetadata::getFileId).toArray())
+        .etag(S3ObjectUtils.multipartEtag(Arrays.asList(partEtags)))
+        .size(LongStream.of(partSizes).sum())
+        .build();
+    PutObjectAns putObjectAns = putObject(bucket, key, PutObjectOptions.builder()
+        .size(stagedObject.getSize())
+        .stagedObject(stagedObject)
+        .contentType(uploadMetadata.getContentType())
+        .tagging(uploadMetadata.getTagging().orElse(null))
+        .userMetadata(uploadMetadata.getUserMetadata())
+        .partSizes(partSizes)
+        .partEtags(partEtags)
+        .build());
 
-    // Cleanup
-    uploadedParts.values().forEach(part -> storage().delete(part.getFileId()));
+    // Cleanup parts that are not completed.
+    Set<Integer> completedPartNumbers = completeParts.stream()
+        .map(CompleteMultipartUploadPartOption::getPartNumber)
+        .collect(Collectors.toSet());
+    uploadedParts.forEach((partNumber, part) -> {
+      if (!completedPartNumbers.contains(partNumber)) {
+        storage().delete(part.getFileId());
+      }
+    });
     Map<String, NavigableMap<String, UploadMetadata>> uploads = bucketMetadata.getUploads();
     uploads.get(key).remove(uploadId);
     if (uploads.get(key).isEmpty()) {
@@ -1,16 +1,69 @@
 package com.robothy.s3.core.service;
 
 import com.robothy.s3.core.annotations.BucketChanged;
+import com.robothy.s3.core.annotations.BucketReadLock;
 import com.robothy.s3.core.annotations.BucketWriteLock;
 import com.robothy.s3.core.model.answers.CopyObjectAns;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.answers.PutObjectAns;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.request.CopyObjectOptions;
 import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.model.request.PutObjectOptions;
+import com.robothy.s3.core.storage.Storage;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Optional;
 
 public interface CopyObjectService extends GetObjectService, PutObjectService, LocalS3MetadataApplicable, StorageApplicable {
 
+  /**
+   * Copy the content of the source object into a new staged object without holding any lock of
+   * the destination. Pass the result to {@linkplain CopyObjectOptions} to make the copy operation
+   * only swap the metadata in.
+   *
+   * <p>If the storage supports {@linkplain Storage#retain(Long) sharing}, the staged object
+   * references the content of the source object and no data is copied. The content of a
+   * multipart object is still copied, because its copy gets the ETag of a single part object.
+   *
+   * @param sourceBucket source bucket.
+   * @param sourceKey source object key.
+   * @param sourceVersion source version ID; or {@code null} to copy the latest version.
+   * @return the staged copy of the source object; or empty if the service doesn't support staging.
+   */
+  @BucketReadLock(keyScoped = true)
+  default Optional<StagedObject> stageObjectCopy(String sourceBucket, String sourceKey, String sourceVersion) {
+    GetObjectAns srcObjectAns = headObject(sourceBucket, sourceKey,
+        GetObjectOptions.builder().versionId(sourceVersion).build());
+
+    if (srcObjectAns.isDeleteMarker()) {
+      throw new IllegalArgumentException("The source of a copy request may not specifically refer to a delete marker by version id.");
+    }
+
+    if (!srcObjectAns.getPartsCount().isPresent() && storage().retain(srcObjectAns.getFileId())) {
+      return Optional.of(StagedObject.builder()
+          .fileId(srcObjectAns.getFileId())
+          .etag(srcObjectAns.getEtag())
+          .size(srcObjectAns.getSize())
+          .checksumAlgorithm(srcObjectAns.getChecksumAlgorithm().orElse(null))
+          .checksum(srcObjectAns.getChecksum())
+          .source(srcObjectAns)
+          .build());
+    }
+
+    InputStream content = Objects.nonNull(srcObjectAns.getFileId()) ? storage().getInputStream(srcObjectAns.getFileId())
+        : getObject(sourceBucket, sourceKey, GetObjectOptions.builder().versionId(sourceVersion).build()).getContent();
+    StagedObject stagedObject = StagedObject.stage(storage(), content, srcObjectAns.getChecksumAlgorithm().orElse(null));
+    return Optional.of(StagedObject.builder()
+        .fileId(stagedObject.getFileId())
+        .etag(stagedObject.getEtag())
+        .size(stagedObject.getSize())
+        .checksumAlgorithm(stagedObject.getChecksumAlgorithm().orElse(null))
+        .checksum(stagedObject.getChecksum())
+        .source(srcObjectAns)
+        .build());
+  }
+
   /**
    * Creates a copy of an object that is already stored in Local S3.
    *
@@ -19,23 +72,29 @@ public interface CopyObjectService extends GetObjectService, PutObjectService, L
    * @param options copy options.
    * @return copy result.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default CopyObjectAns copyObject(String bucket, String key, CopyObjectOptions options) {
-    String srcVersion = options.getSourceVersion().orElse(null);
-    GetObjectAns srcObjectAns = getObject(options.getSourceBucket(), options.getSourceKey(),
-        GetObjectOptions.builder().versionId(srcVersion).build());
-
-    if (srcObjectAns.isDeleteMarker()) {
-      throw new IllegalArgumentException("The source of a copy request may not specifically refer to a delete marker by version id.");
+    StagedObject stagedObject = options.getStagedObject().orElseGet(() -> stageObjectCopy(options.getSourceBucket(),
+        options.getSourceKey(), options.getSourceVersion().orElse(null)).get());
+    GetObjectAns srcObjectAns;
+    PutObjectOptions putObjectOptions;
+    try {
+      srcObjectAns = stagedObject.getSource()
+          .orElseThrow(() -> new IllegalArgumentException("The staged object is not a copy of an existing object."));
+      putObjectOptions = PutObjectOptions.builder()
+          .stagedObject(stagedObject)
+          .contentType(srcObjectAns.getContentType())
+          .size(srcObjectAns.getSize())
+          .userMetadata(srcObjectAns.getUserMetadata())
+          .build();
+    } catch (RuntimeException e) {
+      storage().delete(stagedObject.getFileId());
+      throw e;
     }
 
-    PutObjectAns putObjectAns = putObject(bucket, key, PutObjectOptions.builder()
-        .content(srcObjectAns.getContent())
-        .contentType(srcObjectAns.getContentType())
-        .size(srcObjectAns.getSize())
-        .userMetadata(srcObjectAns.getUserMetadata())
-        .build());
+    // putObject owns the staged object from here on, and deletes it if the commit fails.
+    PutObjectAns putObjectAns = putObject(bucket, key, putObjectOptions);
 
     return CopyObjectAns.builder()
         .sourceVersionId(srcObjectAns.getVersionId())
@@ -21,8 +21,8 @@ public interface CreateMultipartUploadService extends LocalS3MetadataApplicable
    * @param options options of the multipart upload.
    * @return the upload ID.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default String createMultipartUpload(String bucket, String key, CreateMultipartUploadOptions options) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucket);
     ObjectAssertions.assertObjectKeyIsValid(key);
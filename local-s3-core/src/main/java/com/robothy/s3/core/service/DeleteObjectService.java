@@ -19,14 +19,14 @@ import java.util.Optional;
  */
 public interface DeleteObjectService extends LocalS3MetadataApplicable, StorageApplicable {
 
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default DeleteObjectAns deleteObject(String bucketName, String key) {
     return deleteObject(bucketName, key, null);
   }
 
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default DeleteObjectAns deleteObject(String bucketName, String key, String versionId) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     if (Objects.isNull(bucketMetadata.getVersioningEnabled())) {
@@ -45,7 +45,7 @@ public interface DeleteObjectService extends LocalS3MetadataApplicable, StorageA
     ObjectMetadata removedObject = bucketMetadata.getObjectMap().remove(key);
     if (Objects.nonNull(removedObject)) { // the object exists
       VersionedObjectMetadata removedVersion = removedObject.getVersionedObjectMap().firstEntry().getValue();
-      storage.delete(removedVersion.getFileId());
+      removedVersion.getContentFileIds().forEach(storage::delete);
     }
     return DeleteObjectAns.builder().build();
   }
@@ -82,7 +82,7 @@ public interface DeleteObjectService extends LocalS3MetadataApplicable, StorageA
           VersionedObjectMetadata removed =
               objectMetadata.getVersionedObjectMap().remove(objectMetadata.getVirtualVersion().get());
           if (!removed.isDeleted()) {
-            storage.delete(removed.getFileId());
+            removed.getContentFileIds().forEach(storage::delete);
           }
         }
         objectMetadata.setVirtualVersion(versionId);
@@ -132,7 +132,7 @@ public interface DeleteObjectService extends LocalS3MetadataApplicable, StorageA
         VersionedObjectMetadata toRemove = objectMetadata.getVersionedObjectMap().remove(virtualVersionOpt.get());
         isDeleteMarker = toRemove.isDeleted();
         if (!isDeleteMarker) {
-          storage.delete(toRemove.getFileId());
+          toRemove.getContentFileIds().forEach(storage::delete);
         }
         objectMetadata.setVirtualVersion(null);
       }
@@ -143,7 +143,7 @@ public interface DeleteObjectService extends LocalS3MetadataApplicable, StorageA
         VersionedObjectMetadata removed = objectMetadata.getVersionedObjectMap().remove(versionId);
         isDeleteMarker = removed.isDeleted();
         if (!isDeleteMarker) {
-          storage.delete(removed.getFileId());
+          removed.getContentFileIds().forEach(storage::delete);
         }
       }
     }
@@ -4,24 +4,39 @@ import com.robothy.s3.core.annotations.BucketReadLock;
 import com.robothy.s3.core.asserionts.BucketAssertions;
 import com.robothy.s3.core.asserionts.ObjectAssertions;
 import com.robothy.s3.core.asserionts.VersionedObjectAssertions;
+import com.robothy.s3.core.exception.InvalidPartNumberException;
 import com.robothy.s3.core.exception.LocalS3InvalidArgumentException;
 import com.robothy.s3.core.exception.ObjectNotExistException;
 import com.robothy.s3.core.exception.VersionedObjectNotExistException;
+import com.robothy.s3.core.model.ContentRange;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
 import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
 import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.storage.Storage;
+import com.robothy.s3.core.util.CompositeInputStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 public interface GetObjectService extends StorageApplicable, LocalS3MetadataApplicable {
 
   /**
    * Get object.
    */
-  @BucketReadLock
+  @BucketReadLock(keyScoped = true)
   default GetObjectAns getObject(String bucketName, String key, GetObjectOptions options) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     if (Objects.isNull(bucketMetadata.getVersioningEnabled())) {
@@ -39,17 +54,204 @@ public interface GetObjectService extends StorageApplicable, LocalS3MetadataAppl
 
     VersionedObjectMetadata latestObject = objectMetadata.getLatest();
 
-    return GetObjectAns.builder()
+    GetObjectAns.GetObjectAnsBuilder builder = GetObjectAns.builder()
         .bucketName(bucketName)
         .key(key)
         .contentType(latestObject.getContentType())
         .lastModified(latestObject.getCreationDate())
         .size(latestObject.getSize())
-        .content(metadataOnly ? null : storage.getInputStream(latestObject.getFileId()))
         .etag(latestObject.getEtag())
+        .fileId(latestObject.getFileId())
         .userMetadata(latestObject.getUserMetadata())
         .taggingCount(latestObject.getTagging().map(tagging -> tagging.length).orElse(0))
-        .build();
+        .checksumAlgorithm(latestObject.getChecksumAlgorithm().orElse(null))
+        .checksum(latestObject.getChecksum())
+        .partsCount(latestObject.getPartSizes().map(partSizes -> partSizes.length).orElse(null))
+        .parts(parts(latestObject).orElse(null));
+    if (!metadataOnly) {
+      withContent(builder, storage, latestObject, resolveRange(latestObject, options));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Describe the parts of an object created by a multipart upload from its metadata.
+   *
+   * @return the parts in order; or empty if the object was not created by a multipart upload.
+   */
+  static Optional<List<GetObjectAns.Part>> parts(VersionedObjectMetadata object) {
+    return object.getPartSizes().map(partSizes -> {
+      String[] partEtags = object.getPartEtags().orElse(new String[partSizes.length]);
+      List<GetObjectAns.Part> parts = new ArrayList<>(partSizes.length);
+      for (int i = 0; i < partSizes.length; i++) {
+        parts.add(GetObjectAns.Part.builder()
+            .partNumber(i + 1)
+            .size(partSizes[i])
+            .etag(partEtags[i])
+            .build());
+      }
+      return parts;
+    });
+  }
+
+  /**
+   * Resolve the range to return from the {@code Range} header or the part number in {@code options}.
+   *
+   * @return the range to return; or empty if the whole object should be returned.
+   */
+  static Optional<ContentRange> resolveRange(VersionedObjectMetadata object, GetObjectOptions options) {
+    if (!options.getPartNumber().isPresent()) {
+      return options.getRange().flatMap(range -> ContentRange.parse(range, object.getSize()));
+    }
+
+    int partNumber = options.getPartNumber().get();
+    if (options.getRange().isPresent()) {
+      throw new LocalS3InvalidArgumentException("partNumber", String.valueOf(partNumber),
+          "Cannot specify both Range header and partNumber query parameter.");
+    }
+
+    // An object not created by a multipart upload has a single part.
+    long[] partSizes = object.getPartSizes().orElse(new long[] {object.getSize()});
+    if (partNumber < 1 || partNumber > partSizes.length) {
+      throw new InvalidPartNumberException(partNumber, partSizes.length);
+    }
+
+    long start = 0;
+    for (int i = 0; i < partNumber - 1; i++) {
+      start += partSizes[i];
+    }
+    long length = partSizes[partNumber - 1];
+    if (length == 0) {
+      return Optional.of(ContentRange.empty(start, object.getSize()));
+    }
+    return Optional.of(ContentRange.of(start, start + length - 1, object.getSize()));
+  }
+
+  /**
+   * Attach the content of {@code object} to the answer. The content of an object that is stored as the
+   * parts of a multipart upload is read from the parts lazily; a range within one part is read from that
+   * part only. The parts are leased, so that they stay readable after the bucket is unlocked.
+   */
+  static GetObjectAns.GetObjectAnsBuilder withContent(GetObjectAns.GetObjectAnsBuilder builder, Storage storage,
+                                                      VersionedObjectMetadata object, Optional<ContentRange> range) {
+    if (range.isPresent() && range.get().length() == 0) {
+      return withContentBuffer(builder.contentRange(range.get()), Unpooled.EMPTY_BUFFER);
+    }
+
+    if (!object.getPartFileIds().isPresent()) {
+      return withContent(builder, storage, object.getFileId(), range);
+    }
+
+    long[] partFileIds = object.getPartFileIds().get();
+    long[] partSizes = object.getPartSizes().orElseThrow(() ->
+        new IllegalStateException("The part sizes of the object stored as parts are missing."));
+    long start = range.map(ContentRange::getStart).orElse(0L);
+    long length = range.map(ContentRange::length).orElse(object.getSize());
+
+    int partIndex = 0;
+    long partStart = 0;
+    while (partIndex < partSizes.length - 1 && start >= partStart + partSizes[partIndex]) {
+      partStart += partSizes[partIndex++];
+    }
+
+    if (start + length <= partStart + partSizes[partIndex]) {
+      Long partFileId = partFileIds[partIndex];
+      if (!range.isPresent()) {
+        return withContent(builder, storage, partFileId, Optional.empty());
+      }
+      return withContentRange(builder, storage, partFileId,
+          ContentRange.of(start - partStart, start - partStart + length - 1, partSizes[partIndex]))
+          .contentRange(range.get());
+    }
+
+    return builder.contentRange(range.orElse(null))
+        .content(new CompositeInputStream(storage, partFileIds, partSizes, start, length));
+  }
+
+  /**
+   * Attach the content of {@code fileId} to the answer. If the content is in memory or stored as a file,
+   * its read-only buffer or file channel is attached as well so that the content can be sent without copying.
+   * If {@code range} is present, only the bytes in the range are read.
+   */
+  static GetObjectAns.GetObjectAnsBuilder withContent(GetObjectAns.GetObjectAnsBuilder builder,
+                                                      Storage storage, Long fileId, Optional<ContentRange> range) {
+    if (range.isPresent()) {
+      return withContentRange(builder, storage, fileId, range.get());
+    }
+
+    Optional<ByteBuf> buffer = storage.getByteBuf(fileId);
+    if (buffer.isPresent()) {
+      return withContentBuffer(builder, buffer.get());
+    }
+
+    Optional<FileChannel> fileChannel = storage.getFileChannel(fileId);
+    if (fileChannel.isPresent()) {
+      return builder.fileChannel(fileChannel.get())
+          .content(Channels.newInputStream(fileChannel.get()));
+    }
+
+    return builder.content(storage.getInputStream(fileId));
+  }
+
+  /**
+   * Attach the bytes of {@code fileId} in {@code range} to the answer. If the content is stored as a file, its
+   * file channel is attached, positioned at the start of the range, so that the range is sent from the file;
+   * no byte is read into memory then. If the content is in memory, a view of the range is attached.
+   */
+  static GetObjectAns.GetObjectAnsBuilder withContentRange(GetObjectAns.GetObjectAnsBuilder builder,
+                                                           Storage storage, Long fileId, ContentRange range) {
+    builder.contentRange(range);
+    Optional<FileChannel> fileChannel = storage.getFileChannel(fileId);
+    if (fileChannel.isPresent()) {
+      FileChannel channel = fileChannel.get();
+      try {
+        channel.position(range.getStart());
+        return builder.fileChannel(channel)
+            .content(BoundedInputStream.builder()
+                .setInputStream(Channels.newInputStream(channel))
+                .setMaxCount(range.length())
+                .get());
+      } catch (IOException e) {
+        IOUtils.closeQuietly(channel);
+        throw new IllegalStateException("Failed to read range " + range.toHeaderValue() + ".", e);
+      }
+    }
+
+    Optional<ByteBuf> buffer = storage.getByteBuf(fileId);
+    if (buffer.isPresent()) {
+      ByteBuf object = buffer.get();
+      if (range.getStart() + range.length() > object.readableBytes()) {
+        object.release();
+        throw new IllegalArgumentException("Range " + range.toHeaderValue() + " exceeds object id='" + fileId + "'.");
+      }
+      int start = object.readerIndex() + (int) range.getStart();
+      return withContentBuffer(builder, object.slice(start, (int) range.length()));
+    }
+
+    if (range.length() <= Integer.MAX_VALUE) {
+      ByteBuffer read = storage.read(fileId, range.getStart(), (int) range.length());
+      return withContentBuffer(builder, Unpooled.wrappedBuffer(read));
+    }
+
+    InputStream in = storage.getInputStream(fileId);
+    try {
+      IOUtils.skipFully(in, range.getStart());
+      return builder.content(BoundedInputStream.builder()
+          .setInputStream(in)
+          .setMaxCount(range.length())
+          .get());
+    } catch (IOException e) {
+      IOUtils.closeQuietly(in);
+      throw new IllegalStateException("Failed to read range " + range.toHeaderValue() + ".", e);
+    }
+  }
+
+  /**
+   * Attach a read-only view of the content to the answer; closing the content releases the view.
+   */
+  static GetObjectAns.GetObjectAnsBuilder withContentBuffer(GetObjectAns.GetObjectAnsBuilder builder, ByteBuf buffer) {
+    return builder.contentBuffer(buffer)
+        .content(new ByteBufInputStream(buffer.duplicate(), true));
   }
 
   // Using static to make the target compatible with Java8
@@ -100,18 +302,25 @@ public interface GetObjectService extends StorageApplicable, LocalS3MetadataAppl
           .lastModified(versionedObjectMetadata.getCreationDate())
           .build();
     } else {
-      return GetObjectAns.builder()
+      GetObjectAns.GetObjectAnsBuilder builder = GetObjectAns.builder()
           .bucketName(bucketName)
           .key(key)
           .versionId(returnedVersionId)
           .contentType(versionedObjectMetadata.getContentType())
           .lastModified(versionedObjectMetadata.getCreationDate())
           .size(versionedObjectMetadata.getSize())
-          .content(metadataOnly ? null : storage.getInputStream(versionedObjectMetadata.getFileId()))
           .etag(versionedObjectMetadata.getEtag())
+          .fileId(versionedObjectMetadata.getFileId())
           .taggingCount(versionedObjectMetadata.getTagging().map(tagging -> tagging.length).orElse(0))
+          .checksumAlgorithm(versionedObjectMetadata.getChecksumAlgorithm().orElse(null))
+          .checksum(versionedObjectMetadata.getChecksum())
           .userMetadata(versionedObjectMetadata.getUserMetadata())
-          .build();
+          .partsCount(versionedObjectMetadata.getPartSizes().map(partSizes -> partSizes.length).orElse(null))
+          .parts(parts(versionedObjectMetadata).orElse(null));
+      if (!metadataOnly) {
+        withContent(builder, storage, versionedObjectMetadata, resolveRange(versionedObjectMetadata, options));
+      }
+      return builder.build();
     }
   }
 
@@ -123,7 +332,7 @@ public interface GetObjectService extends StorageApplicable, LocalS3MetadataAppl
    * @param options options.
    * @return versioned object with metadata only.
    */
-  @BucketReadLock
+  @BucketReadLock(keyScoped = true)
   default GetObjectAns headObject(String bucketName, String key, GetObjectOptions options) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     if (Objects.isNull(bucketMetadata.getVersioningEnabled())) {
@@ -50,7 +50,7 @@ public class InMemoryBucketService implements BucketService {
     BucketAssertions.assertBucketNameIsValid(bucketName);
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(s3Metadata, bucketName);
     BucketAssertions.assertBucketIsEmpty(bucketMetadata);
-    s3Metadata.getBucketMetadataMap().remove(bucketName);
+    s3Metadata.removeBucketMetadata(bucketName);
     return Bucket.fromBucketMetadata(bucketMetadata);
   }
 
@@ -26,8 +26,8 @@ public interface ObjectTaggingService extends LocalS3MetadataApplicable {
    * @param tagging new tagging of the versioned object.
    * @return version ID where the new tagging applies to.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default String putObjectTagging(String bucketName, String key, String versionId, String[][] tagging) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     ObjectMetadata objectMetadata = ObjectAssertions.assertObjectExists(bucketMetadata, key);
@@ -47,7 +47,7 @@ public interface ObjectTaggingService extends LocalS3MetadataApplicable {
    * @param versionId version ID.
    * @return versioned object tagging.
    */
-  @BucketReadLock
+  @BucketReadLock(keyScoped = true)
   default GetObjectTaggingAns getObjectTagging(String bucketName, String key, String versionId) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     ObjectMetadata objectMetadata = ObjectAssertions.assertObjectExists(bucketMetadata, key);
@@ -70,8 +70,8 @@ public interface ObjectTaggingService extends LocalS3MetadataApplicable {
    * @param versionId version ID.
    * @return version ID of the object where the tagging is deleted from.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default String deleteObjectTagging(String bucketName, String key, String versionId) {
     BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
     ObjectMetadata objectMetadata = ObjectAssertions.assertObjectExists(bucketMetadata, key);
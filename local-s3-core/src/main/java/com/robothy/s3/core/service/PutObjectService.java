@@ -3,13 +3,14 @@ package com.robothy.s3.core.service;
 import com.robothy.s3.core.annotations.BucketChanged;
 import com.robothy.s3.core.annotations.BucketWriteLock;
 import com.robothy.s3.core.asserionts.BucketAssertions;
+import com.robothy.s3.core.asserionts.ObjectAssertions;
 import com.robothy.s3.core.model.answers.PutObjectAns;
 import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
 import com.robothy.s3.core.model.request.PutObjectOptions;
 import com.robothy.s3.core.util.IdUtils;
-import com.robothy.s3.core.util.S3ObjectUtils;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -29,61 +30,88 @@ import java.util.Optional;
  *
  *
  */
-public interface PutObjectService extends LocalS3MetadataApplicable, StorageApplicable {
+public interface PutObjectService extends LocalS3MetadataApplicable, StorageApplicable, StageObjectService {
 
-  @BucketChanged
-  @BucketWriteLock
+  /**
+   * Put an object. If the content is not staged via {@linkplain #stageObject(java.io.InputStream)}
+   * in advance, it is written to the storage while holding the object key lock.
+   *
+   * @param bucketName the bucket name.
+   * @param key the object key.
+   * @param options put object options.
+   * @return result of the put object operation.
+   */
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default PutObjectAns putObject(String bucketName, String key, PutObjectOptions options) {
-    BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
-
-    String versionId = IdUtils.defaultGenerator().nextStrId();
-    VersionedObjectMetadata versionedObjectMetadata = new VersionedObjectMetadata();
-    versionedObjectMetadata.setCreationDate(System.currentTimeMillis());
-    versionedObjectMetadata.setContentType(options.getContentType());
-    versionedObjectMetadata.setSize(options.getSize());
-    if (Objects.nonNull(options.getUserMetadata())) {
-      versionedObjectMetadata.setUserMetadata(options.getUserMetadata());
-    }
-    Long fileId = storage().put(options.getContent());
-    versionedObjectMetadata.setFileId(fileId);
+    StagedObject stagedObject = options.getStagedObject().orElse(null);
+    boolean committed = false;
+    try {
+      BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucketName);
+      ObjectAssertions.assertObjectKeyIsValid(key);
+      if (Objects.isNull(stagedObject)) {
+        stagedObject = StagedObject.stage(storage(), options.getContent());
+      }
+      String versionId = IdUtils.defaultGenerator().nextStrId();
+      VersionedObjectMetadata versionedObjectMetadata = new VersionedObjectMetadata();
+      versionedObjectMetadata.setCreationDate(System.currentTimeMillis());
+      versionedObjectMetadata.setContentType(options.getContentType());
+      versionedObjectMetadata.setSize(options.getSize());
+      if (Objects.nonNull(options.getUserMetadata())) {
+        versionedObjectMetadata.setUserMetadata(options.getUserMetadata());
+      }
+      versionedObjectMetadata.setFileId(stagedObject.getFileId());
+      stagedObject.getPartFileIds().ifPresent(versionedObjectMetadata::setPartFileIds);
+      versionedObjectMetadata.setEtag(stagedObject.getEtag());
+      if (stagedObject.getChecksumAlgorithm().isPresent()) {
+        versionedObjectMetadata.setChecksumAlgorithm(stagedObject.getChecksumAlgorithm().get());
+        versionedObjectMetadata.setChecksum(stagedObject.getChecksum());
+      }
 
-    versionedObjectMetadata.setEtag(S3ObjectUtils.etag(storage().getInputStream(fileId)));
+      options.getTagging().ifPresent(versionedObjectMetadata::setTagging);
+      options.getPartSizes().ifPresent(versionedObjectMetadata::setPartSizes);
+      options.getPartEtags().ifPresent(versionedObjectMetadata::setPartEtags);
 
-    options.getTagging().ifPresent(versionedObjectMetadata::setTagging);
+      ObjectMetadata objectMetadata;
+      if (bucketMetadata.getObjectMetadata(key).isPresent()) {
+        objectMetadata = bucketMetadata.getObjectMetadata(key).get();
+        objectMetadata.putVersionedObjectMetadata(versionId, versionedObjectMetadata);
+      } else {
+        objectMetadata = new ObjectMetadata(versionId, versionedObjectMetadata);
+        bucketMetadata.putObjectMetadata(key, objectMetadata);
+      }
+      committed = true;
 
-    ObjectMetadata objectMetadata;
-    if (bucketMetadata.getObjectMetadata(key).isPresent()) {
-      objectMetadata = bucketMetadata.getObjectMetadata(key).get();
-      objectMetadata.putVersionedObjectMetadata(versionId, versionedObjectMetadata);
-    } else {
-      objectMetadata = new ObjectMetadata(versionId, versionedObjectMetadata);
-      bucketMetadata.putObjectMetadata(key, objectMetadata);
-    }
+      String returnedVersionId = versionId;
+      if (!Boolean.TRUE.equals(bucketMetadata.getVersioningEnabled())) {
+        returnedVersionId = Objects.isNull(bucketMetadata.getVersioningEnabled()) ? null : ObjectMetadata.NULL_VERSION;
 
-    String returnedVersionId = versionId;
-    if (!Boolean.TRUE.equals(bucketMetadata.getVersioningEnabled())) {
-      returnedVersionId = Objects.isNull(bucketMetadata.getVersioningEnabled()) ? null : ObjectMetadata.NULL_VERSION;
+        Optional<String> virtualVersionOpt = objectMetadata.getVirtualVersion();
+        if (virtualVersionOpt.isPresent()) {
+          String lastVirtualVersion = virtualVersionOpt.get();
+          VersionedObjectMetadata previousVersion = objectMetadata.getVersionedObjectMap().remove(lastVirtualVersion);
+          previousVersion.getContentFileIds().forEach(storage()::delete);
 
-      Optional<String> virtualVersionOpt = objectMetadata.getVirtualVersion();
-      if (virtualVersionOpt.isPresent()) {
-        String lastVirtualVersion = virtualVersionOpt.get();
-        VersionedObjectMetadata previousVersion = objectMetadata.getVersionedObjectMap().remove(lastVirtualVersion);
-        if (Objects.nonNull(previousVersion.getFileId())) { // Not a delete marker.
-          storage().delete(previousVersion.getFileId());
+          objectMetadata.setVirtualVersion(versionId);
+        } else {
+          objectMetadata.setVirtualVersion(versionId);
         }
+      }
 
-        objectMetadata.setVirtualVersion(versionId);
-      } else {
-        objectMetadata.setVirtualVersion(versionId);
+      return PutObjectAns.builder()
+          .key(key)
+          .versionId(returnedVersionId)
+          .creationDate(versionedObjectMetadata.getCreationDate())
+          .etag(versionedObjectMetadata.getEtag())
+          .checksumAlgorithm(versionedObjectMetadata.getChecksumAlgorithm().orElse(null))
+          .checksum(versionedObjectMetadata.getChecksum())
+          .build();
+    } finally {
+      // The staged content is owned by this operation until its metadata is swapped in.
+      if (!committed && Objects.nonNull(stagedObject) && Objects.nonNull(stagedObject.getFileId())) {
+        storage().delete(stagedObject.getFileId());
       }
     }
-
-    return PutObjectAns.builder()
-        .key(key)
-        .versionId(returnedVersionId)
-        .creationDate(versionedObjectMetadata.getCreationDate())
-        .etag(versionedObjectMetadata.getEtag())
-        .build();
   }
 
 }
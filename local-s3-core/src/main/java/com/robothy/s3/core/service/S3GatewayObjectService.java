@@ -4,14 +4,17 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import com.robothy.s3.core.model.answers.*;
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.request.*;
 import com.robothy.s3.core.storage.Storage;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import com.robothy.s3.datatypes.request.DeleteObjectsRequest;
 import com.robothy.s3.datatypes.response.DeleteResult;
 
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class S3GatewayObjectService implements ObjectService {
@@ -38,6 +41,11 @@ public class S3GatewayObjectService implements ObjectService {
         throw new RuntimeException("Not implemented");
     }
 
+    @Override
+    public Optional<StagedObject> stageObject(final InputStream content, final CheckSumAlgorithm checksumAlgorithm) {
+        return Optional.empty();
+    }
+
     @Override
     public PutObjectAns putObject(
             final String bucketName,
@@ -316,6 +324,15 @@ public class S3GatewayObjectService implements ObjectService {
         throw new RuntimeException("Not implemented");
     }
 
+    @Override
+    public Optional<StagedObject> stageObjectCopy(
+            final String sourceBucket,
+            final String sourceKey,
+            final String sourceVersion
+    ) {
+        return Optional.empty();
+    }
+
     @Override
     public CopyObjectAns copyObject(
             final String bucket,
@@ -0,0 +1,39 @@
+package com.robothy.s3.core.service;
+
+import com.robothy.s3.core.model.internal.StagedObject;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Writes object content to the storage before a write operation acquires any bucket lock.
+ * Pass the result to {@linkplain com.robothy.s3.core.model.request.PutObjectOptions} or
+ * {@linkplain com.robothy.s3.core.model.request.UploadPartOptions}.
+ */
+public interface StageObjectService extends StorageApplicable {
+
+  /**
+   * Stage the content in the storage without holding any lock.
+   *
+   * @param content the object content.
+   * @return the staged object; or empty if the service doesn't support staging,
+   *     in which case the content is not consumed.
+   */
+  default Optional<StagedObject> stageObject(InputStream content) {
+    return stageObject(content, null);
+  }
+
+  /**
+   * Stage the content in the storage without holding any lock, and compute the checksum
+   * in the same pass.
+   *
+   * @param content the object content.
+   * @param checksumAlgorithm the checksum algorithm; or {@code null} to compute the ETag only.
+   * @return the staged object; or empty if the service doesn't support staging,
+   *     in which case the content is not consumed.
+   */
+  default Optional<StagedObject> stageObject(InputStream content, CheckSumAlgorithm checksumAlgorithm) {
+    return Optional.of(StagedObject.stage(storage(), content, checksumAlgorithm));
+  }
+
+}
@@ -6,16 +6,17 @@ import com.robothy.s3.core.asserionts.BucketAssertions;
 import com.robothy.s3.core.asserionts.UploadAssertions;
 import com.robothy.s3.core.model.answers.UploadPartAns;
 import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.internal.UploadMetadata;
 import com.robothy.s3.core.model.internal.UploadPartMetadata;
 import com.robothy.s3.core.model.request.UploadPartOptions;
-import com.robothy.s3.core.util.S3ObjectUtils;
 import java.util.NavigableMap;
+import java.util.Objects;
 
 /**
  * Uploads a part in a multipart upload.
  */
-public interface UploadPartService extends LocalS3MetadataApplicable, StorageApplicable {
+public interface UploadPartService extends LocalS3MetadataApplicable, StorageApplicable, StageObjectService {
 
   /**
    * Upload part for an initialized upload.
@@ -27,28 +28,38 @@ public interface UploadPartService extends LocalS3MetadataApplicable, StorageApp
    * @param options options of upload the upload part operation.
    * @return result of the upload part.
    */
-  @BucketChanged
-  @BucketWriteLock
+  @BucketChanged(keyScoped = true)
+  @BucketWriteLock(keyScoped = true)
   default UploadPartAns uploadPart(String bucket, String key, String uploadId, Integer partNumber, UploadPartOptions options) {
-    BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucket);
-    UploadMetadata uploadMetadata = UploadAssertions.assertUploadExists(bucketMetadata, key, uploadId);
-    NavigableMap<Integer, UploadPartMetadata> parts = uploadMetadata.getParts();
-    if (parts.containsKey(partNumber)) {
-      UploadPartMetadata uploadPartMetadata = parts.get(partNumber);
-      storage().delete(uploadPartMetadata.getFileId());
-    }
+    StagedObject stagedObject = options.getStagedObject().orElse(null);
+    boolean committed = false;
+    try {
+      BucketMetadata bucketMetadata = BucketAssertions.assertBucketExists(localS3Metadata(), bucket);
+      UploadMetadata uploadMetadata = UploadAssertions.assertUploadExists(bucketMetadata, key, uploadId);
+      if (Objects.isNull(stagedObject)) {
+        stagedObject = StagedObject.stage(storage(), options.getData());
+      }
 
-    Long fileId = storage().put(options.getData());
-    UploadPartMetadata uploadPartMetadata = UploadPartMetadata.builder()
-        .fileId(fileId)
-        .lastModified(System.currentTimeMillis())
-        .size(options.getContentLength())
-        .etag(options.getETag().orElseGet(() -> S3ObjectUtils.etag(storage().getInputStream(fileId))))
-        .build();
-    parts.put(partNumber, uploadPartMetadata);
-    return UploadPartAns.builder()
-        .etag(uploadPartMetadata.getEtag())
-        .build();
+      NavigableMap<Integer, UploadPartMetadata> parts = uploadMetadata.getParts();
+      UploadPartMetadata uploadPartMetadata = UploadPartMetadata.builder()
+          .fileId(stagedObject.getFileId())
+          .lastModified(System.currentTimeMillis())
+          .size(options.getContentLength())
+          .etag(options.getETag().orElse(stagedObject.getEtag()))
+          .build();
+      UploadPartMetadata previousPart = parts.put(partNumber, uploadPartMetadata);
+      committed = true;
+      if (Objects.nonNull(previousPart)) {
+        storage().delete(previousPart.getFileId());
+      }
+      return UploadPartAns.builder()
+          .etag(uploadPartMetadata.getEtag())
+          .build();
+    } finally {
+      if (!committed && Objects.nonNull(stagedObject)) {
+        storage().delete(stagedObject.getFileId());
+      }
+    }
   }
 
 }
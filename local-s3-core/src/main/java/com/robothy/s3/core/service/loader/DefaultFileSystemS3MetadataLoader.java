@@ -2,41 +2,176 @@ package com.robothy.s3.core.service.loader;
 
 import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import com.robothy.s3.core.storage.BucketMetadataStore;
 import com.robothy.s3.core.storage.FileSystemBucketMetadataStore;
-import com.robothy.s3.core.storage.MetadataStore;
 import com.robothy.s3.core.util.PathUtils;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Default implementation of {@linkplain FileSystemS3MetadataLoader}.
  * Load the {@linkplain LocalS3Metadata} instance from a give path.
+ *
+ * <p>Buckets are added to the metadata lazily, and loaded by a pool of {@linkplain #parallelism}
+ * workers in the background. A bucket accessed before a worker loaded it is loaded by the accessing thread.
+ *
+ * <p>If the version file of the path is older than {@linkplain LocalS3Metadata#VERSION}, each bucket is
+ * stored again once loaded, so that its files are migrated to the current format, and the version file is
+ * updated once all buckets are migrated. A read-only loader doesn't modify any file of the path; an older
+ * version is read as it is.
  */
+@Slf4j
 public class DefaultFileSystemS3MetadataLoader implements FileSystemS3MetadataLoader {
 
   private static final String VERSION_FILE_NAME = "version";
 
+  private final int parallelism;
+
+  private final boolean readOnly;
+
+  public DefaultFileSystemS3MetadataLoader() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create a loader.
+   *
+   * @param parallelism number of workers that load buckets in the background.
+   */
+  public DefaultFileSystemS3MetadataLoader(int parallelism) {
+    this(parallelism, false);
+  }
+
+  /**
+   * Create a loader.
+   *
+   * @param parallelism number of workers that load buckets in the background.
+   * @param readOnly {@code true} to load without creating the version file or migrating the buckets.
+   */
+  public DefaultFileSystemS3MetadataLoader(int parallelism, boolean readOnly) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive, but got " + parallelism + ".");
+    }
+    this.parallelism = parallelism;
+    this.readOnly = readOnly;
+  }
+
   @Override
   public LocalS3Metadata load(Path s3DataPath) {
+    MetadataLoading loading = loadLazily(s3DataPath);
+    try {
+      loading.getReadiness().join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    return loading.getMetadata();
+  }
+
+  @Override
+  public MetadataLoading loadLazily(Path s3DataPath) {
     Objects.requireNonNull(s3DataPath);
-    PathUtils.createDirectoryIfNotExit(s3DataPath);
+    return loadLazily(s3DataPath, FileSystemBucketMetadataStore.create(s3DataPath));
+  }
+
+  @Override
+  public MetadataLoading loadLazily(Path s3DataPath, BucketMetadataStore bucketMetaStore) {
+    Objects.requireNonNull(s3DataPath);
+    Objects.requireNonNull(bucketMetaStore);
     File versionFile = new File(s3DataPath.toFile(), VERSION_FILE_NAME);
     LocalS3Metadata s3Metadata = new LocalS3Metadata();
-    if (!versionFile.exists()) {
-      try {
-        Files.write(versionFile.toPath(), String.valueOf(LocalS3Metadata.VERSION).getBytes(StandardCharsets.UTF_8));
-      } catch (IOException e) {
-        throw new IllegalStateException("Failed to load S3 metadata from " + s3DataPath);
+    if (!readOnly) {
+      PathUtils.createDirectoryIfNotExit(s3DataPath);
+      if (!versionFile.exists()) {
+        writeVersion(versionFile);
+      }
+    }
+    boolean migrating = !readOnly && readVersion(versionFile) < LocalS3Metadata.VERSION;
+
+    CompletableFuture<Void> readiness = new CompletableFuture<>();
+    MetadataLoading loading = new MetadataLoading(s3Metadata, readiness);
+    List<String> bucketNames = bucketMetaStore.listBucketNames();
+    for (String bucketName : bucketNames) {
+      s3Metadata.addLazyBucketMetadata(bucketName, () -> {
+        long start = System.nanoTime();
+        BucketMetadata bucketMetadata = bucketMetaStore.fetch(bucketName);
+        if (migrating) {
+          bucketMetaStore.store(bucketName, bucketMetadata);
+        }
+        loading.recordBucket(bucketName, System.nanoTime() - start);
+        return bucketMetadata;
+      });
+    }
+
+    if (bucketNames.isEmpty()) {
+      if (migrating) {
+        writeVersion(versionFile);
       }
+      readiness.complete(null);
+      return loading;
     }
 
-    MetadataStore<BucketMetadata> bucketMetaStore = FileSystemBucketMetadataStore.create(s3DataPath);
-    bucketMetaStore.fetchAll().forEach(s3Metadata::addBucketMetadata);
-    return s3Metadata;
+    AtomicInteger threadNum = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, bucketNames.size()), runnable -> {
+      Thread thread = new Thread(runnable, "local-s3-metadata-loader-" + threadNum.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletableFuture.allOf(bucketNames.stream()
+            .map(bucketName -> CompletableFuture.runAsync(() -> s3Metadata.getBucketMetadata(bucketName), workers))
+            .toArray(CompletableFuture[]::new))
+        .whenComplete((result, e) -> {
+          workers.shutdown();
+          if (Objects.nonNull(e)) {
+            log.error("Failed to load the metadata in {}.", s3DataPath, e);
+            readiness.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+          } else {
+            try {
+              if (migrating) {
+                writeVersion(versionFile);
+                log.info("Migrated the metadata in {} to version {}.", s3DataPath, LocalS3Metadata.VERSION);
+              }
+              readiness.complete(null);
+            } catch (RuntimeException ex) {
+              readiness.completeExceptionally(ex);
+            }
+          }
+        });
+    loading.getReadiness().thenRun(() -> log.info("Loaded {} buckets in {} ms, slowest: {}.", bucketNames.size(),
+        loading.getTotalMillis(), loading.getBucketLoadMillis().entrySet().stream().limit(5)
+            .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+            .collect(Collectors.joining(", "))));
+    return loading;
+  }
+
+  private long readVersion(File versionFile) {
+    try {
+      return Long.parseLong(new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.UTF_8).trim());
+    } catch (IOException | NumberFormatException e) {
+      throw new IllegalStateException("Failed to read the metadata version from " + versionFile, e);
+    }
+  }
+
+  private void writeVersion(File versionFile) {
+    try {
+      Files.write(versionFile.toPath(), String.valueOf(LocalS3Metadata.VERSION).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write the metadata version to " + versionFile, e);
+    }
   }
 
 }
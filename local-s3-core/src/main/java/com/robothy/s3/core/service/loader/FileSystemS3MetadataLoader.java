@@ -1,6 +1,7 @@
 package com.robothy.s3.core.service.loader;
 
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import com.robothy.s3.core.storage.BucketMetadataStore;
 import java.nio.file.Path;
 
 /**
@@ -18,11 +19,42 @@ public interface FileSystemS3MetadataLoader {
   }
 
   /**
-   * Load {@linkplain LocalS3Metadata} from the given {@code s3Path}.
+   * Create a {@linkplain FileSystemS3MetadataLoader} that doesn't modify the loaded path, e.g. the initial
+   * data of an in-memory manager. Metadata of an older version is read without being migrated.
+   *
+   * @return a new read-only {@linkplain FileSystemS3MetadataLoader} instance.
+   */
+  static FileSystemS3MetadataLoader createReadOnly() {
+    return new DefaultFileSystemS3MetadataLoader(Runtime.getRuntime().availableProcessors(), true);
+  }
+
+  /**
+   * Load {@linkplain LocalS3Metadata} from the given {@code s3Path}, and return once all buckets are loaded.
    *
    * @param s3Path that contains {@linkplain LocalS3Metadata}.
    * @return loaded {@linkplain LocalS3Metadata} instance.
    */
   LocalS3Metadata load(Path s3Path);
 
+  /**
+   * Start loading {@linkplain LocalS3Metadata} from the given {@code s3Path} in the background.
+   * The buckets exist in the returned metadata at once, and are loaded on the first access if the
+   * background loading didn't load them yet.
+   *
+   * @param s3Path that contains {@linkplain LocalS3Metadata}.
+   * @return the progress of loading.
+   */
+  MetadataLoading loadLazily(Path s3Path);
+
+  /**
+   * Start loading {@linkplain LocalS3Metadata} from the given {@code s3Path} in the background, and fetch
+   * the buckets from {@code bucketMetaStore}. Buckets that load their shards on access read them from the
+   * store, so it should be the store that their changes are persisted to.
+   *
+   * @param s3Path that contains {@linkplain LocalS3Metadata}.
+   * @param bucketMetaStore the store of the bucket metadata in {@code s3Path}.
+   * @return the progress of loading.
+   */
+  MetadataLoading loadLazily(Path s3Path, BucketMetadataStore bucketMetaStore);
+
 }
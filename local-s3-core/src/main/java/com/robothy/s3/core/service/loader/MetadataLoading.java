@@ -0,0 +1,84 @@
+package com.robothy.s3.core.service.loader;
+
+import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of loading {@linkplain LocalS3Metadata} lazily. The buckets of the metadata exist at once,
+ * their metadata is loaded on the first access or by background workers.
+ */
+public class MetadataLoading {
+
+  private final LocalS3Metadata metadata;
+
+  private final CompletableFuture<Void> readiness;
+
+  private final Map<String, Long> bucketLoadMillis = new ConcurrentHashMap<>();
+
+  private final long startNanos = System.nanoTime();
+
+  private volatile long totalMillis = -1;
+
+  MetadataLoading(LocalS3Metadata metadata, CompletableFuture<Void> readiness) {
+    this.metadata = metadata;
+    this.readiness = readiness.whenComplete((result, e) ->
+        totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  /**
+   * The metadata; buckets that were not loaded yet are loaded on access.
+   */
+  public LocalS3Metadata getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * Completes once the metadata of all buckets is loaded; or completes exceptionally if a bucket
+   * failed to load.
+   */
+  public CompletableFuture<Void> getReadiness() {
+    return readiness;
+  }
+
+  /**
+   * Whether the metadata of all buckets is loaded.
+   */
+  public boolean isReady() {
+    return readiness.isDone() && !readiness.isCompletedExceptionally();
+  }
+
+  /**
+   * Time in milliseconds taken to load each bucket, the slowest bucket first.
+   */
+  public Map<String, Long> getBucketLoadMillis() {
+    Map<String, Long> sorted = new LinkedHashMap<>();
+    bucketLoadMillis.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+    return Collections.unmodifiableMap(sorted);
+  }
+
+  /**
+   * Time in milliseconds from the start of loading until all buckets were loaded; or {@code -1}
+   * if loading is not finished.
+   */
+  public long getTotalMillis() {
+    return totalMillis;
+  }
+
+  void recordBucket(String bucketName, long nanos) {
+    bucketLoadMillis.put(bucketName, TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataLoading(ready=" + isReady() + ", buckets=" + bucketLoadMillis.size()
+        + ", totalMillis=" + totalMillis + ", bucketLoadMillis=" + getBucketLoadMillis() + ")";
+  }
+
+}
@@ -2,6 +2,13 @@ package com.robothy.s3.core.service.locks;
 
 import java.util.concurrent.locks.Lock;
 
+/**
+ * Locks of buckets and object keys.
+ *
+ * <p>Operations that change the structure of a bucket take the bucket write lock. Operations
+ * on a single object key take the bucket read lock first, then the lock of the key, so that
+ * operations on different keys in the same bucket can run concurrently.
+ */
 public interface BucketLock {
 
   static BucketLock getInstance() {
@@ -12,4 +19,24 @@ public interface BucketLock {
 
   Lock writeLock(String bucketName);
 
+  /**
+   * Get the read lock of an object key. The caller must hold the bucket read lock
+   * before acquiring the returned lock.
+   *
+   * @param bucketName the bucket name.
+   * @param key the object key.
+   * @return the read lock of the object key.
+   */
+  Lock readLock(String bucketName, String key);
+
+  /**
+   * Get the write lock of an object key. The caller must hold the bucket read lock
+   * before acquiring the returned lock.
+   *
+   * @param bucketName the bucket name.
+   * @param key the object key.
+   * @return the write lock of the object key.
+   */
+  Lock writeLock(String bucketName, String key);
+
 }
@@ -1,6 +1,7 @@
 package com.robothy.s3.core.service.locks;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -10,20 +11,57 @@ class DefaultBucketLock implements BucketLock {
 
   static final BucketLock singleton = new DefaultBucketLock();
 
-  private final Map<String, ReadWriteLock> locks = new ConcurrentHashMap<>();
+  /**
+   * Number of key lock stripes per bucket. Must be a power of 2.
+   */
+  static final int KEY_LOCK_STRIPES = 64;
+
+  private final Map<String, BucketLocks> locks = new ConcurrentHashMap<>();
 
   @Override
   public Lock readLock(String bucketName) {
-    return getLock(bucketName).readLock();
+    return getLock(bucketName).bucketLock.readLock();
   }
 
   @Override
   public Lock writeLock(String bucketName) {
-    return getLock(bucketName).writeLock();
+    return getLock(bucketName).bucketLock.writeLock();
+  }
+
+  @Override
+  public Lock readLock(String bucketName, String key) {
+    return getLock(bucketName).keyLock(key).readLock();
+  }
+
+  @Override
+  public Lock writeLock(String bucketName, String key) {
+    return getLock(bucketName).keyLock(key).writeLock();
   }
 
-  private ReadWriteLock getLock(String bucketName) {
-    return locks.computeIfAbsent(bucketName, k -> new ReentrantReadWriteLock());
+  private BucketLocks getLock(String bucketName) {
+    return locks.computeIfAbsent(bucketName, k -> new BucketLocks());
+  }
+
+  /**
+   * The bucket lock and the striped key locks of a bucket.
+   */
+  private static class BucketLocks {
+
+    private final ReadWriteLock bucketLock = new ReentrantReadWriteLock();
+
+    private final ReadWriteLock[] keyLocks = new ReadWriteLock[KEY_LOCK_STRIPES];
+
+    BucketLocks() {
+      for (int i = 0; i < KEY_LOCK_STRIPES; i++) {
+        keyLocks[i] = new ReentrantReadWriteLock();
+      }
+    }
+
+    ReadWriteLock keyLock(String key) {
+      int hash = Objects.hashCode(key);
+      return keyLocks[(hash ^ (hash >>> 16)) & (KEY_LOCK_STRIPES - 1)];
+    }
+
   }
 
 }
@@ -0,0 +1,66 @@
+package com.robothy.s3.core.service.manager;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import com.robothy.s3.core.model.internal.UploadPartMetadata;
+import com.robothy.s3.core.storage.ShardedMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Collects file IDs referenced by metadata.
+ */
+final class FileReferences {
+
+  private FileReferences() {
+
+  }
+
+  /**
+   * File IDs of all object versions and uploaded parts in {@code metadata}. An ID occurs once
+   * for each reference, so that shared files can be recognized.
+   *
+   * @param metadata LocalS3 metadata.
+   * @return referenced file IDs.
+   */
+  static Stream<Long> of(LocalS3Metadata metadata) {
+    return metadata.getBucketMetadataMap().values().stream()
+        .flatMap(FileReferences::of)
+        .filter(Objects::nonNull);
+  }
+
+  /**
+   * File IDs referenced by a bucket. The shards of a sharded bucket that are not loaded are read
+   * without loading them.
+   */
+  @SuppressWarnings("unchecked")
+  private static Stream<Long> of(BucketMetadata bucketMetadata) {
+    if (!(bucketMetadata.getObjectMap() instanceof ShardedMap)) {
+      return of(bucketMetadata.getObjectMap(), bucketMetadata.getUploads());
+    }
+
+    ShardedMap<ObjectMetadata> objects = (ShardedMap<ObjectMetadata>) bucketMetadata.getObjectMap();
+    ShardedMap<NavigableMap<String, UploadMetadata>> uploads =
+        (ShardedMap<NavigableMap<String, UploadMetadata>>) bucketMetadata.getUploads();
+    return Stream.concat(of(objects.loaded(), uploads.loaded()),
+        objects.readUnloaded().flatMap(shard -> of(shard.getObjectMap(), shard.getUploads())));
+  }
+
+  private static Stream<Long> of(Map<String, ObjectMetadata> objects,
+                                 Map<String, NavigableMap<String, UploadMetadata>> uploads) {
+    return Stream.concat(
+        objects.values().stream()
+            .map(ObjectMetadata::getVersionedObjectMap)
+            .flatMap(versions -> versions.values().stream())
+            .flatMap(version -> version.getContentFileIds().stream()),
+        uploads.values().stream()
+            .flatMap(upload -> upload.values().stream())
+            .flatMap(upload -> upload.getParts().values().stream())
+            .map(UploadPartMetadata::getFileId));
+  }
+
+}
@@ -1,46 +1,188 @@
 package com.robothy.s3.core.service.manager;
 
-import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
 import com.robothy.s3.core.service.BucketService;
 import com.robothy.s3.core.service.InMemoryBucketService;
 import com.robothy.s3.core.service.InMemoryObjectService;
 import com.robothy.s3.core.service.ObjectService;
 import com.robothy.s3.core.service.loader.FileSystemS3MetadataLoader;
+import com.robothy.s3.core.service.loader.MetadataLoading;
+import com.robothy.s3.core.service.locks.BucketLock;
+import com.robothy.s3.core.storage.BucketMetadataPersister;
+import com.robothy.s3.core.storage.BucketMetadataStore;
+import com.robothy.s3.core.storage.DeduplicationStats;
+import com.robothy.s3.core.storage.FileSyncer;
 import com.robothy.s3.core.storage.FileSystemBucketMetadataStore;
-import com.robothy.s3.core.storage.MetadataStore;
+import com.robothy.s3.core.storage.ReadCacheStats;
 import com.robothy.s3.core.storage.Storage;
+import com.robothy.s3.core.storage.StorageOptions;
 import java.lang.reflect.Proxy;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * File system implementation of {@linkplain LocalS3Manager}.
+ *
+ * <p>Bucket metadata is loaded in the background, and a bucket that is accessed before is loaded
+ * on access. Until all buckets are loaded and their file references are counted, deleted object
+ * files are kept, as they may be referenced by buckets that were not loaded yet. Object files released
+ * by a change are deleted once the change is persisted, see {@linkplain BucketMetadataPersister}.
+ */
+@Slf4j
 final class FileSystemLocalS3Manager implements LocalS3Manager {
 
   private final LocalS3Metadata s3Metadata;
 
-  private final MetadataStore<BucketMetadata> bucketMetaStore;
+  private final BucketMetadataPersister bucketMetaPersister;
 
   private final Storage storage;
 
+  private final CompletableFuture<Void> ready;
+
+  /**
+   * Name of the deduplication index file in the storage directory.
+   */
+  static final String DEDUPLICATION_INDEX = "dedup.index";
+
   FileSystemLocalS3Manager(Path dataDirectory) {
+    this(dataDirectory, StorageOptions.defaults());
+  }
+
+  /**
+   * Create a {@linkplain FileSystemLocalS3Manager}.
+   *
+   * @param dataDirectory the data directory.
+   * @param storageOptions options of the object data storage.
+   */
+  FileSystemLocalS3Manager(Path dataDirectory, StorageOptions storageOptions) {
     Objects.requireNonNull(dataDirectory, "Data directory is required to create a persistent LocalS3 service.");
-    this.bucketMetaStore = FileSystemBucketMetadataStore.create(dataDirectory);
-    this.s3Metadata = FileSystemS3MetadataLoader.create().load(dataDirectory);
-    this.storage = Storage.createPersistent(Paths.get(dataDirectory.toAbsolutePath().toString(), STORAGE_DIRECTORY));
+    // Object data and metadata are forced by the same syncer, so that they are forced in the same batches.
+    FileSyncer syncer = FileSyncer.create(storageOptions);
+    // Buckets are fetched from the store they are persisted to, as their shards are read from it on access.
+    BucketMetadataStore bucketMetaStore = FileSystemBucketMetadataStore.create(dataDirectory, syncer,
+        storageOptions.getMetadataShardSize(), storageOptions.getMetadataMaxLoadedShards());
+    this.bucketMetaPersister = BucketMetadataPersister.create(bucketMetaStore, storageOptions);
+    MetadataLoading loading = FileSystemS3MetadataLoader.create().loadLazily(dataDirectory, bucketMetaStore);
+    this.s3Metadata = loading.getMetadata();
+    Storage storage = createStorage(Paths.get(dataDirectory.toAbsolutePath().toString(), STORAGE_DIRECTORY),
+        storageOptions, syncer);
+    if (storageOptions.getReadCacheCapacity() > 0) {
+      storage = Storage.createCaching(storage, storageOptions.getReadCacheCapacity(),
+          storageOptions.getReadCacheObjectSizeLimit(),
+          Optional.ofNullable(storageOptions.getReadCacheStats()).orElseGet(ReadCacheStats::new));
+    }
+    CompletableFuture<Stream<Long>> references = new CompletableFuture<>();
+    this.storage = bucketMetaPersister.deferDeletes(Storage.createReferenceCounted(storage, references));
+    this.ready = loading.getReadiness().thenRun(() -> countReferences(references));
+    this.ready.whenComplete((result, e) -> {
+      if (Objects.nonNull(e)) {
+        log.error("Failed to load metadata from {}; deleted objects are kept.", dataDirectory, e);
+      }
+    });
+  }
+
+  /**
+   * Count the file references with the write locks of all buckets held, so that no reference is
+   * added or removed meanwhile. Buckets created while locking are locked as well.
+   */
+  private void countReferences(CompletableFuture<Stream<Long>> references) {
+    BucketLock bucketLock = BucketLock.getInstance();
+    Set<String> locked = new TreeSet<>();
+    try {
+      Set<String> bucketNames;
+      while (!locked.containsAll(bucketNames = new TreeSet<>(s3Metadata.getBucketMetadataMap().keySet()))) {
+        for (String bucketName : bucketNames) {
+          if (locked.add(bucketName)) {
+            bucketLock.writeLock(bucketName).lock();
+          }
+        }
+      }
+      references.complete(FileReferences.of(s3Metadata).collect(Collectors.toList()).stream());
+    } finally {
+      locked.forEach(bucketName -> bucketLock.writeLock(bucketName).unlock());
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> ready() {
+    return ready;
+  }
+
+  @Override
+  public void flush() {
+    bucketMetaPersister.flush();
+  }
+
+  /**
+   * Create the storage of a data directory. Once deduplication was enabled for a directory, its
+   * index exists and the storage stays deduplicating, otherwise deduplicated objects would be unreadable.
+   * Compressed objects are always readable, compression only applies to written objects.
+   *
+   * @param storagePath the storage directory.
+   * @param storageOptions options of the storage.
+   * @return the storage.
+   */
+  static Storage createStorage(Path storagePath, StorageOptions storageOptions) {
+    return createStorage(storagePath, storageOptions, FileSyncer.create(storageOptions));
+  }
+
+  /**
+   * Create the storage of a data directory that forces written objects with {@code syncer}.
+   *
+   * @param storagePath the storage directory.
+   * @param storageOptions options of the storage.
+   * @param syncer forces written objects to the disk.
+   * @return the storage.
+   */
+  static Storage createStorage(Path storagePath, StorageOptions storageOptions, FileSyncer syncer) {
+    Storage compressing = Storage.createCompressing(Storage.createPacked(storagePath, syncer),
+        storageOptions.isCompressionEnabled());
+    Path index = storagePath.resolve(DEDUPLICATION_INDEX);
+    Consumer<DeduplicationStats> deduplicationListener = storageOptions.getDeduplicationListener();
+    if (Objects.isNull(deduplicationListener) && !Files.exists(index)) {
+      return compressing;
+    }
+    return Storage.createDeduplicating(compressing, index, deduplicationListener, syncer);
+  }
+
+  /**
+   * Create the storage of a data directory that is only read, e.g. initial data. Unlike
+   * {@linkplain #createStorage(Path, StorageOptions)}, the directory is neither migrated nor written,
+   * and the deduplication index is only read, so that neither the index nor the objects are changed.
+   *
+   * @param storagePath the storage directory.
+   * @return the storage.
+   */
+  static Storage createReadOnlyStorage(Path storagePath) {
+    Storage compressing = Storage.createCompressing(Storage.createReadOnlyPacked(storagePath), false);
+    Path index = storagePath.resolve(DEDUPLICATION_INDEX);
+    if (!Files.exists(index)) {
+      return compressing;
+    }
+    return Storage.createReadOnlyDeduplicating(compressing, index);
   }
 
   @Override
   public BucketService bucketService() {
     BucketService delegated = InMemoryBucketService.create(s3Metadata);
-    LocalS3ServicesInvocationHandler invocationHandler = new LocalS3ServicesInvocationHandler(delegated, s3Metadata, bucketMetaStore);
+    LocalS3ServicesInvocationHandler invocationHandler = new LocalS3ServicesInvocationHandler(delegated, s3Metadata, bucketMetaPersister);
     return (BucketService) Proxy.newProxyInstance(BucketService.class.getClassLoader(), new Class[] {BucketService.class}, invocationHandler);
   }
 
   @Override
   public ObjectService objectService() {
     ObjectService delegated = InMemoryObjectService.create(s3Metadata, storage);
-    LocalS3ServicesInvocationHandler invocationHandler = new LocalS3ServicesInvocationHandler(delegated, s3Metadata, bucketMetaStore);
+    LocalS3ServicesInvocationHandler invocationHandler = new LocalS3ServicesInvocationHandler(delegated, s3Metadata, bucketMetaPersister);
     return (ObjectService) Proxy.newProxyInstance(ObjectService.class.getClassLoader(), new Class[] {ObjectService.class}, invocationHandler);
   }
 
@@ -7,6 +7,7 @@ import com.robothy.s3.core.service.InMemoryObjectService;
 import com.robothy.s3.core.service.ObjectService;
 import com.robothy.s3.core.service.loader.FileSystemS3MetadataLoader;
 import com.robothy.s3.core.storage.Storage;
+import com.robothy.s3.core.storage.StorageOptions;
 import com.robothy.s3.core.util.JsonUtils;
 import java.lang.reflect.Proxy;
 import java.nio.file.Files;
@@ -29,13 +30,26 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
 
   private static final InitialDataCache cache = new InitialDataCache();
 
+  private final StorageOptions storageOptions;
+
   /**
    * Create a {@linkplain InMemoryLocalS3Manager} with initial data.
    * @param initialDataPath initial data path.
    */
   InMemoryLocalS3Manager(Path initialDataPath, boolean enableInitialDataCache) {
+    this(initialDataPath, enableInitialDataCache, StorageOptions.defaults());
+  }
+
+  /**
+   * Create a {@linkplain InMemoryLocalS3Manager} with initial data.
+   * @param initialDataPath initial data path.
+   * @param storageOptions options of the object data storage.
+   */
+  InMemoryLocalS3Manager(Path initialDataPath, boolean enableInitialDataCache, StorageOptions storageOptions) {
+    this.storageOptions = storageOptions;
+    Storage storage;
     if (Objects.isNull(initialDataPath) || !Files.exists(initialDataPath)) {
-      this.storage = Storage.createInMemory();
+      storage = createInMemoryStorage();
       this.s3Metadata = new LocalS3Metadata();
     } else {
 
@@ -46,9 +60,9 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
           synchronized(cache) {
             if (cache.get(absPath).isEmpty()) {
               LocalS3Metadata metadata = loadS3Metadata(initialDataPath);
-              Storage persistent = Storage.createPersistent(storagePath);
+              Storage persistent = FileSystemLocalS3Manager.createReadOnlyStorage(storagePath);
               // Create a CopyOnAccessStorage for the persistent one to reduce disk I/O.
-              Storage copyOnAccess = Storage.createCopyOnAccess(persistent);
+              Storage copyOnAccess = Storage.createCopyOnAccess(persistent, createInMemoryStorage());
               InitialDataCache.CacheValue cacheValue = new InitialDataCache.CacheValue(metadata, copyOnAccess);
               cache.put(absPath, cacheValue);
             }
@@ -56,15 +70,19 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
         }
 
         InitialDataCache.CacheValue cacheValue = cache.get(absPath).get();
-        this.storage = cacheValue.storage();
+        storage = cacheValue.storage(createInMemoryStorage());
         this.s3Metadata = cacheValue.metadata();
 
       } else {
-        this.storage = Storage.createLayered(Storage.createInMemory(), Storage.createPersistent(storagePath));
+        storage = Storage.createLayered(createInMemoryStorage(), FileSystemLocalS3Manager.createReadOnlyStorage(storagePath));
         this.s3Metadata = loadS3Metadata(initialDataPath);
       }
 
     }
+    if (Objects.nonNull(storageOptions.getDeduplicationListener())) {
+      storage = Storage.createDeduplicating(storage, null, storageOptions.getDeduplicationListener());
+    }
+    this.storage = Storage.createReferenceCounted(storage, FileReferences.of(s3Metadata));
   }
 
   /**
@@ -74,8 +92,10 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
    * @param initialStorage initial storage.
    */
   InMemoryLocalS3Manager(LocalS3Metadata initialMetadata, Storage initialStorage) {
+    this.storageOptions = StorageOptions.defaults();
     this.s3Metadata = Optional.ofNullable(initialMetadata).orElseGet(LocalS3Metadata::new);
-    this.storage = Optional.ofNullable(initialStorage).orElseGet(Storage::createInMemory);
+    this.storage = Storage.createReferenceCounted(Optional.ofNullable(initialStorage).orElseGet(Storage::createInMemory),
+        FileReferences.of(s3Metadata));
   }
 
   @Override
@@ -92,6 +112,11 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
     return (ObjectService) Proxy.newProxyInstance(ObjectService.class.getClassLoader(), new Class[] {ObjectService.class}, invocationHandler);
   }
 
+  private Storage createInMemoryStorage() {
+    Storage storage = Storage.createInMemory(Long.MAX_VALUE, storageOptions.isOffHeap());
+    return storageOptions.isCompressionEnabled() ? Storage.createCompressing(storage, true) : storage;
+  }
+
   private LocalS3Metadata loadS3Metadata(Path initialDataDirectory) {
     if (Objects.isNull(initialDataDirectory)) {
       return new LocalS3Metadata();
@@ -101,7 +126,7 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
       throw new IllegalArgumentException(initialDataDirectory.toAbsolutePath() + " not found.");
     }
 
-    return FileSystemS3MetadataLoader.create().load(initialDataDirectory);
+    return FileSystemS3MetadataLoader.createReadOnly().load(initialDataDirectory);
   }
 
   static class InitialDataCache {
@@ -132,12 +157,13 @@ final class InMemoryLocalS3Manager implements LocalS3Manager {
 
       /**
        * Create a {@code LayeredStorage} with the real storage as backend and
-       * a new {@code InMemoryStorage} as frontend.
+       * the given in-memory storage as frontend.
        *
+       * @param frontend a new in-memory storage.
        * @return a {@code LayeredStorage} to make sure the real data won't be polluted.
        */
-      public Storage storage() {
-        return Storage.createLayered(Storage.createInMemory(), storage);
+      public Storage storage(Storage frontend) {
+        return Storage.createLayered(frontend, storage);
       }
 
       /**
@@ -2,7 +2,9 @@ package com.robothy.s3.core.service.manager;
 
 import com.robothy.s3.core.service.BucketService;
 import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.core.storage.StorageOptions;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A manager abstraction that manages data and services of local-s3.
@@ -27,6 +29,31 @@ public interface LocalS3Manager {
     return new InMemoryLocalS3Manager(dataDirectory, enabledInitialDataCache);
   }
 
+  /**
+   * Create an in-memory implementation of {@linkplain LocalS3Manager}.
+   *
+   * @param dataDirectory initial data directory; or {@code null} to start without initial data.
+   * @param enabledInitialDataCache cache accessed initial data across instances.
+   * @param offHeap keep object data in direct memory instead of Java Heap.
+   * @return an instance of in-memory implementation.
+   */
+  static LocalS3Manager createInMemoryS3Manager(Path dataDirectory, boolean enabledInitialDataCache, boolean offHeap) {
+    return new InMemoryLocalS3Manager(dataDirectory, enabledInitialDataCache, StorageOptions.builder().offHeap(offHeap).build());
+  }
+
+  /**
+   * Create an in-memory implementation of {@linkplain LocalS3Manager}.
+   *
+   * @param dataDirectory initial data directory; or {@code null} to start without initial data.
+   * @param enabledInitialDataCache cache accessed initial data across instances.
+   * @param storageOptions options of the object data storage.
+   * @return an instance of in-memory implementation.
+   */
+  static LocalS3Manager createInMemoryS3Manager(Path dataDirectory, boolean enabledInitialDataCache,
+                                                StorageOptions storageOptions) {
+    return new InMemoryLocalS3Manager(dataDirectory, enabledInitialDataCache, storageOptions);
+  }
+
   /**
    * Create a file system implementation of {@linkplain LocalS3Manager}.
    *
@@ -36,6 +63,18 @@ public interface LocalS3Manager {
     return new FileSystemLocalS3Manager(dataDirectory);
   }
 
+  /**
+   * Create a file system implementation of {@linkplain LocalS3Manager}. Once deduplication was
+   * enabled for a data directory, it stays enabled for the directory.
+   *
+   * @param dataDirectory the data directory.
+   * @param storageOptions options of the object data storage.
+   * @return an instance of file system implementation.
+   */
+  static LocalS3Manager createFileSystemS3Manager(Path dataDirectory, StorageOptions storageOptions) {
+    return new FileSystemLocalS3Manager(dataDirectory, storageOptions);
+  }
+
   static LocalS3Manager createS3GatewayLocalS3Manager() {
     return new S3GatewayLocalS3Manager();
   }
@@ -54,4 +93,20 @@ public interface LocalS3Manager {
    */
   ObjectService objectService();
 
+  /**
+   * Get a future that completes once the metadata is fully loaded. Services can be used before,
+   * buckets that were not loaded yet are loaded on access.
+   *
+   * @return a future that completes once the metadata is fully loaded.
+   */
+  default CompletableFuture<Void> ready() {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Persist the metadata changes that are kept in memory to be coalesced. Call it without holding bucket locks.
+   */
+  default void flush() {
+  }
+
 }
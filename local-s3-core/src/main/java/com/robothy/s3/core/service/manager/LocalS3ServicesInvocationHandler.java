@@ -3,91 +3,142 @@ package com.robothy.s3.core.service.manager;
 import com.robothy.s3.core.annotations.BucketChanged;
 import com.robothy.s3.core.annotations.BucketReadLock;
 import com.robothy.s3.core.annotations.BucketWriteLock;
-import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
 import com.robothy.s3.core.service.locks.BucketLock;
-import com.robothy.s3.core.storage.MetadataStore;
+import com.robothy.s3.core.storage.BucketMetadataPersister;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
 
 
 final class LocalS3ServicesInvocationHandler implements InvocationHandler {
 
   private final Object proxy;
 
-  private final MetadataStore<BucketMetadata> bucketMetaStore;
+  private final BucketMetadataPersister bucketMetaPersister;
 
   private final LocalS3Metadata s3Metadata;
 
-  LocalS3ServicesInvocationHandler(Object proxy, LocalS3Metadata s3Metadata, MetadataStore<BucketMetadata> bucketMetaStore) {
+  LocalS3ServicesInvocationHandler(Object proxy, LocalS3Metadata s3Metadata, BucketMetadataPersister bucketMetaPersister) {
     this.proxy = proxy;
-    this.bucketMetaStore = bucketMetaStore;
+    this.bucketMetaPersister = bucketMetaPersister;
     this.s3Metadata = s3Metadata;
   }
 
   @Override
   public Object invoke(Object __, Method method, Object[] args) throws Throwable {
     BucketChanged bucketChanged = method.getDeclaredAnnotation(BucketChanged.class);
-    boolean isReadBucket = Objects.nonNull(method.getDeclaredAnnotation(BucketReadLock.class));
-    boolean isWriteBucket = Objects.nonNull(method.getDeclaredAnnotation(BucketWriteLock.class));
-
-    lockIfNeeded(args, isReadBucket, isWriteBucket);
+    BucketReadLock readLock = method.getDeclaredAnnotation(BucketReadLock.class);
+    BucketWriteLock writeLock = method.getDeclaredAnnotation(BucketWriteLock.class);
+
+    // Objects released by the change are deleted once the change is persisted.
+    boolean changing = Objects.nonNull(bucketChanged) && Objects.nonNull(bucketMetaPersister)
+        && bucketMetaPersister.beginChange();
+    List<Lock> locks = acquireLocks(args, readLock, writeLock);
+    Object result;
+    CompletableFuture<Void> persisted;
     try {
-      Object result = method.invoke(proxy, args);
-      persistBucketIfNeeded(args, bucketChanged);
-      return result;
+      result = method.invoke(proxy, args);
+      persisted = persistBucketIfNeeded(args, bucketChanged);
     } catch (InvocationTargetException e) {
       throw e.getCause();
     } finally {
-      unlockIfNeeded(args, isReadBucket, isWriteBucket);
+      releaseLocks(locks);
+      if (changing) {
+        bucketMetaPersister.endChange();
+      }
     }
-  }
 
-  void lockIfNeeded(Object[] args, boolean isRead, boolean isWrite) {
-    if (isRead || isWrite) {
-      String bucketName = (String) args[0];
-      BucketLock lock = BucketLock.getInstance();
-      if (isRead) {
-        lock.readLock(bucketName).lock();
+    // Wait without the locks, as the flusher takes them to persist the change.
+    if (Objects.nonNull(bucketMetaPersister) && bucketMetaPersister.isWaitForFlush()) {
+      try {
+        persisted.join();
+      } catch (CompletionException e) {
+        throw e.getCause();
       }
+    }
+    unloadShardsIfNeeded(locks, args);
+    return result;
+  }
 
-      if (isWrite) {
-        lock.writeLock(bucketName).lock();
-      }
+  /**
+   * Unload shards the call may have loaded, without the locks, as the bucket write lock is taken to unload them.
+   */
+  private void unloadShardsIfNeeded(List<Lock> locks, Object[] args) {
+    if (locks.isEmpty() || Objects.isNull(bucketMetaPersister)) {
+      return;
     }
+    String bucketName = (String) args[0];
+    s3Metadata.getBucketMetadata(bucketName)
+        .ifPresent(bucketMetadata -> bucketMetaPersister.unloadIfNeeded(bucketName, bucketMetadata));
   }
 
-  void unlockIfNeeded(Object[] args, boolean isRead, boolean isWrite) {
-    if (isRead || isWrite) {
-      String bucketName = (String) args[0];
-      BucketLock lock = BucketLock.getInstance();
-      if (isRead) {
-        lock.readLock(bucketName).unlock();
-      }
+  /**
+   * Acquire the bucket lock and the key lock (if key scoped) in order.
+   *
+   * @return acquired locks.
+   */
+  List<Lock> acquireLocks(Object[] args, BucketReadLock readLock, BucketWriteLock writeLock) {
+    if (Objects.isNull(readLock) && Objects.isNull(writeLock)) {
+      return Collections.emptyList();
+    }
 
-      if (isWrite) {
-        lock.writeLock(bucketName).unlock();
-      }
+    String bucketName = (String) args[0];
+    BucketLock bucketLock = BucketLock.getInstance();
+    List<Lock> locks = new ArrayList<>(2);
+    if (Objects.nonNull(writeLock) && !writeLock.keyScoped()) {
+      locks.add(bucketLock.writeLock(bucketName));
+    } else if (Objects.nonNull(writeLock)) {
+      locks.add(bucketLock.readLock(bucketName));
+      locks.add(bucketLock.writeLock(bucketName, (String) args[1]));
+    } else if (readLock.keyScoped()) {
+      locks.add(bucketLock.readLock(bucketName));
+      locks.add(bucketLock.readLock(bucketName, (String) args[1]));
+    } else {
+      locks.add(bucketLock.readLock(bucketName));
     }
+
+    locks.forEach(Lock::lock);
+    return locks;
   }
 
-  void persistBucketIfNeeded(Object[] args, BucketChanged bucketChanged) {
-    if (Objects.isNull(bucketChanged) || Objects.isNull(bucketMetaStore)) {
-      return;
+  void releaseLocks(List<Lock> locks) {
+    for (int i = locks.size() - 1; i >= 0; i--) {
+      locks.get(i).unlock();
+    }
+  }
+
+  /**
+   * Persist the changed bucket.
+   *
+   * @return a future that completes once the change is persisted.
+   */
+  CompletableFuture<Void> persistBucketIfNeeded(Object[] args, BucketChanged bucketChanged) {
+    if (Objects.isNull(bucketChanged) || Objects.isNull(bucketMetaPersister)) {
+      return CompletableFuture.completedFuture(null);
     }
 
     String bucketName = (String) args[0];
     switch (bucketChanged.type()) {
       case UPDATE:
+        if (bucketChanged.keyScoped()) {
+          return bucketMetaPersister.storeObject(bucketName, (String) args[1], s3Metadata.getBucketMetadata(bucketName).get());
+        }
+        // fall through
       case CREATE:
-        bucketMetaStore.store(bucketName, s3Metadata.getBucketMetadata(bucketName).get());
-        break;
+        return bucketMetaPersister.store(bucketName, s3Metadata.getBucketMetadata(bucketName).get());
       case DELETE:
-        bucketMetaStore.delete(bucketName);
+        bucketMetaPersister.delete(bucketName);
         break;
     }
+    return CompletableFuture.completedFuture(null);
   }
 
 
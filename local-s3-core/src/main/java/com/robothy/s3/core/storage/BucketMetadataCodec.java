@@ -0,0 +1,652 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.LocalS3Metadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import com.robothy.s3.core.model.internal.UploadPartMetadata;
+import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
+import com.robothy.s3.core.util.JsonUtils;
+import com.robothy.s3.datatypes.AccessControlPolicy;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The binary encoding of bucket metadata files.
+ *
+ * <p>A file starts with a 4-byte magic and the format version, which is {@linkplain LocalS3Metadata#VERSION}.
+ * JSON files start with {@code '{'}, so the encoding of a file is recognized by its first byte.
+ *
+ * <p>Numbers are unsigned LEB128 varints. Strings are a varint of {@code length + 1}, where {@code 0} is
+ * {@code null}, followed by UTF-8 bytes. Strings that repeat across objects, such as content types and
+ * user metadata keys, are written through a dictionary: {@code 0} is {@code null}, {@code 1} defines a new
+ * entry inline, and {@code n > 1} refers to entry {@code n - 2}, so that a file is written and read in one pass.
+ * Object keys are written in order as the length of the prefix shared with the previous key plus the suffix.
+ * Maps are written as entries each preceded by {@code 1} and terminated by {@code 0}, so that maps changed
+ * concurrently are written without counting them first.
+ *
+ * <p>Rarely set bucket configurations of complex types, such as the ACL, are embedded as JSON strings.
+ */
+final class BucketMetadataCodec {
+
+  static final int FORMAT_VERSION = (int) LocalS3Metadata.VERSION;
+
+  /**
+   * The first version of {@linkplain LocalS3Metadata} that is binary encoded.
+   */
+  static final int MIN_FORMAT_VERSION = 2;
+
+  static final byte[] CHECKPOINT_MAGIC = {'L', 'S', '3', 'B'};
+
+  static final byte[] JOURNAL_MAGIC = {'L', 'S', '3', 'J'};
+
+  static final byte[] SHARDS_MAGIC = {'L', 'S', '3', 'S'};
+
+  private static final int DELETED = 1;
+
+  private static final int FILE_ID = 1 << 1;
+
+  private static final int PART_FILE_IDS = 1 << 2;
+
+  private static final int TAGGING = 1 << 3;
+
+  private static final int CHECKSUM_ALGORITHM = 1 << 4;
+
+  private static final int CHECKSUM = 1 << 5;
+
+  private static final int PART_SIZES = 1 << 6;
+
+  private static final int PART_ETAGS = 1 << 7;
+
+  private static final int ACL = 1;
+
+  private static final int BUCKET_TAGGING = 1 << 1;
+
+  private static final int VERSIONING_SET = 1 << 2;
+
+  private static final int VERSIONING_ENABLED = 1 << 3;
+
+  private BucketMetadataCodec() {
+
+  }
+
+  /**
+   * Whether {@code head} starts with {@code magic}.
+   *
+   * @param head the first bytes of a file.
+   * @param length number of valid bytes in {@code head}.
+   * @param magic the expected magic.
+   * @return {@code true} if the file is binary encoded.
+   */
+  static boolean hasMagic(byte[] head, int length, byte[] magic) {
+    return length >= magic.length && Arrays.equals(Arrays.copyOf(head, magic.length), magic);
+  }
+
+  /**
+   * Write the magic and the format version.
+   */
+  static void writeHeader(OutputStream out, byte[] magic) throws IOException {
+    out.write(magic);
+    new Encoder(out).writeVarLong(FORMAT_VERSION);
+  }
+
+  /**
+   * Read the magic and the format version.
+   *
+   * @throws IllegalStateException if the magic doesn't match or the version is not supported.
+   */
+  static void readHeader(InputStream in, byte[] magic) throws IOException {
+    byte[] head = new byte[magic.length];
+    int length = 0;
+    while (length < head.length) {
+      int read = in.read(head, length, head.length - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    if (!hasMagic(head, length, magic)) {
+      throw new IllegalStateException("Not a binary metadata file.");
+    }
+    long version = new Decoder(in).readVarLong();
+    if (version < MIN_FORMAT_VERSION || version > FORMAT_VERSION) {
+      throw new IllegalStateException("Unsupported metadata format version " + version + ".");
+    }
+  }
+
+  /**
+   * Writes metadata to a stream. An instance holds the dictionary of the written strings.
+   */
+  static final class Encoder {
+
+    private final OutputStream out;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private String previousKey = "";
+
+    Encoder(OutputStream out) {
+      this.out = out;
+    }
+
+    void writeBucket(BucketMetadata bucketMetadata) throws IOException {
+      writeString(bucketMetadata.getBucketName());
+      writeVarLong(bucketMetadata.getCreationDate());
+      writeString(bucketMetadata.getRegion());
+      Boolean versioningEnabled = bucketMetadata.getVersioningEnabled();
+      int flags = (bucketMetadata.getAcl().isPresent() ? ACL : 0)
+          | (bucketMetadata.getTagging().isPresent() ? BUCKET_TAGGING : 0)
+          | (Objects.nonNull(versioningEnabled) ? VERSIONING_SET : 0)
+          | (Boolean.TRUE.equals(versioningEnabled) ? VERSIONING_ENABLED : 0);
+      writeVarLong(flags);
+      if (bucketMetadata.getAcl().isPresent()) {
+        writeString(JsonUtils.toJson(bucketMetadata.getAcl().get()));
+      }
+      if (bucketMetadata.getTagging().isPresent()) {
+        writeVarLong(bucketMetadata.getTagging().get().size());
+        for (Map<String, String> tags : bucketMetadata.getTagging().get()) {
+          writeStringMap(tags);
+        }
+      }
+      writeString(bucketMetadata.getPolicy().orElse(null));
+      writeString(bucketMetadata.getReplication().orElse(null));
+      writeString(bucketMetadata.getEncryption().orElse(null));
+
+      for (Map.Entry<String, ObjectMetadata> entry : bucketMetadata.getObjectMap().entrySet()) {
+        out.write(1);
+        writeKey(entry.getKey());
+        writeObject(entry.getValue());
+      }
+      out.write(0);
+
+      previousKey = "";
+      for (Map.Entry<String, NavigableMap<String, UploadMetadata>> entry : bucketMetadata.getUploads().entrySet()) {
+        out.write(1);
+        writeKey(entry.getKey());
+        writeUploads(entry.getValue());
+      }
+      out.write(0);
+    }
+
+    void writeRecord(BucketMetadataJournalRecord record) throws IOException {
+      writeString(record.getKey());
+      if (Objects.isNull(record.getObject())) {
+        out.write(0);
+      } else {
+        out.write(1);
+        writeObject(record.getObject());
+      }
+      if (Objects.isNull(record.getUploads())) {
+        out.write(0);
+      } else {
+        out.write(1);
+        writeUploads(record.getUploads());
+      }
+    }
+
+    /**
+     * Write the IDs of shards by their lower bounds.
+     */
+    void writeShards(NavigableMap<String, Long> shards) throws IOException {
+      previousKey = "";
+      for (Map.Entry<String, Long> entry : shards.entrySet()) {
+        out.write(1);
+        writeKey(entry.getKey());
+        writeVarLong(entry.getValue());
+      }
+      out.write(0);
+    }
+
+    private void writeObject(ObjectMetadata objectMetadata) throws IOException {
+      writeString(objectMetadata.getVirtualVersion().orElse(null));
+      for (Map.Entry<String, VersionedObjectMetadata> entry : objectMetadata.getVersionedObjectMap().entrySet()) {
+        out.write(1);
+        writeString(entry.getKey());
+        writeVersion(entry.getValue());
+      }
+      out.write(0);
+    }
+
+    private void writeVersion(VersionedObjectMetadata version) throws IOException {
+      int flags = (version.isDeleted() ? DELETED : 0)
+          | (Objects.nonNull(version.getFileId()) ? FILE_ID : 0)
+          | (version.getPartFileIds().isPresent() ? PART_FILE_IDS : 0)
+          | (version.getTagging().isPresent() ? TAGGING : 0)
+          | (version.getChecksumAlgorithm().isPresent() ? CHECKSUM_ALGORITHM : 0)
+          | (Objects.nonNull(version.getChecksum()) ? CHECKSUM : 0)
+          | (version.getPartSizes().isPresent() ? PART_SIZES : 0)
+          | (version.getPartEtags().isPresent() ? PART_ETAGS : 0);
+      writeVarLong(flags);
+      writeString(version.getEtag());
+      writeDictionaryString(version.getContentType());
+      writeVarLong(version.getCreationDate());
+      writeVarLong(version.getSize());
+      if (Objects.nonNull(version.getFileId())) {
+        writeVarLong(version.getFileId());
+      }
+      if (version.getPartFileIds().isPresent()) {
+        writeLongs(version.getPartFileIds().get());
+      }
+      if (version.getTagging().isPresent()) {
+        writeTagging(version.getTagging().get());
+      }
+      if (version.getChecksumAlgorithm().isPresent()) {
+        writeDictionaryString(version.getChecksumAlgorithm().get().name());
+      }
+      if (Objects.nonNull(version.getChecksum())) {
+        writeString(version.getChecksum());
+      }
+      if (version.getPartSizes().isPresent()) {
+        writeLongs(version.getPartSizes().get());
+      }
+      if (version.getPartEtags().isPresent()) {
+        String[] partEtags = version.getPartEtags().get();
+        writeVarLong(partEtags.length);
+        for (String partEtag : partEtags) {
+          writeString(partEtag);
+        }
+      }
+      writeUserMetadata(version.getUserMetadata());
+    }
+
+    private void writeUploads(NavigableMap<String, UploadMetadata> uploads) throws IOException {
+      for (Map.Entry<String, UploadMetadata> entry : uploads.entrySet()) {
+        out.write(1);
+        writeString(entry.getKey());
+        UploadMetadata upload = entry.getValue();
+        writeVarLong(upload.getCreateDate());
+        writeDictionaryString(upload.getContentType());
+        if (upload.getTagging().isPresent()) {
+          out.write(1);
+          writeTagging(upload.getTagging().get());
+        } else {
+          out.write(0);
+        }
+        writeUserMetadata(upload.getUserMetadata());
+        for (Map.Entry<Integer, UploadPartMetadata> part : upload.getParts().entrySet()) {
+          out.write(1);
+          writeVarLong(part.getKey());
+          writeString(part.getValue().getEtag());
+          writeVarLong(part.getValue().getLastModified());
+          writeVarLong(part.getValue().getSize());
+          writeVarLong(part.getValue().getFileId());
+        }
+        out.write(0);
+      }
+      out.write(0);
+    }
+
+    private void writeTagging(String[][] tagging) throws IOException {
+      writeVarLong(tagging.length);
+      for (String[] tag : tagging) {
+        writeVarLong(tag.length);
+        for (String value : tag) {
+          writeString(value);
+        }
+      }
+    }
+
+    private void writeUserMetadata(Map<String, String> userMetadata) throws IOException {
+      if (Objects.isNull(userMetadata)) {
+        writeVarLong(0);
+        return;
+      }
+      writeVarLong(userMetadata.size() + 1L);
+      for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+        writeDictionaryString(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+
+    private void writeStringMap(Map<String, String> map) throws IOException {
+      writeVarLong(map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+
+    private void writeLongs(long[] values) throws IOException {
+      writeVarLong(values.length);
+      for (long value : values) {
+        writeVarLong(value);
+      }
+    }
+
+    private void writeKey(String key) throws IOException {
+      int shared = 0;
+      int max = Math.min(key.length(), previousKey.length());
+      while (shared < max && key.charAt(shared) == previousKey.charAt(shared)) {
+        shared++;
+      }
+      // Don't split a surrogate pair, its halves are not encodable in UTF-8.
+      if (shared > 0 && Character.isHighSurrogate(key.charAt(shared - 1))) {
+        shared--;
+      }
+      writeVarLong(shared);
+      writeString(key.substring(shared));
+      previousKey = key;
+    }
+
+    private void writeDictionaryString(String value) throws IOException {
+      if (Objects.isNull(value)) {
+        writeVarLong(0);
+        return;
+      }
+      Integer index = dictionary.get(value);
+      if (Objects.nonNull(index)) {
+        writeVarLong(index + 2L);
+        return;
+      }
+      dictionary.put(value, dictionary.size());
+      writeVarLong(1);
+      writeString(value);
+    }
+
+    private void writeString(String value) throws IOException {
+      if (Objects.isNull(value)) {
+        writeVarLong(0);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length + 1L);
+      out.write(bytes);
+    }
+
+    void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+
+  }
+
+  /**
+   * Reads metadata from a stream directly into the maps of the model. An instance holds the
+   * dictionary of the read strings.
+   */
+  static final class Decoder {
+
+    private final InputStream in;
+
+    private final List<String> dictionary = new ArrayList<>();
+
+    private String previousKey = "";
+
+    Decoder(InputStream in) {
+      this.in = in;
+    }
+
+    BucketMetadata readBucket() throws IOException {
+      BucketMetadata bucketMetadata = new BucketMetadata();
+      bucketMetadata.setBucketName(readString());
+      bucketMetadata.setCreationDate(readVarLong());
+      bucketMetadata.setRegion(readString());
+      int flags = (int) readVarLong();
+      if ((flags & VERSIONING_SET) != 0) {
+        bucketMetadata.setVersioningEnabled((flags & VERSIONING_ENABLED) != 0);
+      }
+      if ((flags & ACL) != 0) {
+        bucketMetadata.setAcl(JsonUtils.fromJson(readString(), AccessControlPolicy.class));
+      }
+      if ((flags & BUCKET_TAGGING) != 0) {
+        int size = readLength();
+        Collection<Map<String, String>> tagging = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          tagging.add(readStringMap());
+        }
+        bucketMetadata.setTagging(tagging);
+      }
+      bucketMetadata.setPolicy(readString());
+      bucketMetadata.setReplication(readString());
+      bucketMetadata.setEncryption(readString());
+
+      while (readMarker()) {
+        String key = readKey();
+        bucketMetadata.getObjectMap().put(key, readObject());
+      }
+
+      previousKey = "";
+      while (readMarker()) {
+        String key = readKey();
+        bucketMetadata.getUploads().put(key, readUploads());
+      }
+      return bucketMetadata;
+    }
+
+    BucketMetadataJournalRecord readRecord() throws IOException {
+      BucketMetadataJournalRecord record = new BucketMetadataJournalRecord();
+      record.setKey(readString());
+      if (readMarker()) {
+        record.setObject(readObject());
+      }
+      if (readMarker()) {
+        record.setUploads(readUploads());
+      }
+      return record;
+    }
+
+    NavigableMap<String, Long> readShards() throws IOException {
+      NavigableMap<String, Long> shards = new TreeMap<>();
+      previousKey = "";
+      while (readMarker()) {
+        String lower = readKey();
+        shards.put(lower, readVarLong());
+      }
+      return shards;
+    }
+
+    private ObjectMetadata readObject() throws IOException {
+      ObjectMetadata objectMetadata = new ObjectMetadata();
+      objectMetadata.setVirtualVersion(readString());
+      while (readMarker()) {
+        String versionId = readString();
+        objectMetadata.putVersionedObjectMetadata(versionId, readVersion());
+      }
+      return objectMetadata;
+    }
+
+    private VersionedObjectMetadata readVersion() throws IOException {
+      VersionedObjectMetadata version = new VersionedObjectMetadata();
+      int flags = (int) readVarLong();
+      version.setDeleted((flags & DELETED) != 0);
+      version.setEtag(readString());
+      version.setContentType(readDictionaryString());
+      version.setCreationDate(readVarLong());
+      version.setSize(readVarLong());
+      if ((flags & FILE_ID) != 0) {
+        version.setFileId(readVarLong());
+      }
+      if ((flags & PART_FILE_IDS) != 0) {
+        version.setPartFileIds(readLongs());
+      }
+      if ((flags & TAGGING) != 0) {
+        version.setTagging(readTagging());
+      }
+      if ((flags & CHECKSUM_ALGORITHM) != 0) {
+        version.setChecksumAlgorithm(CheckSumAlgorithm.valueOf(readDictionaryString()));
+      }
+      if ((flags & CHECKSUM) != 0) {
+        version.setChecksum(readString());
+      }
+      if ((flags & PART_SIZES) != 0) {
+        version.setPartSizes(readLongs());
+      }
+      if ((flags & PART_ETAGS) != 0) {
+        String[] partEtags = new String[readLength()];
+        for (int i = 0; i < partEtags.length; i++) {
+          partEtags[i] = readString();
+        }
+        version.setPartEtags(partEtags);
+      }
+      version.setUserMetadata(readUserMetadata());
+      return version;
+    }
+
+    private NavigableMap<String, UploadMetadata> readUploads() throws IOException {
+      NavigableMap<String, UploadMetadata> uploads = new ConcurrentSkipListMap<>();
+      while (readMarker()) {
+        String uploadId = readString();
+        UploadMetadata upload = new UploadMetadata();
+        upload.setCreateDate(readVarLong());
+        upload.setContentType(readDictionaryString());
+        if (readMarker()) {
+          upload.setTagging(readTagging());
+        }
+        upload.setUserMetadata(readUserMetadata());
+        upload.setParts(new ConcurrentSkipListMap<>());
+        while (readMarker()) {
+          int partNumber = (int) readVarLong();
+          UploadPartMetadata part = new UploadPartMetadata();
+          part.setEtag(readString());
+          part.setLastModified(readVarLong());
+          part.setSize(readVarLong());
+          part.setFileId(readVarLong());
+          upload.getParts().put(partNumber, part);
+        }
+        uploads.put(uploadId, upload);
+      }
+      return uploads;
+    }
+
+    private String[][] readTagging() throws IOException {
+      String[][] tagging = new String[readLength()][];
+      for (int i = 0; i < tagging.length; i++) {
+        tagging[i] = new String[readLength()];
+        for (int j = 0; j < tagging[i].length; j++) {
+          tagging[i][j] = readString();
+        }
+      }
+      return tagging;
+    }
+
+    private Map<String, String> readUserMetadata() throws IOException {
+      long size = readVarLong();
+      if (size == 0) {
+        return null;
+      }
+      if (size == 1) {
+        return Collections.emptyMap();
+      }
+      Map<String, String> userMetadata = new HashMap<>();
+      for (long i = 1; i < size; i++) {
+        String key = readDictionaryString();
+        userMetadata.put(key, readString());
+      }
+      return userMetadata;
+    }
+
+    private Map<String, String> readStringMap() throws IOException {
+      int size = readLength();
+      Map<String, String> map = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        String key = readString();
+        map.put(key, readString());
+      }
+      return map;
+    }
+
+    private long[] readLongs() throws IOException {
+      long[] values = new long[readLength()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = readVarLong();
+      }
+      return values;
+    }
+
+    private String readKey() throws IOException {
+      int shared = readLength();
+      if (shared > previousKey.length()) {
+        throw new IllegalStateException("Invalid key prefix length " + shared + ".");
+      }
+      previousKey = previousKey.substring(0, shared) + readString();
+      return previousKey;
+    }
+
+    private String readDictionaryString() throws IOException {
+      long index = readVarLong();
+      if (index == 0) {
+        return null;
+      }
+      if (index == 1) {
+        String value = readString();
+        dictionary.add(value);
+        return value;
+      }
+      if (index - 2 >= dictionary.size()) {
+        throw new IllegalStateException("Invalid dictionary index " + (index - 2) + ".");
+      }
+      return dictionary.get((int) (index - 2));
+    }
+
+    private String readString() throws IOException {
+      long length = readVarLong();
+      if (length == 0) {
+        return null;
+      }
+      byte[] bytes = new byte[checkLength(length - 1)];
+      int read = 0;
+      while (read < bytes.length) {
+        int n = in.read(bytes, read, bytes.length - read);
+        if (n < 0) {
+          throw new EOFException();
+        }
+        read += n;
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean readMarker() throws IOException {
+      int marker = in.read();
+      if (marker < 0) {
+        throw new EOFException();
+      }
+      return marker != 0;
+    }
+
+    private int readLength() throws IOException {
+      return checkLength(readVarLong());
+    }
+
+    private int checkLength(long length) {
+      if (length < 0 || length > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("Invalid length " + length + ".");
+      }
+      return (int) length;
+    }
+
+    long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.read();
+        if (b < 0) {
+          throw new EOFException();
+        }
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalStateException("Malformed varint.");
+    }
+
+  }
+
+}
@@ -0,0 +1,399 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.util.JsonUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists the metadata of one bucket as a checkpoint file plus an append-only journal.
+ *
+ * <p>The checkpoint {@code <bucket>.bucket.meta} is a full snapshot of the bucket. Every
+ * change of a single key appends a {@linkplain BucketMetadataJournalRecord} to
+ * {@code <bucket>.bucket.journal}. Once the journal grows larger than the checkpoint, it is
+ * compacted into a new checkpoint, so the amortized cost of a change stays proportional to
+ * the changed key rather than the bucket.
+ *
+ * <p>Both files are encoded with {@linkplain BucketMetadataCodec}. A journal starts with a header, and
+ * each record is framed as a varint length, the encoded record, and the CRC32 of the record. Files of
+ * {@linkplain com.robothy.s3.core.model.internal.LocalS3Metadata} version 1 are JSON, a checkpoint and
+ * a journal of JSON lines; they are still read, and a JSON journal is compacted before the first append.
+ *
+ * <p>A checkpoint is written in the following steps so that a crash at any point leaves
+ * a recoverable state:
+ * <ol>
+ *   <li>write the snapshot to {@code <bucket>.bucket.meta.tmp};</li>
+ *   <li>rename the journal to {@code <bucket>.bucket.journal.old};</li>
+ *   <li>move the temporary snapshot over the checkpoint;</li>
+ *   <li>delete the old journal.</li>
+ * </ol>
+ *
+ * <p>The {@linkplain FileSyncer} forces the temporary snapshot before it is moved, and the directory after
+ * the moves. Appended records are forced by {@linkplain #sync()}.
+ *
+ * <p>A journal may persist a part of a bucket, such as a shard of {@linkplain BucketMetadataShards}; the
+ * checkpoint then holds the part that the view of the journal selects.
+ */
+@Slf4j
+final class BucketMetadataJournal implements Closeable {
+
+  static final String CHECKPOINT_SUFFIX = ".bucket.meta";
+
+  static final String JOURNAL_SUFFIX = ".bucket.journal";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final String RETIRED_SUFFIX = ".old";
+
+  /**
+   * Journals smaller than this size are never compacted.
+   */
+  static final long MIN_COMPACTION_SIZE = 4 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path checkpoint;
+
+  private final Path tempCheckpoint;
+
+  private final Path journal;
+
+  private final Path retiredJournal;
+
+  private final FileSyncer syncer;
+
+  /**
+   * Selects the part of a bucket that the checkpoint holds.
+   */
+  private final UnaryOperator<BucketMetadata> view;
+
+  private boolean recovered;
+
+  private FileChannel journalChannel;
+
+  private long journalSize;
+
+  private long checkpointSize;
+
+  BucketMetadataJournal(Path dataPath, String bucketName, FileSyncer syncer) {
+    this(dataPath, bucketName, syncer, UnaryOperator.identity());
+  }
+
+  BucketMetadataJournal(Path dataPath, String bucketName, FileSyncer syncer, UnaryOperator<BucketMetadata> view) {
+    this.syncer = syncer;
+    this.view = view;
+    this.checkpoint = dataPath.resolve(bucketName + CHECKPOINT_SUFFIX);
+    this.tempCheckpoint = dataPath.resolve(bucketName + CHECKPOINT_SUFFIX + TEMP_SUFFIX);
+    this.journal = dataPath.resolve(bucketName + JOURNAL_SUFFIX);
+    this.retiredJournal = dataPath.resolve(bucketName + JOURNAL_SUFFIX + RETIRED_SUFFIX);
+  }
+
+  /**
+   * Read the bucket metadata from the checkpoint and replay the journal on it.
+   * This method doesn't modify any file; an interrupted checkpoint is resolved in memory.
+   *
+   * @return the bucket metadata.
+   */
+  synchronized BucketMetadata read() {
+    Path source = checkpoint;
+    if (Files.exists(tempCheckpoint) && Files.exists(retiredJournal)) {
+      // Interrupted after the journal was retired, the temporary checkpoint is complete.
+      source = tempCheckpoint;
+    }
+
+    BucketMetadata bucketMetadata = readCheckpoint(source);
+    if (Files.exists(journal)) {
+      if (isBinary(journal, BucketMetadataCodec.JOURNAL_MAGIC)) {
+        replay(bucketMetadata);
+      } else {
+        replayJson(bucketMetadata);
+      }
+    }
+    return bucketMetadata;
+  }
+
+  /**
+   * Append a snapshot of {@code key} to the journal, and compact the journal into a new
+   * checkpoint if it grows larger than the current checkpoint.
+   *
+   * @param key the changed key.
+   * @param bucketMetadata the bucket metadata that contains the key.
+   * @return {@code true} if the journal was compacted.
+   */
+  synchronized boolean append(String key, BucketMetadata bucketMetadata) {
+    openIfNeeded(bucketMetadata);
+    try {
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      new BucketMetadataCodec.Encoder(record).writeRecord(BucketMetadataJournalRecord.snapshot(key, bucketMetadata));
+      ByteArrayOutputStream frame = new ByteArrayOutputStream(record.size() + 16);
+      new BucketMetadataCodec.Encoder(frame).writeVarLong(record.size());
+      record.writeTo(frame);
+      CRC32 crc = new CRC32();
+      crc.update(record.toByteArray());
+      new DataOutputStream(frame).writeInt((int) crc.getValue());
+      write(ByteBuffer.wrap(frame.toByteArray()));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to append journal " + journal, e);
+    }
+
+    if (journalSize >= Math.max(MIN_COMPACTION_SIZE, checkpointSize)) {
+      checkpoint(bucketMetadata);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Force the appended records to the disk. It is not synchronized, so that records appended by
+   * concurrent requests are forced together. Records that were compacted meanwhile were forced
+   * with the checkpoint.
+   */
+  void sync() {
+    syncer.sync(journal);
+  }
+
+  /**
+   * The path of the journal file.
+   */
+  Path journalFile() {
+    return journal;
+  }
+
+  /**
+   * Write the whole bucket metadata as a new checkpoint and reset the journal.
+   *
+   * @param bucketMetadata the bucket metadata.
+   */
+  synchronized void checkpoint(BucketMetadata bucketMetadata) {
+    recoverIfNeeded();
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempCheckpoint), BUFFER_SIZE)) {
+        BucketMetadataCodec.writeHeader(out, BucketMetadataCodec.CHECKPOINT_MAGIC);
+        new BucketMetadataCodec.Encoder(out).writeBucket(view.apply(bucketMetadata));
+      }
+      syncer.sync(tempCheckpoint);
+      closeJournalChannel();
+      if (Files.exists(journal)) {
+        Files.move(journal, retiredJournal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      Files.move(tempCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      syncer.sync(checkpoint.getParent());
+      Files.deleteIfExists(retiredJournal);
+      checkpointSize = Files.size(checkpoint);
+      journalSize = 0;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write checkpoint " + checkpoint, e);
+    }
+  }
+
+  /**
+   * Delete all files of the bucket.
+   *
+   * @return {@code true} if the checkpoint existed and was deleted.
+   */
+  synchronized boolean delete() {
+    try {
+      closeJournalChannel();
+      Files.deleteIfExists(journal);
+      Files.deleteIfExists(retiredJournal);
+      Files.deleteIfExists(tempCheckpoint);
+      return Files.deleteIfExists(checkpoint);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete metadata files of " + checkpoint, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      closeJournalChannel();
+    } catch (IOException e) {
+      log.warn("Failed to close journal {}.", journal, e);
+    }
+  }
+
+  private BucketMetadata readCheckpoint(Path source) {
+    if (!isBinary(source, BucketMetadataCodec.CHECKPOINT_MAGIC)) {
+      return JsonUtils.fromJson(source.toFile(), BucketMetadata.class);
+    }
+
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE)) {
+      BucketMetadataCodec.readHeader(in, BucketMetadataCodec.CHECKPOINT_MAGIC);
+      return new BucketMetadataCodec.Decoder(in).readBucket();
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read checkpoint " + source, e);
+    }
+  }
+
+  private void replay(BucketMetadata bucketMetadata) {
+    int replayed = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), BUFFER_SIZE))) {
+      long journalLength = Files.size(journal);
+      BucketMetadataCodec.readHeader(in, BucketMetadataCodec.JOURNAL_MAGIC);
+      BucketMetadataCodec.Decoder frames = new BucketMetadataCodec.Decoder(in);
+      while (true) {
+        in.mark(1);
+        if (in.read() < 0) {
+          break;
+        }
+        in.reset();
+
+        BucketMetadataJournalRecord record;
+        try {
+          long length = frames.readVarLong();
+          if (length > journalLength) {
+            throw new IOException("Invalid record length " + length + ".");
+          }
+          byte[] payload = new byte[(int) length];
+          in.readFully(payload);
+          CRC32 crc = new CRC32();
+          crc.update(payload);
+          if (in.readInt() != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch.");
+          }
+          record = new BucketMetadataCodec.Decoder(new ByteArrayInputStream(payload)).readRecord();
+        } catch (IOException | RuntimeException e) {
+          // Only the tail record can be incomplete, it was never acknowledged.
+          log.warn("Ignored incomplete record at the end of journal {}.", journal);
+          break;
+        }
+        record.applyTo(bucketMetadata);
+        replayed++;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to replay journal " + journal, e);
+    }
+    log.debug("Replayed {} records from journal {}.", replayed, journal);
+  }
+
+  private void replayJson(BucketMetadata bucketMetadata) {
+    int replayed = 0;
+    try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+      String line;
+      while (Objects.nonNull(line = reader.readLine())) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        BucketMetadataJournalRecord record;
+        try {
+          record = JsonUtils.fromJson(line, BucketMetadataJournalRecord.class);
+        } catch (Exception e) {
+          // Only the tail record can be incomplete, it was never acknowledged.
+          log.warn("Ignored incomplete record at the end of journal {}.", journal);
+          break;
+        }
+        record.applyTo(bucketMetadata);
+        replayed++;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to replay journal " + journal, e);
+    }
+    log.debug("Replayed {} records from journal {}.", replayed, journal);
+  }
+
+  /**
+   * Complete or roll back a checkpoint that was interrupted before this instance was created.
+   */
+  private void recoverIfNeeded() {
+    if (recovered) {
+      return;
+    }
+
+    try {
+      boolean retired = Files.exists(retiredJournal);
+      if (Files.exists(tempCheckpoint)) {
+        if (retired) {
+          Files.move(tempCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+          Files.delete(tempCheckpoint);
+        }
+      }
+      if (retired) {
+        Files.delete(retiredJournal);
+      }
+      recovered = true;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to recover checkpoint " + checkpoint, e);
+    }
+  }
+
+  /**
+   * Open the journal for appending. A JSON journal is compacted into a checkpoint first, so that
+   * a journal never mixes the encodings.
+   */
+  private void openIfNeeded(BucketMetadata bucketMetadata) {
+    if (Objects.nonNull(journalChannel)) {
+      return;
+    }
+
+    recoverIfNeeded();
+    try {
+      if (Files.exists(journal) && Files.size(journal) > 0 && !isBinary(journal, BucketMetadataCodec.JOURNAL_MAGIC)) {
+        checkpoint(bucketMetadata);
+      }
+      journalChannel = FileChannel.open(journal, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      journalSize = journalChannel.size();
+      checkpointSize = Files.exists(checkpoint) ? Files.size(checkpoint) : 0;
+      if (journalSize == 0) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        BucketMetadataCodec.writeHeader(header, BucketMetadataCodec.JOURNAL_MAGIC);
+        write(ByteBuffer.wrap(header.toByteArray()));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to open journal " + journal, e);
+    }
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      journalSize += journalChannel.write(buffer);
+    }
+  }
+
+  /**
+   * Whether the file starts with {@code magic}; JSON files start with {@code '{'}.
+   */
+  private static boolean isBinary(Path file, byte[] magic) {
+    byte[] head = new byte[magic.length];
+    try (InputStream in = Files.newInputStream(file)) {
+      int length = 0;
+      int read;
+      while (length < head.length && (read = in.read(head, length, head.length - length)) >= 0) {
+        length += read;
+      }
+      return BucketMetadataCodec.hasMagic(head, length, magic);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read " + file, e);
+    }
+  }
+
+  private void closeJournalChannel() throws IOException {
+    if (Objects.nonNull(journalChannel)) {
+      journalChannel.close();
+      journalChannel = null;
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A record in the bucket metadata journal. Each record is a snapshot of one object key,
+ * so replaying a record is idempotent and later records of the same key override earlier ones.
+ */
+@Data
+@NoArgsConstructor
+public class BucketMetadataJournalRecord {
+
+  private String key;
+
+  /**
+   * Metadata of the key; {@code null} if the key was removed from the bucket.
+   */
+  private ObjectMetadata object;
+
+  /**
+   * Multipart uploads of the key; {@code null} if the key has no in-progress uploads.
+   */
+  private NavigableMap<String, UploadMetadata> uploads;
+
+  /**
+   * Take a snapshot of {@code key} in the bucket.
+   *
+   * @param key the object key.
+   * @param bucketMetadata the bucket that contains the key.
+   * @return a new journal record.
+   */
+  static BucketMetadataJournalRecord snapshot(String key, BucketMetadata bucketMetadata) {
+    BucketMetadataJournalRecord record = new BucketMetadataJournalRecord();
+    record.setKey(key);
+    record.setObject(bucketMetadata.getObjectMap().get(key));
+    record.setUploads(bucketMetadata.getUploads().get(key));
+    return record;
+  }
+
+  /**
+   * Apply this record to the bucket.
+   *
+   * @param bucketMetadata the bucket to apply this record to.
+   */
+  void applyTo(BucketMetadata bucketMetadata) {
+    if (Objects.isNull(object)) {
+      bucketMetadata.getObjectMap().remove(key);
+    } else {
+      bucketMetadata.getObjectMap().put(key, object);
+    }
+
+    if (Objects.isNull(uploads) || uploads.isEmpty()) {
+      bucketMetadata.getUploads().remove(key);
+    } else {
+      bucketMetadata.getUploads().put(key, new ConcurrentSkipListMap<>(uploads));
+    }
+  }
+
+}
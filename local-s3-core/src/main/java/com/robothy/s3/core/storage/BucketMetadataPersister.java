@@ -0,0 +1,622 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectIndex;
+import com.robothy.s3.core.service.locks.BucketLock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists changes of buckets to a {@linkplain BucketMetadataStore}.
+ *
+ * <p>With a flush interval of {@code 0}, each change is persisted by the calling thread before the call
+ * returns. Otherwise, changed buckets are marked dirty and a flusher thread persists each dirty bucket
+ * once the interval elapsed since its first change, or at once when the bucket has the max number of
+ * dirty changes. A flush appends each changed key once with a single sync, or writes one checkpoint if the
+ * whole bucket changed, so that many changes of a bucket within an interval are coalesced.
+ *
+ * <p>The flusher reads a key with the key read lock held, and a whole bucket with the bucket write lock
+ * held, so the callers must not wait for a flush while holding a bucket lock. Deleting a bucket discards
+ * its dirty changes. {@linkplain #flush()} persists all dirty changes at once, e.g. on shutdown.
+ *
+ * <p>Objects deleted by a change through {@linkplain #deferDeletes(Storage)} are deleted once the change is
+ * persisted, so that persisted metadata never references deleted objects. The deletes of a change are
+ * collected by the thread that makes it, between {@linkplain #beginChange()} and {@linkplain #endChange()}.
+ *
+ * <p>Entries of a bucket are unloaded by {@linkplain #unloadIfNeeded(String, BucketMetadata)}, see
+ * {@linkplain ObjectIndex#unload(NavigableSet)}. The keys of dirty changes are pinned, as an unloaded entry
+ * is read again from the store. A bucket that is in use, or whose entries are pinned, is unloaded by the
+ * flusher thread once the changes are flushed. A bucket that the store sharded after it was fetched is first
+ * attached to its shards, see {@linkplain BucketMetadataStore#attach(String, BucketMetadata)}.
+ */
+@Slf4j
+public class BucketMetadataPersister {
+
+  private static final long IDLE_TIMEOUT_MILLIS = 60_000;
+
+  private final BucketMetadataStore store;
+
+  private final long intervalNanos;
+
+  private final int maxDirtyChanges;
+
+  private final boolean waitForFlush;
+
+  private final MetadataFlushStats stats;
+
+  private final Map<String, Dirty> dirtyBuckets = new LinkedHashMap<>();
+
+  private long dirtyChanges;
+
+  /**
+   * Dirty buckets taken by a flush and not flushed yet.
+   */
+  private final List<Dirty> inFlight = new ArrayList<>();
+
+  /**
+   * Buckets to unload by the flusher thread, as they were in use when the unload was requested.
+   */
+  private final Map<String, BucketMetadata> pendingUnloads = new LinkedHashMap<>();
+
+  private boolean flushing;
+
+  /**
+   * Deletes of the change that the current thread makes, or {@code null} if it makes none.
+   */
+  private final ThreadLocal<List<Runnable>> changeDeletes = new ThreadLocal<>();
+
+  private BucketMetadataPersister(BucketMetadataStore store, long intervalMillis, int maxDirtyChanges,
+                                  boolean waitForFlush, MetadataFlushStats stats) {
+    this.store = store;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.maxDirtyChanges = maxDirtyChanges;
+    this.waitForFlush = waitForFlush;
+    this.stats = stats;
+  }
+
+  /**
+   * Create a {@linkplain BucketMetadataPersister} with the flush options.
+   *
+   * @param store the store to persist changes to.
+   * @param storageOptions the flush options.
+   * @return a {@linkplain BucketMetadataPersister} instance.
+   */
+  public static BucketMetadataPersister create(BucketMetadataStore store, StorageOptions storageOptions) {
+    Objects.requireNonNull(store);
+    if (storageOptions.getMetadataFlushIntervalMillis() < 0 || storageOptions.getMetadataFlushMaxDirtyChanges() < 1) {
+      throw new IllegalArgumentException("Invalid metadata flush interval " + storageOptions.getMetadataFlushIntervalMillis()
+          + " ms or max dirty changes " + storageOptions.getMetadataFlushMaxDirtyChanges() + ".");
+    }
+    return new BucketMetadataPersister(store, storageOptions.getMetadataFlushIntervalMillis(),
+        storageOptions.getMetadataFlushMaxDirtyChanges(), storageOptions.isMetadataFlushWait(),
+        Optional.ofNullable(storageOptions.getMetadataFlushStats()).orElseGet(MetadataFlushStats::new));
+  }
+
+  /**
+   * Whether changes are persisted by a flusher thread.
+   */
+  public boolean isCoalescing() {
+    return intervalNanos > 0;
+  }
+
+  /**
+   * Whether callers should wait for the returned futures before acknowledging a change.
+   */
+  public boolean isWaitForFlush() {
+    return waitForFlush;
+  }
+
+  /**
+   * Get a view of {@code storage} whose deletes are deferred until the change that made them is persisted.
+   *
+   * @param storage the storage of the objects that the metadata references.
+   * @return a {@linkplain Storage} that defers deletes made by changes.
+   */
+  public Storage deferDeletes(Storage storage) {
+    return new DeferredDeleteStorage(storage, this);
+  }
+
+  /**
+   * Start collecting the deletes of a change made by the current thread. The deletes are attached to the
+   * change when it is stored; the others are run by {@linkplain #endChange()}.
+   *
+   * @return {@code false} if the thread already makes a change; the outer change collects the deletes.
+   */
+  public boolean beginChange() {
+    if (Objects.nonNull(changeDeletes.get())) {
+      return false;
+    }
+    changeDeletes.set(new ArrayList<>());
+    return true;
+  }
+
+  /**
+   * Stop collecting the deletes of the current thread, and run the deletes that were not attached to a
+   * persisted change, e.g. because the change failed or was persisted by the calling thread.
+   */
+  public void endChange() {
+    List<Runnable> deletes = changeDeletes.get();
+    changeDeletes.remove();
+    runDeletes(deletes);
+  }
+
+  /**
+   * Defer a delete until the change of the current thread is persisted.
+   *
+   * @return {@code false} if the current thread makes no change; the caller deletes at once.
+   */
+  boolean deferDelete(Runnable delete) {
+    List<Runnable> deletes = changeDeletes.get();
+    if (Objects.isNull(deletes)) {
+      return false;
+    }
+    deletes.add(delete);
+    return true;
+  }
+
+  /**
+   * Persist the change of {@code key} in the bucket.
+   *
+   * @param bucketName the bucket name.
+   * @param key the changed object key.
+   * @param bucketMetadata the bucket that contains the changed key.
+   * @return a future that completes once the change is persisted.
+   */
+  public CompletableFuture<Void> storeObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+    if (!isCoalescing()) {
+      store.storeObject(bucketName, key, bucketMetadata);
+      return CompletableFuture.completedFuture(null);
+    }
+    return markDirty(bucketName, key, bucketMetadata);
+  }
+
+  /**
+   * Persist the whole bucket.
+   *
+   * @param bucketName the bucket name.
+   * @param bucketMetadata the bucket metadata.
+   * @return a future that completes once the bucket is persisted.
+   */
+  public CompletableFuture<Void> store(String bucketName, BucketMetadata bucketMetadata) {
+    if (!isCoalescing()) {
+      store.store(bucketName, bucketMetadata);
+      return CompletableFuture.completedFuture(null);
+    }
+    return markDirty(bucketName, null, bucketMetadata);
+  }
+
+  /**
+   * Delete the bucket and discard its dirty changes. The caller must hold the bucket write lock.
+   *
+   * @param bucketName the bucket name.
+   */
+  public void delete(String bucketName) {
+    List<Runnable> deletes = new ArrayList<>();
+    synchronized (this) {
+      Dirty dirty = dirtyBuckets.remove(bucketName);
+      if (Objects.nonNull(dirty)) {
+        dirty.discarded = true;
+        dirtyChanges -= dirty.changes;
+        stats.recordDirty(dirtyBuckets.size(), dirtyChanges);
+        dirty.flushed.complete(null);
+        deletes.addAll(dirty.deletes);
+        dirty.deletes.clear();
+      }
+    }
+    store.delete(bucketName);
+    runDeletes(deletes);
+  }
+
+  /**
+   * Persist all dirty changes, and return once they are persisted. The caller must not hold a bucket lock.
+   *
+   * @throws IllegalStateException if a bucket failed to be persisted.
+   */
+  public void flush() {
+    List<Dirty> batch;
+    synchronized (this) {
+      while (!inFlight.isEmpty()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      batch = new ArrayList<>(dirtyBuckets.values());
+      dirtyBuckets.clear();
+      dirtyChanges = 0;
+      inFlight.addAll(batch);
+      stats.recordDirty(0, 0);
+    }
+
+    IllegalStateException failure = null;
+    for (Dirty dirty : batch) {
+      try {
+        flush(dirty);
+      } catch (RuntimeException e) {
+        if (!retry(dirty, e)) {
+          runDeletes(dirty.deletes);
+        }
+        failure = Optional.ofNullable(failure).orElseGet(() ->
+            new IllegalStateException("Failed to flush the metadata of bucket " + dirty.bucketName + ".", e));
+      } finally {
+        flushed(dirty);
+      }
+    }
+    if (Objects.nonNull(failure)) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Unload entries of a bucket whose {@linkplain ObjectIndex} keeps more entries in memory than allowed, or
+   * that is detached from its store. The entries are unloaded with the bucket write lock held, except the keys
+   * of dirty changes. If the bucket is in use, they are unloaded by the flusher thread. The caller must not
+   * hold a bucket lock.
+   *
+   * @param bucketName the bucket name.
+   * @param bucketMetadata the bucket metadata.
+   */
+  public void unloadIfNeeded(String bucketName, BucketMetadata bucketMetadata) {
+    if (!needsUnload(bucketName, bucketMetadata)) {
+      return;
+    }
+
+    Lock lock = BucketLock.getInstance().writeLock(bucketName);
+    if (!lock.tryLock()) {
+      scheduleUnload(bucketName, bucketMetadata);
+      return;
+    }
+    try {
+      unload(bucketName, bucketMetadata);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private synchronized void scheduleUnload(String bucketName, BucketMetadata bucketMetadata) {
+    pendingUnloads.put(bucketName, bucketMetadata);
+    if (!flushing) {
+      startFlusher();
+    } else {
+      notifyAll();
+    }
+  }
+
+  private boolean needsUnload(String bucketName, BucketMetadata bucketMetadata) {
+    return bucketMetadata.getObjectMap().isOverLoaded() || store.isDetached(bucketName, bucketMetadata);
+  }
+
+  /**
+   * Unload entries of a bucket except the pinned keys. The caller must hold the bucket write lock.
+   */
+  private void unload(String bucketName, BucketMetadata bucketMetadata) {
+    if (store.isDetached(bucketName, bucketMetadata)) {
+      // The entries are kept as loaded shards, so the pinned keys stay loaded.
+      store.attach(bucketName, bucketMetadata);
+    }
+    NavigableSet<String> pinned = pinnedKeys(bucketName);
+    if (Objects.isNull(pinned)) {
+      // The whole bucket is written by the flush; it is unloaded afterwards.
+      return;
+    }
+    int unloaded = bucketMetadata.getObjectMap().unload(pinned);
+    log.debug("Unloaded {} shards of bucket {}.", unloaded, bucketName);
+  }
+
+  /**
+   * Get the keys of the bucket whose changes are dirty or in flight.
+   *
+   * @return the pinned keys, or {@code null} if the whole bucket changed.
+   */
+  private synchronized NavigableSet<String> pinnedKeys(String bucketName) {
+    NavigableSet<String> pinned = new TreeSet<>();
+    List<Dirty> changes = new ArrayList<>(inFlight);
+    Optional.ofNullable(dirtyBuckets.get(bucketName)).ifPresent(changes::add);
+    for (Dirty dirty : changes) {
+      if (dirty.bucketName.equals(bucketName)) {
+        if (dirty.whole) {
+          return null;
+        }
+        pinned.addAll(dirty.keys);
+      }
+    }
+    return pinned;
+  }
+
+  private synchronized CompletableFuture<Void> markDirty(String bucketName, String key, BucketMetadata bucketMetadata) {
+    Dirty dirty = dirtyBuckets.get(bucketName);
+    if (Objects.isNull(dirty) || dirty.bucketMetadata != bucketMetadata) {
+      Dirty recreated = new Dirty(bucketName, bucketMetadata);
+      if (Objects.nonNull(dirty)) {
+        // The bucket was recreated; its previous changes are obsolete, their deletes run with the new ones.
+        dirty.discarded = true;
+        dirtyChanges -= dirty.changes;
+        dirty.flushed.complete(null);
+        recreated.deletes.addAll(dirty.deletes);
+      }
+      dirty = recreated;
+      dirtyBuckets.put(bucketName, dirty);
+    }
+    List<Runnable> deletes = changeDeletes.get();
+    if (Objects.nonNull(deletes)) {
+      dirty.deletes.addAll(deletes);
+      deletes.clear();
+    }
+
+    if (Objects.isNull(key)) {
+      dirty.whole = true;
+      dirty.keys.clear();
+    } else if (!dirty.whole) {
+      dirty.keys.add(key);
+    }
+    dirty.changes++;
+    dirtyChanges++;
+    stats.recordDirty(dirtyBuckets.size(), dirtyChanges);
+
+    if (!flushing) {
+      startFlusher();
+    } else if (dirtyBuckets.size() == 1 || dirty.changes >= maxDirtyChanges) {
+      notifyAll();
+    }
+    return dirty.flushed;
+  }
+
+  private void startFlusher() {
+    flushing = true;
+    Thread flusher = new Thread(this::flushLoop, "local-s3-metadata-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  private void flushLoop() {
+    boolean interrupted = false;
+    while (!interrupted) {
+      List<Dirty> batch = new ArrayList<>();
+      synchronized (this) {
+        try {
+          long idleSince = System.nanoTime();
+          while (dirtyBuckets.isEmpty() && pendingUnloads.isEmpty()) {
+            long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+            if (idle >= IDLE_TIMEOUT_MILLIS) {
+              flushing = false;
+              return;
+            }
+            wait(IDLE_TIMEOUT_MILLIS - idle);
+          }
+
+          long remaining;
+          while (!dirtyBuckets.isEmpty() && pendingUnloads.isEmpty() && !hasFullBucket()
+              && (remaining = nextDue() - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          }
+        } catch (InterruptedException e) {
+          // Flush the due buckets and exit; the next change starts a new flusher.
+          interrupted = true;
+          flushing = false;
+        }
+
+        long now = System.nanoTime();
+        for (Iterator<Dirty> iterator = dirtyBuckets.values().iterator(); iterator.hasNext(); ) {
+          Dirty dirty = iterator.next();
+          if (interrupted || dirty.changes >= maxDirtyChanges || now - dirty.since >= intervalNanos) {
+            iterator.remove();
+            dirtyChanges -= dirty.changes;
+            batch.add(dirty);
+          }
+        }
+        inFlight.addAll(batch);
+        stats.recordDirty(dirtyBuckets.size(), dirtyChanges);
+      }
+
+      for (Dirty dirty : batch) {
+        try {
+          flush(dirty);
+        } catch (RuntimeException e) {
+          log.error("Failed to flush the metadata of bucket {}, retry in the next flush.", dirty.bucketName, e);
+          if (!retry(dirty, e)) {
+            runDeletes(dirty.deletes);
+          }
+        } finally {
+          flushed(dirty);
+        }
+      }
+      unloadFlushed(batch);
+    }
+  }
+
+  private synchronized void flushed(Dirty dirty) {
+    inFlight.remove(dirty);
+    if (inFlight.isEmpty()) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Unload the flushed buckets and the buckets that were in use when their unload was requested. The
+   * flusher waits for the bucket write lock, so the entries are unloaded under sustained changes as well.
+   */
+  private void unloadFlushed(List<Dirty> batch) {
+    Map<String, BucketMetadata> unloads;
+    synchronized (this) {
+      unloads = new LinkedHashMap<>(pendingUnloads);
+      pendingUnloads.clear();
+    }
+    batch.stream()
+        .filter(dirty -> !dirty.discarded)
+        .forEach(dirty -> unloads.putIfAbsent(dirty.bucketName, dirty.bucketMetadata));
+
+    unloads.forEach((bucketName, bucketMetadata) -> {
+      if (!needsUnload(bucketName, bucketMetadata)) {
+        return;
+      }
+      Lock lock = BucketLock.getInstance().writeLock(bucketName);
+      lock.lock();
+      try {
+        unload(bucketName, bucketMetadata);
+      } catch (RuntimeException e) {
+        log.warn("Failed to unload the metadata of bucket {}.", bucketName, e);
+      } finally {
+        lock.unlock();
+      }
+    });
+  }
+
+  private boolean hasFullBucket() {
+    return dirtyBuckets.values().stream().anyMatch(dirty -> dirty.changes >= maxDirtyChanges);
+  }
+
+  private long nextDue() {
+    return dirtyBuckets.values().stream().mapToLong(dirty -> dirty.since).min().orElse(System.nanoTime()) + intervalNanos;
+  }
+
+  /**
+   * Persist the changes of a dirty bucket with the bucket locks held.
+   */
+  private void flush(Dirty dirty) {
+    BucketLock bucketLock = BucketLock.getInstance();
+    long start = System.nanoTime();
+    try {
+      if (dirty.whole) {
+        Lock lock = bucketLock.writeLock(dirty.bucketName);
+        lock.lock();
+        try {
+          if (!dirty.discarded) {
+            store.store(dirty.bucketName, dirty.bucketMetadata);
+          }
+        } finally {
+          lock.unlock();
+        }
+      } else {
+        Lock lock = bucketLock.readLock(dirty.bucketName);
+        lock.lock();
+        try {
+          if (!dirty.discarded) {
+            for (String key : dirty.keys) {
+              Lock keyLock = bucketLock.readLock(dirty.bucketName, key);
+              keyLock.lock();
+              try {
+                store.appendObject(dirty.bucketName, key, dirty.bucketMetadata);
+              } finally {
+                keyLock.unlock();
+              }
+            }
+            // Key-scoped changes share the bucket read lock, so they go on while the journal is forced.
+            store.sync(dirty.bucketName);
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } catch (RuntimeException e) {
+      stats.recordFailure();
+      throw e;
+    }
+    stats.recordFlush(System.nanoTime() - start, dirty.changes);
+    dirty.flushed.complete(null);
+    runDeletes(dirty.deletes);
+  }
+
+  /**
+   * Run deletes of persisted changes. A delete that fails is logged; the object is left behind.
+   */
+  private void runDeletes(List<Runnable> deletes) {
+    if (Objects.isNull(deletes)) {
+      return;
+    }
+    for (Runnable delete : deletes) {
+      try {
+        delete.run();
+      } catch (RuntimeException e) {
+        log.warn("Failed to delete an object of a persisted change.", e);
+      }
+    }
+    deletes.clear();
+  }
+
+  /**
+   * Mark the changes of a dirty bucket that failed to be flushed dirty again, and fail the requests
+   * that wait for them. Their deletes wait for the next flush as well.
+   *
+   * @return {@code false} if the changes are obsolete, as the bucket was deleted or recreated.
+   */
+  private synchronized boolean retry(Dirty failed, RuntimeException cause) {
+    Dirty dirty = dirtyBuckets.get(failed.bucketName);
+    if (failed.discarded || (Objects.nonNull(dirty) && dirty.bucketMetadata != failed.bucketMetadata)) {
+      failed.flushed.complete(null);
+      return false;
+    }
+
+    if (Objects.isNull(dirty)) {
+      dirty = new Dirty(failed.bucketName, failed.bucketMetadata);
+      dirtyBuckets.put(failed.bucketName, dirty);
+    }
+    dirty.whole |= failed.whole;
+    if (dirty.whole) {
+      dirty.keys.clear();
+    } else {
+      dirty.keys.addAll(failed.keys);
+    }
+    dirty.changes += failed.changes;
+    dirty.deletes.addAll(failed.deletes);
+    failed.deletes.clear();
+    dirtyChanges += failed.changes;
+    stats.recordDirty(dirtyBuckets.size(), dirtyChanges);
+    failed.flushed.completeExceptionally(cause);
+    return true;
+  }
+
+  /**
+   * Changes of a bucket since it was last flushed.
+   */
+  private static final class Dirty {
+
+    private final String bucketName;
+
+    private final BucketMetadata bucketMetadata;
+
+    private final Set<String> keys = new LinkedHashSet<>();
+
+    private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+    /**
+     * Deletes of objects that the changes released; they run once the changes are persisted.
+     */
+    private final List<Runnable> deletes = new ArrayList<>();
+
+    private long since = System.nanoTime();
+
+    /**
+     * Whether the whole bucket changed, so that it is written as a checkpoint.
+     */
+    private boolean whole;
+
+    private int changes;
+
+    /**
+     * Set once the bucket is deleted; the changes are not flushed.
+     */
+    private volatile boolean discarded;
+
+    private Dirty(String bucketName, BucketMetadata bucketMetadata) {
+      this.bucketName = bucketName;
+      this.bucketMetadata = bucketMetadata;
+    }
+
+  }
+
+}
@@ -0,0 +1,502 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectIndex;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongPredicate;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists the metadata of one bucket, either in a single {@linkplain BucketMetadataJournal}, or sharded
+ * by key range once the bucket has more object keys than the shard size.
+ *
+ * <p>A sharded bucket is stored as
+ * <ul>
+ *   <li>the bucket journal {@code <bucket>.bucket.meta}, which only holds the bucket configurations;</li>
+ *   <li>the shard table {@code <bucket>.bucket.shards}, which lists the lower bound and the ID of each shard;</li>
+ *   <li>a journal {@code <bucket>.bucket.d/<id>.bucket.meta} for each shard, which holds the objects and
+ *   uploads from the lower bound of the shard up to the lower bound of the next shard.</li>
+ * </ul>
+ *
+ * <p>A change of a key is appended to the journal of its shard, so that compacting the journal only rewrites
+ * the shard. A shard that grows beyond twice the shard size is split. New shards are written under new IDs
+ * before the shard table is replaced, so the table is the commit point; shard files that are not in the table
+ * are deleted before the next change.
+ *
+ * <p>A bucket read from the sharded layout loads its shards on access by key range, see {@linkplain ShardedMap}.
+ * Together, the shard table and the shards form an ordered on-disk index of the bucket: a key is looked up by
+ * reading one shard, a key range by reading the shards it overlaps, and a change is appended to one shard.
+ * Shards that are not loaded are unchanged, so storing the whole bucket only rewrites the loaded shards.
+ */
+@Slf4j
+final class BucketMetadataShards {
+
+  static final String SHARDS_SUFFIX = ".bucket.shards";
+
+  static final String SHARD_DIRECTORY_SUFFIX = ".bucket.d";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path dataPath;
+
+  private final String bucketName;
+
+  private final FileSyncer syncer;
+
+  private final int shardSize;
+
+  private final int maxLoadedShards;
+
+  private final Path table;
+
+  private final Path tempTable;
+
+  private final Path shardDirectory;
+
+  /**
+   * Shard journals with appended records that are not forced yet.
+   */
+  private final Set<BucketMetadataJournal> unsynced = ConcurrentHashMap.newKeySet();
+
+  private volatile BucketMetadataJournal root;
+
+  /**
+   * Shards by their lower bounds; or {@code null} if the bucket is not sharded. It is replaced, not changed,
+   * so that {@linkplain #isSharded()} reads it without the lock.
+   */
+  private volatile NavigableMap<String, Shard> shards;
+
+  private long nextId;
+
+  private boolean opened;
+
+  private boolean recovered;
+
+  BucketMetadataShards(Path dataPath, String bucketName, FileSyncer syncer, int shardSize, int maxLoadedShards) {
+    this.dataPath = dataPath;
+    this.bucketName = bucketName;
+    this.syncer = syncer;
+    this.shardSize = shardSize;
+    this.maxLoadedShards = maxLoadedShards;
+    this.table = dataPath.resolve(bucketName + SHARDS_SUFFIX);
+    this.tempTable = dataPath.resolve(bucketName + SHARDS_SUFFIX + TEMP_SUFFIX);
+    this.shardDirectory = dataPath.resolve(bucketName + SHARD_DIRECTORY_SUFFIX);
+  }
+
+  /**
+   * Read the bucket. The shards of a sharded bucket are read on access.
+   *
+   * @return the bucket metadata.
+   */
+  synchronized BucketMetadata read() {
+    open();
+    BucketMetadata bucketMetadata = root.read();
+    if (Objects.isNull(shards)) {
+      return bucketMetadata;
+    }
+
+    ShardLoader.attach(bucketMetadata, new TreeSet<>(shards.keySet()), this::read, maxLoadedShards);
+    return bucketMetadata;
+  }
+
+  /**
+   * Whether the bucket is sharded on disk. It is not synchronized, so that it is cheap to check on each change.
+   */
+  boolean isSharded() {
+    return Objects.nonNull(shards);
+  }
+
+  /**
+   * Replace the maps of a bucket that was read as a whole, and has been sharded since, with maps that keep its
+   * entries as loaded shards, so that the max number of loaded shards applies to it as well. The caller must
+   * have exclusive access to the maps.
+   *
+   * @param bucketMetadata the bucket metadata.
+   * @return {@code true} if the maps were replaced.
+   */
+  synchronized boolean attach(BucketMetadata bucketMetadata) {
+    if (maxLoadedShards == 0 || Objects.isNull(shards) || bucketMetadata.getObjectMap() instanceof ShardedMap) {
+      return false;
+    }
+
+    ShardLoader.attachLoaded(bucketMetadata, new TreeSet<>(shards.keySet()), this::read, maxLoadedShards);
+    log.info("Attached the {} shards of bucket {} to its loaded metadata.", shards.size(), bucketName);
+    return true;
+  }
+
+  /**
+   * Read the objects and uploads from {@code lower} up to {@code upper} from the shards that overlap the range.
+   *
+   * @param lower the lower bound, inclusive.
+   * @param upper the upper bound, exclusive; {@code null} if unbounded.
+   * @return a bucket with the objects and uploads of the range.
+   */
+  synchronized BucketMetadata read(String lower, String upper) {
+    open();
+    BucketMetadata entries = new BucketMetadata();
+    if (Objects.isNull(shards)) {
+      // The bucket was deleted.
+      return entries;
+    }
+
+    Collection<Shard> overlapping = range(shards, shards.floorKey(lower), upper).values();
+    if (overlapping.size() == 1) {
+      Shard shard = overlapping.iterator().next();
+      if (shard.lower.equals(lower) && Objects.equals(shard.upper, upper)) {
+        return shard.journal.read();
+      }
+    }
+    for (Shard shard : overlapping) {
+      BucketMetadata read = shard.journal.read();
+      entries.getObjectMap().putAll(range(read.getObjectMap(), lower, upper));
+      entries.getUploads().putAll(range(read.getUploads(), lower, upper));
+    }
+    return entries;
+  }
+
+  /**
+   * Append a snapshot of {@code key} to the journal of its shard. A bucket that outgrows the shard size
+   * when its journal is compacted is sharded.
+   *
+   * @param key the changed key.
+   * @param bucketMetadata the bucket metadata that contains the key.
+   */
+  synchronized void append(String key, BucketMetadata bucketMetadata) {
+    open();
+    recoverIfNeeded();
+    if (Objects.isNull(shards)) {
+      if (root.append(key, bucketMetadata) && bucketMetadata.getObjectMap().size() > shardSize) {
+        shard(bucketMetadata);
+      }
+      return;
+    }
+
+    Shard shard = shards.floorEntry(key).getValue();
+    if (shard.journal.append(key, bucketMetadata)) {
+      splitIfNeeded(shard, bucketMetadata);
+    }
+    // Marked after the append, so that a concurrent sync that missed the record leaves it marked.
+    unsynced.add(shard.journal);
+  }
+
+  /**
+   * Force the appended records to the disk. It is not synchronized, so that records appended by
+   * concurrent requests are forced together.
+   */
+  void sync() {
+    List<Path> journals = new ArrayList<>();
+    journals.add(root.journalFile());
+    for (Iterator<BucketMetadataJournal> iterator = unsynced.iterator(); iterator.hasNext(); ) {
+      journals.add(iterator.next().journalFile());
+      iterator.remove();
+    }
+    syncer.sync(journals.toArray(new Path[0]));
+  }
+
+  /**
+   * Write the whole bucket. Of a bucket with lazily loaded shards, only the loaded shards are written.
+   *
+   * @param bucketMetadata the bucket metadata.
+   */
+  synchronized void checkpoint(BucketMetadata bucketMetadata) {
+    open();
+    recoverIfNeeded();
+    if (Objects.nonNull(shards) && bucketMetadata.getObjectMap() instanceof ShardedMap) {
+      ShardedMap<?> objects = (ShardedMap<?>) bucketMetadata.getObjectMap();
+      for (Shard shard : new ArrayList<>(shards.values())) {
+        if (objects.isLoaded(shard.lower)) {
+          shard.journal.checkpoint(bucketMetadata);
+          splitIfNeeded(shard, bucketMetadata);
+        }
+      }
+      root.checkpoint(bucketMetadata);
+      return;
+    }
+
+    // All shards of a bucket that was loaded as a whole may have changed.
+    if (Objects.nonNull(shards) || bucketMetadata.getObjectMap().size() > shardSize) {
+      shard(bucketMetadata);
+    } else {
+      root.checkpoint(bucketMetadata);
+    }
+  }
+
+  /**
+   * Delete all files of the bucket.
+   *
+   * @return {@code true} if the bucket existed.
+   */
+  synchronized boolean delete() {
+    open();
+    boolean existed = root.delete();
+    try {
+      if (Objects.nonNull(shards)) {
+        shards.values().forEach(shard -> shard.journal.delete());
+      }
+      Files.deleteIfExists(table);
+      Files.deleteIfExists(tempTable);
+      deleteShardFiles(id -> true);
+      Files.deleteIfExists(shardDirectory);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete shards of bucket " + bucketName, e);
+    }
+    unsynced.clear();
+    shards = null;
+    opened = false;
+    recovered = false;
+    return existed;
+  }
+
+  /**
+   * Read the shard table, if any.
+   */
+  private void open() {
+    if (opened) {
+      return;
+    }
+
+    if (Files.exists(table)) {
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(table), BUFFER_SIZE)) {
+        BucketMetadataCodec.readHeader(in, BucketMetadataCodec.SHARDS_MAGIC);
+        BucketMetadataCodec.Decoder decoder = new BucketMetadataCodec.Decoder(in);
+        nextId = decoder.readVarLong();
+        NavigableMap<String, Shard> opened = new TreeMap<>();
+        NavigableMap<String, Long> ids = decoder.readShards();
+        ids.forEach((lower, id) -> opened.put(lower, new Shard(lower, ids.higherKey(lower), id)));
+        shards = opened;
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to read shard table " + table, e);
+      }
+    }
+    root = new BucketMetadataJournal(dataPath, bucketName, syncer,
+        Objects.isNull(shards) ? UnaryOperator.identity() : BucketMetadataShards::configurations);
+    opened = true;
+  }
+
+  /**
+   * Delete files of shards that are not in the shard table, left by an interrupted change of shards.
+   */
+  private void recoverIfNeeded() {
+    if (recovered) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(tempTable);
+      Set<Long> ids = new HashSet<>();
+      if (Objects.nonNull(shards)) {
+        shards.values().forEach(shard -> ids.add(shard.id));
+      }
+      deleteShardFiles(id -> !ids.contains(id));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to recover shards of bucket " + bucketName, e);
+    }
+    recovered = true;
+  }
+
+  private void deleteShardFiles(LongPredicate obsolete) throws IOException {
+    if (!Files.isDirectory(shardDirectory)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(shardDirectory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('.');
+        try {
+          if (end > 0 && obsolete.test(Long.parseLong(name.substring(0, end)))) {
+            Files.deleteIfExists(file);
+          }
+        } catch (NumberFormatException e) {
+          log.warn("Ignored unknown file {} in the shards of bucket {}.", file, bucketName);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the bucket as new shards of about the shard size, and replace all shards with them.
+   */
+  private void shard(BucketMetadata bucketMetadata) {
+    commit(write(bounds(bucketMetadata.getObjectMap(), "", null), bucketMetadata, null));
+
+    BucketMetadataJournal previous = root;
+    root = new BucketMetadataJournal(dataPath, bucketName, syncer, BucketMetadataShards::configurations);
+    previous.close();
+    root.checkpoint(bucketMetadata);
+    log.info("Sharded the metadata of bucket {} into {} shards.", bucketName, shards.size());
+  }
+
+  /**
+   * Split a shard that has grown beyond twice the shard size.
+   */
+  private void splitIfNeeded(Shard shard, BucketMetadata bucketMetadata) {
+    NavigableMap<String, ?> objects = range(bucketMetadata.getObjectMap(), shard.lower, shard.upper);
+    List<String> bounds = bounds(objects, shard.lower, 2L * shardSize);
+    if (bounds.size() <= 1) {
+      return;
+    }
+
+    NavigableMap<String, Shard> split = write(bounds, bucketMetadata, shard.upper);
+    NavigableMap<String, Shard> replaced = new TreeMap<>(shards);
+    replaced.remove(shard.lower);
+    replaced.putAll(split);
+    commit(replaced);
+    log.debug("Split shard {} of bucket {} into {} shards.", shard.id, bucketName, split.size());
+  }
+
+  /**
+   * Lower bounds of shards of about the shard size that cover {@code keys}, starting at {@code first}.
+   *
+   * @param threshold split only if there are more keys than this number; {@code null} to always split.
+   */
+  private List<String> bounds(NavigableMap<String, ?> keys, String first, Long threshold) {
+    List<String> bounds = new ArrayList<>();
+    bounds.add(first);
+    long count = 0;
+    for (String ignored : keys.keySet()) {
+      count++;
+    }
+    if (Objects.nonNull(threshold) && count <= threshold) {
+      return bounds;
+    }
+
+    long pieces = Math.max(1, (count + shardSize - 1) / shardSize);
+    long perShard = Math.max(1, (count + pieces - 1) / pieces);
+    long index = 0;
+    for (String key : keys.keySet()) {
+      if (index > 0 && index % perShard == 0 && key.compareTo(first) > 0) {
+        bounds.add(key);
+      }
+      index++;
+    }
+    return bounds;
+  }
+
+  /**
+   * Write a shard for each of the ascending lower bounds under a new ID.
+   *
+   * @param last the upper bound of the last shard; {@code null} if unbounded.
+   */
+  private NavigableMap<String, Shard> write(List<String> bounds, BucketMetadata bucketMetadata, String last) {
+    try {
+      Files.createDirectories(shardDirectory);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to create directory " + shardDirectory, e);
+    }
+
+    NavigableMap<String, Shard> written = new TreeMap<>();
+    for (int i = 0; i < bounds.size(); i++) {
+      String lower = bounds.get(i);
+      Shard shard = new Shard(lower, i + 1 < bounds.size() ? bounds.get(i + 1) : last, nextId++);
+      shard.journal.checkpoint(bucketMetadata);
+      written.put(lower, shard);
+    }
+    return written;
+  }
+
+  /**
+   * Replace the shard table, then delete the shards that are not in it.
+   */
+  private void commit(NavigableMap<String, Shard> committed) {
+    NavigableMap<String, Long> ids = new TreeMap<>();
+    committed.values().forEach(shard -> ids.put(shard.lower, shard.id));
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempTable), BUFFER_SIZE)) {
+        BucketMetadataCodec.writeHeader(out, BucketMetadataCodec.SHARDS_MAGIC);
+        BucketMetadataCodec.Encoder encoder = new BucketMetadataCodec.Encoder(out);
+        encoder.writeVarLong(nextId);
+        encoder.writeShards(ids);
+      }
+      syncer.sync(tempTable);
+      Files.move(tempTable, table, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      syncer.sync(dataPath);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write shard table " + table, e);
+    }
+
+    if (Objects.nonNull(shards)) {
+      for (Shard shard : shards.values()) {
+        if (!shard.equals(committed.get(shard.lower))) {
+          unsynced.remove(shard.journal);
+          shard.journal.delete();
+        }
+      }
+    }
+    shards = committed;
+  }
+
+  /**
+   * The keys of {@code map} from {@code lower} up to {@code upper}; {@code null} is unbounded.
+   */
+  static <V> NavigableMap<String, V> range(NavigableMap<String, V> map, String lower, String upper) {
+    return Objects.isNull(upper) ? map.tailMap(lower, true) : map.subMap(lower, true, upper, false);
+  }
+
+  /**
+   * A copy of the bucket without objects and uploads.
+   */
+  static BucketMetadata configurations(BucketMetadata bucketMetadata) {
+    BucketMetadata configurations = new BucketMetadata();
+    configurations.setBucketName(bucketMetadata.getBucketName());
+    configurations.setCreationDate(bucketMetadata.getCreationDate());
+    configurations.setRegion(bucketMetadata.getRegion());
+    configurations.setVersioningEnabled(bucketMetadata.getVersioningEnabled());
+    configurations.setTagging(bucketMetadata.getTagging().orElse(null));
+    configurations.setAcl(bucketMetadata.getAcl().orElse(null));
+    configurations.setPolicy(bucketMetadata.getPolicy().orElse(null));
+    configurations.setReplication(bucketMetadata.getReplication().orElse(null));
+    configurations.setEncryption(bucketMetadata.getEncryption().orElse(null));
+    return configurations;
+  }
+
+  /**
+   * A key range of the bucket and its journal.
+   */
+  private final class Shard {
+
+    private final String lower;
+
+    private final String upper;
+
+    private final long id;
+
+    private final BucketMetadataJournal journal;
+
+    private Shard(String lower, String upper, long id) {
+      this.lower = lower;
+      this.upper = upper;
+      this.id = id;
+      this.journal = new BucketMetadataJournal(shardDirectory, String.valueOf(id), syncer, bucketMetadata -> {
+        BucketMetadata shard = configurations(bucketMetadata);
+        shard.setObjectMap(ObjectIndex.inMemory(range(bucketMetadata.getObjectMap(), lower, upper)));
+        shard.setUploads(new ConcurrentSkipListMap<>(range(bucketMetadata.getUploads(), lower, upper)));
+        return shard;
+      });
+    }
+
+  }
+
+}
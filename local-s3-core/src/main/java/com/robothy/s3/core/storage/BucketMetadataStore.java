@@ -0,0 +1,72 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import java.util.List;
+
+/**
+ * A {@linkplain MetadataStore} for {@linkplain BucketMetadata} that supports persisting
+ * changes of a single object key without rewriting the whole bucket.
+ */
+public interface BucketMetadataStore extends MetadataStore<BucketMetadata> {
+
+  /**
+   * Persist the current metadata of {@code key} in the bucket. Both the object metadata and the
+   * multipart uploads of the key are persisted; a key that no longer exists is persisted as removed.
+   *
+   * @param bucketName the bucket name.
+   * @param key the changed object key.
+   * @param bucketMetadata the bucket that contains the changed key.
+   */
+  void storeObject(String bucketName, String key, BucketMetadata bucketMetadata);
+
+  /**
+   * Persist the current metadata of {@code key} in the bucket like {@linkplain #storeObject}, but the change
+   * may not be durable until {@linkplain #sync(String)} is called, so that many changes are forced at once.
+   *
+   * @param bucketName the bucket name.
+   * @param key the changed object key.
+   * @param bucketMetadata the bucket that contains the changed key.
+   */
+  default void appendObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+    storeObject(bucketName, key, bucketMetadata);
+  }
+
+  /**
+   * Force the changes appended by {@linkplain #appendObject} to the disk.
+   *
+   * @param bucketName the bucket name.
+   */
+  default void sync(String bucketName) {
+  }
+
+  /**
+   * Whether {@code bucketMetadata} keeps all its entries in memory although the store could load them on
+   * access, e.g. because the bucket was sharded after it was fetched. Such a bucket is passed to
+   * {@linkplain #attach(String, BucketMetadata)}. It must be cheap, as it is checked after each change.
+   *
+   * @param bucketName the bucket name.
+   * @param bucketMetadata the fetched bucket.
+   * @return {@code true} if the bucket should be attached.
+   */
+  default boolean isDetached(String bucketName, BucketMetadata bucketMetadata) {
+    return false;
+  }
+
+  /**
+   * Replace the maps of a detached bucket with an {@linkplain com.robothy.s3.core.model.internal.ObjectIndex}
+   * that can unload its entries; the entries are kept. The caller must hold the bucket write lock.
+   *
+   * @param bucketName the bucket name.
+   * @param bucketMetadata the fetched bucket.
+   */
+  default void attach(String bucketName, BucketMetadata bucketMetadata) {
+  }
+
+  /**
+   * List the names of all buckets in the store without reading their metadata.
+   *
+   * @return bucket names.
+   */
+  List<String> listBucketNames();
+
+}
@@ -0,0 +1,288 @@
+package com.robothy.s3.core.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+/**
+ * A {@linkplain Storage} decorator that keeps small, frequently read objects in memory.
+ *
+ * <p>The cache is bounded by the total size of the cached objects and evicts with segmented LRU:
+ * an object read for the first time enters the probation segment, and is promoted to the protected
+ * segment when it is read again. The protected segment takes at most {@linkplain #PROTECTED_RATIO}
+ * of the capacity, its least recently used objects are demoted to probation. Objects are evicted from
+ * probation only, so that objects read once don't push out objects read frequently.
+ *
+ * <p>Objects larger than the object size limit are never cached. Their IDs are remembered, so that
+ * later reads go to the base storage at once and are counted neither as hits nor as misses. A cached
+ * object, or a remembered ID, is invalidated when its ID is written or deleted; a read that loads an
+ * object concurrently doesn't cache it.
+ */
+class CachingStorage implements Storage {
+
+  static final double PROTECTED_RATIO = 0.8;
+
+  private final Storage base;
+
+  private final long capacity;
+
+  private final long protectedCapacity;
+
+  private final int maxObjectSize;
+
+  private final ReadCacheStats stats;
+
+  private final LinkedHashMap<Long, byte[]> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final LinkedHashMap<Long, byte[]> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long probationSize;
+
+  private long protectedSize;
+
+  /**
+   * IDs of objects larger than {@linkplain #maxObjectSize}.
+   */
+  private final Set<Long> oversized = new HashSet<>();
+
+  /**
+   * object ID - token of the read that loads it.
+   */
+  private final Map<Long, Object> loading = new HashMap<>();
+
+  /**
+   * Create a {@linkplain CachingStorage} instance.
+   *
+   * @param base the storage where objects are stored.
+   * @param capacity max total size of cached objects in bytes.
+   * @param maxObjectSize max size of a cached object in bytes.
+   * @param stats counters to update.
+   */
+  CachingStorage(Storage base, long capacity, int maxObjectSize, ReadCacheStats stats) {
+    Objects.requireNonNull(base);
+    Objects.requireNonNull(stats);
+    this.base = base;
+    this.capacity = capacity;
+    this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+    this.maxObjectSize = maxObjectSize;
+    this.stats = stats;
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    Long result = base.put(id, data);
+    invalidate(id);
+    return result;
+  }
+
+  @Override
+  public Long put(Long id, InputStream data) {
+    Long result = base.put(id, data);
+    invalidate(id);
+    return result;
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    Optional<byte[]> data = get(id);
+    return data.isPresent() ? Arrays.copyOf(data.get(), data.get().length) : base.getBytes(id);
+  }
+
+  @Override
+  public InputStream getInputStream(Long id) {
+    Optional<byte[]> data = get(id);
+    return data.isPresent() ? new ByteArrayInputStream(data.get()) : base.getInputStream(id);
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    Optional<byte[]> data = get(id);
+    if (!data.isPresent()) {
+      return base.read(id, offset, length);
+    }
+
+    if (offset < 0 || length < 0 || offset + length > data.get().length) {
+      throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+          + " exceeds object id='" + id + "'.");
+    }
+    return ByteBuffer.wrap(data.get(), (int) offset, length).slice().asReadOnlyBuffer();
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    Optional<byte[]> data = get(id);
+    return data.isPresent() ? Optional.of(Unpooled.wrappedBuffer(data.get()).asReadOnly()) : base.getByteBuf(id);
+  }
+
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return base.getFileChannel(id);
+  }
+
+  @Override
+  public boolean retain(Long id) {
+    return base.retain(id);
+  }
+
+  @Override
+  public Long delete(Long id) {
+    Long result = base.delete(id);
+    invalidate(id);
+    return result;
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return base.isExist(id);
+  }
+
+  /**
+   * Get the cached content of the object, or load it if it is small enough to be cached.
+   *
+   * @return the content; or empty if the object is too large.
+   */
+  private Optional<byte[]> get(Long id) {
+    Object token = new Object();
+    synchronized (this) {
+      if (oversized.contains(id)) {
+        return Optional.empty();
+      }
+      byte[] cached = lookup(id);
+      if (Objects.nonNull(cached)) {
+        stats.recordHit();
+        return Optional.of(cached);
+      }
+      loading.put(id, token);
+    }
+
+    try {
+      byte[] data = load(id);
+      if (Objects.isNull(data)) {
+        rememberOversized(id, token);
+      } else {
+        stats.recordMiss();
+        admit(id, token, data);
+      }
+      return Optional.ofNullable(data);
+    } finally {
+      synchronized (this) {
+        loading.remove(id, token);
+      }
+    }
+  }
+
+  /**
+   * Read the object if it is not larger than {@linkplain #maxObjectSize}. The size of a file is known
+   * upfront; other objects are read up to the limit.
+   *
+   * @return the content; or {@code null} if the object is too large.
+   */
+  @SneakyThrows
+  private byte[] load(Long id) {
+    Optional<FileChannel> channel = base.getFileChannel(id);
+    if (channel.isPresent()) {
+      try (FileChannel fileChannel = channel.get()) {
+        if (fileChannel.size() > maxObjectSize) {
+          return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileChannel.size());
+        while (buffer.hasRemaining() && fileChannel.read(buffer, buffer.position()) >= 0) {
+          // Read until the buffer is full.
+        }
+        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+      }
+    }
+
+    try (InputStream in = base.getInputStream(id); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      if (IOUtils.copyLarge(in, out, 0, maxObjectSize + 1L) > maxObjectSize) {
+        return null;
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private synchronized byte[] lookup(Long id) {
+    byte[] data = protectedSegment.get(id);
+    if (Objects.nonNull(data)) {
+      return data;
+    }
+
+    data = probation.remove(id);
+    if (Objects.nonNull(data)) {
+      probationSize -= data.length;
+      protectedSegment.put(id, data);
+      protectedSize += data.length;
+      Iterator<Map.Entry<Long, byte[]>> lru = protectedSegment.entrySet().iterator();
+      while (protectedSize > protectedCapacity) {
+        Map.Entry<Long, byte[]> demoted = lru.next();
+        lru.remove();
+        protectedSize -= demoted.getValue().length;
+        probation.put(demoted.getKey(), demoted.getValue());
+        probationSize += demoted.getValue().length;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Cache a loaded object unless it was invalidated while loading.
+   */
+  private synchronized void admit(Long id, Object token, byte[] data) {
+    if (loading.get(id) != token || data.length > capacity) {
+      return;
+    }
+
+    remove(id);
+    probation.put(id, data);
+    probationSize += data.length;
+    Iterator<Map.Entry<Long, byte[]>> lru = probation.entrySet().iterator();
+    while (probationSize + protectedSize > capacity) {
+      Map.Entry<Long, byte[]> evicted = lru.next();
+      lru.remove();
+      probationSize -= evicted.getValue().length;
+      stats.recordEviction();
+    }
+  }
+
+  /**
+   * Remember that a loaded object is too large unless it was invalidated while loading.
+   */
+  private synchronized void rememberOversized(Long id, Object token) {
+    if (loading.get(id) == token) {
+      oversized.add(id);
+    }
+  }
+
+  private synchronized void invalidate(Long id) {
+    loading.remove(id);
+    oversized.remove(id);
+    remove(id);
+  }
+
+  private void remove(Long id) {
+    byte[] data = probation.remove(id);
+    if (Objects.nonNull(data)) {
+      probationSize -= data.length;
+    }
+    data = protectedSegment.remove(id);
+    if (Objects.nonNull(data)) {
+      protectedSize -= data.length;
+    }
+  }
+
+}
@@ -0,0 +1,473 @@
+package com.robothy.s3.core.storage;
+
+import io.netty.buffer.ByteBuf;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A {@linkplain Storage} decorator that compresses objects at rest.
+ *
+ * <p>Content is split into blocks of {@linkplain #BLOCK_SIZE} bytes, which are compressed
+ * independently, so that a range read only inflates the blocks it covers. A compressed object
+ * starts with a header {@code [MAGIC][codec]}, followed by frames {@code [rawLength][storedLength][data]}
+ * and an empty end frame. A block that doesn't shrink is stored as is, marked by
+ * {@code storedLength == rawLength}.
+ *
+ * <p>If the first block is in a well-known compressed format or doesn't compress well,
+ * the object is stored raw without header. Objects without header, e.g. written before compression
+ * was enabled, are passed to the base storage as they are, so that a data directory may contain both.
+ */
+class CompressingStorage implements Storage {
+
+  static final long MAGIC = 0x4C53335F5A495001L;
+
+  static final byte CODEC_NONE = 0;
+
+  static final byte CODEC_DEFLATE = 1;
+
+  static final int HEADER_SIZE = Long.BYTES + 1;
+
+  static final int FRAME_HEADER_SIZE = Integer.BYTES * 2;
+
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  /**
+   * Objects whose first block compresses to more than this ratio are stored raw.
+   */
+  static final double MAX_SAMPLE_RATIO = 0.9;
+
+  /**
+   * Leading bytes of compressed file formats, i.e. gzip, zip, png, jpeg, zstd, bzip2, xz, 7z and webm.
+   */
+  private static final byte[][] COMPRESSED_SIGNATURES = {
+      {(byte) 0x1F, (byte) 0x8B},
+      {'P', 'K', 3, 4},
+      {(byte) 0x89, 'P', 'N', 'G'},
+      {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+      {(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD},
+      {'B', 'Z', 'h'},
+      {(byte) 0xFD, '7', 'z', 'X', 'Z', 0},
+      {'7', 'z', (byte) 0xBC, (byte) 0xAF, (byte) 0x27, (byte) 0x1C},
+      {(byte) 0x1A, (byte) 0x45, (byte) 0xDF, (byte) 0xA3},
+  };
+
+  private final Storage base;
+
+  private final boolean compress;
+
+  /**
+   * Create a {@linkplain CompressingStorage} instance.
+   *
+   * @param base the storage where the compressed objects are stored.
+   * @param compress {@code true} to compress written objects; {@code false} to only read compressed objects.
+   */
+  CompressingStorage(Storage base, boolean compress) {
+    Objects.requireNonNull(base);
+    this.base = base;
+    this.compress = compress;
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    Optional<Byte> codec = codec(data, Math.min(data.length, BLOCK_SIZE));
+    if (!codec.isPresent()) {
+      return base.put(id, data);
+    }
+    return base.put(id, new FramingInputStream(new ByteArrayInputStream(data), codec.get()));
+  }
+
+  @Override
+  @SneakyThrows
+  public Long put(Long id, InputStream data) {
+    byte[] sample = new byte[BLOCK_SIZE];
+    int length = IOUtils.read(data, sample);
+    InputStream content = new SequenceInputStream(new ByteArrayInputStream(sample, 0, length), data);
+    Optional<Byte> codec = codec(sample, length);
+    if (!codec.isPresent()) {
+      return base.put(id, content);
+    }
+    return base.put(id, new FramingInputStream(content, codec.get()));
+  }
+
+  /**
+   * Choose the codec by the first block of an object.
+   *
+   * @return the codec; or empty to store the object raw.
+   */
+  private Optional<Byte> codec(byte[] sample, int length) {
+    if (compress && !isCompressedFormat(sample, length)) {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        if (deflate(sample, length, deflater).length <= length * MAX_SAMPLE_RATIO) {
+          return Optional.of(CODEC_DEFLATE);
+        }
+      } finally {
+        deflater.end();
+      }
+    }
+    if (length >= Long.BYTES && ByteBuffer.wrap(sample).getLong() == MAGIC) {
+      // Raw content that starts with the header must be framed to be read back correctly.
+      return Optional.of(CODEC_NONE);
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isCompressedFormat(byte[] sample, int length) {
+    for (byte[] signature : COMPRESSED_SIGNATURES) {
+      if (length >= signature.length && Arrays.equals(signature, Arrays.copyOf(sample, signature.length))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  @SneakyThrows
+  public byte[] getBytes(Long id) {
+    try (InputStream in = getInputStream(id)) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  @Override
+  @SneakyThrows
+  public InputStream getInputStream(Long id) {
+    InputStream in = base.getInputStream(id);
+    byte[] header = new byte[HEADER_SIZE];
+    int length = IOUtils.read(in, header);
+    if (isHeader(ByteBuffer.wrap(header, 0, length))) {
+      return new DeframingInputStream(in);
+    }
+    return new SequenceInputStream(new ByteArrayInputStream(header, 0, length), in);
+  }
+
+  /**
+   * Sniff the header with a positional read, so that a raw object is read from the base storage directly.
+   * The frames of a compressed object are walked on one stream; the frames before the range are skipped by
+   * their headers, so that only the frames that cover the range are read and inflated.
+   */
+  @Override
+  @SneakyThrows
+  public ByteBuffer read(Long id, long offset, int length) {
+    ByteBuffer header;
+    try {
+      header = base.read(id, 0, HEADER_SIZE);
+    } catch (IllegalArgumentException e) {
+      // Shorter than the header, so it is raw; or it doesn't exist. The base storage checks the range.
+      return base.read(id, offset, length);
+    }
+    if (!isHeader(header)) {
+      return base.read(id, offset, length);
+    }
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid range offset=" + offset + ", length=" + length + ".");
+    }
+
+    try (DataInputStream in = new DataInputStream(base.getInputStream(id))) {
+      skip(in, HEADER_SIZE);
+
+      ByteBuffer result = ByteBuffer.allocate(length);
+      Inflater inflater = new Inflater();
+      try {
+        long rawPosition = 0;
+        while (result.hasRemaining()) {
+          int rawLength;
+          int storedLength;
+          try {
+            rawLength = in.readInt();
+            storedLength = in.readInt();
+          } catch (EOFException e) {
+            throw new IllegalStateException("The compressed object id='" + id + "' is truncated.", e);
+          }
+          if (rawLength == 0) {
+            throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+                + " exceeds object id='" + id + "'.");
+          }
+
+          long frameEnd = rawPosition + rawLength;
+          if (offset < frameEnd) {
+            byte[] stored = new byte[storedLength];
+            in.readFully(stored);
+            byte[] block = block(ByteBuffer.wrap(stored), rawLength, inflater);
+            int start = (int) Math.max(0, offset - rawPosition);
+            result.put(block, start, Math.min(rawLength - start, result.remaining()));
+          } else {
+            skip(in, storedLength);
+          }
+          rawPosition = frameEnd;
+        }
+      } finally {
+        inflater.end();
+      }
+      result.flip();
+      return result.asReadOnlyBuffer();
+    }
+  }
+
+  /**
+   * Skip {@code n} bytes with {@linkplain InputStream#skip(long)}, which seeks in streams of files
+   * instead of reading the skipped bytes.
+   */
+  private static void skip(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException("The compressed object is truncated.");
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    Optional<ByteBuf> buffer = base.getByteBuf(id);
+    if (buffer.isPresent() && isHeader(buffer.get())) {
+      buffer.get().release();
+      return Optional.empty();
+    }
+    return buffer;
+  }
+
+  @Override
+  @SneakyThrows
+  public Optional<FileChannel> getFileChannel(Long id) {
+    Optional<FileChannel> channel = base.getFileChannel(id);
+    if (channel.isPresent()) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      channel.get().read(header, 0);
+      header.flip();
+      if (isHeader(header)) {
+        channel.get().close();
+        return Optional.empty();
+      }
+    }
+    return channel;
+  }
+
+  @Override
+  public Long delete(Long id) {
+    return base.delete(id);
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return base.isExist(id);
+  }
+
+  private static boolean isHeader(ByteBuffer buffer) {
+    return buffer.remaining() >= HEADER_SIZE && buffer.getLong() == MAGIC;
+  }
+
+  private static boolean isHeader(ByteBuf buffer) {
+    return buffer.readableBytes() >= HEADER_SIZE && buffer.getLong(buffer.readerIndex()) == MAGIC;
+  }
+
+  private static byte[] deflate(byte[] data, int length, Deflater deflater) {
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    byte[] buffer = new byte[length + 64];
+    int size = 0;
+    while (!deflater.finished()) {
+      if (size == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      size += deflater.deflate(buffer, size, buffer.length - size);
+    }
+    return Arrays.copyOf(buffer, size);
+  }
+
+  /**
+   * Get the raw bytes of a stored frame.
+   */
+  private static byte[] block(ByteBuffer stored, int rawLength, Inflater inflater) {
+    byte[] data = new byte[stored.remaining()];
+    stored.get(data);
+    if (data.length == rawLength) {
+      return data;
+    }
+
+    inflater.reset();
+    inflater.setInput(data);
+    byte[] raw = new byte[rawLength];
+    try {
+      int size = 0;
+      while (size < rawLength && !inflater.finished()) {
+        int n = inflater.inflate(raw, size, rawLength - size);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        size += n;
+      }
+      if (size != rawLength) {
+        throw new IllegalStateException("Corrupted compressed block, expected " + rawLength + " bytes but got " + size + ".");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupted compressed block.", e);
+    }
+    return raw;
+  }
+
+  /**
+   * Encodes the content into the header and frames while it is read.
+   */
+  private static class FramingInputStream extends InputStream {
+
+    private final InputStream content;
+
+    private final Deflater deflater;
+
+    private byte[] frame;
+
+    private int position;
+
+    private boolean finished;
+
+    FramingInputStream(InputStream content, byte codec) {
+      this.content = content;
+      this.deflater = codec == CODEC_DEFLATE ? new Deflater(Deflater.BEST_SPEED) : null;
+      this.frame = ByteBuffer.allocate(HEADER_SIZE).putLong(MAGIC).put(codec).array();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (position == frame.length) {
+        if (finished) {
+          return -1;
+        }
+        nextFrame();
+      }
+      int n = Math.min(len, frame.length - position);
+      System.arraycopy(frame, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    private void nextFrame() throws IOException {
+      byte[] block = new byte[BLOCK_SIZE];
+      int length = IOUtils.read(content, block);
+      if (length == 0) {
+        finished = true;
+        frame = new byte[FRAME_HEADER_SIZE];
+      } else {
+        byte[] stored = Objects.isNull(deflater) ? null : deflate(block, length, deflater);
+        if (Objects.isNull(stored) || stored.length >= length) {
+          stored = Arrays.copyOf(block, length);
+        }
+        frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + stored.length)
+            .putInt(length)
+            .putInt(stored.length)
+            .put(stored)
+            .array();
+      }
+      position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (Objects.nonNull(deflater)) {
+        deflater.end();
+      }
+      content.close();
+    }
+
+  }
+
+  /**
+   * Decodes the frames that follow the header while they are read.
+   */
+  private static class DeframingInputStream extends InputStream {
+
+    private final DataInputStream in;
+
+    private final Inflater inflater = new Inflater();
+
+    private byte[] block = new byte[0];
+
+    private int position;
+
+    private boolean finished;
+
+    DeframingInputStream(InputStream in) {
+      this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (position == block.length) {
+        if (finished) {
+          return -1;
+        }
+        nextBlock();
+      }
+      int n = Math.min(len, block.length - position);
+      System.arraycopy(block, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    private void nextBlock() throws IOException {
+      int rawLength;
+      int storedLength;
+      try {
+        rawLength = in.readInt();
+        storedLength = in.readInt();
+      } catch (EOFException e) {
+        throw new IOException("The compressed object is truncated.", e);
+      }
+
+      if (rawLength == 0) {
+        finished = true;
+        block = new byte[0];
+      } else {
+        byte[] stored = new byte[storedLength];
+        in.readFully(stored);
+        block = block(ByteBuffer.wrap(stored), rawLength, inflater);
+      }
+      position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      inflater.end();
+      in.close();
+    }
+
+  }
+
+}
@@ -1,8 +1,11 @@
 package com.robothy.s3.core.storage;
 
+import io.netty.buffer.ByteBuf;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * A {@linkplain  CopyOnAccessStorage} contains a base storage. When access
@@ -22,9 +25,20 @@ class CopyOnAccessStorage implements Storage {
    * @param base the base storage is where objects copy from.
    */
   CopyOnAccessStorage(Storage base) {
+    this(base, Storage.createInMemory());
+  }
+
+  /**
+   * Create a {@linkplain CopyOnAccessStorage} instance with a base storage.
+   *
+   * @param base the base storage is where objects copy from.
+   * @param real the storage is where objects copy to.
+   */
+  CopyOnAccessStorage(Storage base, Storage real) {
     Objects.requireNonNull(base);
+    Objects.requireNonNull(real);
     this.base = base;
-    this.real = Storage.createInMemory();
+    this.real = real;
   }
 
   @Override
@@ -59,6 +73,23 @@ class CopyOnAccessStorage implements Storage {
     return this.real.getInputStream(id);
   }
 
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    copyIfAbsent(id);
+    return this.real.read(id, offset, length);
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    copyIfAbsent(id);
+    return this.real.getByteBuf(id);
+  }
+
+  private void copyIfAbsent(Long id) {
+    if (!this.real.isExist(id)) {
+      this.real.put(id, this.base.getInputStream(id));
+    }
+  }
 
   @Override
   public Long delete(Long id) {
@@ -0,0 +1,448 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.util.DigestingInputStream;
+import com.robothy.s3.core.util.IdUtils;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import io.netty.buffer.ByteBuf;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A {@linkplain Storage} decorator that stores identical content only once.
+ *
+ * <p>Content is stored in the base storage as blobs keyed by the SHA-256 digest of the content,
+ * which is computed while the content is written. Each object ID references a blob, and a blob
+ * is deleted from the base storage with its last reference. IDs that don't reference a blob,
+ * e.g. objects written before deduplication was enabled, are passed to the base storage as they are.
+ *
+ * <p>If an index file is given, the references are journaled to it and restored on construction,
+ * so that the base storage can be persistent. Records are {@code [MAP][id][blobId][size][digest]}
+ * and {@code [UNMAP][id]}; the journal is rewritten with the live references on construction.
+ *
+ * <p>The references are changed under the monitor of the storage, which is never held for I/O. The
+ * records of a change are queued in order and written to the journal after the monitor is released,
+ * then the blobs released by the change are deleted from the base storage. The journal is forced with
+ * the {@linkplain FileSyncer} before a change returns, so that it is as durable as the objects.
+ *
+ * <p>A read-only storage restores the references without changing the index file or the base storage,
+ * e.g. to read the initial data of another data directory, and rejects writes of deduplicated objects.
+ */
+@Slf4j
+class DeduplicatingStorage implements Storage {
+
+  private static final byte MAP = 1;
+
+  private static final byte UNMAP = 2;
+
+  private final Storage base;
+
+  private final Path indexFile;
+
+  private final Consumer<DeduplicationStats> listener;
+
+  private final FileSyncer syncer;
+
+  private final boolean readOnly;
+
+  /**
+   * object ID - blob.
+   */
+  private final Map<Long, Blob> references = new HashMap<>();
+
+  /**
+   * digest - blob.
+   */
+  private final Map<String, Blob> blobs = new HashMap<>();
+
+  private long logicalBytes;
+
+  private long storedBytes;
+
+  /**
+   * Records that are not written to the journal yet.
+   */
+  private final ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+
+  private final DataOutputStream pending = new DataOutputStream(pendingRecords);
+
+  /**
+   * Orders the writes to the journal. It is never acquired with the monitor of the storage held.
+   */
+  private final Object journalLock = new Object();
+
+  private DataOutputStream journal;
+
+  /**
+   * Create a {@linkplain DeduplicatingStorage} instance.
+   *
+   * @param base the storage where blobs are stored.
+   * @param indexFile the file where references are journaled; or {@code null} to keep them in memory only.
+   * @param listener receives the statistics after each change; or {@code null}.
+   */
+  DeduplicatingStorage(Storage base, Path indexFile, Consumer<DeduplicationStats> listener) {
+    this(base, indexFile, listener, FileSyncer.none(), false);
+  }
+
+  /**
+   * Create a {@linkplain DeduplicatingStorage} instance.
+   *
+   * @param base the storage where blobs are stored.
+   * @param indexFile the file where references are journaled; or {@code null} to keep them in memory only.
+   * @param listener receives the statistics after each change; or {@code null}.
+   * @param syncer forces the index file to the disk.
+   * @param readOnly whether to restore the references without changing the index file or the base storage.
+   */
+  DeduplicatingStorage(Storage base, Path indexFile, Consumer<DeduplicationStats> listener, FileSyncer syncer,
+      boolean readOnly) {
+    Objects.requireNonNull(base);
+    Objects.requireNonNull(syncer);
+    this.base = base;
+    this.indexFile = indexFile;
+    this.listener = listener;
+    this.syncer = syncer;
+    this.readOnly = readOnly;
+    if (Objects.nonNull(indexFile)) {
+      load();
+    }
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    checkWritable(id);
+    String digest = Base64.getEncoder().encodeToString(DigestUtils.sha256(data));
+    Change change = null;
+    synchronized (this) {
+      Blob blob = blobs.get(digest);
+      if (Objects.nonNull(blob)) {
+        change = map(id, blob);
+      }
+    }
+
+    if (Objects.isNull(change)) {
+      Long blobId = base.put(IdUtils.defaultGenerator().nextId(), data);
+      change = commit(id, blobId, data.length, digest);
+    }
+    apply(change);
+    return id;
+  }
+
+  @Override
+  public Long put(Long id, InputStream data) {
+    checkWritable(id);
+    DigestingInputStream digestingData = new DigestingInputStream(data, CheckSumAlgorithm.SHA256);
+    Long blobId = base.put(IdUtils.defaultGenerator().nextId(), digestingData);
+    apply(commit(id, blobId, digestingData.getCount(), digestingData.getChecksum()));
+    return id;
+  }
+
+  /**
+   * Reference the written blob, or an existing blob with the same digest. In the latter case
+   * the written blob is deleted.
+   */
+  private synchronized Change commit(Long id, Long blobId, long size, String digest) {
+    Blob blob = blobs.get(digest);
+    boolean duplicate = Objects.nonNull(blob);
+    if (!duplicate) {
+      blob = new Blob(blobId, size, digest);
+      blobs.put(digest, blob);
+      storedBytes += size;
+    }
+    Change change = map(id, blob);
+    if (duplicate) {
+      change.deletedBlobs.add(blobId);
+    }
+    return change;
+  }
+
+  private Change map(Long id, Blob blob) {
+    Change change = new Change();
+    journal(out -> {
+      out.writeByte(MAP);
+      out.writeLong(id);
+      out.writeLong(blob.id);
+      out.writeLong(blob.size);
+      out.writeUTF(blob.digest);
+    });
+    blob.references++;
+    logicalBytes += blob.size;
+    Blob previous = references.put(id, blob);
+    if (Objects.isNull(previous)) {
+      // Override an object that was written without deduplication.
+      change.overridden = id;
+    } else {
+      release(previous, change);
+    }
+    change.stats = new DeduplicationStats(logicalBytes, storedBytes);
+    return change;
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    return base.getBytes(resolve(id));
+  }
+
+  @Override
+  public InputStream getInputStream(Long id) {
+    return base.getInputStream(resolve(id));
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    return base.read(resolve(id), offset, length);
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    return base.getByteBuf(resolve(id));
+  }
+
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return base.getFileChannel(resolve(id));
+  }
+
+  @Override
+  public Long delete(Long id) {
+    checkWritable(id);
+    Change change = null;
+    synchronized (this) {
+      Blob blob = references.remove(id);
+      if (Objects.nonNull(blob)) {
+        change = new Change();
+        journal(out -> {
+          out.writeByte(UNMAP);
+          out.writeLong(id);
+        });
+        release(blob, change);
+        change.stats = new DeduplicationStats(logicalBytes, storedBytes);
+      }
+    }
+
+    if (Objects.isNull(change)) {
+      return base.delete(id);
+    }
+    apply(change);
+    return id;
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    synchronized (this) {
+      if (references.containsKey(id)) {
+        return true;
+      }
+    }
+    return base.isExist(id);
+  }
+
+  /**
+   * Get the current statistics.
+   *
+   * @return deduplication statistics.
+   */
+  synchronized DeduplicationStats getStats() {
+    return new DeduplicationStats(logicalBytes, storedBytes);
+  }
+
+  private synchronized Long resolve(Long id) {
+    Blob blob = references.get(id);
+    return Objects.isNull(blob) ? id : blob.id;
+  }
+
+  private void checkWritable(Long id) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Cannot change object id='" + id + "' of a read-only storage.");
+    }
+  }
+
+  /**
+   * Remove a reference of the blob. The blob is deleted by the change with its last reference.
+   */
+  private void release(Blob blob, Change change) {
+    blob.references--;
+    logicalBytes -= blob.size;
+    if (blob.references == 0) {
+      blobs.remove(blob.digest);
+      storedBytes -= blob.size;
+      change.deletedBlobs.add(blob.id);
+    }
+  }
+
+  /**
+   * Complete a change without the monitor held: write its records to the journal, then delete what it released.
+   */
+  private void apply(Change change) {
+    flushJournal();
+    if (Objects.nonNull(change.overridden) && base.isExist(change.overridden)) {
+      base.delete(change.overridden);
+    }
+    change.deletedBlobs.forEach(base::delete);
+    if (Objects.nonNull(listener)) {
+      listener.accept(change.stats);
+    }
+  }
+
+  @SneakyThrows
+  private void journal(JournalWriter writer) {
+    if (Objects.nonNull(journal)) {
+      writer.write(pending);
+    }
+  }
+
+  /**
+   * Write the pending records to the journal and force it. Records queued by other changes meanwhile are
+   * written as well; the journal is forced after the lock is released, so that concurrent changes can be
+   * forced together.
+   */
+  @SneakyThrows
+  private void flushJournal() {
+    if (Objects.isNull(journal)) {
+      return;
+    }
+    synchronized (journalLock) {
+      byte[] records;
+      synchronized (this) {
+        records = pendingRecords.toByteArray();
+        pendingRecords.reset();
+      }
+      if (records.length > 0) {
+        journal.write(records);
+        journal.flush();
+      }
+    }
+    syncer.sync(indexFile);
+  }
+
+  /**
+   * Replay the journal, then rewrite it with the live references only. A read-only storage only replays it.
+   */
+  @SneakyThrows
+  private void load() {
+    if (!readOnly) {
+      Files.createDirectories(indexFile.toAbsolutePath().getParent());
+    }
+    if (Files.exists(indexFile)) {
+      Map<Long, Blob> blobsById = new HashMap<>();
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+        while (true) {
+          byte type;
+          try {
+            type = in.readByte();
+          } catch (EOFException e) {
+            break;
+          }
+
+          try {
+            long id = in.readLong();
+            if (type == MAP) {
+              long blobId = in.readLong();
+              long size = in.readLong();
+              String digest = in.readUTF();
+              Blob blob = blobsById.computeIfAbsent(blobId, key -> new Blob(key, size, digest));
+              Optional.ofNullable(references.put(id, blob)).ifPresent(previous -> previous.references--);
+              blob.references++;
+            } else {
+              Optional.ofNullable(references.remove(id)).ifPresent(previous -> previous.references--);
+            }
+          } catch (EOFException e) {
+            log.warn("Ignored the truncated last record of {}.", indexFile);
+            break;
+          }
+        }
+      }
+
+      blobsById.values().forEach(blob -> {
+        if (blob.references > 0) {
+          blobs.put(blob.digest, blob);
+          storedBytes += blob.size;
+          logicalBytes += blob.size * blob.references;
+        } else if (!readOnly && base.isExist(blob.id)) {
+          base.delete(blob.id);
+        }
+      });
+    }
+    if (readOnly) {
+      return;
+    }
+
+    Path snapshot = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshot)))) {
+      for (Map.Entry<Long, Blob> reference : references.entrySet()) {
+        Blob blob = reference.getValue();
+        out.writeByte(MAP);
+        out.writeLong(reference.getKey());
+        out.writeLong(blob.id);
+        out.writeLong(blob.size);
+        out.writeUTF(blob.digest);
+      }
+    }
+    syncer.sync(snapshot);
+    Files.move(snapshot, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncer.sync(indexFile.toAbsolutePath().getParent());
+    OutputStream out = Files.newOutputStream(indexFile, StandardOpenOption.APPEND);
+    journal = new DataOutputStream(new BufferedOutputStream(out));
+  }
+
+  private interface JournalWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static class Blob {
+
+    private final long id;
+
+    private final long size;
+
+    private final String digest;
+
+    private int references;
+
+    Blob(long id, long size, String digest) {
+      this.id = id;
+      this.size = size;
+      this.digest = digest;
+    }
+
+  }
+
+  /**
+   * What a change of the references leaves to do once the monitor is released.
+   */
+  private static class Change {
+
+    /**
+     * An ID mapped for the first time, which is deleted from the base storage if it was written there.
+     */
+    private Long overridden;
+
+    private final List<Long> deletedBlobs = new ArrayList<>();
+
+    private DeduplicationStats stats;
+
+  }
+
+}
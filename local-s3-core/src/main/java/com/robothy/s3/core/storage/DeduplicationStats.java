@@ -0,0 +1,42 @@
+package com.robothy.s3.core.storage;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Statistics of a deduplicating storage.
+ */
+@Getter
+@ToString
+public class DeduplicationStats {
+
+  /**
+   * Total size of all objects as written by clients.
+   */
+  private final long logicalBytes;
+
+  /**
+   * Total size of the distinct content that is actually stored.
+   */
+  private final long storedBytes;
+
+  DeduplicationStats(long logicalBytes, long storedBytes) {
+    this.logicalBytes = logicalBytes;
+    this.storedBytes = storedBytes;
+  }
+
+  /**
+   * Bytes not stored because the content was stored already.
+   */
+  public long getSavedBytes() {
+    return logicalBytes - storedBytes;
+  }
+
+  /**
+   * The ratio of logical bytes to stored bytes; {@code 1.0} if nothing is stored.
+   */
+  public double getRatio() {
+    return storedBytes == 0 ? 1.0 : (double) logicalBytes / storedBytes;
+  }
+
+}
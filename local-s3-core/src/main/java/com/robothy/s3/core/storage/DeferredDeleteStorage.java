@@ -0,0 +1,91 @@
+package com.robothy.s3.core.storage;
+
+import io.netty.buffer.ByteBuf;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A {@linkplain Storage} decorator that hands the deletes made by a bucket change to the
+ * {@linkplain BucketMetadataPersister}, which deletes the objects once the change is persisted. Otherwise,
+ * a crash after the delete and before the flush would leave persisted metadata that references deleted
+ * objects. Deletes made outside a change are passed to the base storage at once.
+ *
+ * <p>A deferred object stays readable until it is deleted, but {@linkplain #delete(Long)} still fails at
+ * once if the object doesn't exist.
+ */
+class DeferredDeleteStorage implements Storage {
+
+  private final Storage base;
+
+  private final BucketMetadataPersister persister;
+
+  DeferredDeleteStorage(Storage base, BucketMetadataPersister persister) {
+    Objects.requireNonNull(base);
+    Objects.requireNonNull(persister);
+    this.base = base;
+    this.persister = persister;
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    return base.put(id, data);
+  }
+
+  @Override
+  public Long put(Long id, InputStream data) {
+    return base.put(id, data);
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    return base.getBytes(id);
+  }
+
+  @Override
+  public InputStream getInputStream(Long id) {
+    return base.getInputStream(id);
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    return base.read(id, offset, length);
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    return base.getByteBuf(id);
+  }
+
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return base.getFileChannel(id);
+  }
+
+  @Override
+  public boolean retain(Long id) {
+    return base.retain(id);
+  }
+
+  @Override
+  public Closeable lease(Long id) {
+    return base.lease(id);
+  }
+
+  @Override
+  public Long delete(Long id) {
+    if (!base.isExist(id)) {
+      throw new IllegalArgumentException("Object id='" + id + "' not exist.");
+    }
+    return persister.deferDelete(() -> base.delete(id)) ? id : base.delete(id);
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return base.isExist(id);
+  }
+
+}
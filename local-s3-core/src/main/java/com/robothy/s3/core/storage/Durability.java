@@ -0,0 +1,26 @@
+package com.robothy.s3.core.storage;
+
+/**
+ * When written object data and metadata are forced to the disk before a request is acknowledged.
+ */
+public enum Durability {
+
+  /**
+   * Never force writes; the operating system writes them back eventually. A power loss may lose
+   * acknowledged writes, and leave metadata that references object data that was never written.
+   */
+  NONE,
+
+  /**
+   * Force the files written by each request before it is acknowledged.
+   */
+  PER_REQUEST,
+
+  /**
+   * Force the files written by concurrent requests in batches, and acknowledge each request once
+   * its batch is forced. A batch is forced once the group commit window elapsed since its first
+   * request or it reached the max number of requests.
+   */
+  GROUP_COMMIT,
+
+}
@@ -0,0 +1,281 @@
+package com.robothy.s3.core.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Forces written files to the disk according to a {@linkplain Durability}. Storages call
+ * {@linkplain #sync(Path...)} after writing and before returning, so that a request is acknowledged
+ * only after the files it wrote are durable.
+ *
+ * <p>With {@linkplain Durability#GROUP_COMMIT}, callers enqueue their files and wait. A committer thread
+ * takes the queued requests once the window elapsed since the first of them or the max number of requests
+ * is queued, forces each distinct file once, and then releases the callers. The committer thread exits
+ * when it is idle and is restarted by the next request.
+ *
+ * <p>A file that was deleted before it is forced is skipped, its content was either deleted or moved to a
+ * file that is forced by the mover. Directories are forced as well, so that new files are not lost; platforms
+ * that cannot open a directory skip them.
+ */
+@Slf4j
+public class FileSyncer {
+
+  private static final FileSyncer NONE = new FileSyncer(Durability.NONE, 0, 0, new FsyncStats());
+
+  private static final long IDLE_TIMEOUT_MILLIS = 60_000;
+
+  private final Durability durability;
+
+  private final long windowNanos;
+
+  private final int maxRequests;
+
+  private final FsyncStats stats;
+
+  private final Object lock = new Object();
+
+  private List<Request> queue = new ArrayList<>();
+
+  private long firstQueuedAt;
+
+  private boolean committing;
+
+  private FileSyncer(Durability durability, long windowMillis, int maxRequests, FsyncStats stats) {
+    this.durability = durability;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxRequests = maxRequests;
+    this.stats = stats;
+  }
+
+  /**
+   * Create a {@linkplain FileSyncer} with the durability options.
+   *
+   * @param storageOptions the durability options.
+   * @return a {@linkplain FileSyncer} instance.
+   */
+  public static FileSyncer create(StorageOptions storageOptions) {
+    Durability durability = Optional.ofNullable(storageOptions.getDurability()).orElse(Durability.NONE);
+    if (durability == Durability.NONE) {
+      return NONE;
+    }
+    if (durability == Durability.GROUP_COMMIT
+        && (storageOptions.getGroupCommitWindowMillis() < 0 || storageOptions.getGroupCommitMaxRequests() < 1)) {
+      throw new IllegalArgumentException("Invalid group commit window " + storageOptions.getGroupCommitWindowMillis()
+          + " ms or max requests " + storageOptions.getGroupCommitMaxRequests() + ".");
+    }
+    return new FileSyncer(durability, storageOptions.getGroupCommitWindowMillis(),
+        storageOptions.getGroupCommitMaxRequests(),
+        Optional.ofNullable(storageOptions.getFsyncStats()).orElseGet(FsyncStats::new));
+  }
+
+  /**
+   * Get a {@linkplain FileSyncer} that never forces files.
+   *
+   * @return a {@linkplain FileSyncer} of {@linkplain Durability#NONE}.
+   */
+  public static FileSyncer none() {
+    return NONE;
+  }
+
+  /**
+   * Whether files are forced.
+   */
+  boolean isEnabled() {
+    return durability != Durability.NONE;
+  }
+
+  /**
+   * Force the files and directories to the disk, and return once they are durable.
+   *
+   * @param paths written files and directories.
+   * @throws IllegalStateException if a file cannot be forced.
+   */
+  void sync(Path... paths) {
+    if (durability == Durability.NONE || paths.length == 0) {
+      return;
+    }
+
+    if (durability == Durability.PER_REQUEST) {
+      Set<Path> files = new LinkedHashSet<>(Arrays.asList(paths));
+      long start = System.nanoTime();
+      Map<Path, IOException> failures = force(files);
+      stats.recordSync(System.nanoTime() - start, 1, files.size());
+      if (!failures.isEmpty()) {
+        Map.Entry<Path, IOException> failed = failures.entrySet().iterator().next();
+        throw failure(failed.getKey(), failed.getValue());
+      }
+      return;
+    }
+
+    Request request = new Request(paths);
+    synchronized (lock) {
+      if (queue.isEmpty()) {
+        firstQueuedAt = System.nanoTime();
+      }
+      queue.add(request);
+      if (!committing) {
+        startCommitter();
+      } else if (queue.size() == 1 || queue.size() >= maxRequests) {
+        lock.notifyAll();
+      }
+    }
+
+    try {
+      request.done.join();
+    } catch (CompletionException e) {
+      throw (IllegalStateException) e.getCause();
+    }
+  }
+
+  /**
+   * Start a committer thread. The caller must hold the lock.
+   */
+  private void startCommitter() {
+    committing = true;
+    Thread committer = new Thread(this::commitLoop, "local-s3-group-commit");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  private void commitLoop() {
+    boolean running = true;
+    try {
+      while (running) {
+        List<Request> batch;
+        synchronized (lock) {
+          try {
+            long idleSince = System.nanoTime();
+            while (queue.isEmpty()) {
+              long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+              if (idle >= IDLE_TIMEOUT_MILLIS) {
+                running = false;
+                committing = false;
+                return;
+              }
+              lock.wait(IDLE_TIMEOUT_MILLIS - idle);
+            }
+
+            long remaining;
+            while (queue.size() < maxRequests && (remaining = firstQueuedAt + windowNanos - System.nanoTime()) > 0) {
+              TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+          } catch (InterruptedException e) {
+            // Commit the queued requests and exit; the next request starts a new committer.
+            running = false;
+            committing = false;
+          }
+
+          batch = queue;
+          queue = new ArrayList<>();
+        }
+        commit(batch);
+      }
+    } finally {
+      if (running) {
+        // The committer failed; hand the queued requests over to a new one.
+        synchronized (lock) {
+          committing = false;
+          if (!queue.isEmpty()) {
+            startCommitter();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Force the files of the batch, and complete the requests. A request whose files cannot be forced,
+   * or that fails unexpectedly, is completed with an {@linkplain IllegalStateException}.
+   */
+  private void commit(List<Request> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      forceBatch(batch);
+    } catch (Throwable e) {
+      log.error("Failed to commit {} sync requests.", batch.size(), e);
+      IllegalStateException failure = new IllegalStateException("Failed to force files to the disk.", e);
+      batch.forEach(request -> request.done.completeExceptionally(failure));
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+    }
+  }
+
+  private void forceBatch(List<Request> batch) {
+    Set<Path> files = new LinkedHashSet<>();
+    batch.forEach(request -> files.addAll(Arrays.asList(request.paths)));
+    long start = System.nanoTime();
+    Map<Path, IOException> failures = force(files);
+    stats.recordSync(System.nanoTime() - start, batch.size(), files.size());
+
+    for (Request request : batch) {
+      Optional<Path> failed = Arrays.stream(request.paths).filter(failures::containsKey).findFirst();
+      if (failed.isPresent()) {
+        request.done.completeExceptionally(failure(failed.get(), failures.get(failed.get())));
+      } else {
+        request.done.complete(null);
+      }
+    }
+  }
+
+  /**
+   * Force each file.
+   *
+   * @return files that failed to be forced - the failure.
+   */
+  private static Map<Path, IOException> force(Set<Path> files) {
+    Map<Path, IOException> failures = new HashMap<>();
+    for (Path file : files) {
+      boolean directory = Files.isDirectory(file);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        channel.force(true);
+      } catch (NoSuchFileException e) {
+        // Deleted or moved; see the class documentation.
+      } catch (IOException e) {
+        if (directory) {
+          log.debug("Cannot force directory {}.", file, e);
+        } else {
+          failures.put(file, e);
+        }
+      }
+    }
+    return failures;
+  }
+
+  private static IllegalStateException failure(Path file, IOException cause) {
+    return new IllegalStateException("Failed to force " + file + " to the disk.", cause);
+  }
+
+  private static final class Request {
+
+    private final Path[] paths;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private Request(Path[] paths) {
+      this.paths = Objects.requireNonNull(paths);
+    }
+
+  }
+
+}
@@ -1,45 +1,106 @@
 package com.robothy.s3.core.storage;
 
 import com.robothy.s3.core.model.internal.BucketMetadata;
-import com.robothy.s3.core.util.JsonUtils;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+/**
+ * Stores each bucket as a checkpoint file plus an append-only journal. See {@linkplain BucketMetadataJournal}.
+ * Buckets with more object keys than the shard size are split into key-range shards that are loaded on access,
+ * and unloaded beyond the max number of loaded shards. See {@linkplain BucketMetadataShards}. A bucket that is
+ * sharded after it was fetched is attached to its shards. Changes are forced to the disk by a
+ * {@linkplain FileSyncer} before the store methods return.
+ */
 @Slf4j
-public class FileSystemBucketMetadataStore implements MetadataStore<BucketMetadata> {
+public class FileSystemBucketMetadataStore implements BucketMetadataStore {
 
-  private static final String BUCKET_METADATA_FILE_SUFFIX = ".bucket.meta";
+  private static final String BUCKET_METADATA_FILE_SUFFIX = BucketMetadataJournal.CHECKPOINT_SUFFIX;
 
-  public static MetadataStore<BucketMetadata> create(Path dataPath) {
+  public static BucketMetadataStore create(Path dataPath) {
+    return create(dataPath, FileSyncer.none());
+  }
+
+  /**
+   * Create a {@linkplain FileSystemBucketMetadataStore} that forces changes to the disk.
+   *
+   * @param dataPath the directory of the metadata files.
+   * @param syncer forces changes to the disk.
+   * @return a {@linkplain BucketMetadataStore} instance.
+   */
+  public static BucketMetadataStore create(Path dataPath, FileSyncer syncer) {
+    return create(dataPath, syncer, StorageOptions.DEFAULT_METADATA_SHARD_SIZE);
+  }
+
+  /**
+   * Create a {@linkplain FileSystemBucketMetadataStore} that shards buckets with more than
+   * {@code shardSize} object keys.
+   *
+   * @param dataPath the directory of the metadata files.
+   * @param syncer forces changes to the disk.
+   * @param shardSize the number of object keys per shard.
+   * @return a {@linkplain BucketMetadataStore} instance.
+   */
+  public static BucketMetadataStore create(Path dataPath, FileSyncer syncer, int shardSize) {
+    return create(dataPath, syncer, shardSize, 0);
+  }
+
+  /**
+   * Create a {@linkplain FileSystemBucketMetadataStore} that shards buckets with more than
+   * {@code shardSize} object keys, and keeps at most {@code maxLoadedShards} shards of a fetched bucket loaded.
+   *
+   * @param dataPath the directory of the metadata files.
+   * @param syncer forces changes to the disk.
+   * @param shardSize the number of object keys per shard.
+   * @param maxLoadedShards the max number of loaded shards per bucket; {@code 0} if unlimited.
+   * @return a {@linkplain BucketMetadataStore} instance.
+   */
+  public static BucketMetadataStore create(Path dataPath, FileSyncer syncer, int shardSize, int maxLoadedShards) {
     Objects.requireNonNull(dataPath);
+    Objects.requireNonNull(syncer);
+    if (shardSize < 1 || maxLoadedShards < 0) {
+      throw new IllegalArgumentException("Invalid metadata shard size " + shardSize
+          + " or max loaded shards " + maxLoadedShards + ".");
+    }
     File file = dataPath.toFile();
     if (!file.exists() || !file.isDirectory()) {
       if (!file.mkdirs()) {
         throw new IllegalStateException("Failed to create directory " + dataPath.toAbsolutePath());
       }
     }
-    return new FileSystemBucketMetadataStore(dataPath);
+    return new FileSystemBucketMetadataStore(dataPath, syncer, shardSize, maxLoadedShards);
   }
 
   private final Path dataPath;
 
-  private FileSystemBucketMetadataStore(Path path) {
+  private final FileSyncer syncer;
+
+  private final int shardSize;
+
+  private final int maxLoadedShards;
+
+  private final Map<String, BucketMetadataShards> buckets = new ConcurrentHashMap<>();
+
+  private FileSystemBucketMetadataStore(Path path, FileSyncer syncer, int shardSize, int maxLoadedShards) {
     this.dataPath = path;
+    this.syncer = syncer;
+    this.shardSize = shardSize;
+    this.maxLoadedShards = maxLoadedShards;
   }
 
-  @SneakyThrows
   @Override
   public BucketMetadata fetch(String bucketName) {
     log.debug("Fetching metadata of bucket {}.", bucketName);
-    return JsonUtils.fromJson(new File(dataPath.toFile(), bucketName + BUCKET_METADATA_FILE_SUFFIX), BucketMetadata.class);
+    return bucket(bucketName).read();
   }
 
   @Override
@@ -48,27 +109,77 @@ public class FileSystemBucketMetadataStore implements MetadataStore<BucketMetada
       throw new IllegalArgumentException("Invalid bucket name '" + bucketMetadata.getBucketName() + "'.");
     }
 
-    JsonUtils.toJson(new File(dataPath.toFile(), bucketMetadata.getBucketName() + BUCKET_METADATA_FILE_SUFFIX), bucketMetadata);
+    bucket(bucketMetadata.getBucketName()).checkpoint(bucketMetadata);
     return bucketMetadata.getBucketName();
   }
 
+  @Override
+  public void storeObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+    BucketMetadataShards bucket = bucket(bucketName);
+    bucket.append(key, bucketMetadata);
+    bucket.sync();
+  }
+
+  @Override
+  public void appendObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+    bucket(bucketName).append(key, bucketMetadata);
+  }
+
+  @Override
+  public void sync(String bucketName) {
+    bucket(bucketName).sync();
+  }
+
+  @Override
+  public boolean isDetached(String bucketName, BucketMetadata bucketMetadata) {
+    if (maxLoadedShards == 0 || bucketMetadata.getObjectMap() instanceof ShardedMap) {
+      return false;
+    }
+    BucketMetadataShards bucket = buckets.get(bucketName);
+    return Objects.nonNull(bucket) && bucket.isSharded();
+  }
+
+  @Override
+  public void attach(String bucketName, BucketMetadata bucketMetadata) {
+    BucketMetadataShards bucket = buckets.get(bucketName);
+    if (Objects.nonNull(bucket)) {
+      bucket.attach(bucketMetadata);
+    }
+  }
+
   @Override
   public void delete(String bucketName) {
-    if (!new File(dataPath.toFile(), bucketName + BUCKET_METADATA_FILE_SUFFIX).delete()) {
+    BucketMetadataShards bucket = buckets.remove(bucketName);
+    if (Objects.isNull(bucket)) {
+      bucket = new BucketMetadataShards(dataPath, bucketName, syncer, shardSize, maxLoadedShards);
+    }
+
+    if (!bucket.delete()) {
       throw new IllegalStateException("Failed to delete metadata of bucket " + bucketName);
     }
   }
 
   @Override
-  @SneakyThrows
   public List<BucketMetadata> fetchAll() {
+    return listBucketNames().stream()
+        .map(this::fetch)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  @SneakyThrows
+  public List<String> listBucketNames() {
     try (Stream<Path> pathStream = Files.walk(dataPath, 1)) {
       return pathStream
           .filter(path -> path.toString().endsWith(BUCKET_METADATA_FILE_SUFFIX))
           .map(path -> path.getFileName().toString())
           .map(fileName -> fileName.substring(0, fileName.lastIndexOf(BUCKET_METADATA_FILE_SUFFIX)))
-          .map(this::fetch)
           .collect(Collectors.toList());
     }
   }
+
+  private BucketMetadataShards bucket(String bucketName) {
+    return buckets.computeIfAbsent(bucketName, name -> new BucketMetadataShards(dataPath, name, syncer, shardSize, maxLoadedShards));
+  }
+
 }
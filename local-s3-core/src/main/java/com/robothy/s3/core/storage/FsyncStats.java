@@ -0,0 +1,107 @@
+package com.robothy.s3.core.storage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram of forcing files to the disk. An instance can be passed to the
+ * storage to observe it from outside.
+ */
+public class FsyncStats {
+
+  /**
+   * Upper bounds in microseconds of the histogram buckets; the last bucket has no upper bound.
+   */
+  private static final long[] BUCKET_BOUNDS_MICROS = {
+      100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 1_000_000, Long.MAX_VALUE
+  };
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length];
+
+  private final LongAdder syncs = new LongAdder();
+
+  private final LongAdder requests = new LongAdder();
+
+  private final LongAdder files = new LongAdder();
+
+  private final LongAdder totalNanos = new LongAdder();
+
+  public FsyncStats() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Number of syncs; a sync forces all files of a batch, or of a request if requests are not batched.
+   */
+  public long getSyncs() {
+    return syncs.sum();
+  }
+
+  /**
+   * Number of requests acknowledged after their files were forced.
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * Number of forced files and directories.
+   */
+  public long getFiles() {
+    return files.sum();
+  }
+
+  /**
+   * Average latency of a sync in microseconds; {@code 0.0} if nothing was synced.
+   */
+  public double getMeanLatencyMicros() {
+    long syncCount = getSyncs();
+    return syncCount == 0 ? 0.0 : totalNanos.sum() / 1000.0 / syncCount;
+  }
+
+  /**
+   * The sync latency histogram.
+   *
+   * @return upper bound of each bucket in microseconds - number of syncs in the bucket, in the order
+   *     of the bounds. The bound of the last bucket is {@linkplain Long#MAX_VALUE}.
+   */
+  public Map<Long, Long> getLatencyHistogram() {
+    Map<Long, Long> histogram = new LinkedHashMap<>();
+    for (int i = 0; i < buckets.length; i++) {
+      histogram.put(BUCKET_BOUNDS_MICROS[i], buckets[i].sum());
+    }
+    return Collections.unmodifiableMap(histogram);
+  }
+
+  void recordSync(long nanos, int requestCount, int fileCount) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    int bucket = 0;
+    while (micros > BUCKET_BOUNDS_MICROS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    syncs.increment();
+    requests.add(requestCount);
+    files.add(fileCount);
+    totalNanos.add(nanos);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder histogram = new StringBuilder();
+    getLatencyHistogram().forEach((bound, count) -> {
+      if (count > 0) {
+        histogram.append(histogram.length() == 0 ? "" : ", ")
+            .append(bound == Long.MAX_VALUE ? "inf" : "le " + bound + "us").append('=').append(count);
+      }
+    });
+    return "FsyncStats(syncs=" + getSyncs() + ", requests=" + getRequests() + ", files=" + getFiles()
+        + ", meanLatencyMicros=" + String.format("%.1f", getMeanLatencyMicros()) + ", histogram=[" + histogram + "])";
+  }
+
+}
@@ -1,10 +1,14 @@
 package com.robothy.s3.core.storage;
 
 import com.robothy.s3.core.exception.TotalSizeExceedException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import lombok.SneakyThrows;
@@ -38,17 +42,24 @@ class InMemoryStorage implements Storage {
 
   @Override
   public Long put(Long id, byte[] data) {
-    ensureNotExceedTotalSize(data.length);
-    byte[] copy = Arrays.copyOf(data, data.length);
-    store.put(id, copy);
-    totalSize.addAndGet(data.length);
-    return id;
+    return store(id, Arrays.copyOf(data, data.length));
   }
 
   @Override
   @SneakyThrows
   public Long put(Long id, InputStream data) {
-    return put(id, data.readAllBytes());
+    return store(id, data.readAllBytes());
+  }
+
+  /**
+   * Store {@code data} without copying. Stored arrays are never modified, so that they can be
+   * shared by read-only views.
+   */
+  private Long store(Long id, byte[] data) {
+    ensureNotExceedTotalSize(data.length);
+    store.put(id, data);
+    totalSize.addAndGet(data.length);
+    return id;
   }
 
   @Override
@@ -60,8 +71,25 @@ class InMemoryStorage implements Storage {
 
   @Override
   public InputStream getInputStream(Long id) {
-    byte[] data = getBytes(id);
-    return new ByteArrayInputStream(data);
+    ensureObjectExist(id);
+    return new ByteArrayInputStream(store.get(id));
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    ensureObjectExist(id);
+    byte[] data = store.get(id);
+    if (offset < 0 || length < 0 || offset + length > data.length) {
+      throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+          + " exceeds object id='" + id + "'.");
+    }
+    return ByteBuffer.wrap(data, (int) offset, length).slice().asReadOnlyBuffer();
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    ensureObjectExist(id);
+    return Optional.of(Unpooled.wrappedBuffer(store.get(id)).asReadOnly());
   }
 
   @Override
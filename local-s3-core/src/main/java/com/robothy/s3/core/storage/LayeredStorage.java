@@ -1,7 +1,11 @@
 package com.robothy.s3.core.storage;
 
+import io.netty.buffer.ByteBuf;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * A {@linkplain LayeredStorage} has a backend and frontend {@linkplain Storage}.
@@ -50,6 +54,21 @@ class LayeredStorage implements Storage {
     return front.isExist(id) ? front.getInputStream(id) : back.getInputStream(id);
   }
 
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    return front.isExist(id) ? front.read(id, offset, length) : back.read(id, offset, length);
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    return front.isExist(id) ? front.getByteBuf(id) : back.getByteBuf(id);
+  }
+
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return front.isExist(id) ? front.getFileChannel(id) : back.getFileChannel(id);
+  }
+
   /**
    * Delete the object ID from the front storage if exists.
    *
@@ -1,83 +1,377 @@
 package com.robothy.s3.core.storage;
 
 import com.robothy.s3.core.util.PathUtils;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 
 /**
  * An implementation of {@linkplain Storage} based on a local directory.
+ *
+ * <p>Objects are fanned out to two levels of directories {@code <directory>/<hh>/<hh>/<id>}, where
+ * the hex buckets are derived from a hash of the ID, so that no directory holds more than a small
+ * fraction of the objects.
+ *
+ * <p>Objects of a directory written before sharding are stored as {@code <directory>/<id>}. If such
+ * objects are found on construction, a background task moves them to their shards, and accessed
+ * objects are moved on first access. An object that can't be moved is read from the flat layout, and
+ * the background task skips it; the flat layout is checked until no flat objects remain.
+ *
+ * <p>A read-only storage reads objects from both layouts, and never creates directories, moves,
+ * writes or deletes objects, so that e.g. initial data can be read without changing it.
+ *
+ * <p>Written objects are forced to the disk by the {@linkplain FileSyncer}, along with the directories
+ * that got new entries.
  */
+@Slf4j
 class LocalFileSystemStorage implements Storage {
 
+  private static final String[] HEX = new String[256];
+
+  static {
+    for (int i = 0; i < HEX.length; i++) {
+      HEX[i] = String.format("%02x", i);
+    }
+  }
+
+  private static final ExecutorService MIGRATOR = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "local-s3-storage-migration");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final Path[] NO_PATHS = new Path[0];
+
   private final Path directory;
 
+  private final FileSyncer syncer;
+
+  private final boolean readOnly;
+
+  /**
+   * Whether objects in the flat layout may exist.
+   */
+  private volatile boolean migrating;
+
   /**
    * Construct a {@linkplain LocalFileSystemStorage} instance.
    *
    * @param dataPath the path is where data stores in.
    */
   public LocalFileSystemStorage(Path dataPath) {
+    this(dataPath, FileSyncer.none());
+  }
+
+  /**
+   * Construct a {@linkplain LocalFileSystemStorage} instance.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param syncer forces written objects to the disk.
+   */
+  LocalFileSystemStorage(Path dataPath, FileSyncer syncer) {
+    this(dataPath, syncer, false);
+  }
+
+  /**
+   * Construct a {@linkplain LocalFileSystemStorage} instance.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param syncer forces written objects to the disk.
+   * @param readOnly whether to only read objects, in either layout, without changing the directory.
+   */
+  LocalFileSystemStorage(Path dataPath, FileSyncer syncer, boolean readOnly) {
     Objects.requireNonNull(dataPath);
+    Objects.requireNonNull(syncer);
     this.directory = dataPath;
+    this.syncer = syncer;
+    this.readOnly = readOnly;
+    if (readOnly) {
+      migrating = Files.isDirectory(directory) && hasFlatObjects();
+      return;
+    }
+
     PathUtils.createDirectoryIfNotExit(directory);
+    if (hasFlatObjects()) {
+      migrating = true;
+      MIGRATOR.execute(this::migrate);
+    }
+  }
+
+  /**
+   * Get the path of an object in the sharded layout.
+   *
+   * @param directory the storage directory.
+   * @param id the object ID.
+   * @return the path of the object file.
+   */
+  static Path path(Path directory, Long id) {
+    long hash = id;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return directory.resolve(HEX[(int) (hash & 0xFF)])
+        .resolve(HEX[(int) ((hash >>> 8) & 0xFF)])
+        .resolve(String.valueOf(id));
   }
 
   @Override
   @SneakyThrows
   public Long put(Long id, byte[] data) {
-    Files.write(Paths.get(directory.toString(), String.valueOf(id)), data,
-        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+    checkWritable(id);
+    Path[] written = toForce(id);
+    Path objectPath = prepare(id);
+    Files.write(objectPath, data, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+    force(written);
     return id;
   }
 
   @Override
   @SneakyThrows
   public Long put(Long id, InputStream data) {
-    Path objectPath = Paths.get(directory.toString(), String.valueOf(id));
+    checkWritable(id);
+    Path[] written = toForce(id);
+    Path objectPath = prepare(id);
     try (InputStream _data = data; OutputStream out = Files.newOutputStream(objectPath, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)) {
       IOUtils.copy(_data, out);
     }
+    force(written);
     return id;
   }
 
   @Override
   @SneakyThrows
   public byte[] getBytes(Long id) {
-    ensureExists(id);
-    return Files.readAllBytes(Paths.get(directory.toString(), String.valueOf(id)));
+    return Files.readAllBytes(existing(id));
   }
 
   @Override
   @SneakyThrows
   public InputStream getInputStream(Long id) {
-    ensureExists(id);
-    return Files.newInputStream(Paths.get(directory.toString(), String.valueOf(id)));
+    return Files.newInputStream(existing(id));
+  }
+
+  /**
+   * Read the range with positional reads, so that no byte before {@code offset} is read.
+   */
+  @Override
+  @SneakyThrows
+  public ByteBuffer read(Long id, long offset, int length) {
+    try (FileChannel channel = FileChannel.open(existing(id), StandardOpenOption.READ)) {
+      if (offset < 0 || length < 0 || offset + length > channel.size()) {
+        throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+            + " exceeds object id='" + id + "'.");
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new EOFException("Object id='" + id + "' was truncated.");
+        }
+      }
+      buffer.flip();
+      return buffer.asReadOnlyBuffer();
+    }
+  }
+
+  @Override
+  @SneakyThrows
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return Optional.of(FileChannel.open(existing(id), StandardOpenOption.READ));
   }
 
   @Override
   @SneakyThrows
   public Long delete(Long id) {
-    ensureExists(id);
-    Files.delete(Paths.get(directory.toString(), String.valueOf(id)));
+    checkWritable(id);
+    Files.delete(existing(id));
     return id;
   }
 
   @Override
   public boolean isExist(Long id) {
-    return Files.exists(Paths.get(directory.toString(), String.valueOf(id)));
+    return Objects.nonNull(locate(id));
   }
 
-  private void ensureExists(Long id) {
-    if (!isExist(id)) {
+  /**
+   * Get the path of an existing object.
+   */
+  private Path existing(Long id) {
+    Path objectPath = locate(id);
+    if (Objects.isNull(objectPath)) {
       throw new IllegalArgumentException("Object id='" + id + "' not exist.");
     }
+    return objectPath;
+  }
+
+  /**
+   * Find the file of an object. An object in the flat layout is moved to its shard first, unless the
+   * storage is read-only; the flat file is used if it is not moved.
+   *
+   * @return the path of the object file; or {@code null} if the object not exists.
+   */
+  private Path locate(Long id) {
+    Path objectPath = path(directory, id);
+    if (!migrating) {
+      return Files.exists(objectPath) ? objectPath : null;
+    }
+
+    if (!readOnly) {
+      migrate(id);
+    }
+    if (Files.exists(objectPath)) {
+      return objectPath;
+    }
+    Path flat = directory.resolve(String.valueOf(id));
+    return Files.isRegularFile(flat) ? flat : null;
+  }
+
+  private void checkWritable(Long id) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Cannot change object id='" + id + "' in read-only " + directory + ".");
+    }
+  }
+
+  /**
+   * Create the shard of the object, and delete the object in the flat layout so that it can't
+   * be migrated over the written one.
+   */
+  @SneakyThrows
+  private Path prepare(Long id) {
+    checkWritable(id);
+    Path objectPath = path(directory, id);
+    Files.createDirectories(objectPath.getParent());
+    if (migrating) {
+      Files.deleteIfExists(directory.resolve(String.valueOf(id)));
+    }
+    return objectPath;
+  }
+
+  /**
+   * Get the paths to force after the object is written; call it before writing the object.
+   * The directories are forced only if the object or its shard is new.
+   */
+  Path[] toForce(Long id) {
+    if (!syncer.isEnabled()) {
+      return NO_PATHS;
+    }
+
+    Path objectPath = path(directory, id);
+    Path shard = objectPath.getParent();
+    if (Files.exists(objectPath)) {
+      return new Path[] {objectPath};
+    }
+    if (Files.isDirectory(shard)) {
+      return new Path[] {objectPath, shard};
+    }
+    return new Path[] {objectPath, shard, shard.getParent(), directory};
+  }
+
+  /**
+   * Force the written paths to the disk.
+   */
+  void force(Path[] written) {
+    syncer.sync(written);
+  }
+
+  /**
+   * Move an object from the flat layout to its shard. If the object exists in the shard already,
+   * the flat one is outdated.
+   *
+   * @return {@code true} if no flat object is left; {@code false} if it could not be moved.
+   */
+  private boolean migrate(Long id) {
+    Path flat = directory.resolve(String.valueOf(id));
+    if (!Files.isRegularFile(flat)) {
+      return true;
+    }
+
+    Path objectPath = path(directory, id);
+    try {
+      Files.createDirectories(objectPath.getParent());
+      Files.move(flat, objectPath);
+    } catch (FileAlreadyExistsException e) {
+      try {
+        Files.deleteIfExists(flat);
+      } catch (IOException deleteException) {
+        log.warn("Failed to delete the outdated object {}.", flat, deleteException);
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      // Moved concurrently.
+    } catch (IOException e) {
+      log.warn("Failed to move object {} to the sharded layout.", flat, e);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Move all objects from the flat layout to their shards. Objects that can't be moved are skipped;
+   * the flat layout is checked until none is left.
+   */
+  private void migrate() {
+    long moved = 0;
+    long failed = 0;
+    try (DirectoryStream<Path> flatObjects = Files.newDirectoryStream(directory, this::isFlatObject)) {
+      for (Path flat : flatObjects) {
+        if (migrate(Long.valueOf(flat.getFileName().toString()))) {
+          moved++;
+        } else {
+          failed++;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Failed to move objects in {} to the sharded layout.", directory, e);
+    }
+
+    try {
+      migrating = hasFlatObjects();
+    } catch (Exception e) {
+      log.error("Failed to list objects in {}.", directory, e);
+    }
+    if (migrating) {
+      log.warn("Moved {} objects in {} to the sharded layout and failed to move {}; objects left in the flat"
+          + " layout are moved on access.", moved, directory, failed);
+    } else {
+      log.info("Moved {} objects in {} to the sharded layout.", moved, directory);
+    }
+  }
+
+  @SneakyThrows
+  private boolean hasFlatObjects() {
+    try (DirectoryStream<Path> flatObjects = Files.newDirectoryStream(directory, this::isFlatObject)) {
+      return flatObjects.iterator().hasNext();
+    }
+  }
+
+  private boolean isFlatObject(Path path) {
+    String name = path.getFileName().toString();
+    if (name.isEmpty() || !Character.isDigit(name.charAt(0)) || !Files.isRegularFile(path)) {
+      return false;
+    }
+    try {
+      return String.valueOf(Long.parseLong(name)).equals(name);
+    } catch (NumberFormatException e) {
+      return false;
+    }
   }
 
 }
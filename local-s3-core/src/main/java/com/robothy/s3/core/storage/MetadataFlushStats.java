@@ -0,0 +1,101 @@
+package com.robothy.s3.core.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@linkplain BucketMetadataPersister} that coalesces metadata changes. An instance can
+ * be passed to the persister to observe it from outside.
+ */
+public class MetadataFlushStats {
+
+  private final LongAdder flushes = new LongAdder();
+
+  private final LongAdder flushedChanges = new LongAdder();
+
+  private final LongAdder totalNanos = new LongAdder();
+
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  private final LongAdder failures = new LongAdder();
+
+  private volatile int dirtyBuckets;
+
+  private volatile long dirtyChanges;
+
+  /**
+   * Number of buckets with changes that are not flushed yet.
+   */
+  public int getDirtyBuckets() {
+    return dirtyBuckets;
+  }
+
+  /**
+   * Number of changes that are not flushed yet.
+   */
+  public long getDirtyChanges() {
+    return dirtyChanges;
+  }
+
+  /**
+   * Number of bucket flushes; a flush persists all changes of a bucket since the previous flush.
+   */
+  public long getFlushes() {
+    return flushes.sum();
+  }
+
+  /**
+   * Number of changes persisted by the flushes.
+   */
+  public long getFlushedChanges() {
+    return flushedChanges.sum();
+  }
+
+  /**
+   * Number of flushes that failed; their changes are flushed again.
+   */
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  /**
+   * Average latency of a flush in microseconds; {@code 0.0} if nothing was flushed.
+   */
+  public double getMeanFlushLatencyMicros() {
+    long flushCount = getFlushes();
+    return flushCount == 0 ? 0.0 : totalNanos.sum() / 1000.0 / flushCount;
+  }
+
+  /**
+   * The max latency of a flush in microseconds.
+   */
+  public long getMaxFlushLatencyMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+  }
+
+  void recordDirty(int buckets, long changes) {
+    this.dirtyBuckets = buckets;
+    this.dirtyChanges = changes;
+  }
+
+  void recordFlush(long nanos, int changes) {
+    flushes.increment();
+    flushedChanges.add(changes);
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  void recordFailure() {
+    failures.increment();
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataFlushStats(dirtyBuckets=" + getDirtyBuckets() + ", dirtyChanges=" + getDirtyChanges()
+        + ", flushes=" + getFlushes() + ", flushedChanges=" + getFlushedChanges() + ", failures=" + getFailures()
+        + ", meanFlushLatencyMicros=" + String.format("%.1f", getMeanFlushLatencyMicros())
+        + ", maxFlushLatencyMicros=" + getMaxFlushLatencyMicros() + ")";
+  }
+
+}
@@ -0,0 +1,212 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.exception.TotalSizeExceedException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.SneakyThrows;
+
+/**
+ * {@linkplain Storage} implementation based on direct memory, so that object data is neither
+ * scanned nor copied by the garbage collector.
+ *
+ * <p>Objects are stored in pooled direct buffers, so that small objects share the chunks of the pool.
+ * An object written from a stream is kept as the blocks it was read into. {@linkplain #getByteBuf(Long)}
+ * hands out reference-counted read-only views without copying; other reads copy the data.
+ *
+ * <p>Deleting an object releases its size from the total size and its reference to the memory at once.
+ * The memory returns to the pool once the views of the object are released as well, so that a view
+ * being written to a socket can't observe other data.
+ */
+class OffHeapStorage implements Storage {
+
+  private static final int READ_BLOCK_SIZE = 64 * 1024;
+
+  private final Map<Long, ByteBuf> store = new ConcurrentHashMap<>();
+
+  private final AtomicLong totalSize = new AtomicLong(0);
+
+  private final long maxTotalSize;
+
+  private final ByteBufAllocator allocator;
+
+  /**
+   * Create an {@linkplain OffHeapStorage} instance with total size limitation.
+   *
+   * @param maxTotalSize max total size.
+   */
+  OffHeapStorage(long maxTotalSize) {
+    this(maxTotalSize, PooledByteBufAllocator.DEFAULT);
+  }
+
+  /**
+   * Create an {@linkplain OffHeapStorage} instance.
+   *
+   * @param maxTotalSize max total size.
+   * @param allocator allocates the direct buffers.
+   */
+  OffHeapStorage(long maxTotalSize, ByteBufAllocator allocator) {
+    this.maxTotalSize = maxTotalSize;
+    this.allocator = allocator;
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    reserve(data.length);
+    ByteBuf buffer;
+    try {
+      buffer = allocator.directBuffer(data.length, data.length).writeBytes(data);
+    } catch (RuntimeException | Error e) {
+      totalSize.addAndGet(-data.length);
+      throw e;
+    }
+    return store(id, buffer);
+  }
+
+  /**
+   * Read the stream into direct blocks, reserving the size of each block once it is filled.
+   */
+  @Override
+  @SneakyThrows
+  public Long put(Long id, InputStream data) {
+    CompositeByteBuf buffer = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+    try (InputStream in = data) {
+      boolean eof = false;
+      while (!eof) {
+        ByteBuf block = allocator.directBuffer(READ_BLOCK_SIZE, READ_BLOCK_SIZE);
+        try {
+          while (block.isWritable() && !eof) {
+            eof = block.writeBytes(in, block.writableBytes()) < 0;
+          }
+          if (block.readableBytes() > Integer.MAX_VALUE - buffer.readableBytes()) {
+            throw new IllegalArgumentException("Object id='" + id + "' exceeds the max object size.");
+          }
+          reserve(block.readableBytes());
+        } catch (Exception | Error e) {
+          block.release();
+          throw e;
+        }
+
+        if (block.isReadable()) {
+          buffer.addComponent(true, block);
+        } else {
+          block.release();
+        }
+      }
+    } catch (Exception | Error e) {
+      totalSize.addAndGet(-buffer.readableBytes());
+      buffer.release();
+      throw e;
+    }
+    return store(id, buffer);
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    ByteBuf data = view(id);
+    try {
+      byte[] bytes = new byte[data.readableBytes()];
+      data.readBytes(bytes);
+      return bytes;
+    } finally {
+      data.release();
+    }
+  }
+
+  /**
+   * The stream holds a reference to the memory of the object until it is closed.
+   */
+  @Override
+  public InputStream getInputStream(Long id) {
+    return new ByteBufInputStream(view(id), true);
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    ByteBuf data = view(id);
+    try {
+      if (offset < 0 || length < 0 || offset + length > data.readableBytes()) {
+        throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+            + " exceeds object id='" + id + "'.");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      data.getBytes(data.readerIndex() + (int) offset, buffer);
+      buffer.flip();
+      return buffer.asReadOnlyBuffer();
+    } finally {
+      data.release();
+    }
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    return Optional.of(view(id).asReadOnly());
+  }
+
+  @Override
+  public Long delete(Long id) {
+    ByteBuf data = store.remove(id);
+    if (Objects.isNull(data)) {
+      throw new IllegalArgumentException("Object id='" + id + "' not exists.");
+    }
+    totalSize.addAndGet(-data.readableBytes());
+    data.release();
+    return id;
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return store.containsKey(id);
+  }
+
+  /**
+   * Get an independent view of the object that holds a reference to its memory. The reference is
+   * taken atomically with respect to {@linkplain #delete(Long)}, so that released memory is never viewed.
+   */
+  private ByteBuf view(Long id) {
+    ByteBuf[] view = new ByteBuf[1];
+    store.computeIfPresent(id, (key, data) -> {
+      view[0] = data.retainedDuplicate();
+      return data;
+    });
+    if (Objects.isNull(view[0])) {
+      throw new IllegalArgumentException("Object id='" + id + "' not exists.");
+    }
+    return view[0];
+  }
+
+  /**
+   * Reserve {@code size} bytes of the total size.
+   */
+  private void reserve(int size) {
+    long current;
+    do {
+      current = totalSize.get();
+      if (current + size > maxTotalSize) {
+        throw new TotalSizeExceedException(maxTotalSize, current + size);
+      }
+    } while (!totalSize.compareAndSet(current, current + size));
+  }
+
+  /**
+   * Store a filled buffer. The size and the memory of an overridden object are released.
+   */
+  private Long store(Long id, ByteBuf buffer) {
+    ByteBuf previous = store.put(id, buffer);
+    if (Objects.nonNull(previous)) {
+      totalSize.addAndGet(-previous.readableBytes());
+      previous.release();
+    }
+    return id;
+  }
+
+}
@@ -0,0 +1,586 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.util.PathUtils;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * A {@linkplain Storage} that appends small objects to large segment files, so that millions of
+ * small objects don't cost millions of files.
+ *
+ * <p>A segment {@code packs/<number>.pack} is a sequence of records. Each record is a header
+ * {@code [magic:int][id:long][length:int]} followed by {@code length} bytes of object data;
+ * a record with length {@code -1} is the tombstone of a deleted object. The record headers are
+ * the persisted index: on construction, the segments are scanned in order and the in-memory
+ * {@code id -> (segment, offset, length)} index is rebuilt from them, where later records win.
+ * Segments found on construction are never written; appends always go to a new segment.
+ *
+ * <p>Objects larger than the pack threshold, as well as objects written by
+ * {@linkplain LocalFileSystemStorage}, are stored as standalone files in the same directory.
+ * A read-only storage reads the segments and files without changing the directory.
+ *
+ * <p>Deletes and overrides leave garbage in sealed segments. Once less than half of a sealed
+ * segment is live, a background task copies its live records to the active segment and deletes
+ * the segment. Tombstones are never live; a tombstone is copied only while dead records of the
+ * object remain in older segments, because they would reappear on load otherwise.
+ *
+ * <p>Appended records are forced to the disk by the {@linkplain FileSyncer} after the append lock is
+ * released, so that concurrent appends can be forced together. Compaction forces the copied records
+ * before it deletes the compacted segment.
+ */
+@Slf4j
+class PackFileStorage implements Storage {
+
+  static final String PACK_DIRECTORY = "packs";
+
+  static final String SEGMENT_SUFFIX = ".pack";
+
+  static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  static final int DEFAULT_PACK_THRESHOLD = 1024 * 1024;
+
+  private static final int MAGIC = 0x4C533350;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final int TOMBSTONE = -1;
+
+  private static final double COMPACTION_RATIO = 0.5;
+
+  private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "local-s3-pack-compaction");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Path packDirectory;
+
+  private final Storage files;
+
+  private final long segmentSize;
+
+  private final int packThreshold;
+
+  private final FileSyncer syncer;
+
+  private final boolean readOnly;
+
+  private final Map<Long, Location> index = new ConcurrentHashMap<>();
+
+  /**
+   * Number of dead records per object id that are still in a segment.
+   */
+  private final Map<Long, Integer> deadRecords = new ConcurrentHashMap<>();
+
+  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+  /**
+   * Read lock is held while reading a segment; write lock is held while deleting a segment.
+   */
+  private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+  private final Object appendLock = new Object();
+
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+  private volatile Segment active;
+
+  /**
+   * Construct a {@linkplain PackFileStorage} instance with default segment size and pack threshold.
+   *
+   * @param dataPath the path is where data stores in.
+   */
+  PackFileStorage(Path dataPath) {
+    this(dataPath, FileSyncer.none());
+  }
+
+  /**
+   * Construct a {@linkplain PackFileStorage} instance with default segment size and pack threshold.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param syncer forces written objects to the disk.
+   */
+  PackFileStorage(Path dataPath, FileSyncer syncer) {
+    this(dataPath, DEFAULT_SEGMENT_SIZE, DEFAULT_PACK_THRESHOLD, syncer);
+  }
+
+  /**
+   * Construct a {@linkplain PackFileStorage} instance.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param segmentSize segments larger than this size are sealed.
+   * @param packThreshold objects larger than this size are stored as standalone files.
+   */
+  PackFileStorage(Path dataPath, long segmentSize, int packThreshold) {
+    this(dataPath, segmentSize, packThreshold, FileSyncer.none());
+  }
+
+  /**
+   * Construct a {@linkplain PackFileStorage} instance.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param segmentSize segments larger than this size are sealed.
+   * @param packThreshold objects larger than this size are stored as standalone files.
+   * @param syncer forces written objects to the disk.
+   */
+  PackFileStorage(Path dataPath, long segmentSize, int packThreshold, FileSyncer syncer) {
+    this(dataPath, segmentSize, packThreshold, syncer, false);
+  }
+
+  /**
+   * Construct a {@linkplain PackFileStorage} instance.
+   *
+   * @param dataPath the path is where data stores in.
+   * @param segmentSize segments larger than this size are sealed.
+   * @param packThreshold objects larger than this size are stored as standalone files.
+   * @param syncer forces written objects to the disk.
+   * @param readOnly whether to only read objects without changing the directory.
+   */
+  PackFileStorage(Path dataPath, long segmentSize, int packThreshold, FileSyncer syncer, boolean readOnly) {
+    Objects.requireNonNull(dataPath);
+    Objects.requireNonNull(syncer);
+    this.syncer = syncer;
+    this.readOnly = readOnly;
+    this.files = new LocalFileSystemStorage(dataPath, syncer, readOnly);
+    this.packDirectory = dataPath.resolve(PACK_DIRECTORY);
+    this.segmentSize = segmentSize;
+    this.packThreshold = packThreshold;
+    load();
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    checkWritable(id);
+    if (data.length > packThreshold) {
+      removePacked(id);
+      return files.put(id, data);
+    }
+    append(id, ByteBuffer.wrap(data));
+    return id;
+  }
+
+  @Override
+  @SneakyThrows
+  public Long put(Long id, InputStream data) {
+    checkWritable(id);
+    try (InputStream in = data) {
+      byte[] head = IOUtils.toByteArray(BoundedInputStream.builder()
+          .setInputStream(in)
+          .setMaxCount(packThreshold + 1L)
+          .setPropagateClose(false)
+          .get());
+      if (head.length > packThreshold) {
+        removePacked(id);
+        return files.put(id, new SequenceInputStream(new ByteArrayInputStream(head), in));
+      }
+      append(id, ByteBuffer.wrap(head));
+      return id;
+    }
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    Optional<ByteBuffer> packed = readPacked(id, 0, -1);
+    return packed.isPresent() ? packed.get().array() : files.getBytes(id);
+  }
+
+  @Override
+  public InputStream getInputStream(Long id) {
+    Optional<ByteBuffer> packed = readPacked(id, 0, -1);
+    return packed.isPresent() ? new ByteArrayInputStream(packed.get().array()) : files.getInputStream(id);
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid range offset=" + offset + ", length=" + length + ".");
+    }
+    Optional<ByteBuffer> packed = readPacked(id, offset, length);
+    return packed.isPresent() ? packed.get().asReadOnlyBuffer() : files.read(id, offset, length);
+  }
+
+  /**
+   * Packed objects don't have files of their own.
+   */
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return index.containsKey(id) ? Optional.empty() : files.getFileChannel(id);
+  }
+
+  @Override
+  public Long delete(Long id) {
+    checkWritable(id);
+    if (!removePacked(id)) {
+      files.delete(id);
+    }
+    return id;
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return index.containsKey(id) || files.isExist(id);
+  }
+
+  private void checkWritable(Long id) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Cannot change object id='" + id + "' in read-only " + packDirectory + ".");
+    }
+  }
+
+  /**
+   * Compact all sealed segments of which less than half is live.
+   */
+  @SneakyThrows
+  synchronized void compact() {
+    // Segments written by the compaction itself are not revisited.
+    Collection<Segment> sealed = Objects.isNull(active) ? new ArrayList<>(segments.values())
+        : new ArrayList<>(segments.headMap(active.number).values());
+    for (Segment segment : sealed) {
+      if (isCompactable(segment)) {
+        compact(segment);
+      }
+    }
+  }
+
+  private void compact(Segment segment) throws IOException {
+    boolean oldest = segments.firstKey() == segment.number;
+    Set<Path> written = new HashSet<>();
+    Map<Long, Integer> dropped = new HashMap<>();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    long position = 0;
+    while (position < segment.size) {
+      header.clear();
+      readFully(segment.channel, header, position);
+      header.flip();
+      header.getInt();
+      long id = header.getLong();
+      int length = header.getInt();
+      long dataOffset = position + HEADER_SIZE;
+
+      synchronized (appendLock) {
+        Location location = index.get(id);
+        if (length == TOMBSTONE) {
+          // Dead records of the object in other segments would reappear on load without the tombstone.
+          boolean shadows = deadRecords.getOrDefault(id, 0) > dropped.getOrDefault(id, 0);
+          if (!oldest && Objects.isNull(location) && shadows) {
+            written.add(write(id, null).segment.path);
+          }
+        } else {
+          if (Objects.nonNull(location) && location.segment == segment && location.offset == dataOffset) {
+            ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(segment.channel, data, dataOffset);
+            data.flip();
+            Location copied = write(id, data);
+            written.add(copied.segment.path);
+            index.put(id, copied);
+            dereference(id, location);
+          }
+          dropped.merge(id, 1, Integer::sum);
+        }
+      }
+      position = dataOffset + Math.max(length, 0);
+    }
+    syncer.sync(written.toArray(new Path[0]));
+
+    segmentsLock.writeLock().lock();
+    try {
+      segments.remove(segment.number);
+      segment.channel.close();
+      Files.delete(segment.path);
+    } finally {
+      segmentsLock.writeLock().unlock();
+    }
+    dropped.forEach((id, count) ->
+        deadRecords.computeIfPresent(id, (key, dead) -> dead > count ? dead - count : null));
+    log.debug("Compacted segment {}.", segment.path);
+  }
+
+  /**
+   * Read {@code length} bytes of a packed object starting at {@code offset}.
+   *
+   * @param length number of bytes to read; or {@code -1} to read the whole object.
+   * @return a heap buffer; or empty if the object is not packed.
+   */
+  @SneakyThrows
+  private Optional<ByteBuffer> readPacked(Long id, long offset, int length) {
+    segmentsLock.readLock().lock();
+    try {
+      Location location = index.get(id);
+      if (Objects.isNull(location)) {
+        return Optional.empty();
+      }
+
+      int readLength = length < 0 ? location.length : length;
+      if (offset + readLength > location.length) {
+        throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+            + " exceeds object id='" + id + "'.");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(readLength);
+      readFully(location.segment.channel, buffer, location.offset + offset);
+      buffer.flip();
+      return Optional.of(buffer);
+    } finally {
+      segmentsLock.readLock().unlock();
+    }
+  }
+
+  @SneakyThrows
+  private void append(Long id, ByteBuffer data) {
+    // A packed record shadows the standalone file, which would reappear once the record is deleted.
+    if (files.isExist(id)) {
+      files.delete(id);
+    }
+
+    Location location;
+    synchronized (appendLock) {
+      location = write(id, data);
+      release(id, index.put(id, location));
+    }
+    syncer.sync(location.segment.path);
+  }
+
+  /**
+   * Append a tombstone if the object is packed, and force it to the disk.
+   *
+   * @return {@code true} if the object was packed.
+   */
+  @SneakyThrows
+  private boolean removePacked(Long id) {
+    Location tombstone;
+    synchronized (appendLock) {
+      Location location = index.remove(id);
+      if (Objects.isNull(location)) {
+        return false;
+      }
+      tombstone = write(id, null);
+      release(id, location);
+    }
+    // Otherwise the object would be live again after a crash, and compaction would copy it forward.
+    syncer.sync(tombstone.segment.path);
+    return true;
+  }
+
+  /**
+   * Append a record to the active segment. Must be called with {@linkplain #appendLock} held.
+   *
+   * @param data the object data; or {@code null} to write a tombstone.
+   * @return the location of the data.
+   */
+  private Location write(long id, ByteBuffer data) throws IOException {
+    int length = Objects.isNull(data) ? TOMBSTONE : data.remaining();
+    long recordSize = HEADER_SIZE + Math.max(length, 0);
+    if (Objects.isNull(active) || (active.size > 0 && active.size + recordSize > segmentSize)) {
+      roll();
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(id).putInt(length);
+    header.flip();
+    ByteBuffer[] record = Objects.isNull(data) ? new ByteBuffer[] {header} : new ByteBuffer[] {header, data};
+    long position = active.size;
+    active.channel.position(position);
+    while (record[record.length - 1].hasRemaining()) {
+      active.channel.write(record);
+    }
+
+    active.size = position + recordSize;
+    if (length != TOMBSTONE) {
+      active.liveBytes.addAndGet(recordSize);
+    }
+    return new Location(active, position + HEADER_SIZE, length);
+  }
+
+  /**
+   * Seal the active segment and start a new one.
+   */
+  private void roll() throws IOException {
+    PathUtils.createDirectoryIfNotExit(packDirectory);
+    long number = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    Path path = packDirectory.resolve(String.format("%010d%s", number, SEGMENT_SUFFIX));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    syncer.sync(packDirectory, packDirectory.getParent());
+    Segment sealed = active;
+    active = new Segment(number, path, channel);
+    segments.put(number, active);
+    if (Objects.nonNull(sealed) && isCompactable(sealed)) {
+      scheduleCompaction();
+    }
+  }
+
+  private void release(long id, Location location) {
+    if (Objects.nonNull(location) && isCompactable(dereference(id, location))) {
+      scheduleCompaction();
+    }
+  }
+
+  /**
+   * Mark the record at {@code location} dead. It stays dead until its segment is compacted.
+   */
+  private Segment dereference(long id, Location location) {
+    location.segment.liveBytes.addAndGet(-location.recordSize());
+    deadRecords.merge(id, 1, Integer::sum);
+    return location.segment;
+  }
+
+  private boolean isCompactable(Segment segment) {
+    return segment != active && segment.liveBytes.get() < segment.size * COMPACTION_RATIO;
+  }
+
+  private void scheduleCompaction() {
+    if (compactionScheduled.compareAndSet(false, true)) {
+      COMPACTOR.execute(() -> {
+        compactionScheduled.set(false);
+        try {
+          compact();
+        } catch (Exception e) {
+          log.warn("Failed to compact segments in {}.", packDirectory, e);
+        }
+      });
+    }
+  }
+
+  /**
+   * Rebuild the index from the segments. Files are only read here, so that a read-only
+   * data directory can be loaded.
+   */
+  @SneakyThrows
+  private void load() {
+    if (!Files.isDirectory(packDirectory)) {
+      return;
+    }
+
+    List<Path> paths;
+    try (Stream<Path> list = Files.list(packDirectory)) {
+      paths = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+
+    for (Path path : paths) {
+      String fileName = path.getFileName().toString();
+      long number = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+      Segment segment = new Segment(number, path, FileChannel.open(path, StandardOpenOption.READ));
+      scan(segment);
+      segments.put(number, segment);
+    }
+    log.debug("Loaded {} packed objects from {} segments in {}.", index.size(), segments.size(), packDirectory);
+  }
+
+  private void scan(Segment segment) throws IOException {
+    long fileSize = segment.channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    long position = 0;
+    while (position + HEADER_SIZE <= fileSize) {
+      header.clear();
+      readFully(segment.channel, header, position);
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        break;
+      }
+      long id = header.getLong();
+      int length = header.getInt();
+      long dataOffset = position + HEADER_SIZE;
+      if (length < TOMBSTONE || dataOffset + Math.max(length, 0) > fileSize) {
+        break;
+      }
+
+      Location previous;
+      if (length == TOMBSTONE) {
+        previous = index.remove(id);
+      } else {
+        segment.liveBytes.addAndGet(HEADER_SIZE + length);
+        previous = index.put(id, new Location(segment, dataOffset, length));
+      }
+      if (Objects.nonNull(previous)) {
+        dereference(id, previous);
+      }
+      position = dataOffset + Math.max(length, 0);
+    }
+
+    if (position < fileSize) {
+      log.warn("Ignored {} incomplete bytes at the end of {}.", fileSize - position, segment.path);
+    }
+    segment.size = position;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of segment.");
+      }
+    }
+  }
+
+  private static final class Segment {
+
+    private final long number;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private volatile long size;
+
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private Segment(long number, Path path, FileChannel channel) {
+      this.number = number;
+      this.path = path;
+      this.channel = channel;
+    }
+
+  }
+
+  private static final class Location {
+
+    private final Segment segment;
+
+    private final long offset;
+
+    private final int length;
+
+    private Location(Segment segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private long recordSize() {
+      return HEADER_SIZE + length;
+    }
+
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.robothy.s3.core.storage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a read cache. An instance can be passed to the cache to observe it from outside.
+ */
+public class ReadCacheStats {
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Number of reads served from the cache.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Number of reads that were not cached.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Number of objects removed from the cache to free capacity.
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * The ratio of hits to all reads; {@code 0.0} if nothing was read.
+   */
+  public double getHitRatio() {
+    long hitCount = getHits();
+    long total = hitCount + getMisses();
+    return total == 0 ? 0.0 : (double) hitCount / total;
+  }
+
+  void recordHit() {
+    hits.increment();
+  }
+
+  void recordMiss() {
+    misses.increment();
+  }
+
+  void recordEviction() {
+    evictions.increment();
+  }
+
+  @Override
+  public String toString() {
+    return "ReadCacheStats(hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ")";
+  }
+
+}
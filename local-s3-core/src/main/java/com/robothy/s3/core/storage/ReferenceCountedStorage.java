@@ -0,0 +1,220 @@
+package com.robothy.s3.core.storage;
+
+import io.netty.buffer.ByteBuf;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@linkplain Storage} decorator that lets objects be shared by several owners. Each
+ * {@linkplain #retain(Long)} adds a reference, and {@linkplain #delete(Long)} removes a
+ * reference; the object is only deleted from the base storage with its last reference.
+ *
+ * <p>Only references of shared objects are counted, and the counts are not persisted; they
+ * are rebuilt from the file IDs referenced by the metadata when the storage is created.
+ *
+ * <p>If the metadata is loaded in the background, the references are counted once they complete.
+ * Until then, {@linkplain #retain(Long)} doesn't count, as the reference it adds will be counted from
+ * the metadata, and deletes are deferred. A deferred delete removes the object once the references
+ * are counted, unless the metadata still references it. The references must be collected while the
+ * metadata is not changed.
+ *
+ * <p>A {@linkplain #lease(Long)} is not a reference: it doesn't keep the object alive for the metadata,
+ * but delays the delete of the last reference until the lease is closed, so that a reader that found
+ * the object can still read it after the object was deleted.
+ */
+class ReferenceCountedStorage implements Storage {
+
+  private final Storage base;
+
+  /**
+   * file ID - number of references besides the first one.
+   */
+  private final Map<Long, Integer> extraReferences = new ConcurrentHashMap<>();
+
+  /**
+   * Objects deleted before the references were counted.
+   */
+  private final Set<Long> deferredDeletes = new HashSet<>();
+
+  /**
+   * file ID - number of open leases.
+   */
+  private final Map<Long, Integer> leases = new ConcurrentHashMap<>();
+
+  /**
+   * Leased objects whose last reference was deleted.
+   */
+  private final Set<Long> leasedDeletes = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean counted;
+
+  /**
+   * Create a {@linkplain ReferenceCountedStorage} instance.
+   *
+   * @param base the storage where objects are stored.
+   * @param references file IDs referenced by the metadata; IDs that occur more than once are shared.
+   */
+  ReferenceCountedStorage(Storage base, Stream<Long> references) {
+    this(base, CompletableFuture.completedFuture(references));
+  }
+
+  /**
+   * Create a {@linkplain ReferenceCountedStorage} instance that counts references once they complete.
+   *
+   * @param base the storage where objects are stored.
+   * @param references completes with the file IDs referenced by the metadata; the references are
+   *     counted by the completing thread.
+   */
+  ReferenceCountedStorage(Storage base, CompletableFuture<Stream<Long>> references) {
+    Objects.requireNonNull(base);
+    this.base = base;
+    references.thenAccept(this::count);
+  }
+
+  private synchronized void count(Stream<Long> references) {
+    Map<Long, Long> counts = references.filter(Objects::nonNull)
+        .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    counts.forEach((id, count) -> {
+      if (count > 1) {
+        extraReferences.put(id, (int) (count - 1));
+      }
+    });
+    counted = true;
+
+    for (Long id : deferredDeletes) {
+      if (!counts.containsKey(id) && base.isExist(id)) {
+        deleteBase(id);
+      }
+    }
+    deferredDeletes.clear();
+  }
+
+  @Override
+  public Long put(Long id, byte[] data) {
+    return base.put(id, data);
+  }
+
+  @Override
+  public Long put(Long id, InputStream data) {
+    return base.put(id, data);
+  }
+
+  @Override
+  public byte[] getBytes(Long id) {
+    return base.getBytes(id);
+  }
+
+  @Override
+  public InputStream getInputStream(Long id) {
+    return base.getInputStream(id);
+  }
+
+  @Override
+  public ByteBuffer read(Long id, long offset, int length) {
+    return base.read(id, offset, length);
+  }
+
+  @Override
+  public Optional<ByteBuf> getByteBuf(Long id) {
+    return base.getByteBuf(id);
+  }
+
+  @Override
+  public Optional<FileChannel> getFileChannel(Long id) {
+    return base.getFileChannel(id);
+  }
+
+  @Override
+  public boolean retain(Long id) {
+    if (!isExist(id)) {
+      throw new IllegalArgumentException("Object id='" + id + "' not exist.");
+    }
+    if (!counted) {
+      synchronized (this) {
+        if (!counted) {
+          return true;
+        }
+      }
+    }
+    extraReferences.merge(id, 1, Integer::sum);
+    return true;
+  }
+
+  @Override
+  public Long delete(Long id) {
+    if (!counted) {
+      synchronized (this) {
+        if (!counted) {
+          if (!isExist(id)) {
+            throw new IllegalArgumentException("Object id='" + id + "' not exist.");
+          }
+          deferredDeletes.add(id);
+          return id;
+        }
+      }
+    }
+
+    AtomicBoolean shared = new AtomicBoolean(false);
+    extraReferences.computeIfPresent(id, (key, count) -> {
+      shared.set(true);
+      return count == 1 ? null : count - 1;
+    });
+    return shared.get() ? id : deleteBase(id);
+  }
+
+  @Override
+  public Closeable lease(Long id) {
+    leases.merge(id, 1, Integer::sum);
+    AtomicBoolean closed = new AtomicBoolean(false);
+    return () -> {
+      if (closed.compareAndSet(false, true)) {
+        AtomicBoolean deleted = new AtomicBoolean(false);
+        leases.computeIfPresent(id, (key, count) -> {
+          if (count > 1) {
+            return count - 1;
+          }
+          deleted.set(leasedDeletes.remove(id));
+          return null;
+        });
+        if (deleted.get()) {
+          base.delete(id);
+        }
+      }
+    };
+  }
+
+  /**
+   * Delete the object from the base storage, or once its last lease is closed if it is leased.
+   */
+  private Long deleteBase(Long id) {
+    AtomicBoolean leased = new AtomicBoolean(false);
+    leases.computeIfPresent(id, (key, count) -> {
+      if (!isExist(id)) {
+        throw new IllegalArgumentException("Object id='" + id + "' not exist.");
+      }
+      leased.set(true);
+      leasedDeletes.add(id);
+      return count;
+    });
+    return leased.get() ? id : base.delete(id);
+  }
+
+  @Override
+  public boolean isExist(Long id) {
+    return !leasedDeletes.contains(id) && base.isExist(id);
+  }
+
+}
@@ -0,0 +1,269 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads the shards of a bucket into its {@linkplain ShardedMap}s on access. The object map and the uploads
+ * map of a bucket share a loader, so a shard is read once for both.
+ *
+ * <p>A shard covers the keys from its lower bound up to the lower bound of the next shard. The first shard
+ * starts at the empty string, which is the smallest key. The shards are fixed once the bucket is fetched,
+ * and are read by key range, so a shard that is split on disk later is read from the shards it was split into.
+ * A bucket that is sharded on disk while it is loaded as a whole keeps its entries as loaded shards.
+ */
+final class ShardLoader {
+
+  /**
+   * Reads the objects and uploads of a key range from the disk.
+   */
+  interface Reader {
+
+    /**
+     * Read the objects and uploads from {@code lower} up to {@code upper}.
+     *
+     * @param lower the lower bound, inclusive.
+     * @param upper the upper bound, exclusive; {@code null} if unbounded.
+     * @return a bucket with the objects and uploads of the range.
+     */
+    BucketMetadata read(String lower, String upper);
+
+  }
+
+  /**
+   * A key range of the bucket.
+   */
+  static final class Shard {
+
+    final String lower;
+
+    /**
+     * Set once the entries of the shard are in the maps.
+     */
+    volatile boolean loaded;
+
+    /**
+     * When the shard was last accessed, in {@linkplain System#nanoTime()}.
+     */
+    volatile long accessed;
+
+    Shard(String lower) {
+      this.lower = lower;
+    }
+
+  }
+
+  private final NavigableMap<String, Shard> table = new TreeMap<>();
+
+  private final ConcurrentSkipListMap<String, Shard> unloaded = new ConcurrentSkipListMap<>();
+
+  private final Reader reader;
+
+  /**
+   * The max number of loaded shards; or {@code 0} if unlimited.
+   */
+  private final int maxLoaded;
+
+  private final AtomicInteger loadedShards = new AtomicInteger();
+
+  private ShardedMap<ObjectMetadata> objects;
+
+  private ShardedMap<NavigableMap<String, UploadMetadata>> uploads;
+
+  private ShardLoader(NavigableSet<String> shards, Reader reader, int maxLoaded) {
+    if (!shards.contains("")) {
+      throw new IllegalArgumentException("The first shard must start at the empty key.");
+    }
+    shards.forEach(lower -> {
+      Shard shard = new Shard(lower);
+      table.put(lower, shard);
+      unloaded.put(lower, shard);
+    });
+    this.reader = reader;
+    this.maxLoaded = maxLoaded;
+  }
+
+  /**
+   * Replace the object map and the uploads of {@code bucketMetadata} with maps that load the shards on access.
+   *
+   * @param bucketMetadata the bucket without objects and uploads.
+   * @param shards the lower bounds of the shards.
+   * @param reader reads the objects and uploads of a shard.
+   * @param maxLoaded the max number of loaded shards that {@linkplain ShardedMap#unload(NavigableSet)} keeps;
+   *                  {@code 0} if unlimited.
+   */
+  static void attach(BucketMetadata bucketMetadata, NavigableSet<String> shards, Reader reader, int maxLoaded) {
+    create(bucketMetadata, shards, reader, maxLoaded);
+  }
+
+  /**
+   * Replace the object map and the uploads of a bucket that is loaded as a whole with maps that keep its
+   * entries as loaded shards, so that the shards are unloaded like those of a bucket read from the shards.
+   *
+   * @param bucketMetadata the bucket with all objects and uploads.
+   * @param shards the lower bounds of the shards.
+   * @param reader reads the objects and uploads of a shard.
+   * @param maxLoaded the max number of loaded shards that {@linkplain ShardedMap#unload(NavigableSet)} keeps;
+   *                  {@code 0} if unlimited.
+   */
+  static void attachLoaded(BucketMetadata bucketMetadata, NavigableSet<String> shards, Reader reader, int maxLoaded) {
+    Map<String, ObjectMetadata> objects = bucketMetadata.getObjectMap();
+    Map<String, NavigableMap<String, UploadMetadata>> uploads = bucketMetadata.getUploads();
+    ShardLoader loader = create(bucketMetadata, shards, reader, maxLoaded);
+    loader.objects.putLoaded(objects);
+    loader.uploads.putLoaded(uploads);
+    long now = System.nanoTime();
+    loader.table.values().forEach(shard -> {
+      shard.accessed = now;
+      shard.loaded = true;
+    });
+    loader.unloaded.clear();
+    loader.loadedShards.set(loader.table.size());
+  }
+
+  private static ShardLoader create(BucketMetadata bucketMetadata, NavigableSet<String> shards, Reader reader,
+                                    int maxLoaded) {
+    ShardLoader loader = new ShardLoader(shards, reader, maxLoaded);
+    loader.objects = new ShardedMap<>(loader);
+    loader.uploads = new ShardedMap<>(loader);
+    bucketMetadata.setObjectMap(loader.objects);
+    bucketMetadata.setUploads(loader.uploads);
+    return loader;
+  }
+
+  /**
+   * Load the shard that covers {@code key}.
+   */
+  void load(String key) {
+    Shard shard = shardOf(key);
+    shard.accessed = System.nanoTime();
+    if (!shard.loaded) {
+      load(shard);
+    }
+  }
+
+  void load(Shard shard) {
+    synchronized (shard) {
+      if (shard.loaded) {
+        return;
+      }
+      BucketMetadata entries = reader.read(shard.lower, upperOf(shard));
+      objects.putLoaded(entries.getObjectMap());
+      uploads.putLoaded(entries.getUploads());
+      shard.accessed = System.nanoTime();
+      shard.loaded = true;
+      unloaded.remove(shard.lower);
+      loadedShards.incrementAndGet();
+    }
+  }
+
+  /**
+   * Load the shards that cover keys from {@code from} to {@code to}; {@code null} is unbounded.
+   */
+  void load(String from, String to) {
+    String start = Objects.isNull(from) ? "" : table.floorKey(from);
+    NavigableMap<String, Shard> overlapping = Objects.isNull(to)
+        ? unloaded.tailMap(start, true) : unloaded.subMap(start, true, to, true);
+    overlapping.values().forEach(this::load);
+  }
+
+  void loadAll() {
+    unloaded.values().forEach(this::load);
+  }
+
+  boolean isOverLoaded() {
+    return maxLoaded > 0 && loadedShards.get() > maxLoaded;
+  }
+
+  /**
+   * Unload the least recently accessed shards until at most the max number of shards is loaded. Shards
+   * with pinned keys are kept, so fewer shards are unloaded if the others are pinned. The caller must have
+   * exclusive access to the maps.
+   *
+   * @param pinned keys whose changes are not persisted yet.
+   * @return the number of unloaded shards.
+   */
+  int unload(NavigableSet<String> pinned) {
+    if (!isOverLoaded()) {
+      return 0;
+    }
+
+    List<Shard> loaded = table.values().stream()
+        .filter(shard -> shard.loaded)
+        .sorted(Comparator.comparingLong(shard -> shard.accessed))
+        .collect(Collectors.toList());
+    int excess = loaded.size() - maxLoaded;
+    int count = 0;
+    for (Iterator<Shard> iterator = loaded.iterator(); iterator.hasNext() && count < excess; ) {
+      Shard shard = iterator.next();
+      String upper = upperOf(shard);
+      String pinnedKey = pinned.ceiling(shard.lower);
+      if (Objects.nonNull(pinnedKey) && (Objects.isNull(upper) || pinnedKey.compareTo(upper) < 0)) {
+        continue;
+      }
+      objects.removeLoaded(shard.lower, upper);
+      uploads.removeLoaded(shard.lower, upper);
+      shard.loaded = false;
+      unloaded.put(shard.lower, shard);
+      count++;
+    }
+    loadedShards.addAndGet(-count);
+    return count;
+  }
+
+  Shard shardOf(String key) {
+    return table.floorEntry(key).getValue();
+  }
+
+  /**
+   * The lower bound of the next shard; or {@code null} for the last shard.
+   */
+  String upperOf(Shard shard) {
+    return table.higherKey(shard.lower);
+  }
+
+  /**
+   * The first unloaded shard whose keys are all greater than {@code key}.
+   */
+  Shard unloadedAbove(String key) {
+    Map.Entry<String, Shard> entry = unloaded.higherEntry(key);
+    return Objects.isNull(entry) ? null : entry.getValue();
+  }
+
+  /**
+   * The last unloaded shard that starts at or before {@code key}; with the shard of {@code key} loaded,
+   * all its keys are less than {@code key}.
+   */
+  Shard unloadedBelow(String key) {
+    Map.Entry<String, Shard> entry = unloaded.floorEntry(key);
+    return Objects.isNull(entry) ? null : entry.getValue();
+  }
+
+  Shard lastUnloaded() {
+    Map.Entry<String, Shard> entry = unloaded.lastEntry();
+    return Objects.isNull(entry) ? null : entry.getValue();
+  }
+
+  /**
+   * Read the shards that are not loaded without loading them.
+   */
+  Stream<BucketMetadata> readUnloaded() {
+    return new ArrayList<>(unloaded.values()).stream()
+        .map(shard -> reader.read(shard.lower, upperOf(shard)));
+  }
+
+}
@@ -0,0 +1,1013 @@
+package com.robothy.s3.core.storage;
+
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectIndex;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A map of a sharded bucket that loads a shard from the disk on first access to one of its keys.
+ *
+ * <p>Point operations load the shard of the key. Navigation loads shards in key order until the result
+ * is known, and views iterate across shard boundaries loading each shard on the way, so that listing a
+ * page of keys only loads the shards the page is in. Operations on all keys, such as {@linkplain #size()},
+ * load all shards.
+ *
+ * <p>Loaded entries are kept in a skip list until their shard is unloaded; all operations load the shards
+ * they need first, so that the map behaves as a map of all entries. With a max number of loaded shards, the
+ * least recently accessed shards are unloaded by {@linkplain #unload(NavigableSet)} once they are persisted,
+ * so that the memory of a bucket is bounded regardless of its size. The views returned by
+ * {@linkplain #descendingMap()} load their range at once.
+ *
+ * @param <V> the value type.
+ */
+public final class ShardedMap<V> extends AbstractMap<String, V> implements ObjectIndex<V> {
+
+  private final ShardLoader loader;
+
+  /**
+   * The entries of the loaded shards.
+   */
+  private final ConcurrentSkipListMap<String, V> loadedEntries = new ConcurrentSkipListMap<>();
+
+  private final View full = new View(null, false, null, false);
+
+  ShardedMap(ShardLoader loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * Read the buckets of the shards that are not loaded yet, without loading them. Together with
+   * {@linkplain #loaded()}, it covers all entries of the bucket once, if no shard is loaded meanwhile.
+   *
+   * @return the objects and uploads of each shard that is not loaded.
+   */
+  public Stream<BucketMetadata> readUnloaded() {
+    return loader.readUnloaded();
+  }
+
+  /**
+   * A view of the loaded entries that doesn't load shards when it is iterated.
+   *
+   * @return the loaded entries.
+   */
+  public NavigableMap<String, V> loaded() {
+    return loadedEntries.tailMap("", true);
+  }
+
+  /**
+   * Whether the shard of {@code key} is loaded.
+   */
+  boolean isLoaded(String key) {
+    return loader.shardOf(key).loaded;
+  }
+
+  void putLoaded(Map<String, V> entries) {
+    entries.forEach(loadedEntries::putIfAbsent);
+  }
+
+  /**
+   * Remove the loaded entries from {@code lower} up to {@code upper}; {@code null} is unbounded.
+   */
+  void removeLoaded(String lower, String upper) {
+    (Objects.isNull(upper) ? loadedEntries.tailMap(lower, true)
+        : loadedEntries.subMap(lower, true, upper, false)).clear();
+  }
+
+  /**
+   * Whether more shards are loaded than the max number of loaded shards.
+   */
+  @Override
+  public boolean isOverLoaded() {
+    return loader.isOverLoaded();
+  }
+
+  /**
+   * Unload the least recently accessed shards without pinned keys, so that at most the max number of
+   * shards is loaded if possible. The caller must have exclusive access to the bucket.
+   *
+   * @param pinned keys whose changes are not persisted yet; their shards are kept.
+   * @return the number of unloaded shards.
+   */
+  @Override
+  public int unload(NavigableSet<String> pinned) {
+    return loader.unload(pinned);
+  }
+
+  /**
+   * The least entry after {@code key}, loading only shards that start before {@code hi}.
+   *
+   * @param key the key to search from; {@code null} to search from the first key.
+   */
+  Map.Entry<String, V> above(String key, boolean inclusive, String hi, boolean hiInclusive) {
+    String from = Objects.isNull(key) ? "" : key;
+    boolean fromInclusive = Objects.isNull(key) || inclusive;
+    loader.load(from);
+    while (true) {
+      // Look for the unloaded shard first, as it may be loaded concurrently.
+      ShardLoader.Shard next = loader.unloadedAbove(from);
+      Map.Entry<String, V> entry = fromInclusive ? loadedEntries.ceilingEntry(from)
+          : loadedEntries.higherEntry(from);
+      if (Objects.isNull(next) || beyond(next.lower, hi, hiInclusive)
+          || (Objects.nonNull(entry) && entry.getKey().compareTo(next.lower) < 0)) {
+        return entry;
+      }
+      loader.load(next);
+    }
+  }
+
+  /**
+   * The greatest entry before {@code key}, loading only shards that end after {@code lo}.
+   *
+   * @param key the key to search from; {@code null} to search from the last key.
+   */
+  Map.Entry<String, V> below(String key, boolean inclusive, String lo) {
+    if (Objects.nonNull(key)) {
+      loader.load(key);
+    }
+    while (true) {
+      ShardLoader.Shard previous = Objects.isNull(key) ? loader.lastUnloaded() : loader.unloadedBelow(key);
+      Map.Entry<String, V> entry = Objects.isNull(key) ? loadedEntries.lastEntry()
+          : inclusive ? loadedEntries.floorEntry(key) : loadedEntries.lowerEntry(key);
+      if (Objects.isNull(previous)) {
+        return entry;
+      }
+      String upper = loader.upperOf(previous);
+      if (Objects.nonNull(upper) && ((Objects.nonNull(lo) && upper.compareTo(lo) <= 0)
+          || (Objects.nonNull(entry) && entry.getKey().compareTo(upper) >= 0))) {
+        return entry;
+      }
+      loader.load(previous);
+    }
+  }
+
+  private static boolean beyond(String key, String hi, boolean hiInclusive) {
+    if (Objects.isNull(hi)) {
+      return false;
+    }
+    int c = key.compareTo(hi);
+    return c > 0 || (c == 0 && !hiInclusive);
+  }
+
+  /**
+   * A view of the loaded entries in a range, after loading the range.
+   */
+  private ConcurrentNavigableMap<String, V> loadedRange(String lo, boolean loInclusive, String hi, boolean hiInclusive) {
+    loader.load(lo, hi);
+    String from = Objects.isNull(lo) ? "" : lo;
+    boolean fromInclusive = Objects.isNull(lo) || loInclusive;
+    return Objects.isNull(hi) ? loadedEntries.tailMap(from, fromInclusive)
+        : loadedEntries.subMap(from, fromInclusive, hi, hiInclusive);
+  }
+
+  @Override
+  public V get(Object key) {
+    loader.load((String) key);
+    return loadedEntries.get(key);
+  }
+
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    loader.load((String) key);
+    return loadedEntries.getOrDefault(key, defaultValue);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    loader.load((String) key);
+    return loadedEntries.containsKey(key);
+  }
+
+  @Override
+  public V put(String key, V value) {
+    loader.load(key);
+    return loadedEntries.put(key, value);
+  }
+
+  @Override
+  public V putIfAbsent(String key, V value) {
+    loader.load(key);
+    return loadedEntries.putIfAbsent(key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    loader.load((String) key);
+    return loadedEntries.remove(key);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    loader.load((String) key);
+    return loadedEntries.remove(key, value);
+  }
+
+  @Override
+  public boolean replace(String key, V oldValue, V newValue) {
+    loader.load(key);
+    return loadedEntries.replace(key, oldValue, newValue);
+  }
+
+  @Override
+  public V replace(String key, V value) {
+    loader.load(key);
+    return loadedEntries.replace(key, value);
+  }
+
+  @Override
+  public V computeIfAbsent(String key, Function<? super String, ? extends V> mappingFunction) {
+    loader.load(key);
+    return loadedEntries.computeIfAbsent(key, mappingFunction);
+  }
+
+  @Override
+  public V computeIfPresent(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+    loader.load(key);
+    return loadedEntries.computeIfPresent(key, remappingFunction);
+  }
+
+  @Override
+  public V compute(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+    loader.load(key);
+    return loadedEntries.compute(key, remappingFunction);
+  }
+
+  @Override
+  public V merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    loader.load(key);
+    return loadedEntries.merge(key, value, remappingFunction);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return Objects.isNull(firstEntry());
+  }
+
+  @Override
+  public int size() {
+    loader.loadAll();
+    return loadedEntries.size();
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    loader.loadAll();
+    return loadedEntries.containsValue(value);
+  }
+
+  @Override
+  public void clear() {
+    loader.loadAll();
+    loadedEntries.clear();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super V> action) {
+    loader.loadAll();
+    loadedEntries.forEach(action);
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super String, ? super V, ? extends V> function) {
+    loader.loadAll();
+    loadedEntries.replaceAll(function);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    loader.loadAll();
+    return loadedEntries.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    loader.loadAll();
+    return loadedEntries.hashCode();
+  }
+
+  @Override
+  public Comparator<? super String> comparator() {
+    return null;
+  }
+
+  @Override
+  public Map.Entry<String, V> firstEntry() {
+    return above(null, true, null, false);
+  }
+
+  @Override
+  public Map.Entry<String, V> lastEntry() {
+    return below(null, true, null);
+  }
+
+  @Override
+  public String firstKey() {
+    return key(firstEntry());
+  }
+
+  @Override
+  public String lastKey() {
+    return key(lastEntry());
+  }
+
+  @Override
+  public Map.Entry<String, V> pollFirstEntry() {
+    return full.pollFirstEntry();
+  }
+
+  @Override
+  public Map.Entry<String, V> pollLastEntry() {
+    return full.pollLastEntry();
+  }
+
+  @Override
+  public Map.Entry<String, V> ceilingEntry(String key) {
+    return above(Objects.requireNonNull(key), true, null, false);
+  }
+
+  @Override
+  public String ceilingKey(String key) {
+    return keyOrNull(ceilingEntry(key));
+  }
+
+  @Override
+  public Map.Entry<String, V> higherEntry(String key) {
+    return above(Objects.requireNonNull(key), false, null, false);
+  }
+
+  @Override
+  public String higherKey(String key) {
+    return keyOrNull(higherEntry(key));
+  }
+
+  @Override
+  public Map.Entry<String, V> floorEntry(String key) {
+    return below(Objects.requireNonNull(key), true, null);
+  }
+
+  @Override
+  public String floorKey(String key) {
+    return keyOrNull(floorEntry(key));
+  }
+
+  @Override
+  public Map.Entry<String, V> lowerEntry(String key) {
+    return below(Objects.requireNonNull(key), false, null);
+  }
+
+  @Override
+  public String lowerKey(String key) {
+    return keyOrNull(lowerEntry(key));
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+    return new View(Objects.requireNonNull(fromKey), fromInclusive, Objects.requireNonNull(toKey), toInclusive);
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> subMap(String fromKey, String toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+    return new View(null, false, Objects.requireNonNull(toKey), inclusive);
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> headMap(String toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+    return new View(Objects.requireNonNull(fromKey), inclusive, null, false);
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> tailMap(String fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  @Override
+  public NavigableSet<String> keySet() {
+    return full.keySet();
+  }
+
+  @Override
+  public NavigableSet<String> navigableKeySet() {
+    return full.navigableKeySet();
+  }
+
+  @Override
+  public Set<Map.Entry<String, V>> entrySet() {
+    return full.entrySet();
+  }
+
+  @Override
+  public Collection<V> values() {
+    return full.values();
+  }
+
+  @Override
+  public ConcurrentNavigableMap<String, V> descendingMap() {
+    return full.descendingMap();
+  }
+
+  @Override
+  public NavigableSet<String> descendingKeySet() {
+    return full.descendingKeySet();
+  }
+
+  private static String key(Map.Entry<String, ?> entry) {
+    if (Objects.isNull(entry)) {
+      throw new NoSuchElementException();
+    }
+    return entry.getKey();
+  }
+
+  private static String keyOrNull(Map.Entry<String, ?> entry) {
+    return Objects.isNull(entry) ? null : entry.getKey();
+  }
+
+  /**
+   * A view of the keys in a range that loads shards as it is navigated or iterated; {@code null} bounds
+   * are unbounded.
+   */
+  private final class View extends AbstractMap<String, V> implements ConcurrentNavigableMap<String, V> {
+
+    private final String lo;
+
+    private final boolean loInclusive;
+
+    private final String hi;
+
+    private final boolean hiInclusive;
+
+    View(String lo, boolean loInclusive, String hi, boolean hiInclusive) {
+      if (Objects.nonNull(lo) && Objects.nonNull(hi) && lo.compareTo(hi) > 0) {
+        throw new IllegalArgumentException("inconsistent range");
+      }
+      this.lo = lo;
+      this.loInclusive = loInclusive;
+      this.hi = hi;
+      this.hiInclusive = hiInclusive;
+    }
+
+    private boolean tooLow(String key) {
+      if (Objects.isNull(lo)) {
+        return false;
+      }
+      int c = key.compareTo(lo);
+      return c < 0 || (c == 0 && !loInclusive);
+    }
+
+    private boolean tooHigh(String key) {
+      return beyond(key, hi, hiInclusive);
+    }
+
+    private boolean inRange(Object key) {
+      String k = (String) Objects.requireNonNull(key);
+      return !tooLow(k) && !tooHigh(k);
+    }
+
+    private String checked(String key) {
+      if (!inRange(key)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return key;
+    }
+
+    private Map.Entry<String, V> lowest() {
+      return belowHi(above(lo, loInclusive, hi, hiInclusive));
+    }
+
+    private Map.Entry<String, V> highest() {
+      return aboveLo(below(hi, hiInclusive, lo));
+    }
+
+    private Map.Entry<String, V> belowHi(Map.Entry<String, V> entry) {
+      return Objects.isNull(entry) || tooHigh(entry.getKey()) ? null : entry;
+    }
+
+    private Map.Entry<String, V> aboveLo(Map.Entry<String, V> entry) {
+      return Objects.isNull(entry) || tooLow(entry.getKey()) ? null : entry;
+    }
+
+    @Override
+    public V get(Object key) {
+      return inRange(key) ? ShardedMap.this.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return inRange(key) && ShardedMap.this.containsKey(key);
+    }
+
+    @Override
+    public V put(String key, V value) {
+      return ShardedMap.this.put(checked(key), value);
+    }
+
+    @Override
+    public V putIfAbsent(String key, V value) {
+      return ShardedMap.this.putIfAbsent(checked(key), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+      return inRange(key) ? ShardedMap.this.remove(key) : null;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+      return inRange(key) && ShardedMap.this.remove(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, V oldValue, V newValue) {
+      return ShardedMap.this.replace(checked(key), oldValue, newValue);
+    }
+
+    @Override
+    public V replace(String key, V value) {
+      return ShardedMap.this.replace(checked(key), value);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return Objects.isNull(lowest());
+    }
+
+    @Override
+    public int size() {
+      long count = 0;
+      for (Iterator<Map.Entry<String, V>> iterator = new EntryIterator(); iterator.hasNext(); iterator.next()) {
+        count++;
+      }
+      return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void clear() {
+      for (Iterator<Map.Entry<String, V>> iterator = new EntryIterator(); iterator.hasNext(); ) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+      return null;
+    }
+
+    @Override
+    public Map.Entry<String, V> firstEntry() {
+      return lowest();
+    }
+
+    @Override
+    public Map.Entry<String, V> lastEntry() {
+      return highest();
+    }
+
+    @Override
+    public String firstKey() {
+      return key(lowest());
+    }
+
+    @Override
+    public String lastKey() {
+      return key(highest());
+    }
+
+    @Override
+    public Map.Entry<String, V> pollFirstEntry() {
+      Map.Entry<String, V> entry;
+      while (Objects.nonNull(entry = lowest())) {
+        if (ShardedMap.this.remove(entry.getKey(), entry.getValue())) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Map.Entry<String, V> pollLastEntry() {
+      Map.Entry<String, V> entry;
+      while (Objects.nonNull(entry = highest())) {
+        if (ShardedMap.this.remove(entry.getKey(), entry.getValue())) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Map.Entry<String, V> ceilingEntry(String key) {
+      return tooLow(key) ? lowest() : belowHi(above(key, true, hi, hiInclusive));
+    }
+
+    @Override
+    public String ceilingKey(String key) {
+      return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Map.Entry<String, V> higherEntry(String key) {
+      return tooLow(key) ? lowest() : belowHi(above(key, false, hi, hiInclusive));
+    }
+
+    @Override
+    public String higherKey(String key) {
+      return keyOrNull(higherEntry(key));
+    }
+
+    @Override
+    public Map.Entry<String, V> floorEntry(String key) {
+      return tooHigh(key) ? highest() : aboveLo(below(key, true, lo));
+    }
+
+    @Override
+    public String floorKey(String key) {
+      return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Map.Entry<String, V> lowerEntry(String key) {
+      return tooHigh(key) ? highest() : aboveLo(below(key, false, lo));
+    }
+
+    @Override
+    public String lowerKey(String key) {
+      return keyOrNull(lowerEntry(key));
+    }
+
+    /**
+     * Create a view of a subrange; {@code null} keeps the bound of this view.
+     */
+    private View newView(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+      if (Objects.isNull(fromKey)) {
+        fromKey = lo;
+        fromInclusive = loInclusive;
+      } else if (Objects.nonNull(lo)) {
+        int c = fromKey.compareTo(lo);
+        if (c < 0 || (c == 0 && !loInclusive && fromInclusive)) {
+          throw new IllegalArgumentException("key out of range");
+        }
+      }
+      if (Objects.isNull(toKey)) {
+        toKey = hi;
+        toInclusive = hiInclusive;
+      } else if (Objects.nonNull(hi)) {
+        int c = toKey.compareTo(hi);
+        if (c > 0 || (c == 0 && !hiInclusive && toInclusive)) {
+          throw new IllegalArgumentException("key out of range");
+        }
+      }
+      return new View(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+      return newView(Objects.requireNonNull(fromKey), fromInclusive, Objects.requireNonNull(toKey), toInclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> subMap(String fromKey, String toKey) {
+      return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+      return newView(null, false, Objects.requireNonNull(toKey), inclusive);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> headMap(String toKey) {
+      return headMap(toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+      return newView(Objects.requireNonNull(fromKey), inclusive, null, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> tailMap(String fromKey) {
+      return tailMap(fromKey, true);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, V> descendingMap() {
+      return loadedRange(lo, loInclusive, hi, hiInclusive).descendingMap();
+    }
+
+    @Override
+    public NavigableSet<String> navigableKeySet() {
+      return new KeySet(this);
+    }
+
+    @Override
+    public NavigableSet<String> keySet() {
+      return new KeySet(this);
+    }
+
+    @Override
+    public NavigableSet<String> descendingKeySet() {
+      return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+      return new AbstractSet<Map.Entry<String, V>>() {
+
+        @Override
+        public Iterator<Map.Entry<String, V>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return View.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+          return View.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+          if (!(o instanceof Map.Entry)) {
+            return false;
+          }
+          Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+          V value = get(entry.getKey());
+          return Objects.nonNull(value) && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+          if (!(o instanceof Map.Entry)) {
+            return false;
+          }
+          Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+          return View.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+          View.this.clear();
+        }
+
+      };
+    }
+
+    @Override
+    public Collection<V> values() {
+      return new AbstractCollection<V>() {
+
+        @Override
+        public Iterator<V> iterator() {
+          EntryIterator entries = new EntryIterator();
+          return new Iterator<V>() {
+
+            @Override
+            public boolean hasNext() {
+              return entries.hasNext();
+            }
+
+            @Override
+            public V next() {
+              return entries.next().getValue();
+            }
+
+            @Override
+            public void remove() {
+              entries.remove();
+            }
+
+          };
+        }
+
+        @Override
+        public int size() {
+          return View.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+          return View.this.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+          View.this.clear();
+        }
+
+      };
+    }
+
+    /**
+     * Iterates the entries in key order; each step looks up the entry after the previous key.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+      private Map.Entry<String, V> next = lowest();
+
+      private Map.Entry<String, V> lastReturned;
+
+      @Override
+      public boolean hasNext() {
+        return Objects.nonNull(next);
+      }
+
+      @Override
+      public Map.Entry<String, V> next() {
+        if (Objects.isNull(next)) {
+          throw new NoSuchElementException();
+        }
+        lastReturned = next;
+        next = belowHi(above(next.getKey(), false, hi, hiInclusive));
+        return lastReturned;
+      }
+
+      @Override
+      public void remove() {
+        if (Objects.isNull(lastReturned)) {
+          throw new IllegalStateException();
+        }
+        ShardedMap.this.remove(lastReturned.getKey());
+        lastReturned = null;
+      }
+
+    }
+
+  }
+
+  /**
+   * The keys of a navigable map.
+   */
+  private static final class KeySet extends AbstractSet<String> implements NavigableSet<String> {
+
+    private final ConcurrentNavigableMap<String, ?> map;
+
+    KeySet(ConcurrentNavigableMap<String, ?> map) {
+      this.map = map;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      Iterator<? extends Map.Entry<String, ?>> entries = map.entrySet().iterator();
+      return new Iterator<String>() {
+
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public String next() {
+          return entries.next().getKey();
+        }
+
+        @Override
+        public void remove() {
+          entries.remove();
+        }
+
+      };
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return map.containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return Objects.nonNull(map.remove(o));
+    }
+
+    @Override
+    public void clear() {
+      map.clear();
+    }
+
+    @Override
+    public String lower(String key) {
+      return map.lowerKey(key);
+    }
+
+    @Override
+    public String floor(String key) {
+      return map.floorKey(key);
+    }
+
+    @Override
+    public String ceiling(String key) {
+      return map.ceilingKey(key);
+    }
+
+    @Override
+    public String higher(String key) {
+      return map.higherKey(key);
+    }
+
+    @Override
+    public String first() {
+      return map.firstKey();
+    }
+
+    @Override
+    public String last() {
+      return map.lastKey();
+    }
+
+    @Override
+    public String pollFirst() {
+      return keyOrNull(map.pollFirstEntry());
+    }
+
+    @Override
+    public String pollLast() {
+      return keyOrNull(map.pollLastEntry());
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+      return map.comparator();
+    }
+
+    @Override
+    public NavigableSet<String> descendingSet() {
+      return new KeySet(map.descendingMap());
+    }
+
+    @Override
+    public Iterator<String> descendingIterator() {
+      return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<String> subSet(String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+      return new KeySet(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+      return new KeySet(map.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+      return new KeySet(map.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<String> subSet(String fromElement, String toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> headSet(String toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> tailSet(String fromElement) {
+      return tailSet(fromElement, true);
+    }
+
+  }
+
+}
@@ -1,8 +1,19 @@
 package com.robothy.s3.core.storage;
 
 import com.robothy.s3.core.util.IdUtils;
+import io.netty.buffer.ByteBuf;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
 
 /**
  * Key-Value based storage abstraction.
@@ -28,6 +39,18 @@ public interface Storage {
     return new InMemoryStorage(maxTotalSize);
   }
 
+  /**
+   * Create an in-memory storage with max total size limit.
+   *
+   * @param maxTotalSize max total size.
+   * @param offHeap {@code true} to create an {@linkplain OffHeapStorage} that keeps data in direct
+   *     memory; {@code false} to create an {@linkplain InMemoryStorage}.
+   * @return a {@linkplain Storage} instance.
+   */
+  static Storage createInMemory(long maxTotalSize, boolean offHeap) {
+    return offHeap ? new OffHeapStorage(maxTotalSize) : new InMemoryStorage(maxTotalSize);
+  }
+
   /**
    * Create a persistent storage with a specified path. The path
    * will be created if not exists.
@@ -39,6 +62,42 @@ public interface Storage {
     return new LocalFileSystemStorage(path);
   }
 
+  /**
+   * Create a persistent storage that packs small objects into segment files. The path
+   * will be created if not exists. Objects written by {@linkplain #createPersistent(Path)}
+   * in the same path are readable.
+   *
+   * @param path where data stores in.
+   * @return a {@linkplain Storage} instance.
+   */
+  static Storage createPacked(Path path) {
+    return new PackFileStorage(path);
+  }
+
+  /**
+   * Create a persistent storage that packs small objects into segment files, and forces written
+   * objects to the disk with {@code syncer}.
+   *
+   * @param path where data stores in.
+   * @param syncer forces written objects to the disk.
+   * @return a {@linkplain Storage} instance.
+   */
+  static Storage createPacked(Path path, FileSyncer syncer) {
+    return new PackFileStorage(path, syncer);
+  }
+
+  /**
+   * Create a storage that reads the objects written by {@linkplain #createPacked(Path)} or
+   * {@linkplain #createPersistent(Path)} in a path, without changing the path.
+   *
+   * @param path where data stores in.
+   * @return a read-only {@linkplain Storage} instance.
+   */
+  static Storage createReadOnlyPacked(Path path) {
+    return new PackFileStorage(path, PackFileStorage.DEFAULT_SEGMENT_SIZE, PackFileStorage.DEFAULT_PACK_THRESHOLD,
+        FileSyncer.none(), true);
+  }
+
   /**
    * Create a {@linkplain LayeredStorage} instance.
    *
@@ -60,6 +119,106 @@ public interface Storage {
     return new CopyOnAccessStorage(base);
   }
 
+  /**
+   * Create a {@linkplain CopyOnAccessStorage} instance.
+   *
+   * @param base the base storage of the {@linkplain CopyOnAccessStorage}.
+   * @param copies the storage where accessed objects are copied to.
+   * @return a {@linkplain CopyOnAccessStorage} instance.
+   */
+  static Storage createCopyOnAccess(Storage base, Storage copies) {
+    return new CopyOnAccessStorage(base, copies);
+  }
+
+  /**
+   * Create a {@linkplain ReferenceCountedStorage} instance, so that objects can be shared
+   * via {@linkplain #retain(Long)}.
+   *
+   * @param base the storage where objects are stored.
+   * @param references file IDs referenced by the metadata; IDs that occur more than once are shared.
+   * @return a {@linkplain ReferenceCountedStorage} instance.
+   */
+  static Storage createReferenceCounted(Storage base, Stream<Long> references) {
+    return new ReferenceCountedStorage(base, references);
+  }
+
+  /**
+   * Create a {@linkplain ReferenceCountedStorage} instance for metadata that is loaded in the background.
+   * Deletes are deferred until the references are counted.
+   *
+   * @param base the storage where objects are stored.
+   * @param references completes with the file IDs referenced by the metadata once it is loaded; the
+   *     references are counted by the completing thread, which must prevent changes of the metadata meanwhile.
+   * @return a {@linkplain ReferenceCountedStorage} instance.
+   */
+  static Storage createReferenceCounted(Storage base, CompletableFuture<Stream<Long>> references) {
+    return new ReferenceCountedStorage(base, references);
+  }
+
+  /**
+   * Create a {@linkplain DeduplicatingStorage} instance that stores identical content only once.
+   *
+   * @param base the storage where distinct content is stored.
+   * @param indexFile the file where references to the content are persisted; or {@code null}
+   *     if {@code base} is not persistent.
+   * @param listener receives the statistics after each change; or {@code null}.
+   * @return a {@linkplain DeduplicatingStorage} instance.
+   */
+  static Storage createDeduplicating(Storage base, Path indexFile, Consumer<DeduplicationStats> listener) {
+    return new DeduplicatingStorage(base, indexFile, listener);
+  }
+
+  /**
+   * Create a {@linkplain DeduplicatingStorage} instance that forces its index file with {@code syncer}.
+   *
+   * @param base the storage where distinct content is stored.
+   * @param indexFile the file where references to the content are persisted.
+   * @param listener receives the statistics after each change; or {@code null}.
+   * @param syncer forces the index file to the disk.
+   * @return a {@linkplain DeduplicatingStorage} instance.
+   */
+  static Storage createDeduplicating(Storage base, Path indexFile, Consumer<DeduplicationStats> listener,
+      FileSyncer syncer) {
+    return new DeduplicatingStorage(base, indexFile, listener, syncer, false);
+  }
+
+  /**
+   * Create a read-only {@linkplain DeduplicatingStorage} instance that reads the deduplicated content
+   * of {@code base} without changing {@code indexFile} or {@code base}.
+   *
+   * @param base the storage where distinct content is stored.
+   * @param indexFile the file where references to the content are persisted.
+   * @return a read-only {@linkplain DeduplicatingStorage} instance.
+   */
+  static Storage createReadOnlyDeduplicating(Storage base, Path indexFile) {
+    return new DeduplicatingStorage(base, indexFile, null, FileSyncer.none(), true);
+  }
+
+  /**
+   * Create a {@linkplain CompressingStorage} instance. Compressed objects are always readable,
+   * so that objects written with and without compression can be mixed in the base storage.
+   *
+   * @param base the storage where objects are stored.
+   * @param compress {@code true} to compress written objects; {@code false} to write objects raw.
+   * @return a {@linkplain CompressingStorage} instance.
+   */
+  static Storage createCompressing(Storage base, boolean compress) {
+    return new CompressingStorage(base, compress);
+  }
+
+  /**
+   * Create a {@linkplain CachingStorage} instance that keeps small, frequently read objects in memory.
+   *
+   * @param base the storage where objects are stored.
+   * @param capacity max total size of cached objects in bytes.
+   * @param maxObjectSize objects larger than this size in bytes are not cached.
+   * @param stats counters of the cache to update.
+   * @return a {@linkplain CachingStorage} instance.
+   */
+  static Storage createCaching(Storage base, long capacity, int maxObjectSize, ReadCacheStats stats) {
+    return new CachingStorage(base, capacity, maxObjectSize, stats);
+  }
+
   /**
    * Put binary data to the storage.
    *
@@ -110,6 +269,80 @@ public interface Storage {
    */
   InputStream getInputStream(Long id);
 
+  /**
+   * Read {@code length} bytes of the object starting at {@code offset}.
+   *
+   * @param id the object ID.
+   * @param offset position of the first byte to read.
+   * @param length number of bytes to read.
+   * @return a read-only buffer contains the read bytes.
+   * @throws IllegalArgumentException if the object not exists or the range exceeds the object.
+   */
+  default ByteBuffer read(Long id, long offset, int length) {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid range offset=" + offset + ", length=" + length + ".");
+    }
+
+    try (InputStream in = getInputStream(id)) {
+      IOUtils.skipFully(in, offset);
+      return ByteBuffer.wrap(IOUtils.readFully(in, length)).asReadOnlyBuffer();
+    } catch (EOFException e) {
+      throw new IllegalArgumentException("Range offset=" + offset + ", length=" + length
+          + " exceeds object id='" + id + "'.", e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get a read-only view of the object if the object is stored in memory. The view shares
+   * the stored bytes, no data is copied. It holds a reference to the memory of the object, so that
+   * the memory is not freed while the view is used even if the object is deleted meanwhile.
+   * The caller is responsible for releasing the returned view.
+   *
+   * @param id the object ID.
+   * @return a read-only view of the object; or empty if the object is not stored in memory.
+   */
+  default Optional<ByteBuf> getByteBuf(Long id) {
+    return Optional.empty();
+  }
+
+  /**
+   * Open a read-only {@linkplain FileChannel} of the object if the object is stored as a file.
+   * The caller is responsible for closing the returned channel.
+   *
+   * @param id the object ID.
+   * @return a read-only file channel of the object; or empty if the object is not stored as a file.
+   */
+  default Optional<FileChannel> getFileChannel(Long id) {
+    return Optional.empty();
+  }
+
+  /**
+   * Add a reference to an existing object, so that the object is shared by one more owner.
+   * A shared object is only deleted once {@linkplain #delete(Long)} was called for each reference.
+   *
+   * @param id the object ID.
+   * @return {@code true} if the reference was added; {@code false} if the storage doesn't support
+   *     sharing objects.
+   * @throws IllegalArgumentException if the object not exists.
+   */
+  default boolean retain(Long id) {
+    return false;
+  }
+
+  /**
+   * Keep an object readable until the returned lease is closed, even if it is deleted meanwhile.
+   * A delete of a leased object takes effect once its last lease is closed.
+   *
+   * @param id the object ID.
+   * @return the lease; closing it more than once has no effect. Storages that delete objects at once
+   *     return a lease that does nothing.
+   */
+  default Closeable lease(Long id) {
+    return () -> { };
+  }
+
   /**
    * Delete an object by ID.
    *
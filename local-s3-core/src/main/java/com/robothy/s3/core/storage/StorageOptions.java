@@ -0,0 +1,132 @@
+package com.robothy.s3.core.storage;
+
+import java.util.function.Consumer;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Options of the storage that a {@code LocalS3Manager} creates for object data.
+ */
+@Builder
+@Getter
+public class StorageOptions {
+
+  public static final int DEFAULT_READ_CACHE_OBJECT_SIZE_LIMIT = 64 * 1024;
+
+  public static final long DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 0;
+
+  public static final int DEFAULT_GROUP_COMMIT_MAX_REQUESTS = 64;
+
+  public static final long DEFAULT_METADATA_FLUSH_INTERVAL_MILLIS = 0;
+
+  public static final int DEFAULT_METADATA_FLUSH_MAX_DIRTY_CHANGES = 1000;
+
+  public static final int DEFAULT_METADATA_SHARD_SIZE = 100_000;
+
+  /**
+   * Keep in-memory object data in direct memory instead of Java Heap.
+   */
+  private boolean offHeap;
+
+  /**
+   * Store identical content only once and receive the deduplication statistics;
+   * or {@code null} to disable deduplication.
+   */
+  private Consumer<DeduplicationStats> deduplicationListener;
+
+  /**
+   * Compress object data at rest.
+   */
+  private boolean compressionEnabled;
+
+  /**
+   * Max total size in bytes of objects cached in memory for reads from persistent storage;
+   * {@code 0} to disable the read cache.
+   */
+  private long readCacheCapacity;
+
+  /**
+   * Objects larger than this size in bytes are not cached for reads.
+   */
+  @Builder.Default
+  private int readCacheObjectSizeLimit = DEFAULT_READ_CACHE_OBJECT_SIZE_LIMIT;
+
+  /**
+   * Counters updated by the read cache; or {@code null}.
+   */
+  private ReadCacheStats readCacheStats;
+
+  /**
+   * When written object data and metadata are forced to the disk.
+   */
+  @Builder.Default
+  private Durability durability = Durability.NONE;
+
+  /**
+   * With {@linkplain Durability#GROUP_COMMIT}, max time in milliseconds a request waits for more
+   * requests to be forced together with it. With {@code 0}, the requests queued while the previous
+   * batch was forced are forced together.
+   */
+  @Builder.Default
+  private long groupCommitWindowMillis = DEFAULT_GROUP_COMMIT_WINDOW_MILLIS;
+
+  /**
+   * With {@linkplain Durability#GROUP_COMMIT}, a batch is forced at once when it reaches this number of requests.
+   */
+  @Builder.Default
+  private int groupCommitMaxRequests = DEFAULT_GROUP_COMMIT_MAX_REQUESTS;
+
+  /**
+   * Counters and latency histogram of forcing files to the disk; or {@code null}.
+   */
+  private FsyncStats fsyncStats;
+
+  /**
+   * Max time in milliseconds a change of bucket metadata stays in memory before it is persisted together
+   * with later changes of the bucket. With {@code 0}, each change is persisted before the request returns.
+   */
+  @Builder.Default
+  private long metadataFlushIntervalMillis = DEFAULT_METADATA_FLUSH_INTERVAL_MILLIS;
+
+  /**
+   * The changes of a bucket are persisted at once when the bucket has this number of changes in memory.
+   */
+  @Builder.Default
+  private int metadataFlushMaxDirtyChanges = DEFAULT_METADATA_FLUSH_MAX_DIRTY_CHANGES;
+
+  /**
+   * With a metadata flush interval, whether a request waits until its change is persisted. Changes are
+   * still coalesced with the changes of concurrent requests; otherwise, the changes within an interval
+   * may be lost on a crash.
+   */
+  private boolean metadataFlushWait;
+
+  /**
+   * Counters of the metadata flushes; or {@code null}.
+   */
+  private MetadataFlushStats metadataFlushStats;
+
+  /**
+   * The metadata of a bucket with more object keys than this number is persisted in key-range shards,
+   * which are loaded on access and rewritten separately.
+   */
+  @Builder.Default
+  private int metadataShardSize = DEFAULT_METADATA_SHARD_SIZE;
+
+  /**
+   * The max number of loaded shards of a sharded bucket; or {@code 0} if unlimited. Beyond it, the least
+   * recently accessed shards are unloaded once their changes are persisted, so that buckets larger than
+   * the memory can be served. It also applies to a loaded bucket that is sharded while the server runs.
+   */
+  private int metadataMaxLoadedShards;
+
+  /**
+   * Create options with all features disabled.
+   *
+   * @return default options.
+   */
+  public static StorageOptions defaults() {
+    return StorageOptions.builder().build();
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.robothy.s3.core.util;
+
+import com.robothy.s3.core.storage.Storage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An {@linkplain InputStream} over a byte range of content that is stored as several files in a
+ * {@linkplain Storage}, e.g. the parts of a multipart upload. Each file is opened only when the
+ * range reaches it, and is closed once read.
+ *
+ * <p>The files in the range are leased when the stream is created, so that they can still be read
+ * if the object is deleted while the stream is open. The lease of a file is closed once the file is
+ * read, and the remaining leases are closed with the stream.
+ */
+public class CompositeInputStream extends InputStream {
+
+  private final Storage storage;
+
+  private final long[] fileIds;
+
+  private final long[] sizes;
+
+  private final Closeable[] leases;
+
+  private int index;
+
+  /**
+   * Bytes to skip in the file at {@code index}.
+   */
+  private long skip;
+
+  /**
+   * Bytes left in the range.
+   */
+  private long remaining;
+
+  /**
+   * Bytes left in the current file.
+   */
+  private long remainingInFile;
+
+  private InputStream current;
+
+  private boolean closed;
+
+  /**
+   * Create a {@linkplain CompositeInputStream} instance.
+   *
+   * @param storage the storage where the files are stored.
+   * @param fileIds file IDs in order.
+   * @param sizes sizes of the files.
+   * @param start offset of the first byte to read in the concatenated content.
+   * @param length number of bytes to read.
+   */
+  public CompositeInputStream(Storage storage, long[] fileIds, long[] sizes, long start, long length) {
+    if (fileIds.length != sizes.length) {
+      throw new IllegalArgumentException("Got " + fileIds.length + " files but " + sizes.length + " sizes.");
+    }
+    this.storage = storage;
+    this.fileIds = fileIds;
+    this.sizes = sizes;
+    this.remaining = length;
+    while (index < sizes.length && start >= sizes[index]) {
+      start -= sizes[index++];
+    }
+    this.skip = start;
+
+    this.leases = new Closeable[fileIds.length];
+    long covered = -start;
+    for (int i = index; i < fileIds.length && covered < length; i++) {
+      leases[i] = storage.lease(fileIds[i]);
+      covered += sizes[i];
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+    if (len == 0) {
+      return 0;
+    }
+
+    while (remaining > 0) {
+      if (Objects.isNull(current)) {
+        if (index == fileIds.length) {
+          throw new IOException("The content ends " + remaining + " bytes before the end of the range.");
+        }
+        current = storage.getInputStream(fileIds[index]);
+        IOUtils.skipFully(current, skip);
+        remainingInFile = sizes[index] - skip;
+        skip = 0;
+      }
+
+      if (remainingInFile > 0) {
+        int n = current.read(b, off, (int) Math.min(len, Math.min(remainingInFile, remaining)));
+        if (n < 0) {
+          throw new IOException("File id='" + fileIds[index] + "' ends " + remainingInFile + " bytes before its size.");
+        }
+        remainingInFile -= n;
+        remaining -= n;
+        return n;
+      }
+
+      current.close();
+      current = null;
+      release(index++);
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    try {
+      if (Objects.nonNull(current)) {
+        current.close();
+        current = null;
+      }
+    } finally {
+      for (int i = index; i < leases.length; i++) {
+        release(i);
+      }
+    }
+  }
+
+  private void release(int i) throws IOException {
+    if (Objects.nonNull(leases[i])) {
+      leases[i].close();
+      leases[i] = null;
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+package com.robothy.s3.core.util;
+
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.PureJavaCrc32C;
+
+/**
+ * An {@linkplain InputStream} that computes the MD5 digest, and optionally a
+ * {@linkplain CheckSumAlgorithm} checksum, of all bytes read through it.
+ * This allows computing the ETag and checksum while writing the content to the storage,
+ * instead of reading the content back.
+ */
+public class DigestingInputStream extends FilterInputStream {
+
+  private final MessageDigest md5 = DigestUtils.getMd5Digest();
+
+  private final CheckSumAlgorithm checksumAlgorithm;
+
+  private final Checksum crc;
+
+  private final MessageDigest sha;
+
+  private long count;
+
+  /**
+   * Create a {@linkplain DigestingInputStream} instance.
+   *
+   * @param in the underlying input stream.
+   * @param checksumAlgorithm the additional checksum algorithm; or {@code null} to compute MD5 only.
+   */
+  public DigestingInputStream(InputStream in, CheckSumAlgorithm checksumAlgorithm) {
+    super(in);
+    this.checksumAlgorithm = checksumAlgorithm;
+    Checksum crc = null;
+    MessageDigest sha = null;
+    if (Objects.nonNull(checksumAlgorithm)) {
+      switch (checksumAlgorithm) {
+        case CRC32:
+          crc = new CRC32();
+          break;
+        case CRC32C:
+          crc = new PureJavaCrc32C();
+          break;
+        case SHA1:
+          sha = DigestUtils.getSha1Digest();
+          break;
+        case SHA256:
+          sha = DigestUtils.getSha256Digest();
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported checksum algorithm " + checksumAlgorithm);
+      }
+    }
+    this.crc = crc;
+    this.sha = sha;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b != -1) {
+      update(new byte[] {(byte) b}, 0, 1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n > 0) {
+      update(b, off, n);
+    }
+    return n;
+  }
+
+  /**
+   * Skipped bytes must be digested too, so they are read instead.
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 0))];
+    long skipped = 0;
+    int read;
+    while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  private void update(byte[] b, int off, int len) {
+    md5.update(b, off, len);
+    if (Objects.nonNull(crc)) {
+      crc.update(b, off, len);
+    }
+    if (Objects.nonNull(sha)) {
+      sha.update(b, off, len);
+    }
+    count += len;
+  }
+
+  /**
+   * Get the number of bytes read so far.
+   *
+   * @return the number of bytes read.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the hex encoded MD5 digest of the bytes read. Call this method only after the stream is fully read.
+   *
+   * @return the hex encoded MD5 digest, i.e. the ETag.
+   */
+  public String getMd5Hex() {
+    return Hex.encodeHexString(md5.digest());
+  }
+
+  /**
+   * Get the checksum algorithm.
+   *
+   * @return the checksum algorithm; or {@code null} if no checksum is computed.
+   */
+  public CheckSumAlgorithm getChecksumAlgorithm() {
+    return checksumAlgorithm;
+  }
+
+  /**
+   * Get the base64 encoded checksum of the bytes read. Call this method only after the stream is fully read.
+   *
+   * @return the base64 encoded checksum; or {@code null} if no checksum algorithm is specified.
+   */
+  public String getChecksum() {
+    if (Objects.nonNull(crc)) {
+      byte[] value = ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+      return Base64.getEncoder().encodeToString(value);
+    }
+    if (Objects.nonNull(sha)) {
+      return Base64.getEncoder().encodeToString(sha.digest());
+    }
+    return null;
+  }
+
+}
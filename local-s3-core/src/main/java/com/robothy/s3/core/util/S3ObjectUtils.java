@@ -4,12 +4,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 
 public class S3ObjectUtils {
 
+  private static final Pattern MD5_HEX_PATTERN = Pattern.compile("[0-9a-fA-F]{32}");
+
   /**
    * Calculate the etag of the given input stream.
    */
@@ -21,6 +29,27 @@ public class S3ObjectUtils {
     }
   }
 
+  /**
+   * Calculate the etag of an object that is completed from multipart upload parts, in the same format as
+   * Amazon S3: the MD5 digest of the concatenated binary MD5 digests of the parts, followed by
+   * {@code -<number of parts>}. A part etag that is not a hex encoded MD5 digest is digested as text.
+   *
+   * @param partEtags etags of the parts in order.
+   * @return the etag of the completed object.
+   */
+  public static String multipartEtag(List<String> partEtags) {
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    for (String partEtag : partEtags) {
+      String unquoted = StringUtils.strip(partEtag, "\"");
+      try {
+        md5.update(MD5_HEX_PATTERN.matcher(unquoted).matches() ? Hex.decodeHex(unquoted) : DigestUtils.md5(unquoted));
+      } catch (DecoderException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return Hex.encodeHexString(md5.digest()) + "-" + partEtags.size();
+  }
+
   /**
    * Encode the given string to url format except slash.
    */
@@ -0,0 +1,44 @@
+package com.robothy.s3.core.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.robothy.s3.core.exception.InvalidRangeException;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class ContentRangeTest {
+
+  @Test
+  void parse() {
+    assertEquals(Optional.of(ContentRange.of(0, 4, 10)), ContentRange.parse("bytes=0-4", 10));
+    assertEquals(Optional.of(ContentRange.of(5, 9, 10)), ContentRange.parse("bytes=5-", 10));
+    assertEquals(Optional.of(ContentRange.of(5, 9, 10)), ContentRange.parse("bytes=5-100", 10));
+    assertEquals(Optional.of(ContentRange.of(7, 9, 10)), ContentRange.parse("bytes=-3", 10));
+    assertEquals(Optional.of(ContentRange.of(0, 9, 10)), ContentRange.parse("bytes=-30", 10));
+    assertEquals(Optional.of(ContentRange.of(9, 9, 10)), ContentRange.parse("bytes=9-99999999999999999999", 10));
+
+    assertEquals(Optional.empty(), ContentRange.parse(null, 10));
+    assertEquals(Optional.empty(), ContentRange.parse("bytes=-", 10));
+    assertEquals(Optional.empty(), ContentRange.parse("bytes=5-4", 10));
+    assertEquals(Optional.empty(), ContentRange.parse("bytes=0-1,3-4", 10));
+    assertEquals(Optional.empty(), ContentRange.parse("items=0-4", 10));
+    assertEquals(Optional.empty(), ContentRange.parse("bytes=a-4", 10));
+
+    assertThrows(InvalidRangeException.class, () -> ContentRange.parse("bytes=10-", 10));
+    assertThrows(InvalidRangeException.class, () -> ContentRange.parse("bytes=-0", 10));
+    assertThrows(InvalidRangeException.class, () -> ContentRange.parse("bytes=0-", 0));
+  }
+
+  @Test
+  void toHeaderValue() {
+    ContentRange range = ContentRange.of(2, 5, 10);
+    assertEquals(4, range.length());
+    assertEquals("bytes 2-5/10", range.toHeaderValue());
+    assertThrows(IllegalArgumentException.class, () -> ContentRange.of(5, 10, 10));
+
+    ContentRange empty = ContentRange.empty(10, 10);
+    assertEquals(0, empty.length());
+    assertEquals("bytes */10", empty.toHeaderValue());
+    assertThrows(IllegalArgumentException.class, () -> ContentRange.empty(11, 10));
+  }
+
+}
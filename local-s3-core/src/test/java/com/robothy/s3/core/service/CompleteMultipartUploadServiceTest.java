@@ -2,11 +2,15 @@ package com.robothy.s3.core.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 import com.robothy.s3.core.exception.BucketNotExistException;
+import com.robothy.s3.core.exception.InvalidPartNumberException;
 import com.robothy.s3.core.exception.ObjectNotExistException;
 import com.robothy.s3.core.exception.UploadNotExistException;
+import com.robothy.s3.core.model.ContentRange;
 import com.robothy.s3.core.model.answers.CompleteMultipartUploadAns;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadPartMetadata;
+import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
 import com.robothy.s3.core.model.request.CompleteMultipartUploadPartOption;
 import com.robothy.s3.core.model.request.CreateMultipartUploadOptions;
 import com.robothy.s3.core.model.request.GetObjectOptions;
@@ -15,6 +19,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -52,10 +58,65 @@ class CompleteMultipartUploadServiceTest extends LocalS3ServiceTestBase {
             CompleteMultipartUploadPartOption.builder().partNumber(2).build()));
     assertEquals("/" + bucket + "/" + key, completeAns.getLocation());
     assertNull(completeAns.getVersionId());
+    assertEquals("64d1e57a34042883053ec1c5d8d60167-2", completeAns.getEtag());
+
+    // Parts are answered from metadata.
+    List<GetObjectAns.Part> parts = objectService.headObject(bucket, key, GetObjectOptions.builder().build())
+        .getParts().get();
+    assertEquals(2, parts.size());
+    assertEquals(2, parts.get(1).getPartNumber());
+    assertEquals(5, parts.get(1).getSize());
+    assertEquals("f5a7924e621e84c9280a9a27e1bcb7f6", parts.get(1).getEtag());
 
     GetObjectAns object = objectService.getObject(bucket, key, GetObjectOptions.builder().build());
     assertEquals("plain/text", object.getContentType());
     assertEquals("HelloWorld", new String(object.getContent().readAllBytes()));
+    assertEquals(Optional.of(2), object.getPartsCount());
+
+    GetObjectAns part2 = objectService.getObject(bucket, key, GetObjectOptions.builder().partNumber(2).build());
+    assertEquals(Optional.of(ContentRange.of(5, 9, 10)), part2.getContentRange());
+    assertEquals("World", new String(part2.getContent().readAllBytes()));
+    assertThrows(InvalidPartNumberException.class,
+        () -> objectService.getObject(bucket, key, GetObjectOptions.builder().partNumber(3).build()));
+
+    GetObjectAns acrossParts = objectService.getObject(bucket, key, GetObjectOptions.builder().range("bytes=3-6").build());
+    assertEquals(Optional.of(ContentRange.of(3, 6, 10)), acrossParts.getContentRange());
+    assertEquals("loWo", new String(acrossParts.getContent().readAllBytes()));
+    GetObjectAns inPart = objectService.getObject(bucket, key, GetObjectOptions.builder().range("bytes=6-8").build());
+    assertEquals(Optional.of(ContentRange.of(6, 8, 10)), inPart.getContentRange());
+    assertEquals("orl", new String(inPart.getContent().readAllBytes()));
+  }
+
+  @ParameterizedTest
+  @MethodSource("localS3Services")
+  void completeReferencesParts(BucketService bucketService, ObjectService objectService) throws IOException {
+    String bucket = "my-bucket";
+    String key = "a.txt";
+    bucketService.createBucket(bucket);
+    String uploadId = objectService.createMultipartUpload(bucket, key, CreateMultipartUploadOptions.builder().build());
+    for (int i = 1; i <= 3; i++) {
+      objectService.uploadPart(bucket, key, uploadId, i, UploadPartOptions.builder()
+          .data(new ByteArrayInputStream(("part" + i).getBytes()))
+          .contentLength(5)
+          .build());
+    }
+    long[] partFileIds = objectService.localS3Metadata().getBucketMetadata(bucket).get().getUploads().get(key)
+        .get(uploadId).getParts().values().stream().mapToLong(UploadPartMetadata::getFileId).toArray();
+
+    objectService.completeMultipartUpload(bucket, key, uploadId, Arrays.asList(
+        CompleteMultipartUploadPartOption.builder().partNumber(1).build(),
+        CompleteMultipartUploadPartOption.builder().partNumber(3).build()));
+    VersionedObjectMetadata object = objectService.localS3Metadata().getBucketMetadata(bucket).get()
+        .getObjectMetadata(key).get().getLatest();
+    assertNull(object.getFileId());
+    assertArrayEquals(new long[] {partFileIds[0], partFileIds[2]}, object.getPartFileIds().get());
+    assertFalse(objectService.storage().isExist(partFileIds[1]));
+    assertEquals("part1part3", new String(objectService.getObject(bucket, key, GetObjectOptions.builder().build())
+        .getContent().readAllBytes()));
+
+    objectService.deleteObject(bucket, key);
+    assertFalse(objectService.storage().isExist(partFileIds[0]));
+    assertFalse(objectService.storage().isExist(partFileIds[2]));
   }
 
 }
\ No newline at end of file
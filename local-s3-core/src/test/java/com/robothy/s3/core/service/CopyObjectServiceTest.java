@@ -1,11 +1,13 @@
 package com.robothy.s3.core.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import com.robothy.s3.core.exception.BucketNotExistException;
 import com.robothy.s3.core.model.answers.CopyObjectAns;
 import com.robothy.s3.core.model.answers.DeleteObjectAns;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.answers.ListObjectVersionsAns;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.request.CopyObjectOptions;
 import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.model.request.PutObjectOptions;
@@ -80,4 +82,51 @@ class CopyObjectServiceTest extends LocalS3ServiceTestBase {
     assertEquals(ObjectMetadata.NULL_VERSION, copyObjectAns3.getVersionId());
   }
 
-}
\ No newline at end of file
+  @ParameterizedTest
+  @MethodSource("localS3Services")
+  void copyObjectSharesContent(BucketService bucketService, ObjectService objectService) throws Exception {
+    String bucket = "my-bucket";
+    bucketService.createBucket(bucket);
+    objectService.putObject(bucket, "a", PutObjectOptions.builder()
+        .size(5)
+        .content(new ByteArrayInputStream("Hello".getBytes()))
+        .build());
+    objectService.copyObject(bucket, "b", CopyObjectOptions.builder().sourceBucket(bucket).sourceKey("a").build());
+    objectService.copyObject(bucket, "c", CopyObjectOptions.builder().sourceBucket(bucket).sourceKey("b").build());
+    GetObjectAns source = objectService.headObject(bucket, "a", GetObjectOptions.builder().build());
+    assertEquals(source.getFileId(), objectService.headObject(bucket, "c", GetObjectOptions.builder().build()).getFileId());
+
+    objectService.deleteObject(bucket, "a", null);
+    objectService.deleteObject(bucket, "c", null);
+    assertTrue(objectService.storage().isExist(source.getFileId()));
+    GetObjectAns copy = objectService.getObject(bucket, "b", GetObjectOptions.builder().build());
+    assertEquals(source.getEtag(), copy.getEtag());
+    assertArrayEquals("Hello".getBytes(), copy.getContent().readAllBytes());
+
+    objectService.deleteObject(bucket, "b", null);
+    assertFalse(objectService.storage().isExist(source.getFileId()));
+  }
+
+  @ParameterizedTest
+  @MethodSource("localS3Services")
+  void copyObjectToMissingBucket(BucketService bucketService, ObjectService objectService) {
+    String bucket = "my-bucket";
+    bucketService.createBucket(bucket);
+    objectService.putObject(bucket, "a", PutObjectOptions.builder()
+        .size(5)
+        .content(new ByteArrayInputStream("Hello".getBytes()))
+        .build());
+    GetObjectAns source = objectService.headObject(bucket, "a", GetObjectOptions.builder().build());
+
+    StagedObject stagedObject = objectService.stageObjectCopy(bucket, "a", null).get();
+    assertThrows(BucketNotExistException.class, () -> objectService.copyObject("not-exist", "b",
+        CopyObjectOptions.builder().sourceBucket(bucket).sourceKey("a").stagedObject(stagedObject).build()));
+
+    // The staged copy is released exactly once, so the source content is deleted with the source.
+    assertTrue(objectService.storage().isExist(source.getFileId()));
+    objectService.deleteObject(bucket, "a", null);
+    assertFalse(objectService.storage().isExist(source.getFileId()));
+    assertFalse(objectService.storage().isExist(stagedObject.getFileId()));
+  }
+
+}
@@ -1,15 +1,32 @@
 package com.robothy.s3.core.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
+import com.robothy.s3.core.storage.BucketMetadataJournalRecord;
+import com.robothy.s3.core.storage.BucketMetadataPersister;
+import com.robothy.s3.core.storage.BucketMetadataStore;
+import com.robothy.s3.core.storage.FileSyncer;
 import com.robothy.s3.core.storage.FileSystemBucketMetadataStore;
+import com.robothy.s3.core.storage.ShardedMap;
+import com.robothy.s3.core.storage.StorageOptions;
+import com.robothy.s3.core.util.JsonUtils;
 import com.robothy.s3.core.storage.MetadataStore;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
 import lombok.SneakyThrows;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
@@ -76,4 +93,218 @@ class FileSystemBucketMetadataStoreTest {
     assertEquals(2, bucketStore.fetchAll().size());
     FileUtils.deleteDirectory(tempDirectory.toFile());
   }
-}
\ No newline at end of file
+
+  @Test
+  @SneakyThrows
+  void storeObject() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory);
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    bucketMetadata.getObjectMap().put("a", new ObjectMetadata());
+    store.store(bucketMetadata.getBucketName(), bucketMetadata);
+
+    VersionedObjectMetadata versionedObjectMetadata = new VersionedObjectMetadata();
+    versionedObjectMetadata.setSize(3);
+    versionedObjectMetadata.setFileId(1L);
+    bucketMetadata.getObjectMap().put("b", new ObjectMetadata(ObjectMetadata.NULL_VERSION, versionedObjectMetadata));
+    store.storeObject("bucket", "b", bucketMetadata);
+
+    ConcurrentSkipListMap<String, UploadMetadata> uploads = new ConcurrentSkipListMap<>();
+    uploads.put("upload-id", UploadMetadata.builder().contentType("text/plain").build());
+    bucketMetadata.getUploads().put("c", uploads);
+    store.storeObject("bucket", "c", bucketMetadata);
+
+    bucketMetadata.getObjectMap().remove("a");
+    store.storeObject("bucket", "a", bucketMetadata);
+
+    // Replay the journal with a new store instance.
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+    assertEquals(bucketMetadata, store.fetch("bucket"));
+
+    bucketMetadata.getUploads().remove("c");
+    store.storeObject("bucket", "c", bucketMetadata);
+    assertFalse(FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket").getUploads().containsKey("c"));
+
+    // A full store resets the journal.
+    store.store("bucket", bucketMetadata);
+    assertFalse(Files.exists(tempDirectory.resolve("bucket.bucket.journal")));
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+
+    store.delete("bucket");
+    assertEquals(0, store.fetchAll().size());
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @Test
+  @SneakyThrows
+  void fetchWithIncompleteJournal() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory);
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    store.store(bucketMetadata.getBucketName(), bucketMetadata);
+    bucketMetadata.getObjectMap().put("a", new ObjectMetadata());
+    store.storeObject("bucket", "a", bucketMetadata);
+
+    Files.write(tempDirectory.resolve("bucket.bucket.journal"), "{\"key\":\"b\",\"obj".getBytes(),
+        StandardOpenOption.APPEND);
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @Test
+  @SneakyThrows
+  void readJsonFiles() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    bucketMetadata.getObjectMap().put("a", new ObjectMetadata());
+    JsonUtils.toJson(tempDirectory.resolve("bucket.bucket.meta").toFile(), bucketMetadata);
+    BucketMetadataJournalRecord record = new BucketMetadataJournalRecord();
+    record.setKey("b");
+    record.setObject(new ObjectMetadata());
+    bucketMetadata.getObjectMap().put("b", record.getObject());
+    Files.write(tempDirectory.resolve("bucket.bucket.journal"), (JsonUtils.toJson(record) + "\n").getBytes());
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory);
+    assertEquals(bucketMetadata, store.fetch("bucket"));
+
+    // The JSON journal is compacted before the first binary record is appended.
+    bucketMetadata.getObjectMap().put("c", new ObjectMetadata());
+    store.storeObject("bucket", "c", bucketMetadata);
+    assertEquals('L', Files.readAllBytes(tempDirectory.resolve("bucket.bucket.meta"))[0]);
+    assertEquals('L', Files.readAllBytes(tempDirectory.resolve("bucket.bucket.journal"))[0]);
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @Test
+  @SneakyThrows
+  void recoverInterruptedCheckpoint() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory);
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    store.store(bucketMetadata.getBucketName(), bucketMetadata);
+    bucketMetadata.getObjectMap().put("a", new ObjectMetadata());
+    store.storeObject("bucket", "a", bucketMetadata);
+
+    // Simulate a crash after the journal was retired but before the new checkpoint was moved in place.
+    bucketMetadata.getObjectMap().put("b", new ObjectMetadata());
+    JsonUtils.toJson(tempDirectory.resolve("bucket.bucket.meta.tmp").toFile(), bucketMetadata);
+    Files.move(tempDirectory.resolve("bucket.bucket.journal"), tempDirectory.resolve("bucket.bucket.journal.old"));
+    BucketMetadataStore recovered = FileSystemBucketMetadataStore.create(tempDirectory);
+    assertEquals(bucketMetadata, recovered.fetch("bucket"));
+
+    bucketMetadata.getObjectMap().put("c", new ObjectMetadata());
+    recovered.storeObject("bucket", "c", bucketMetadata);
+    assertFalse(Files.exists(tempDirectory.resolve("bucket.bucket.meta.tmp")));
+    assertFalse(Files.exists(tempDirectory.resolve("bucket.bucket.journal.old")));
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @Test
+  @SneakyThrows
+  void sharded() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory, FileSyncer.none(), 2);
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    bucketMetadata.setVersioningEnabled(true);
+    for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+      bucketMetadata.getObjectMap().put(key, new ObjectMetadata());
+    }
+    ConcurrentSkipListMap<String, UploadMetadata> uploads = new ConcurrentSkipListMap<>();
+    uploads.put("upload-id", UploadMetadata.builder().contentType("text/plain").build());
+    bucketMetadata.getUploads().put("d", uploads);
+    store.store(bucketMetadata.getBucketName(), bucketMetadata);
+    assertTrue(Files.exists(tempDirectory.resolve("bucket.bucket.shards")));
+    assertEquals(3, countShards(tempDirectory));
+    assertEquals(List.of("bucket"), store.listBucketNames());
+
+    BucketMetadata fetched = FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket");
+    assertInstanceOf(ShardedMap.class, fetched.getObjectMap());
+    assertTrue(fetched.getVersioningEnabled());
+    assertTrue(fetched.getObjectMap().containsKey("e"));
+    assertEquals(1, ((ShardedMap<?>) fetched.getObjectMap()).loaded().size());
+    assertEquals(bucketMetadata, fetched);
+
+    // A change is appended to the journal of its shard.
+    VersionedObjectMetadata versionedObjectMetadata = new VersionedObjectMetadata();
+    versionedObjectMetadata.setFileId(1L);
+    bucketMetadata.getObjectMap().put("c", new ObjectMetadata(ObjectMetadata.NULL_VERSION, versionedObjectMetadata));
+    store.storeObject("bucket", "c", bucketMetadata);
+    bucketMetadata.getObjectMap().remove("a");
+    store.storeObject("bucket", "a", bucketMetadata);
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+
+    // Only the loaded shards of a lazily fetched bucket are rewritten.
+    BucketMetadataStore reopened = FileSystemBucketMetadataStore.create(tempDirectory, FileSyncer.none(), 2, 1);
+    fetched = reopened.fetch("bucket");
+    fetched.getObjectMap().put("f", new ObjectMetadata());
+    bucketMetadata.getObjectMap().put("f", new ObjectMetadata());
+    reopened.store("bucket", fetched);
+    assertEquals(2, ((ShardedMap<?>) fetched.getObjectMap()).loaded().size());
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+
+    // A shard that has grown beyond twice the shard size is split.
+    for (String key : new String[] {"f1", "f2", "f3", "f4"}) {
+      fetched.getObjectMap().put(key, new ObjectMetadata());
+      bucketMetadata.getObjectMap().put(key, new ObjectMetadata());
+    }
+    reopened.store("bucket", fetched);
+    assertEquals(5, countShards(tempDirectory));
+    assertEquals(bucketMetadata, FileSystemBucketMetadataStore.create(tempDirectory).fetch("bucket"));
+
+    // An unloaded shard is read again by its key range, also after it was split.
+    fetched.getObjectMap().get("b");
+    BucketMetadataPersister.create(reopened, StorageOptions.defaults()).unloadIfNeeded("bucket", fetched);
+    assertEquals(List.of("b"), new ArrayList<>(((ShardedMap<?>) fetched.getObjectMap()).loaded().keySet()));
+    assertEquals(bucketMetadata, fetched);
+
+    reopened.delete("bucket");
+    assertFalse(Files.exists(tempDirectory.resolve("bucket.bucket.shards")));
+    assertFalse(Files.exists(tempDirectory.resolve("bucket.bucket.d")));
+    assertEquals(0, reopened.fetchAll().size());
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @Test
+  @SneakyThrows
+  void attachShardedWhileLoaded() {
+    Path tempDirectory = Files.createTempDirectory("bucket-meta");
+    BucketMetadataStore store = FileSystemBucketMetadataStore.create(tempDirectory, FileSyncer.none(), 2, 1);
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    store.store("bucket", bucketMetadata);
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.defaults());
+    BucketMetadata fetched = store.fetch("bucket");
+    persister.unloadIfNeeded("bucket", fetched);
+    assertFalse(fetched.getObjectMap() instanceof ShardedMap);
+
+    // The bucket outgrows the shard size while it is loaded as a whole.
+    for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+      fetched.getObjectMap().put(key, new ObjectMetadata());
+      bucketMetadata.getObjectMap().put(key, new ObjectMetadata());
+    }
+    persister.store("bucket", fetched);
+    assertTrue(store.isDetached("bucket", fetched));
+
+    persister.unloadIfNeeded("bucket", fetched);
+    assertInstanceOf(ShardedMap.class, fetched.getObjectMap());
+    assertFalse(store.isDetached("bucket", fetched));
+    assertFalse(fetched.getObjectMap().isOverLoaded());
+    assertTrue(((ShardedMap<?>) fetched.getObjectMap()).loaded().size() <= 2);
+    assertEquals(bucketMetadata, fetched);
+    FileUtils.deleteDirectory(tempDirectory.toFile());
+  }
+
+  @SneakyThrows
+  private static long countShards(Path dataPath) {
+    try (Stream<Path> files = Files.list(dataPath.resolve("bucket.bucket.d"))) {
+      return files.filter(file -> file.toString().endsWith(".bucket.meta")).count();
+    }
+  }
+
+}
@@ -8,9 +8,12 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import com.robothy.s3.core.asserionts.BucketAssertions;
 import com.robothy.s3.core.asserionts.ObjectAssertions;
+import com.robothy.s3.core.exception.InvalidPartNumberException;
+import com.robothy.s3.core.exception.InvalidRangeException;
 import com.robothy.s3.core.exception.LocalS3InvalidArgumentException;
 import com.robothy.s3.core.exception.ObjectNotExistException;
 import com.robothy.s3.core.exception.VersionedObjectNotExistException;
+import com.robothy.s3.core.model.ContentRange;
 import com.robothy.s3.core.model.answers.DeleteObjectAns;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.answers.PutObjectAns;
@@ -190,4 +193,52 @@ class GetObjectServiceTest extends LocalS3ServiceTestBase {
 
   }
 
+  @MethodSource("localS3Services")
+  @ParameterizedTest
+  void getObjectRange(BucketService bucketService, ObjectService objectService) throws IOException {
+    String bucketName = "my-bucket";
+    bucketService.createBucket(bucketName);
+    objectService.putObject(bucketName, "a.txt", PutObjectOptions.builder()
+        .contentType("plain/text")
+        .content(new ByteArrayInputStream("HelloWorld".getBytes()))
+        .size(10)
+        .build());
+
+    GetObjectAns getObjectAns = objectService.getObject(bucketName, "a.txt", GetObjectOptions.builder()
+        .range("bytes=2-5").build());
+    assertEquals(10, getObjectAns.getSize());
+    assertEquals(Optional.of(ContentRange.of(2, 5, 10)), getObjectAns.getContentRange());
+    assertEquals("lloW", new String(getObjectAns.getContent().readAllBytes()));
+
+    getObjectAns = objectService.getObject(bucketName, "a.txt", GetObjectOptions.builder()
+        .range("bytes=-3").build());
+    assertEquals("rld", new String(getObjectAns.getContent().readAllBytes()));
+
+    getObjectAns = objectService.getObject(bucketName, "a.txt", GetObjectOptions.builder()
+        .range("bytes=3-1").build());
+    assertFalse(getObjectAns.getContentRange().isPresent());
+    assertEquals("HelloWorld", new String(getObjectAns.getContent().readAllBytes()));
+
+    assertThrows(InvalidRangeException.class, () -> objectService.getObject(bucketName, "a.txt",
+        GetObjectOptions.builder().range("bytes=10-").build()));
+
+    // An object not created by a multipart upload has a single part.
+    getObjectAns = objectService.getObject(bucketName, "a.txt", GetObjectOptions.builder().partNumber(1).build());
+    assertEquals(Optional.of(ContentRange.of(0, 9, 10)), getObjectAns.getContentRange());
+    assertFalse(getObjectAns.getPartsCount().isPresent());
+    assertThrows(InvalidPartNumberException.class, () -> objectService.getObject(bucketName, "a.txt",
+        GetObjectOptions.builder().partNumber(2).build()));
+    assertThrows(LocalS3InvalidArgumentException.class, () -> objectService.getObject(bucketName, "a.txt",
+        GetObjectOptions.builder().partNumber(1).range("bytes=0-1").build()));
+
+    // An empty part is returned as an empty range instead of the whole object.
+    objectService.putObject(bucketName, "empty.txt", PutObjectOptions.builder()
+        .content(new ByteArrayInputStream(new byte[0]))
+        .size(0)
+        .build());
+    getObjectAns = objectService.getObject(bucketName, "empty.txt", GetObjectOptions.builder().partNumber(1).build());
+    assertEquals(Optional.of(ContentRange.empty(0, 0)), getObjectAns.getContentRange());
+    assertEquals(0, getObjectAns.getContent().readAllBytes().length);
+  }
+
 }
\ No newline at end of file
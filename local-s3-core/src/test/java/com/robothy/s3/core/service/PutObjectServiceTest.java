@@ -4,15 +4,22 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.robothy.s3.core.exception.BucketNotExistException;
+import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.answers.PutObjectAns;
 import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.internal.LocalS3Metadata;
 import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
+import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.model.request.PutObjectOptions;
 import com.robothy.s3.core.service.manager.LocalS3Manager;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import java.io.ByteArrayInputStream;
+import java.util.Base64;
 import java.util.Map;
 import java.util.Optional;
 
@@ -122,4 +129,36 @@ class PutObjectServiceTest extends LocalS3ServiceTestBase {
     assertEquals(2, objectMetadata1.getVersionedObjectMap().size());
   }
 
-}
\ No newline at end of file
+  @MethodSource("localS3Managers")
+  @ParameterizedTest
+  void putStagedObject(LocalS3Manager manager) {
+    BucketService bucketService = manager.bucketService();
+    ObjectService objectService = manager.objectService();
+    String bucketName = "my-bucket";
+    bucketService.createBucket(bucketName);
+
+    StagedObject stagedObject = objectService.stageObject(new ByteArrayInputStream("Hello".getBytes()),
+        CheckSumAlgorithm.SHA256).get();
+    assertEquals(DigestUtils.md5Hex("Hello"), stagedObject.getEtag());
+    assertEquals(5, stagedObject.getSize());
+    assertTrue(objectService.storage().isExist(stagedObject.getFileId()));
+
+    PutObjectAns putObjectAns = objectService.putObject(bucketName, "a.txt", PutObjectOptions.builder()
+        .stagedObject(stagedObject)
+        .contentType("plain/text")
+        .size(5)
+        .build());
+    assertEquals(stagedObject.getEtag(), putObjectAns.getEtag());
+    GetObjectAns getObjectAns = objectService.getObject(bucketName, "a.txt", GetObjectOptions.builder().build());
+    assertEquals(stagedObject.getEtag(), getObjectAns.getEtag());
+    assertEquals(CheckSumAlgorithm.SHA256, getObjectAns.getChecksumAlgorithm().get());
+    assertEquals(Base64.getEncoder().encodeToString(DigestUtils.sha256("Hello")), getObjectAns.getChecksum());
+
+    // The staged object is deleted if the commit fails.
+    StagedObject orphan = objectService.stageObject(new ByteArrayInputStream("World".getBytes())).get();
+    assertThrows(BucketNotExistException.class, () -> objectService.putObject("not-exist", "a.txt",
+        PutObjectOptions.builder().stagedObject(orphan).build()));
+    assertFalse(objectService.storage().isExist(orphan.getFileId()));
+  }
+
+}
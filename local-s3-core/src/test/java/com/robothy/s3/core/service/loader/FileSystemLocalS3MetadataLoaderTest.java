@@ -8,6 +8,7 @@ import com.robothy.s3.core.storage.MetadataStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 
 class FileSystemLocalS3MetadataLoaderTest {
@@ -35,5 +36,28 @@ class FileSystemLocalS3MetadataLoaderTest {
     assertEquals(bucket2, loadedBucket2.get());
   }
 
+  @Test
+  void loadLazily() throws Exception {
+    Path tempDirectory = Files.createTempDirectory("local-s3");
+    MetadataStore<BucketMetadata> bucketMetaStore = FileSystemBucketMetadataStore.create(tempDirectory);
+    for (int i = 0; i < 10; i++) {
+      BucketMetadata bucket = new BucketMetadata();
+      bucket.setBucketName("bucket" + i);
+      bucket.setCreationDate(System.currentTimeMillis());
+      bucketMetaStore.store(bucket.getBucketName(), bucket);
+    }
+
+    MetadataLoading loading = new DefaultFileSystemS3MetadataLoader(2).loadLazily(tempDirectory);
+    LocalS3Metadata s3Metadata = loading.getMetadata();
+    assertTrue(s3Metadata.hasBucket("bucket9"));
+    assertEquals("bucket9", s3Metadata.getBucketMetadata("bucket9").get().getBucketName());
+
+    loading.getReadiness().get(10, TimeUnit.SECONDS);
+    assertTrue(loading.isReady());
+    assertEquals(10, s3Metadata.listBuckets().size());
+    assertEquals(10, loading.getBucketLoadMillis().size());
+    assertTrue(loading.getTotalMillis() >= 0);
+  }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.robothy.s3.core.service.locks;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import org.junit.jupiter.api.Test;
+
+class DefaultBucketLockTest {
+
+  @Test
+  void keyLock() throws Exception {
+    DefaultBucketLock bucketLock = new DefaultBucketLock();
+    assertSame(bucketLock.writeLock("bucket", "a"), bucketLock.writeLock("bucket", "a"));
+    assertNotSame(bucketLock.writeLock("bucket", "a"), bucketLock.writeLock("bucket", "b"));
+    assertNotSame(bucketLock.writeLock("bucket", "a"), bucketLock.writeLock("another-bucket", "a"));
+
+    // Writers of different keys in the same bucket don't block each other.
+    bucketLock.readLock("bucket").lock();
+    bucketLock.writeLock("bucket", "a").lock();
+    assertTrue(tryLockInAnotherThread(bucketLock.readLock("bucket")));
+    assertTrue(tryLockInAnotherThread(bucketLock.writeLock("bucket", "b")));
+    assertFalse(tryLockInAnotherThread(bucketLock.writeLock("bucket", "a")));
+    assertFalse(tryLockInAnotherThread(bucketLock.readLock("bucket", "a")));
+
+    // Structural changes wait for all key scoped operations.
+    assertFalse(tryLockInAnotherThread(bucketLock.writeLock("bucket")));
+    bucketLock.writeLock("bucket", "a").unlock();
+    bucketLock.readLock("bucket").unlock();
+    assertTrue(tryLockInAnotherThread(bucketLock.writeLock("bucket")));
+  }
+
+  private boolean tryLockInAnotherThread(Lock lock) throws Exception {
+    return CompletableFuture.supplyAsync(() -> {
+      boolean locked = lock.tryLock();
+      if (locked) {
+        lock.unlock();
+      }
+      return locked;
+    }).get();
+  }
+
+}
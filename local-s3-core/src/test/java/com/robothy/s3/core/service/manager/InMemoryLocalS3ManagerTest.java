@@ -1,5 +1,6 @@
 package com.robothy.s3.core.service.manager;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -8,14 +9,21 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import com.robothy.s3.core.exception.BucketNotExistException;
 import com.robothy.s3.core.model.answers.DeleteObjectAns;
 import com.robothy.s3.core.model.answers.GetObjectAns;
+import com.robothy.s3.core.model.internal.BucketMetadata;
 import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.model.request.PutObjectOptions;
 import com.robothy.s3.core.service.BucketService;
 import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.core.util.JsonUtils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
 
@@ -78,5 +86,35 @@ class InMemoryLocalS3ManagerTest {
     FileUtils.deleteDirectory(dataPath.toFile());
   }
 
+  @Test
+  void initialDataOfOlderVersion() throws IOException {
+    Path dataPath = Files.createTempDirectory("local-s3");
+    Files.write(dataPath.resolve("version"), "1".getBytes(StandardCharsets.UTF_8));
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("my-bucket");
+    bucketMetadata.setCreationDate(System.currentTimeMillis());
+    JsonUtils.toJson(dataPath.resolve("my-bucket.bucket.meta").toFile(), bucketMetadata);
+    Map<Path, byte[]> files = readFiles(dataPath);
+
+    // The initial data is read as it is, and not migrated.
+    LocalS3Manager inMemoryS3Manager = LocalS3Manager.createInMemoryS3Manager(dataPath, false);
+    assertDoesNotThrow(() -> inMemoryS3Manager.bucketService().getBucket("my-bucket"));
+    inMemoryS3Manager.bucketService().createBucket("your-bucket");
+    Map<Path, byte[]> loadedFiles = readFiles(dataPath);
+    assertEquals(files.keySet(), loadedFiles.keySet());
+    files.forEach((path, content) -> assertArrayEquals(content, loadedFiles.get(path)));
+
+    FileUtils.deleteDirectory(dataPath.toFile());
+  }
+
+  private static Map<Path, byte[]> readFiles(Path directory) throws IOException {
+    Map<Path, byte[]> files = new HashMap<>();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        files.put(path, Files.readAllBytes(path));
+      }
+    }
+    return files;
+  }
 
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import com.robothy.s3.core.model.internal.UploadMetadata;
+import com.robothy.s3.core.model.internal.UploadPartMetadata;
+import com.robothy.s3.core.model.internal.VersionedObjectMetadata;
+import com.robothy.s3.core.util.JsonUtils;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.junit.jupiter.api.Test;
+
+class BucketMetadataCodecTest {
+
+  @Test
+  void bucket() throws IOException {
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    bucketMetadata.setBucketName("bucket");
+    bucketMetadata.setCreationDate(System.currentTimeMillis());
+    bucketMetadata.setRegion("local");
+    bucketMetadata.setVersioningEnabled(false);
+    bucketMetadata.setPolicy("{}");
+    bucketMetadata.setTagging(Collections.singletonList(Collections.singletonMap("k", "v")));
+
+    Map<String, String> userMetadata = new HashMap<>();
+    userMetadata.put("owner", "robothy");
+    for (int i = 0; i < 100; i++) {
+      VersionedObjectMetadata version = new VersionedObjectMetadata();
+      version.setEtag("etag" + i);
+      version.setContentType(i % 2 == 0 ? "text/plain" : "application/json");
+      version.setCreationDate(System.currentTimeMillis());
+      version.setSize(i * 1000L);
+      version.setFileId((long) i);
+      version.setUserMetadata(userMetadata);
+      ObjectMetadata objectMetadata = new ObjectMetadata("1234567890", version);
+      VersionedObjectMetadata deleteMarker = new VersionedObjectMetadata();
+      deleteMarker.setDeleted(true);
+      objectMetadata.putVersionedObjectMetadata("1234567891", deleteMarker);
+      bucketMetadata.putObjectMetadata("dir/sub/key-" + i, objectMetadata);
+    }
+
+    VersionedObjectMetadata multipart = new VersionedObjectMetadata();
+    multipart.setPartFileIds(new long[] {1L, 2L});
+    multipart.setPartSizes(new long[] {5L, 3L});
+    multipart.setPartEtags(new String[] {"a", "b"});
+    multipart.setTagging(new String[][] {{"k", "v"}});
+    multipart.setChecksumAlgorithm(CheckSumAlgorithm.SHA256);
+    multipart.setChecksum("Y2hlY2tzdW0=");
+    multipart.setUserMetadata(null);
+    ObjectMetadata objectMetadata = new ObjectMetadata(ObjectMetadata.NULL_VERSION, multipart);
+    objectMetadata.setVirtualVersion("1234567892");
+    bucketMetadata.putObjectMetadata("dir/\uD83D\uDE00", objectMetadata);
+    bucketMetadata.putObjectMetadata("dir/\uD83D\uDE01", objectMetadata);
+
+    UploadMetadata upload = UploadMetadata.builder().createDate(1L).contentType("text/plain")
+        .tagging(new String[][] {{"k", "v"}}).userMetadata(userMetadata).build();
+    upload.getParts().put(1, UploadPartMetadata.builder().etag("etag").size(5L).fileId(3L).lastModified(2L).build());
+    NavigableMap<String, UploadMetadata> uploads = new ConcurrentSkipListMap<>();
+    uploads.put("upload-id", upload);
+    bucketMetadata.getUploads().put("dir/upload", uploads);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BucketMetadataCodec.writeHeader(out, BucketMetadataCodec.CHECKPOINT_MAGIC);
+    new BucketMetadataCodec.Encoder(out).writeBucket(bucketMetadata);
+    assertTrue(out.size() < JsonUtils.toJson(bucketMetadata).length() / 2);
+
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    BucketMetadataCodec.readHeader(in, BucketMetadataCodec.CHECKPOINT_MAGIC);
+    assertEquals(bucketMetadata, new BucketMetadataCodec.Decoder(in).readBucket());
+
+    ByteArrayInputStream json = new ByteArrayInputStream(JsonUtils.toJson(bucketMetadata).getBytes());
+    assertThrows(IllegalStateException.class, () -> BucketMetadataCodec.readHeader(json, BucketMetadataCodec.CHECKPOINT_MAGIC));
+  }
+
+  @Test
+  void record() throws IOException {
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    VersionedObjectMetadata version = new VersionedObjectMetadata();
+    version.setFileId(1L);
+    bucketMetadata.putObjectMetadata("a", new ObjectMetadata(ObjectMetadata.NULL_VERSION, version));
+
+    for (String key : new String[] {"a", "b"}) {
+      BucketMetadataJournalRecord record = BucketMetadataJournalRecord.snapshot(key, bucketMetadata);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new BucketMetadataCodec.Encoder(out).writeRecord(record);
+      assertEquals(record, new BucketMetadataCodec.Decoder(new ByteArrayInputStream(out.toByteArray())).readRecord());
+    }
+  }
+
+}
@@ -0,0 +1,298 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.service.locks.BucketLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import org.junit.jupiter.api.Test;
+
+class BucketMetadataPersisterTest {
+
+  @Test
+  void direct() {
+    RecordingStore store = new RecordingStore();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.defaults());
+    assertFalse(persister.isCoalescing());
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    assertTrue(persister.store("bucket", bucketMetadata).isDone());
+    assertTrue(persister.storeObject("bucket", "a", bucketMetadata).isDone());
+    assertEquals(List.of("store bucket", "storeObject bucket/a"), store.operations);
+  }
+
+  @Test
+  void coalesce() throws Exception {
+    RecordingStore store = new RecordingStore();
+    MetadataFlushStats stats = new MetadataFlushStats();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(100)
+        .metadataFlushStats(stats)
+        .build());
+    assertTrue(persister.isCoalescing());
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    CompletableFuture<Void> flushed = persister.storeObject("bucket", "a", bucketMetadata);
+    persister.storeObject("bucket", "b", bucketMetadata);
+    persister.storeObject("bucket", "a", bucketMetadata);
+    assertFalse(flushed.isDone());
+    assertEquals(1, stats.getDirtyBuckets());
+    assertEquals(3, stats.getDirtyChanges());
+
+    flushed.get(5, TimeUnit.SECONDS);
+    synchronized (store) {
+      assertEquals(List.of("appendObject bucket/a", "appendObject bucket/b", "sync bucket"), store.operations);
+    }
+    assertEquals(1, stats.getFlushes());
+    assertEquals(3, stats.getFlushedChanges());
+    assertEquals(0, stats.getDirtyChanges());
+
+    // A change of the whole bucket supersedes the changes of its keys.
+    store.clear();
+    persister.storeObject("bucket", "a", bucketMetadata);
+    persister.store("bucket", bucketMetadata).get(5, TimeUnit.SECONDS);
+    synchronized (store) {
+      assertEquals(List.of("store bucket"), store.operations);
+    }
+
+    // Deleted buckets are not flushed.
+    store.clear();
+    CompletableFuture<Void> deleted = persister.storeObject("bucket", "a", bucketMetadata);
+    persister.delete("bucket");
+    assertTrue(deleted.isDone());
+    persister.flush();
+    synchronized (store) {
+      assertEquals(List.of("delete bucket"), store.operations);
+    }
+  }
+
+  @Test
+  void flush() {
+    RecordingStore store = new RecordingStore();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+        .build());
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    CompletableFuture<Void> flushed = persister.storeObject("bucket", "a", bucketMetadata);
+    persister.flush();
+    assertTrue(flushed.isDone());
+    synchronized (store) {
+      assertEquals(List.of("appendObject bucket/a", "sync bucket"), store.operations);
+    }
+  }
+
+  @Test
+  void maxDirtyChanges() throws Exception {
+    RecordingStore store = new RecordingStore();
+    MetadataFlushStats stats = new MetadataFlushStats();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+        .metadataFlushMaxDirtyChanges(3)
+        .metadataFlushStats(stats)
+        .build());
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    persister.storeObject("bucket", "a", bucketMetadata);
+    persister.storeObject("bucket", "b", bucketMetadata);
+    persister.storeObject("bucket", "c", bucketMetadata).get(5, TimeUnit.SECONDS);
+    assertEquals(1, stats.getFlushes());
+    assertEquals(3, stats.getFlushedChanges());
+
+    assertThrows(IllegalArgumentException.class, () -> BucketMetadataPersister.create(store,
+        StorageOptions.builder().metadataFlushMaxDirtyChanges(0).build()));
+  }
+
+  @Test
+  void retryFailedFlush() throws Exception {
+    RecordingStore store = new RecordingStore();
+    MetadataFlushStats stats = new MetadataFlushStats();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+        .metadataFlushStats(stats)
+        .build());
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    store.failing = true;
+    CompletableFuture<Void> failed = persister.storeObject("bucket", "a", bucketMetadata);
+    assertThrows(IllegalStateException.class, persister::flush);
+    assertTrue(failed.isCompletedExceptionally());
+    assertEquals(1, stats.getFailures());
+    assertEquals(1, stats.getDirtyChanges());
+
+    store.failing = false;
+    persister.flush();
+    synchronized (store) {
+      assertEquals(List.of("appendObject bucket/a", "sync bucket"), store.operations);
+    }
+  }
+
+  @Test
+  void deferDeletes() {
+    RecordingStore store = new RecordingStore();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+        .build());
+    Storage storage = persister.deferDeletes(Storage.createInMemory());
+    Long released = storage.put("Hello".getBytes());
+    Long failed = storage.put("World".getBytes());
+    Long outside = storage.put("!".getBytes());
+
+    // A delete made by a change waits until the change is persisted.
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    assertTrue(persister.beginChange());
+    assertFalse(persister.beginChange());
+    storage.delete(released);
+    assertThrows(IllegalArgumentException.class, () -> storage.delete(-1L));
+    persister.storeObject("bucket", "a", bucketMetadata);
+    persister.endChange();
+    assertTrue(storage.isExist(released));
+    persister.flush();
+    assertFalse(storage.isExist(released));
+
+    // The deletes of a change that is not stored run once the change ends.
+    persister.beginChange();
+    storage.delete(failed);
+    assertTrue(storage.isExist(failed));
+    persister.endChange();
+    assertFalse(storage.isExist(failed));
+
+    storage.delete(outside);
+    assertFalse(storage.isExist(outside));
+  }
+
+  @Test
+  void unloadIfNeeded() {
+    RecordingStore store = new RecordingStore();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(TimeUnit.HOURS.toMillis(1))
+        .build());
+    BucketMetadata bucketMetadata = ShardedMapTest.bucket(new ArrayList<>(), 1, "a", "b", "c", "d");
+    ShardedMap<?> objects = (ShardedMap<?>) bucketMetadata.getObjectMap();
+    objects.get("a");
+    objects.get("c");
+
+    // Shards with dirty keys are kept, as they are read from the store again.
+    persister.storeObject("bucket", "a", bucketMetadata);
+    persister.unloadIfNeeded("bucket", bucketMetadata);
+    assertFalse(objects.isOverLoaded());
+    assertEquals(List.of("a", "b"), new ArrayList<>(objects.loaded().keySet()));
+
+    // A bucket that changed as a whole is kept until it is flushed.
+    objects.get("c");
+    persister.store("bucket", bucketMetadata);
+    persister.unloadIfNeeded("bucket", bucketMetadata);
+    assertTrue(objects.isOverLoaded());
+
+    persister.flush();
+    persister.unloadIfNeeded("bucket", bucketMetadata);
+    assertFalse(objects.isOverLoaded());
+    assertEquals(List.of("c", "d"), new ArrayList<>(objects.loaded().keySet()));
+  }
+
+  @Test
+  void unloadByFlusher() throws Exception {
+    RecordingStore store = new RecordingStore();
+    BucketMetadataPersister persister = BucketMetadataPersister.create(store, StorageOptions.builder()
+        .metadataFlushIntervalMillis(10)
+        .build());
+    BucketMetadata bucketMetadata = ShardedMapTest.bucket(new ArrayList<>(), 1, "a", "b", "c", "d");
+    ShardedMap<?> objects = (ShardedMap<?>) bucketMetadata.getObjectMap();
+    objects.get("a");
+    objects.get("c");
+
+    // The bucket is in use, so the flusher unloads it once the lock is released.
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread user = new Thread(() -> {
+      Lock lock = BucketLock.getInstance().readLock("unload-bucket");
+      lock.lock();
+      try {
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        lock.unlock();
+      }
+    });
+    user.start();
+    locked.await();
+    persister.unloadIfNeeded("unload-bucket", bucketMetadata);
+    assertTrue(objects.isOverLoaded());
+
+    release.countDown();
+    user.join();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (objects.isOverLoaded() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(objects.isOverLoaded());
+  }
+
+  private static class RecordingStore implements BucketMetadataStore {
+
+    private final List<String> operations = new ArrayList<>();
+
+    private volatile boolean failing;
+
+    synchronized void clear() {
+      operations.clear();
+    }
+
+    private synchronized void record(String operation) {
+      if (failing) {
+        throw new IllegalStateException("Failed to " + operation);
+      }
+      operations.add(operation);
+    }
+
+    @Override
+    public void storeObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+      record("storeObject " + bucketName + "/" + key);
+    }
+
+    @Override
+    public void appendObject(String bucketName, String key, BucketMetadata bucketMetadata) {
+      record("appendObject " + bucketName + "/" + key);
+    }
+
+    @Override
+    public void sync(String bucketName) {
+      record("sync " + bucketName);
+    }
+
+    @Override
+    public List<String> listBucketNames() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public BucketMetadata fetch(String name) {
+      return null;
+    }
+
+    @Override
+    public String store(String name, BucketMetadata metadataObject) {
+      record("store " + name);
+      return name;
+    }
+
+    @Override
+    public void delete(String name) {
+      record("delete " + name);
+    }
+
+    @Override
+    public List<BucketMetadata> fetchAll() {
+      return Collections.emptyList();
+    }
+
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class CachingStorageTest {
+
+  @Test
+  void cache() throws IOException {
+    Path directory = Files.createTempDirectory("local-s3-caching");
+    Storage base = Storage.createPersistent(directory);
+    ReadCacheStats stats = new ReadCacheStats();
+    Storage storage = new CachingStorage(base, 1000, 100, stats);
+
+    Long small = storage.put("Hello".getBytes());
+    Long large = storage.put(new byte[200]);
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(small));
+    assertEquals(1, stats.getMisses());
+    try (InputStream in = storage.getInputStream(small)) {
+      assertArrayEquals("Hello".getBytes(), in.readAllBytes());
+    }
+    ByteBuffer range = storage.read(small, 1, 3);
+    assertEquals('e', range.get());
+    assertTrue(storage.getByteBuf(small).isPresent());
+    assertEquals(3, stats.getHits());
+
+    // Objects too large to be cached are read from the base storage without counting a miss.
+    assertEquals(200, storage.getBytes(large).length);
+    assertFalse(storage.getByteBuf(large).isPresent());
+    assertEquals(1, stats.getMisses());
+    assertEquals(0.75, stats.getHitRatio());
+
+    // Written and deleted objects are invalidated.
+    storage.put(small, "World".getBytes());
+    assertArrayEquals("World".getBytes(), storage.getBytes(small));
+    assertEquals(2, stats.getMisses());
+    storage.put(large, "Small".getBytes());
+    assertArrayEquals("Small".getBytes(), storage.getBytes(large));
+    assertEquals(3, stats.getMisses());
+    storage.delete(small);
+    assertFalse(storage.isExist(small));
+    assertThrows(IllegalArgumentException.class, () -> storage.getBytes(small));
+  }
+
+  @Test
+  void evict() {
+    ReadCacheStats stats = new ReadCacheStats();
+    Storage storage = new CachingStorage(Storage.createInMemory(), 300, 100, stats);
+    Long hot = storage.put(new byte[100]);
+    storage.getBytes(hot);
+    storage.getBytes(hot);
+
+    // Objects read once are evicted before the object read twice.
+    for (int i = 0; i < 5; i++) {
+      storage.getBytes(storage.put(new byte[100]));
+    }
+    assertEquals(3, stats.getEvictions());
+    long misses = stats.getMisses();
+    storage.getBytes(hot);
+    assertEquals(misses, stats.getMisses());
+  }
+
+}
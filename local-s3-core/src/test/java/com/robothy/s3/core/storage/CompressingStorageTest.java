@@ -0,0 +1,125 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class CompressingStorageTest {
+
+  @Test
+  void compress() throws IOException {
+    byte[] text = text(CompressingStorage.BLOCK_SIZE * 3 + 100);
+    Storage base = Storage.createInMemory();
+    Storage storage = new CompressingStorage(base, true);
+
+    Long id1 = storage.put(text);
+    Long id2 = storage.put(new ByteArrayInputStream(text));
+    assertTrue(base.getBytes(id1).length < text.length / 2);
+    assertArrayEquals(base.getBytes(id1), base.getBytes(id2));
+    assertArrayEquals(text, storage.getBytes(id1));
+    try (InputStream in = storage.getInputStream(id2)) {
+      assertArrayEquals(text, in.readAllBytes());
+    }
+    assertFalse(storage.getByteBuf(id1).isPresent());
+
+    ByteBuffer range = storage.read(id1, CompressingStorage.BLOCK_SIZE - 10, CompressingStorage.BLOCK_SIZE + 20);
+    byte[] bytes = new byte[range.remaining()];
+    range.get(bytes);
+    assertArrayEquals(Arrays.copyOfRange(text, CompressingStorage.BLOCK_SIZE - 10, CompressingStorage.BLOCK_SIZE * 2 + 10), bytes);
+    assertEquals(100, storage.read(id1, text.length - 100, 100).remaining());
+    assertThrows(IllegalArgumentException.class, () -> storage.read(id1, text.length - 100, 101));
+
+    storage.delete(id1);
+    assertFalse(storage.isExist(id1));
+  }
+
+  @Test
+  void skipIncompressible() {
+    byte[] random = new byte[CompressingStorage.BLOCK_SIZE * 2];
+    new Random(1).nextBytes(random);
+    byte[] gzip = text(1000);
+    gzip[0] = (byte) 0x1F;
+    gzip[1] = (byte) 0x8B;
+
+    Storage base = Storage.createInMemory();
+    Storage storage = new CompressingStorage(base, true);
+    Long id1 = storage.put(new ByteArrayInputStream(random));
+    Long id2 = storage.put(gzip);
+    Long id3 = storage.put(new byte[0]);
+    assertArrayEquals(random, base.getBytes(id1));
+    assertArrayEquals(gzip, base.getBytes(id2));
+    assertArrayEquals(new byte[0], storage.getBytes(id3));
+    assertTrue(storage.getByteBuf(id1).isPresent());
+    assertEquals(10, storage.read(id1, 5, 10).remaining());
+
+    // Objects shorter than the header are raw.
+    Long id4 = storage.put(new byte[] {1, 2, 3});
+    assertArrayEquals(new byte[] {2, 3}, readAll(storage.read(id4, 1, 2)));
+    assertThrows(IllegalArgumentException.class, () -> storage.read(id4, 2, 2));
+    assertThrows(IllegalArgumentException.class, () -> storage.read(id4 + 100, 0, 1));
+  }
+
+  @Test
+  void mixed() throws IOException {
+    Path directory = Files.createTempDirectory("local-s3-compressing");
+    byte[] text = text(10000);
+    Storage persistent = Storage.createPersistent(directory);
+    Long raw = persistent.put(text);
+
+    Storage compressing = new CompressingStorage(persistent, true);
+    Long compressed = compressing.put(text);
+    assertArrayEquals(text, compressing.getBytes(raw));
+    assertTrue(compressing.getFileChannel(raw).isPresent());
+    compressing.getFileChannel(raw).get().close();
+    assertFalse(compressing.getFileChannel(compressed).isPresent());
+
+    // Compressed objects stay readable once compression is disabled.
+    Storage disabled = new CompressingStorage(Storage.createPersistent(directory), false);
+    assertArrayEquals(text, disabled.getBytes(compressed));
+    Long id = disabled.put(text);
+    assertArrayEquals(text, persistent.getBytes(id));
+
+    // Raw content that looks like a compressed object is framed.
+    byte[] header = ByteBuffer.allocate(CompressingStorage.HEADER_SIZE + 3)
+        .putLong(CompressingStorage.MAGIC).put(CompressingStorage.CODEC_DEFLATE).array();
+    Long lookalike = disabled.put(header);
+    assertArrayEquals(header, disabled.getBytes(lookalike));
+    assertArrayEquals(new byte[] {0, 0}, readAll(disabled.read(lookalike, 10, 2)));
+  }
+
+  @Test
+  void readPersistentRange() throws IOException {
+    byte[] text = text(CompressingStorage.BLOCK_SIZE * 3 + 100);
+    Storage storage = new CompressingStorage(Storage.createPersistent(Files.createTempDirectory("local-s3-compressing")), true);
+    Long id = storage.put(text);
+
+    // The frames before the range are skipped by their headers.
+    int offset = CompressingStorage.BLOCK_SIZE * 2 + 10;
+    assertArrayEquals(Arrays.copyOfRange(text, offset, offset + 200), readAll(storage.read(id, offset, 200)));
+    assertArrayEquals(Arrays.copyOfRange(text, text.length - 5, text.length), readAll(storage.read(id, text.length - 5, 5)));
+    assertThrows(IllegalArgumentException.class, () -> storage.read(id, text.length, 1));
+  }
+
+  private static byte[] readAll(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static byte[] text(int size) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; builder.length() < size; i++) {
+      builder.append("{\"id\":").append(i).append(",\"name\":\"object-").append(i % 97).append("\"}\n");
+    }
+    return builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+}
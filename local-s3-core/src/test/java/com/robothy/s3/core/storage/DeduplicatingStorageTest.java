@@ -0,0 +1,133 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class DeduplicatingStorageTest {
+
+  @Test
+  void deduplicate() {
+    List<DeduplicationStats> reported = new ArrayList<>();
+    Storage base = Storage.createInMemory();
+    DeduplicatingStorage storage = new DeduplicatingStorage(base, null, reported::add);
+
+    Long id1 = storage.put("Hello".getBytes());
+    Long id2 = storage.put(new ByteArrayInputStream("Hello".getBytes()));
+    Long id3 = storage.put("World".getBytes());
+    assertEquals(3, reported.size());
+    DeduplicationStats stats = storage.getStats();
+    assertEquals(15, stats.getLogicalBytes());
+    assertEquals(10, stats.getStoredBytes());
+    assertEquals(5, stats.getSavedBytes());
+    assertEquals(1.5, stats.getRatio());
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(id2));
+
+    storage.delete(id1);
+    assertFalse(storage.isExist(id1));
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(id2));
+    storage.delete(id2);
+    storage.delete(id3);
+    assertEquals(0, storage.getStats().getLogicalBytes());
+    assertEquals(0, storage.getStats().getStoredBytes());
+
+    // All blobs are deleted from the base storage.
+    Long id4 = base.put("Legacy".getBytes());
+    assertTrue(storage.isExist(id4));
+    assertArrayEquals("Legacy".getBytes(), storage.getBytes(id4));
+    storage.put(id4, "Hello".getBytes());
+    assertFalse(base.isExist(id4));
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(id4));
+  }
+
+  @Test
+  void override() {
+    DeduplicatingStorage storage = new DeduplicatingStorage(Storage.createInMemory(), null, null);
+    Long id1 = storage.put("Hello".getBytes());
+    Long id2 = storage.put("Hello".getBytes());
+    storage.put(id1, "World".getBytes());
+    storage.put(id2, "World".getBytes());
+    assertArrayEquals("World".getBytes(), storage.getBytes(id1));
+    assertEquals(10, storage.getStats().getLogicalBytes());
+    assertEquals(5, storage.getStats().getStoredBytes());
+  }
+
+  @Test
+  void reload() throws IOException {
+    Path directory = Files.createTempDirectory("deduplicated");
+    Path index = directory.resolve("dedup.index");
+    Storage storage = new DeduplicatingStorage(Storage.createPersistent(directory), index, null);
+    Long id1 = storage.put("Hello".getBytes());
+    Long id2 = storage.put("Hello".getBytes());
+    Long id3 = storage.put("World".getBytes());
+    storage.delete(id3);
+    assertEquals(2, fileCount(directory));
+
+    DeduplicatingStorage reloaded = new DeduplicatingStorage(Storage.createPersistent(directory), index, null);
+    assertArrayEquals("Hello".getBytes(), reloaded.getBytes(id1));
+    assertArrayEquals("Hello".getBytes(), reloaded.getBytes(id2));
+    assertFalse(reloaded.isExist(id3));
+    assertEquals(10, reloaded.getStats().getLogicalBytes());
+    assertEquals(5, reloaded.getStats().getStoredBytes());
+
+    reloaded.delete(id1);
+    reloaded.delete(id2);
+    assertEquals(1, fileCount(directory));
+  }
+
+  @Test
+  void readOnly() throws IOException {
+    Path directory = Files.createTempDirectory("deduplicated");
+    Path index = directory.resolve("dedup.index");
+    Storage storage = new DeduplicatingStorage(Storage.createPersistent(directory), index, null);
+    Long id1 = storage.put("Hello".getBytes());
+    Long id2 = storage.put("World".getBytes());
+    storage.delete(id2);
+    byte[] journal = Files.readAllBytes(index);
+
+    // The journal is replayed but not rewritten.
+    DeduplicatingStorage readOnly = new DeduplicatingStorage(Storage.createPersistent(directory), index, null,
+        FileSyncer.none(), true);
+    assertArrayEquals("Hello".getBytes(), readOnly.getBytes(id1));
+    assertFalse(readOnly.isExist(id2));
+    assertThrows(UnsupportedOperationException.class, () -> readOnly.put("Hello".getBytes()));
+    assertThrows(UnsupportedOperationException.class, () -> readOnly.delete(id1));
+    assertArrayEquals(journal, Files.readAllBytes(index));
+    assertArrayEquals("Hello".getBytes(), readOnly.getBytes(id1));
+  }
+
+  @Test
+  void syncJournal() throws IOException {
+    Path directory = Files.createTempDirectory("deduplicated");
+    FsyncStats stats = new FsyncStats();
+    FileSyncer syncer = FileSyncer.create(StorageOptions.builder()
+        .durability(Durability.PER_REQUEST)
+        .fsyncStats(stats)
+        .build());
+    Storage storage = new DeduplicatingStorage(Storage.createPersistent(directory), directory.resolve("dedup.index"),
+        null, syncer, false);
+    long loaded = stats.getSyncs();
+    assertTrue(loaded > 0);
+
+    // The journal is forced by each change, including one that only adds a reference.
+    Long id = storage.put("Hello".getBytes());
+    assertEquals(loaded + 1, stats.getSyncs());
+    storage.put("Hello".getBytes());
+    assertEquals(loaded + 2, stats.getSyncs());
+    storage.delete(id);
+    assertEquals(loaded + 3, stats.getSyncs());
+  }
+
+  private long fileCount(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(Files::isRegularFile).count();
+    }
+  }
+
+}
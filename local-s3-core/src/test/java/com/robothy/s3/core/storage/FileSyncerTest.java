@@ -0,0 +1,101 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class FileSyncerTest {
+
+  @Test
+  void perRequest() throws IOException {
+    FsyncStats stats = new FsyncStats();
+    FileSyncer syncer = FileSyncer.create(StorageOptions.builder()
+        .durability(Durability.PER_REQUEST)
+        .fsyncStats(stats)
+        .build());
+    Path directory = Files.createTempDirectory("local-s3-fsync");
+    Path file = Files.write(directory.resolve("a"), "Hello".getBytes());
+    syncer.sync(file, directory);
+    syncer.sync(file);
+    // Deleted files are skipped.
+    syncer.sync(directory.resolve("b"));
+    assertEquals(3, stats.getSyncs());
+    assertEquals(3, stats.getRequests());
+    assertEquals(4, stats.getFiles());
+    assertEquals(3, stats.getLatencyHistogram().values().stream().mapToLong(Long::longValue).sum());
+
+    assertFalse(FileSyncer.none().isEnabled());
+    FileSyncer.none().sync(file);
+  }
+
+  @Test
+  void groupCommit() throws Exception {
+    FsyncStats stats = new FsyncStats();
+    int requests = 8;
+    FileSyncer syncer = FileSyncer.create(StorageOptions.builder()
+        .durability(Durability.GROUP_COMMIT)
+        .groupCommitWindowMillis(1000)
+        .groupCommitMaxRequests(requests)
+        .fsyncStats(stats)
+        .build());
+    Path directory = Files.createTempDirectory("local-s3-group-commit");
+
+    ExecutorService executor = Executors.newFixedThreadPool(requests);
+    long start = System.nanoTime();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < requests; i++) {
+        Path file = directory.resolve(String.valueOf(i));
+        futures.add(executor.submit(() -> {
+          Files.write(file, "Hello".getBytes());
+          syncer.sync(file, directory);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // The batch is forced once it is full, the window is not waited for.
+    assertEquals(requests, stats.getRequests());
+    assertEquals(1, stats.getSyncs());
+    assertEquals(requests + 1, stats.getFiles());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+  }
+
+  @Test
+  void groupCommitFailure() throws IOException {
+    AtomicBoolean failing = new AtomicBoolean(true);
+    FileSyncer syncer = FileSyncer.create(StorageOptions.builder()
+        .durability(Durability.GROUP_COMMIT)
+        .groupCommitWindowMillis(0)
+        .fsyncStats(new FsyncStats() {
+          @Override
+          void recordSync(long nanos, int requestCount, int fileCount) {
+            if (failing.getAndSet(false)) {
+              throw new UnsupportedOperationException("Failed to record the sync.");
+            }
+            super.recordSync(nanos, requestCount, fileCount);
+          }
+        })
+        .build());
+    Path file = Files.write(Files.createTempDirectory("local-s3-group-commit").resolve("a"), "Hello".getBytes());
+
+    // An unexpected failure fails the batch instead of leaving its requests waiting, and the next request is forced.
+    assertThrows(IllegalStateException.class, () -> syncer.sync(file));
+    assertDoesNotThrow(() -> syncer.sync(file));
+  }
+
+}
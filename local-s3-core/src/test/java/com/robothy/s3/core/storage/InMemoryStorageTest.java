@@ -2,6 +2,8 @@ package com.robothy.s3.core.storage;
 
 import static org.junit.jupiter.api.Assertions.*;
 import com.robothy.s3.core.exception.TotalSizeExceedException;
+import io.netty.buffer.ByteBuf;
+import java.nio.ReadOnlyBufferException;
 import org.junit.jupiter.api.Test;
 
 class InMemoryStorageTest {
@@ -15,4 +17,19 @@ class InMemoryStorageTest {
     assertNotNull(id);
   }
 
+  @Test
+  void getByteBuf() {
+    InMemoryStorage storage = new InMemoryStorage();
+    byte[] data = "Hello".getBytes();
+    Long id = storage.put(data);
+    data[0] = 'h';
+
+    ByteBuf buffer = storage.getByteBuf(id).orElseThrow(IllegalStateException::new);
+    assertTrue(buffer.isReadOnly());
+    assertEquals(5, buffer.readableBytes());
+    assertEquals('H', buffer.getByte(0));
+    assertThrows(ReadOnlyBufferException.class, () -> buffer.setByte(0, 'h'));
+    assertThrows(IllegalArgumentException.class, () -> storage.getByteBuf(666L));
+  }
+
 }
\ No newline at end of file
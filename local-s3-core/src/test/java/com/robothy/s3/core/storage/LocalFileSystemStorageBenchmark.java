@@ -0,0 +1,82 @@
+package com.robothy.s3.core.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Compares the lookup latency of the flat layout {@code <directory>/<id>} with the sharded layout of
+ * {@linkplain LocalFileSystemStorage}. It is not run with the tests, as it creates millions of files.
+ *
+ * <p>Usage: {@code LocalFileSystemStorageBenchmark [fileCount] [lookups] [workDirectory]}, by default
+ * one million files and 100,000 lookups in the temporary directory. Each lookup is a
+ * {@code Files.exists} followed by opening and closing the file, as a read of {@code LocalFileSystemStorage} does.
+ * Drop the page cache between the runs, e.g. {@code echo 3 > /proc/sys/vm/drop_caches}, to measure cold lookups.
+ */
+public class LocalFileSystemStorageBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+    Path workDirectory = args.length > 2 ? Paths.get(args[2]) : Paths.get(System.getProperty("java.io.tmpdir"));
+
+    Path flat = Files.createTempDirectory(workDirectory, "flat");
+    Path sharded = Files.createTempDirectory(workDirectory, "sharded");
+    try {
+      run("flat", flat, fileCount, lookups, (directory, id) -> directory.resolve(String.valueOf(id)));
+      run("sharded", sharded, fileCount, lookups, LocalFileSystemStorage::path);
+    } finally {
+      delete(flat);
+      delete(sharded);
+    }
+  }
+
+  private static void run(String layout, Path directory, int fileCount, int lookups,
+                          BiFunction<Path, Long, Path> pathOf) throws IOException {
+    long start = System.nanoTime();
+    for (long id = 0; id < fileCount; id++) {
+      Path path = pathOf.apply(directory, id);
+      Files.createDirectories(path.getParent());
+      Files.createFile(path);
+    }
+    System.out.printf("%s: created %d files in %d ms%n", layout, fileCount, (System.nanoTime() - start) / 1_000_000);
+
+    Random random = new Random(42);
+    long[] latencies = new long[lookups];
+    for (int i = 0; i < lookups; i++) {
+      long id = (long) random.nextInt(fileCount * 2);
+      long lookupStart = System.nanoTime();
+      Path path = pathOf.apply(directory, id);
+      if (Files.exists(path)) {
+        try (InputStream in = Files.newInputStream(path)) {
+          in.read();
+        }
+      }
+      latencies[i] = System.nanoTime() - lookupStart;
+    }
+    Arrays.sort(latencies);
+    System.out.printf("%s: %d lookups, mean %.1f us, p50 %.1f us, p99 %.1f us%n", layout, lookups,
+        Arrays.stream(latencies).average().orElse(0) / 1000, latencies[lookups / 2] / 1000.0,
+        latencies[(int) (lookups * 0.99)] / 1000.0);
+
+    start = System.nanoTime();
+    try (Stream<Path> list = Files.list(directory)) {
+      System.out.printf("%s: listed %d top-level entries in %d ms%n", layout, list.count(),
+          (System.nanoTime() - start) / 1_000_000);
+    }
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class LocalFileSystemStorageTest {
+
+  @Test
+  void sharded() throws IOException {
+    Path directory = Files.createTempDirectory("local-s3-sharded");
+    Storage storage = new LocalFileSystemStorage(directory);
+    Long id = storage.put("Hello".getBytes());
+    Path path = LocalFileSystemStorage.path(directory, id);
+    assertEquals(directory, path.getParent().getParent().getParent());
+    assertTrue(path.getParent().getFileName().toString().matches("[0-9a-f]{2}"));
+    assertArrayEquals("Hello".getBytes(), Files.readAllBytes(path));
+    assertFalse(Files.exists(directory.resolve(String.valueOf(id))));
+  }
+
+  @Test
+  void migrate() throws Exception {
+    Path directory = Files.createTempDirectory("local-s3-flat");
+    Files.write(directory.resolve("1001"), "Hello".getBytes());
+    Files.write(directory.resolve("1002"), "World".getBytes());
+    Files.write(directory.resolve("1003"), "Bye".getBytes());
+    Files.write(directory.resolve("dedup.index"), new byte[0]);
+
+    Storage storage = new LocalFileSystemStorage(directory);
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(1001L));
+    storage.put(1002L, "Hi".getBytes());
+    assertArrayEquals("Hi".getBytes(), storage.getBytes(1002L));
+    storage.delete(1003L);
+    assertFalse(storage.isExist(1003L));
+
+    for (int i = 0; i < 100 && Files.exists(directory.resolve("1001")); i++) {
+      Thread.sleep(50);
+    }
+    assertFalse(Files.exists(directory.resolve("1001")));
+    assertFalse(Files.exists(directory.resolve("1002")));
+    assertTrue(Files.exists(directory.resolve("dedup.index")));
+    assertArrayEquals("Hi".getBytes(), new LocalFileSystemStorage(directory).getBytes(1002L));
+  }
+
+  @Test
+  void readOnly() throws Exception {
+    Path directory = Files.createTempDirectory("local-s3-flat");
+    Files.write(directory.resolve("1001"), "Hello".getBytes());
+    Path sharded = LocalFileSystemStorage.path(directory, 1002L);
+    Files.createDirectories(sharded.getParent());
+    Files.write(sharded, "World".getBytes());
+
+    // Objects are read from both layouts, and the flat one is not moved.
+    Storage storage = new LocalFileSystemStorage(directory, FileSyncer.none(), true);
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(1001L));
+    assertArrayEquals("World".getBytes(), storage.getBytes(1002L));
+    assertFalse(storage.isExist(1003L));
+    assertThrows(UnsupportedOperationException.class, () -> storage.put(1003L, "Bye".getBytes()));
+    assertThrows(UnsupportedOperationException.class, () -> storage.delete(1001L));
+    Thread.sleep(100);
+    assertTrue(Files.exists(directory.resolve("1001")));
+    assertFalse(Files.exists(LocalFileSystemStorage.path(directory, 1001L)));
+
+    assertFalse(new LocalFileSystemStorage(directory.resolve("missing"), FileSyncer.none(), true).isExist(1001L));
+    assertFalse(Files.exists(directory.resolve("missing")));
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.robothy.s3.core.exception.TotalSizeExceedException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class OffHeapStorageTest {
+
+  @Test
+  void test() throws IOException {
+    OffHeapStorage storage = new OffHeapStorage(Long.MAX_VALUE);
+    byte[] small = "Hello".getBytes();
+    byte[] large = new byte[200 * 1024];
+    new Random(0).nextBytes(large);
+
+    Long smallId = storage.put(small);
+    small[0] = 'h';
+    Long largeId = storage.put(new ByteArrayInputStream(large));
+    assertArrayEquals("Hello".getBytes(), storage.getBytes(smallId));
+    assertArrayEquals(large, storage.getBytes(largeId));
+    try (InputStream in = storage.getInputStream(largeId)) {
+      assertArrayEquals(large, in.readAllBytes());
+    }
+
+    ByteBuf buffer = storage.getByteBuf(smallId).orElseThrow(IllegalStateException::new);
+    assertTrue(buffer.isDirect());
+    assertTrue(buffer.isReadOnly());
+    assertEquals(5, buffer.readableBytes());
+    assertThrows(ReadOnlyBufferException.class, () -> buffer.setByte(0, 'h'));
+    assertEquals('l', storage.read(smallId, 2, 2).get());
+
+    assertEquals(smallId, storage.delete(smallId));
+    assertFalse(storage.isExist(smallId));
+    assertThrows(IllegalArgumentException.class, () -> storage.getBytes(smallId));
+    assertThrows(IllegalArgumentException.class, () -> storage.delete(smallId));
+    // Views stay readable after the object is deleted, until they are released.
+    assertEquals('H', buffer.getByte(0));
+    assertTrue(buffer.release());
+  }
+
+  @Test
+  void freeOnDelete() {
+    UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+    OffHeapStorage storage = new OffHeapStorage(Long.MAX_VALUE, allocator);
+    Long id = storage.put(new ByteArrayInputStream(new byte[200 * 1024]));
+    ByteBuf view = storage.getByteBuf(id).orElseThrow(IllegalStateException::new);
+    assertTrue(allocator.metric().usedDirectMemory() >= 200 * 1024);
+
+    storage.delete(id);
+    assertTrue(allocator.metric().usedDirectMemory() >= 200 * 1024);
+    view.release();
+    assertEquals(0, allocator.metric().usedDirectMemory());
+  }
+
+  @Test
+  void maxTotalSize() {
+    OffHeapStorage storage = new OffHeapStorage(10);
+    Long id = storage.put(new byte[6]);
+    assertThrows(TotalSizeExceedException.class, () -> storage.put(new byte[5]));
+    storage.put(id, new byte[4]);
+    assertThrows(TotalSizeExceedException.class, () -> storage.put(new byte[7]));
+    storage.delete(id);
+    assertNotNull(storage.put(new byte[10]));
+  }
+
+}
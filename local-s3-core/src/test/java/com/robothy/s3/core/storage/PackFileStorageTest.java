@@ -0,0 +1,129 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PackFileStorageTest {
+
+  @Test
+  void packAndReload() throws IOException {
+    Path directory = Files.createTempDirectory("packed");
+    PackFileStorage storage = new PackFileStorage(directory, 64, 16);
+    Long small = storage.put("Hello".getBytes());
+    Long large = storage.put(new ByteArrayInputStream("Hello World, LocalS3!".getBytes()));
+    Long overridden = storage.put("Hello".getBytes());
+    storage.put(overridden, "Hi".getBytes());
+    Long deleted = storage.put("Bye".getBytes());
+    storage.delete(deleted);
+
+    assertTrue(Files.exists(LocalFileSystemStorage.path(directory, large)));
+    assertFalse(Files.exists(LocalFileSystemStorage.path(directory, small)));
+    assertFalse(storage.getFileChannel(small).isPresent());
+    assertTrue(storage.getFileChannel(large).isPresent());
+
+    PackFileStorage reloaded = new PackFileStorage(directory, 64, 16);
+    assertArrayEquals("Hello".getBytes(), reloaded.getBytes(small));
+    assertArrayEquals("Hello World, LocalS3!".getBytes(), reloaded.getBytes(large));
+    assertArrayEquals("Hi".getBytes(), reloaded.getBytes(overridden));
+    assertFalse(reloaded.isExist(deleted));
+
+    // A standalone file is replaced by a packed record, and the other way around.
+    reloaded.put(large, "Small".getBytes());
+    assertFalse(Files.exists(LocalFileSystemStorage.path(directory, large)));
+    reloaded.put(small, "Hello World, LocalS3!".getBytes());
+    assertArrayEquals("Hello World, LocalS3!".getBytes(), new PackFileStorage(directory, 64, 16).getBytes(small));
+  }
+
+  @Test
+  void syncTombstone() throws IOException {
+    FsyncStats stats = new FsyncStats();
+    FileSyncer syncer = FileSyncer.create(StorageOptions.builder()
+        .durability(Durability.PER_REQUEST)
+        .fsyncStats(stats)
+        .build());
+    PackFileStorage storage = new PackFileStorage(Files.createTempDirectory("packed"), 64, 16, syncer);
+    Long id = storage.put("Bye".getBytes());
+    long syncs = stats.getSyncs();
+
+    // A tombstone that is not forced would bring the object back after a crash.
+    storage.delete(id);
+    assertEquals(syncs + 1, stats.getSyncs());
+  }
+
+  @Test
+  void compact() throws IOException {
+    Path directory = Files.createTempDirectory("packed");
+    PackFileStorage storage = new PackFileStorage(directory, 1024, 512);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      ids.add(storage.put(data(i)));
+    }
+    long sizeBefore = packSize(directory);
+    for (int i = 0; i < 32; i++) {
+      if (i % 4 != 0) {
+        storage.delete(ids.get(i));
+      }
+    }
+
+    storage.compact();
+    assertTrue(packSize(directory) < sizeBefore / 2);
+    for (int i = 0; i < 32; i += 4) {
+      assertArrayEquals(data(i), storage.getBytes(ids.get(i)));
+    }
+
+    PackFileStorage reloaded = new PackFileStorage(directory, 1024, 512);
+    for (int i = 0; i < 32; i++) {
+      assertEquals(i % 4 == 0, reloaded.isExist(ids.get(i)));
+    }
+  }
+
+  @Test
+  void compactTombstones() throws IOException {
+    Path directory = Files.createTempDirectory("packed");
+    PackFileStorage storage = new PackFileStorage(directory, 1024, 1000);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      ids.add(storage.put(data(i)));
+    }
+    ids.forEach(storage::delete);
+    storage.put(new byte[900]);
+
+    // Tombstones are not live, and are dropped once no other segment holds the deleted records.
+    storage.compact();
+    assertEquals(16 + 900, packSize(directory));
+    PackFileStorage reloaded = new PackFileStorage(directory, 1024, 1000);
+    ids.forEach(id -> assertFalse(reloaded.isExist(id)));
+
+    // A tombstone is copied while an older segment still holds the deleted record.
+    directory = Files.createTempDirectory("packed");
+    storage = new PackFileStorage(directory, 1024, 1000);
+    Long deleted = storage.put(data(0));
+    Long kept = storage.put(new byte[790]);
+    storage.delete(deleted);
+    storage.put(new byte[900]);
+    storage.compact();
+    assertFalse(new PackFileStorage(directory, 1024, 1000).isExist(deleted));
+    assertTrue(new PackFileStorage(directory, 1024, 1000).isExist(kept));
+  }
+
+  private byte[] data(int i) {
+    byte[] data = new byte[200];
+    Arrays.fill(data, (byte) i);
+    return data;
+  }
+
+  private long packSize(Path directory) throws IOException {
+    try (Stream<Path> list = Files.list(directory.resolve(PackFileStorage.PACK_DIRECTORY))) {
+      return list.mapToLong(path -> path.toFile().length()).sum();
+    }
+  }
+
+}
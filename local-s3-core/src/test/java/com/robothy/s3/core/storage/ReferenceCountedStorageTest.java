@@ -0,0 +1,109 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class ReferenceCountedStorageTest {
+
+  @Test
+  void retainAndDelete() {
+    Storage base = Storage.createInMemory();
+    Storage storage = Storage.createReferenceCounted(base, Stream.empty());
+    Long id = storage.put("Hello".getBytes());
+
+    assertTrue(storage.retain(id));
+    assertTrue(storage.retain(id));
+    storage.delete(id);
+    storage.delete(id);
+    assertTrue(base.isExist(id));
+    assertEquals("Hello", new String(storage.getBytes(id)));
+
+    storage.delete(id);
+    assertFalse(base.isExist(id));
+    assertFalse(storage.isExist(id));
+    assertThrows(IllegalArgumentException.class, () -> storage.retain(id));
+    assertThrows(IllegalArgumentException.class, () -> storage.delete(id));
+  }
+
+  @Test
+  void rebuildReferences() {
+    Storage base = Storage.createInMemory();
+    Long shared = base.put("Hello".getBytes());
+    Long single = base.put("World".getBytes());
+    Storage storage = Storage.createReferenceCounted(base, Stream.of(shared, single, shared, null));
+
+    storage.delete(single);
+    assertFalse(base.isExist(single));
+
+    storage.delete(shared);
+    assertTrue(base.isExist(shared));
+    storage.delete(shared);
+    assertFalse(base.isExist(shared));
+  }
+
+  @Test
+  void deferredCounting() {
+    Storage base = Storage.createInMemory();
+    Long shared = base.put("Hello".getBytes());
+    Long unreferenced = base.put("World".getBytes());
+    CompletableFuture<Stream<Long>> references = new CompletableFuture<>();
+    Storage storage = Storage.createReferenceCounted(base, references);
+
+    // Deletes are deferred until the references are counted.
+    assertTrue(storage.retain(shared));
+    storage.delete(shared);
+    storage.delete(unreferenced);
+    assertTrue(base.isExist(shared));
+    assertTrue(base.isExist(unreferenced));
+    assertThrows(IllegalArgumentException.class, () -> storage.delete(-1L));
+
+    references.complete(Stream.of(shared, shared));
+    assertTrue(base.isExist(shared));
+    assertFalse(base.isExist(unreferenced));
+    storage.delete(shared);
+    assertTrue(base.isExist(shared));
+    storage.delete(shared);
+    assertFalse(base.isExist(shared));
+  }
+
+  @Test
+  void lease() throws IOException {
+    Storage base = Storage.createInMemory();
+    Storage storage = Storage.createReferenceCounted(base, Stream.empty());
+    Long id = storage.put("Hello".getBytes());
+
+    Closeable first = storage.lease(id);
+    Closeable second = storage.lease(id);
+    storage.delete(id);
+    assertFalse(storage.isExist(id));
+    assertEquals("Hello", new String(storage.getBytes(id)));
+    assertThrows(IllegalArgumentException.class, () -> storage.delete(id));
+
+    first.close();
+    first.close();
+    assertTrue(base.isExist(id));
+    second.close();
+    assertFalse(base.isExist(id));
+
+    // A lease closed before the delete doesn't delay it.
+    Long other = storage.put("World".getBytes());
+    storage.lease(other).close();
+    storage.delete(other);
+    assertFalse(base.isExist(other));
+  }
+
+  @Test
+  void retainUnsupported() {
+    Storage storage = Storage.createInMemory();
+    Long id = storage.put("Hello".getBytes());
+    assertFalse(storage.retain(id));
+  }
+
+}
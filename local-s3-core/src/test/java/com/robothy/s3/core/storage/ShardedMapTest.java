@@ -0,0 +1,136 @@
+package com.robothy.s3.core.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.robothy.s3.core.model.internal.BucketMetadata;
+import com.robothy.s3.core.model.internal.ObjectMetadata;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.junit.jupiter.api.Test;
+
+class ShardedMapTest {
+
+  @Test
+  void loadOnAccess() {
+    List<String> reads = new ArrayList<>();
+    ShardedMap<ObjectMetadata> objects = objects(reads, "a", "b", "c", "d", "e", "f");
+    assertTrue(objects.loaded().isEmpty());
+
+    assertTrue(objects.containsKey("d"));
+    assertEquals(List.of("c"), reads);
+    assertNull(objects.get("cc"));
+    assertEquals(List.of("c"), reads);
+    assertEquals(List.of("c", "d"), new ArrayList<>(objects.loaded().keySet()));
+
+    assertEquals(4, objects.readUnloaded().mapToInt(shard -> shard.getObjectMap().size()).sum());
+    assertEquals(List.of("c", "", "e"), reads);
+    assertEquals(List.of("c", "d"), new ArrayList<>(objects.loaded().keySet()));
+
+    assertEquals(6, objects.size());
+    assertEquals(List.of("a", "b", "c", "d", "e", "f"), new ArrayList<>(objects.keySet()));
+  }
+
+  @Test
+  void navigate() {
+    List<String> reads = new ArrayList<>();
+    ShardedMap<ObjectMetadata> objects = objects(reads, "a", "b", "c", "d", "e", "f");
+    assertEquals("a", objects.firstKey());
+    assertEquals(List.of(""), reads);
+    assertEquals("c", objects.higherKey("b"));
+    assertEquals(List.of("", "c"), reads);
+    assertEquals("f", objects.lastKey());
+    assertEquals("b", objects.lowerKey("c"));
+    assertEquals(List.of("", "c", "e"), reads);
+    assertNull(objects.higherKey("f"));
+    assertEquals("b", objects.floorKey("bb"));
+    assertEquals("c", objects.ceilingKey("bb"));
+  }
+
+  @Test
+  void views() {
+    List<String> reads = new ArrayList<>();
+    ShardedMap<ObjectMetadata> objects = objects(reads, "a", "b", "c", "d", "e", "f");
+
+    // Iterating a range only loads the shards it covers.
+    assertEquals(List.of("b", "c"), new ArrayList<>(objects.subMap("b", "d").keySet()));
+    assertEquals(List.of("", "c"), reads);
+    assertEquals(List.of("d"), new ArrayList<>(objects.tailMap("cc").headMap("e").keySet()));
+    assertEquals(List.of("", "c"), reads);
+
+    assertEquals("e", objects.tailMap("d", false).firstKey());
+    assertEquals(List.of("", "c", "e"), reads);
+    assertEquals(List.of("f", "e", "d"), new ArrayList<>(objects.tailMap("d").descendingMap().keySet()));
+
+    objects.tailMap("e").put("g", new ObjectMetadata());
+    assertThrows(IllegalArgumentException.class, () -> objects.headMap("c").put("d", new ObjectMetadata()));
+    assertEquals(3, objects.headMap("c", true).size());
+    assertEquals(4, objects.tailMap("d").size());
+  }
+
+  @Test
+  void sharedLoader() {
+    List<String> reads = new ArrayList<>();
+    BucketMetadata bucketMetadata = bucket(reads, 0, "a", "b", "c", "d");
+    bucketMetadata.getObjectMap().get("c");
+    assertTrue(bucketMetadata.getUploads().containsKey("c"));
+    assertEquals(List.of("c"), reads);
+  }
+
+  @Test
+  void unload() {
+    List<String> reads = new ArrayList<>();
+    ShardedMap<ObjectMetadata> objects = objects(reads, 2, "a", "b", "c", "d", "e", "f");
+    objects.get("a");
+    objects.get("e");
+    objects.get("c");
+    assertTrue(objects.isOverLoaded());
+
+    // The least recently accessed shard is unloaded, and read again on access.
+    objects.get("e");
+    assertEquals(1, objects.unload(new TreeSet<>()));
+    assertFalse(objects.isOverLoaded());
+    assertEquals(List.of("c", "d", "e", "f"), new ArrayList<>(objects.loaded().keySet()));
+    assertEquals("a", objects.firstKey());
+    assertEquals(List.of("", "e", "c", ""), reads);
+    assertEquals(0, objects(reads, 0, "a", "b", "c").unload(new TreeSet<>()));
+
+    // Shards with pinned keys are kept.
+    assertEquals(0, objects.unload(new TreeSet<>(List.of("b", "cc", "f"))));
+    assertTrue(objects.isOverLoaded());
+    assertEquals(1, objects.unload(new TreeSet<>(List.of("a", "f"))));
+    assertEquals(List.of("a", "b", "e", "f"), new ArrayList<>(objects.loaded().keySet()));
+  }
+
+  private static ShardedMap<ObjectMetadata> objects(List<String> reads, String... keys) {
+    return objects(reads, 0, keys);
+  }
+
+  private static ShardedMap<ObjectMetadata> objects(List<String> reads, int maxLoaded, String... keys) {
+    return (ShardedMap<ObjectMetadata>) bucket(reads, maxLoaded, keys).getObjectMap();
+  }
+
+  /**
+   * A bucket with two keys in each shard; the shards start at "", "c", and "e".
+   */
+  static BucketMetadata bucket(List<String> reads, int maxLoaded, String... keys) {
+    NavigableMap<String, BucketMetadata> shards = new TreeMap<>();
+    for (int i = 0; i < keys.length; i++) {
+      if (i % 2 == 0) {
+        shards.put(i == 0 ? "" : keys[i], new BucketMetadata());
+      }
+      shards.lastEntry().getValue().getObjectMap().put(keys[i], new ObjectMetadata());
+      shards.lastEntry().getValue().getUploads().put(keys[i], new ConcurrentSkipListMap<>());
+    }
+
+    BucketMetadata bucketMetadata = new BucketMetadata();
+    ShardLoader.attach(bucketMetadata, shards.navigableKeySet(), (lower, upper) -> {
+      reads.add(lower);
+      return shards.get(lower);
+    }, maxLoaded);
+    return bucketMetadata;
+  }
+
+}
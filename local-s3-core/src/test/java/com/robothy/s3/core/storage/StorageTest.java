@@ -2,12 +2,17 @@ package com.robothy.s3.core.storage;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,7 +30,9 @@ class StorageTest {
     storage.toFile().deleteOnExit();
     assertInstanceOf(InMemoryStorage.class, Storage.createInMemory());
     assertInstanceOf(InMemoryStorage.class, Storage.createInMemory(100));
+    assertInstanceOf(OffHeapStorage.class, Storage.createInMemory(100, true));
     assertInstanceOf(LocalFileSystemStorage.class, Storage.createPersistent(storage));
+    assertInstanceOf(PackFileStorage.class, Storage.createPacked(storage));
     assertInstanceOf(LayeredStorage.class, Storage.createLayered(Storage.createInMemory(), Storage.createInMemory()));
     assertInstanceOf(CopyOnAccessStorage.class, Storage.createCopyOnAccess(Storage.createInMemory()));
   }
@@ -45,18 +52,52 @@ class StorageTest {
     Long hiId = storage.put(new ByteArrayInputStream("嗨嗨害".getBytes(StandardCharsets.UTF_8)));
     assertEquals("嗨嗨害", new String(storage.getBytes(hiId), StandardCharsets.UTF_8));
 
+    ByteBuffer range = storage.read(hiId, 3, 6);
+    assertTrue(range.isReadOnly());
+    byte[] rangeBytes = new byte[range.remaining()];
+    range.get(rangeBytes);
+    assertEquals("嗨害", new String(rangeBytes, StandardCharsets.UTF_8));
+    assertEquals(0, storage.read(hiId, 9, 0).remaining());
+    assertThrows(IllegalArgumentException.class, () -> storage.read(hiId, 3, 7));
+
     assertThrows(IllegalArgumentException.class, () -> storage.getBytes(666L));
     assertThrows(IllegalArgumentException.class, () -> storage.getInputStream(666L));
     assertEquals(helloId, storage.delete(helloId));
     assertThrows(IllegalArgumentException.class, () -> storage.delete(helloId));
   }
 
+  @Test
+  void getFileChannel() throws IOException {
+    Path directory = Files.createTempDirectory("storage");
+    directory.toFile().deleteOnExit();
+    Storage persistent = Storage.createPersistent(directory);
+    Long id = persistent.put("Hello".getBytes());
+    try (FileChannel channel = persistent.getFileChannel(id).orElseThrow(IllegalStateException::new)) {
+      assertEquals(5, channel.size());
+      assertArrayEquals("Hello".getBytes(), Channels.newInputStream(channel).readAllBytes());
+    }
+    assertThrows(IllegalArgumentException.class, () -> persistent.getFileChannel(666L));
+
+    Storage layered = Storage.createLayered(Storage.createInMemory(), persistent);
+    try (FileChannel channel = layered.getFileChannel(id).orElseThrow(IllegalStateException::new)) {
+      assertEquals(5, channel.size());
+    }
+    layered.put(id, "Hi".getBytes());
+    assertFalse(layered.getFileChannel(id).isPresent());
+
+    Storage inMemory = Storage.createInMemory();
+    assertFalse(inMemory.getFileChannel(inMemory.put("Hello".getBytes())).isPresent());
+  }
+
   static Stream<Arguments> testCases() throws IOException {
     Path storage = Files.createTempDirectory("storage");
+    Path packed = Files.createTempDirectory("packed");
     return Stream.of(
         arguments(Storage.createPersistent(storage)),
         arguments(Storage.createPersistent(storage)),
+        arguments(Storage.createPacked(packed)),
         arguments(Storage.createInMemory(), Storage.createInMemory()),
+        arguments(Storage.createInMemory(Long.MAX_VALUE, true)),
         arguments(Storage.createCopyOnAccess(Storage.createInMemory()))
     );
   }
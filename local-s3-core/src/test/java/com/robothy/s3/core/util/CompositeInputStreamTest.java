@@ -0,0 +1,66 @@
+package com.robothy.s3.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.robothy.s3.core.storage.Storage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class CompositeInputStreamTest {
+
+  @CsvSource({
+      "0,12,HelloWorld!",
+      "0,5,Hello",
+      "3,4,loWo",
+      "5,5,World",
+      "6,6,orld!",
+      "10,1,!",
+      "4,0,''"
+  })
+  @ParameterizedTest
+  void read(long start, long length, String expected) throws IOException {
+    Storage storage = Storage.createInMemory();
+    long[] fileIds = {storage.put("Hello".getBytes()), storage.put(new byte[0]), storage.put("World!".getBytes())};
+    long[] sizes = {5, 0, 6};
+    try (InputStream in = new CompositeInputStream(storage, fileIds, sizes, start, Math.min(length, 11 - start))) {
+      assertEquals(expected, new String(in.readAllBytes()));
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void leaseParts() throws IOException {
+    Storage base = Storage.createInMemory();
+    Storage storage = Storage.createReferenceCounted(base, Stream.empty());
+    long[] fileIds = {storage.put("Hello".getBytes()), storage.put("World".getBytes()), storage.put("!".getBytes())};
+    long[] sizes = {5, 5, 1};
+
+    // The parts in the range stay readable when they are deleted after the stream is created.
+    InputStream in = new CompositeInputStream(storage, fileIds, sizes, 3, 4);
+    for (long fileId : fileIds) {
+      storage.delete(fileId);
+    }
+    assertFalse(base.isExist(fileIds[2]));
+    assertEquals("lo", new String(in.readNBytes(2)));
+    assertEquals("Wo", new String(in.readNBytes(2)));
+    assertFalse(base.isExist(fileIds[0]));
+    assertTrue(base.isExist(fileIds[1]));
+    in.close();
+    assertFalse(base.isExist(fileIds[1]));
+  }
+
+  @Test
+  void truncated() {
+    Storage storage = Storage.createInMemory();
+    long[] fileIds = {storage.put("Hello".getBytes())};
+    InputStream in = new CompositeInputStream(storage, fileIds, new long[] {6}, 0, 6);
+    assertThrows(IOException.class, in::readAllBytes);
+  }
+
+}
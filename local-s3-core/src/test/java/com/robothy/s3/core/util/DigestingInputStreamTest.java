@@ -0,0 +1,46 @@
+package com.robothy.s3.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DigestingInputStreamTest {
+
+  private static final byte[] CONTENT = "Hello, World!".getBytes(StandardCharsets.UTF_8);
+
+  @CsvSource({
+      "CRC32,7ErD0A==",
+      "CRC32C,TVUQaA==",
+      "SHA1,CgqfKmdylCVXq1NV12r0Qvj2XgE=",
+      "SHA256,3/1gIbsr1bCvZ2KQgJ7DpTGR3YHH9wpLKGiKNiGCmG8="
+  })
+  @ParameterizedTest
+  void checksum(CheckSumAlgorithm algorithm, String expected) throws IOException {
+    DigestingInputStream in = new DigestingInputStream(new ByteArrayInputStream(CONTENT), algorithm);
+    IOUtils.copy(in, NullOutputStream.INSTANCE);
+    assertEquals(expected, in.getChecksum());
+    assertEquals(algorithm, in.getChecksumAlgorithm());
+    assertEquals("65a8e27d8879283831b664bd8b7f0ad4", in.getMd5Hex());
+    assertEquals(CONTENT.length, in.getCount());
+  }
+
+  @Test
+  void md5Only() throws IOException {
+    DigestingInputStream in = new DigestingInputStream(new ByteArrayInputStream(CONTENT), null);
+    assertEquals('H', in.read());
+    assertEquals(2, in.skip(2));
+    IOUtils.copy(in, NullOutputStream.INSTANCE);
+    assertEquals("65a8e27d8879283831b664bd8b7f0ad4", in.getMd5Hex());
+    assertEquals(CONTENT.length, in.getCount());
+    assertNull(in.getChecksum());
+  }
+
+}
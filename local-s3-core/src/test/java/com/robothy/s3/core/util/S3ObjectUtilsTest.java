@@ -21,4 +21,12 @@ class S3ObjectUtilsTest {
     assertEquals(expected, S3ObjectUtils.urlEncodeEscapeSlash(input));
   }
 
-}
\ No newline at end of file
+  @Test
+  void multipartEtag() {
+    assertEquals("64d1e57a34042883053ec1c5d8d60167-2",
+        S3ObjectUtils.multipartEtag(Arrays.asList("8b1a9953c4611296a827abf8c47804d7", "\"f5a7924e621e84c9280a9a27e1bcb7f6\"")));
+    assertEquals("88cc746f5be6c9236cfccd9530f267c4-2",
+        S3ObjectUtils.multipartEtag(Arrays.asList("8b1a9953c4611296a827abf8c47804d7", "etag")));
+  }
+
+}
@@ -11,13 +11,22 @@ import com.robothy.netty.initializer.HttpServerInitializer;
 import com.robothy.s3.core.service.BucketService;
 import com.robothy.s3.core.service.ObjectService;
 import com.robothy.s3.core.service.manager.LocalS3Manager;
+import com.robothy.s3.core.storage.DeduplicationStats;
+import com.robothy.s3.core.storage.Durability;
+import com.robothy.s3.core.storage.FsyncStats;
+import com.robothy.s3.core.storage.MetadataFlushStats;
+import com.robothy.s3.core.storage.ReadCacheStats;
+import com.robothy.s3.core.storage.StorageOptions;
 import com.robothy.s3.rest.bootstrap.LocalS3Mode;
 import com.robothy.s3.rest.handler.LocalS3RouterFactory;
+import com.robothy.s3.rest.handler.StreamingUploadInitializer;
+import com.robothy.s3.rest.security.AuthHandlerService;
 import com.robothy.s3.rest.service.DefaultServiceFactory;
 import com.robothy.s3.rest.service.ServiceFactory;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -30,6 +39,14 @@ import java.lang.reflect.Modifier;
 import java.net.ServerSocket;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.xml.stream.XMLInputFactory;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.slf4j.Logger;
@@ -42,6 +59,8 @@ public class LocalS3 {
 
   private static final Logger log = LoggerFactory.getLogger(LocalS3.class);
 
+  private static final long STORAGE_EXECUTOR_TERMINATION_TIMEOUT_SECONDS = 30;
+
   /* Configurations */
   private int port = 8080;
 
@@ -51,12 +70,48 @@ public class LocalS3 {
 
   private boolean initialDataCacheEnabled = true;
 
+  private boolean offHeapEnabled = false;
+
+  private boolean deduplicationEnabled = false;
+
+  private Consumer<DeduplicationStats> deduplicationListener;
+
+  private boolean compressionEnabled = false;
+
+  private long readCacheCapacity = 0;
+
+  private int readCacheObjectSizeLimit = StorageOptions.DEFAULT_READ_CACHE_OBJECT_SIZE_LIMIT;
+
+  private ReadCacheStats readCacheStats;
+
+  private Durability durability = Durability.NONE;
+
+  private long groupCommitWindowMillis = StorageOptions.DEFAULT_GROUP_COMMIT_WINDOW_MILLIS;
+
+  private int groupCommitMaxRequests = StorageOptions.DEFAULT_GROUP_COMMIT_MAX_REQUESTS;
+
+  private FsyncStats fsyncStats;
+
+  private long metadataFlushIntervalMillis = StorageOptions.DEFAULT_METADATA_FLUSH_INTERVAL_MILLIS;
+
+  private int metadataFlushMaxDirtyChanges = StorageOptions.DEFAULT_METADATA_FLUSH_MAX_DIRTY_CHANGES;
+
+  private boolean metadataFlushWait;
+
+  private MetadataFlushStats metadataFlushStats;
+
+  private int metadataShardSize = StorageOptions.DEFAULT_METADATA_SHARD_SIZE;
+
+  private int metadataMaxLoadedShards;
+
   private int nettyParentEventGroupThreadNum = 1;
 
   private int nettyChildEventGroupThreadNum = 2;
 
   private int s3ExecutorThreadNum = 4;
 
+  private int storageExecutorThreadNum = 16;
+
 
   /* Private fields. */
   private NioEventLoopGroup parentGroup;
@@ -65,8 +120,14 @@ public class LocalS3 {
 
   private EventExecutorGroup executorGroup;
 
+  private ExecutorService storageExecutor;
+
   private Channel serverSocketChannel;
 
+  private CompletableFuture<Void> ready;
+
+  private LocalS3Manager manager;
+
   /**
    * Create a {@linkplain Builder}.
    *
@@ -85,13 +146,21 @@ public class LocalS3 {
     this.parentGroup = new NioEventLoopGroup(nettyParentEventGroupThreadNum);
     this.childGroup = new NioEventLoopGroup(nettyChildEventGroupThreadNum);
     this.executorGroup = new DefaultEventLoopGroup(s3ExecutorThreadNum);
+    ChannelHandler childHandler = new HttpServerInitializer(executorGroup, LocalS3RouterFactory.create(serviceFactory));
+    // The S3 gateway forwards whole payloads and Signature V4 hashes them; both need aggregated request bodies.
+    if (mode != LocalS3Mode.S3_GATEWAY) {
+      this.storageExecutor = createStorageExecutor();
+      childHandler = new StreamingUploadInitializer(childHandler, serviceFactory, storageExecutor,
+          !AuthHandlerService.isAuthEnabled());
+    }
+
     ServerBootstrap serverBootstrap = new ServerBootstrap();
     ChannelFuture channelFuture = null;
     try {
       channelFuture = serverBootstrap.group(parentGroup, childGroup)
           .handler(new LoggingHandler(LogLevel.DEBUG))
           .channel(NioServerSocketChannel.class)
-          .childHandler(new HttpServerInitializer(executorGroup, LocalS3RouterFactory.create(serviceFactory)))
+          .childHandler(childHandler)
           .bind(port)
           .sync();
     } catch (InterruptedException e) {
@@ -102,18 +171,55 @@ public class LocalS3 {
     Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
   }
 
+  private ExecutorService createStorageExecutor() {
+    AtomicInteger threadNum = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(storageExecutorThreadNum, storageExecutorThreadNum,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "local-s3-storage-" + threadNum.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   private ServiceFactory createServiceFactory() {
 
+    Consumer<DeduplicationStats> deduplication = null;
+    if (deduplicationEnabled) {
+      deduplication = Optional.ofNullable(deduplicationListener).orElse(stats ->
+          log.debug("Deduplication ratio {}, saved {} bytes.", stats.getRatio(), stats.getSavedBytes()));
+    }
+
+    StorageOptions storageOptions = StorageOptions.builder()
+        .offHeap(offHeapEnabled)
+        .deduplicationListener(deduplication)
+        .compressionEnabled(compressionEnabled)
+        .readCacheCapacity(readCacheCapacity)
+        .readCacheObjectSizeLimit(readCacheObjectSizeLimit)
+        .readCacheStats(readCacheStats)
+        .durability(durability)
+        .groupCommitWindowMillis(groupCommitWindowMillis)
+        .groupCommitMaxRequests(groupCommitMaxRequests)
+        .fsyncStats(fsyncStats)
+        .metadataFlushIntervalMillis(metadataFlushIntervalMillis)
+        .metadataFlushMaxDirtyChanges(metadataFlushMaxDirtyChanges)
+        .metadataFlushWait(metadataFlushWait)
+        .metadataFlushStats(metadataFlushStats)
+        .metadataShardSize(metadataShardSize)
+        .metadataMaxLoadedShards(metadataMaxLoadedShards)
+        .build();
+
     LocalS3Manager manager;
     if (mode == LocalS3Mode.IN_MEMORY) {
       log.info("Created in-memory LocalS3 manager.");
-      manager = LocalS3Manager.createInMemoryS3Manager(dataPath, initialDataCacheEnabled);
+      manager = LocalS3Manager.createInMemoryS3Manager(dataPath, initialDataCacheEnabled, storageOptions);
     } else if (mode == LocalS3Mode.S3_GATEWAY){
       log.info("Created S3 gateway LocalS3 manager.");
       manager = LocalS3Manager.createS3GatewayLocalS3Manager();
     } else {
       log.info("Created file system LocalS3 manager.");
-      manager = LocalS3Manager.createFileSystemS3Manager(dataPath);
+      manager = LocalS3Manager.createFileSystemS3Manager(dataPath, storageOptions);
     }
 
     ServiceFactory serviceFactory = new DefaultServiceFactory();
@@ -121,6 +227,8 @@ public class LocalS3 {
     ObjectService objectService = manager.objectService();
     serviceFactory.register(BucketService.class, () -> bucketService);
     serviceFactory.register(ObjectService.class, () -> objectService);
+    this.ready = manager.ready();
+    this.manager = manager;
 
     XMLInputFactory input = new WstxInputFactory();
     input.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
@@ -148,6 +256,32 @@ public class LocalS3 {
       log.error("Close server socket channel failed.", e);
     } finally {
       shutdownEventExecutorsGroupIfNeeded(this.childGroup, this.parentGroup, this.executorGroup);
+      if (null != this.storageExecutor) {
+        this.storageExecutor.shutdown();
+      }
+      // Requests that are still running may change buckets, so the last flush waits for them.
+      awaitTermination();
+      if (null != this.manager) {
+        this.manager.flush();
+      }
+    }
+  }
+
+  private void awaitTermination() {
+    for (EventExecutorGroup eventExecutors : new EventExecutorGroup[] {this.childGroup, this.parentGroup,
+        this.executorGroup}) {
+      eventExecutors.terminationFuture().awaitUninterruptibly();
+    }
+    if (null == this.storageExecutor) {
+      return;
+    }
+    try {
+      if (!this.storageExecutor.awaitTermination(STORAGE_EXECUTOR_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Storage tasks are still running after {} seconds; changes they make may not be persisted.",
+            STORAGE_EXECUTOR_TERMINATION_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
@@ -165,6 +299,21 @@ public class LocalS3 {
     }
   }
 
+  /**
+   * Get a future that completes once the metadata is fully loaded. In {@linkplain LocalS3Mode#PERSISTENCE}
+   * mode, the service accepts requests while bucket metadata is loaded in the background; wait for the
+   * future if requests must not wait for loading.
+   *
+   * @return a future that completes once the metadata is fully loaded.
+   * @throws IllegalStateException if the service is not started.
+   */
+  public CompletableFuture<Void> ready() {
+    if (null == this.ready) {
+      throw new IllegalStateException("LocalS3 is not started.");
+    }
+    return ready;
+  }
+
   /**
    * Get the port that local-s3 service listen to.
    */
@@ -253,6 +402,244 @@ public class LocalS3 {
       return this;
     }
 
+    /**
+     * This option only available when running LocalS3 in {@code IN_MEMORY} mode.
+     * If enabled, object data is stored in direct memory instead of Java Heap, which
+     * avoids long GC pauses with large amounts of in-memory data. Direct memory is
+     * limited by the {@code -XX:MaxDirectMemorySize} JVM option.
+     *
+     * <p> The default value is {@code false}.
+     *
+     * @param enabled is off-heap storage enabled.
+     * @return builder.
+     */
+    public Builder offHeapEnabled(boolean enabled) {
+      this.propHolder.offHeapEnabled = enabled;
+      return this;
+    }
+
+    /**
+     * If enabled, identical object content is stored only once, no matter how many objects
+     * contain it. Once enabled for a data directory in {@code PERSISTENCE} mode, the directory
+     * always keeps being deduplicated.
+     *
+     * <p> The default value is {@code false}.
+     *
+     * @param enabled is deduplication enabled.
+     * @return builder.
+     */
+    public Builder deduplicationEnabled(boolean enabled) {
+      this.propHolder.deduplicationEnabled = enabled;
+      return this;
+    }
+
+    /**
+     * Receive the deduplication ratio and saved bytes after each change of stored objects.
+     * Only used if deduplication is enabled. By default, the statistics are logged at debug level.
+     *
+     * @param listener the statistics listener.
+     * @return builder.
+     */
+    public Builder deduplicationListener(Consumer<DeduplicationStats> listener) {
+      this.propHolder.deduplicationListener = listener;
+      return this;
+    }
+
+    /**
+     * If enabled, object data is compressed at rest. Content that doesn't compress well,
+     * e.g. images or archives, is stored as is. Objects written with and without compression
+     * can be read in any case, so that the option can be changed for an existing data directory.
+     *
+     * <p> The default value is {@code false}.
+     *
+     * @param enabled is compression enabled.
+     * @return builder.
+     */
+    public Builder compressionEnabled(boolean enabled) {
+      this.propHolder.compressionEnabled = enabled;
+      return this;
+    }
+
+    /**
+     * This option only available when running LocalS3 in {@code PERSISTENCE} mode.
+     * Max total size in bytes of small objects that are kept in memory after they were read,
+     * so that frequently read objects are not read from disk again.
+     *
+     * <p> The default value is {@code 0}, which disables the read cache.
+     *
+     * @param capacity the read cache capacity in bytes.
+     * @return builder.
+     */
+    public Builder readCacheCapacity(long capacity) {
+      this.propHolder.readCacheCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Objects larger than this size in bytes are not kept in the read cache.
+     *
+     * <p> The default value is {@code 65536}.
+     *
+     * @param sizeLimit max size of a cached object in bytes.
+     * @return builder.
+     */
+    public Builder readCacheObjectSizeLimit(int sizeLimit) {
+      this.propHolder.readCacheObjectSizeLimit = sizeLimit;
+      return this;
+    }
+
+    /**
+     * Counters of hits, misses and evictions of the read cache that are updated while LocalS3 runs.
+     *
+     * @param stats the counters to update.
+     * @return builder.
+     */
+    public Builder readCacheStats(ReadCacheStats stats) {
+      this.propHolder.readCacheStats = stats;
+      return this;
+    }
+
+    /**
+     * This option only available when running LocalS3 in {@code PERSISTENCE} mode.
+     * When written object data and metadata are forced to the disk before a request is acknowledged.
+     * {@linkplain Durability#GROUP_COMMIT} forces the writes of concurrent requests together, so that
+     * durability costs less throughput than with {@linkplain Durability#PER_REQUEST}.
+     *
+     * <p> The default value is {@linkplain Durability#NONE}.
+     *
+     * @param durability the durability.
+     * @return builder.
+     */
+    public Builder durability(Durability durability) {
+      this.propHolder.durability = durability;
+      return this;
+    }
+
+    /**
+     * With {@linkplain Durability#GROUP_COMMIT}, max time in milliseconds a request waits for other
+     * requests to be forced together with it. With {@code 0}, the requests that arrive while the
+     * previous batch is forced are forced together; a longer window only pays off with disks that
+     * take long to force.
+     *
+     * <p> The default value is {@code 0}.
+     *
+     * @param windowMillis the group commit window in milliseconds.
+     * @return builder.
+     */
+    public Builder groupCommitWindowMillis(long windowMillis) {
+      this.propHolder.groupCommitWindowMillis = windowMillis;
+      return this;
+    }
+
+    /**
+     * With {@linkplain Durability#GROUP_COMMIT}, requests are forced at once when this number of
+     * requests is waiting.
+     *
+     * <p> The default value is {@code 64}.
+     *
+     * @param maxRequests max number of requests forced together.
+     * @return builder.
+     */
+    public Builder groupCommitMaxRequests(int maxRequests) {
+      this.propHolder.groupCommitMaxRequests = maxRequests;
+      return this;
+    }
+
+    /**
+     * Counters and the latency histogram of forcing writes to the disk that are updated while LocalS3 runs.
+     *
+     * @param stats the counters to update.
+     * @return builder.
+     */
+    public Builder fsyncStats(FsyncStats stats) {
+      this.propHolder.fsyncStats = stats;
+      return this;
+    }
+
+    /**
+     * Max time in milliseconds a metadata change of a bucket is kept in memory, so that it is persisted
+     * together with the later changes of the bucket. Pending changes are persisted on {@linkplain #shutdown()};
+     * changes within the interval may be lost on a crash unless {@linkplain #metadataFlushWait(boolean)} is set.
+     * Only applies to the {@code PERSISTENCE} mode.
+     *
+     * <p> The default value is {@code 0}, each change is persisted before the request returns.
+     *
+     * @param intervalMillis the metadata flush interval in milliseconds.
+     * @return builder.
+     */
+    public Builder metadataFlushIntervalMillis(long intervalMillis) {
+      this.propHolder.metadataFlushIntervalMillis = intervalMillis;
+      return this;
+    }
+
+    /**
+     * The metadata changes of a bucket are persisted at once when this number of changes is kept in memory.
+     *
+     * <p> The default value is {@code 1000}.
+     *
+     * @param maxDirtyChanges max number of changes of a bucket kept in memory.
+     * @return builder.
+     */
+    public Builder metadataFlushMaxDirtyChanges(int maxDirtyChanges) {
+      this.propHolder.metadataFlushMaxDirtyChanges = maxDirtyChanges;
+      return this;
+    }
+
+    /**
+     * With a metadata flush interval, requests return once their changes are persisted, together with the
+     * changes of concurrent requests.
+     *
+     * <p> The default value is {@code false}.
+     *
+     * @param wait whether requests wait for their changes to be persisted.
+     * @return builder.
+     */
+    public Builder metadataFlushWait(boolean wait) {
+      this.propHolder.metadataFlushWait = wait;
+      return this;
+    }
+
+    /**
+     * Counters of the metadata flushes that are updated while LocalS3 runs.
+     *
+     * @param stats the counters to update.
+     * @return builder.
+     */
+    public Builder metadataFlushStats(MetadataFlushStats stats) {
+      this.propHolder.metadataFlushStats = stats;
+      return this;
+    }
+
+    /**
+     * The metadata of a bucket with more object keys than this number is persisted in key-range shards.
+     * Shards are loaded when their keys are accessed, and a change only rewrites its shard.
+     * Only applies to the {@code PERSISTENCE} mode.
+     *
+     * <p> The default value is {@code 100000}.
+     *
+     * @param shardSize the number of object keys per shard.
+     * @return builder.
+     */
+    public Builder metadataShardSize(int shardSize) {
+      this.propHolder.metadataShardSize = shardSize;
+      return this;
+    }
+
+    /**
+     * The max number of loaded shards of a sharded bucket. Beyond it, the least recently accessed shards are
+     * unloaded once their changes are persisted, so that a bucket may be larger than the memory.
+     * Only applies to the {@code PERSISTENCE} mode.
+     *
+     * <p> The default value is {@code 0}, loaded shards are kept.
+     *
+     * @param maxLoadedShards the max number of loaded shards per bucket.
+     * @return builder.
+     */
+    public Builder metadataMaxLoadedShards(int maxLoadedShards) {
+      this.propHolder.metadataMaxLoadedShards = maxLoadedShards;
+      return this;
+    }
+
     /**
      * Set netty parent event group thread number.
      * Default values is 1.
@@ -277,6 +664,22 @@ public class LocalS3 {
       return this;
     }
 
+    /**
+     * Set the number of threads that stream request bodies into the storage and read response bodies from it.
+     * Each upload that is being received occupies a thread; further uploads and downloads wait for a free one.
+     * Default value is 16.
+     *
+     * @param storageExecutorThreadNum the storage executor thread number.
+     * @return builder.
+     */
+    public Builder storageExecutorThreadNum(int storageExecutorThreadNum) {
+      if (storageExecutorThreadNum < 1) {
+        throw new IllegalArgumentException("Invalid storage executor thread number " + storageExecutorThreadNum + ".");
+      }
+      propHolder.storageExecutorThreadNum = storageExecutorThreadNum;
+      return this;
+    }
+
     /**
      * Set local-s3 executor thread number.
      * Default value is 4.
@@ -44,4 +44,26 @@ public class AmzHeaderNames {
   public static final String X_AMZ_SECURITY_TOKEN = "x-amz-security-token";
 
   public static final String X_AMZ_SIGNED_HEADERS = "x-amz-signedheaders";
+
+  /**
+   * The checksum algorithm that the SDK used to calculate the object checksum.
+   */
+  public static final String X_AMZ_SDK_CHECKSUM_ALGORITHM = "x-amz-sdk-checksum-algorithm";
+
+  public static final String X_AMZ_CHECKSUM_ALGORITHM = "x-amz-checksum-algorithm";
+
+  /**
+   * The prefix of object checksum headers, e.g. {@code x-amz-checksum-crc32}.
+   */
+  public static final String X_AMZ_CHECKSUM_PREFIX = "x-amz-checksum-";
+
+  /**
+   * Set to {@code ENABLED} to retrieve the object checksum.
+   */
+  public static final String X_AMZ_CHECKSUM_MODE = "x-amz-checksum-mode";
+
+  /**
+   * The number of parts of an object created by a multipart upload.
+   */
+  public static final String X_AMZ_MP_PARTS_COUNT = "x-amz-mp-parts-count";
 }
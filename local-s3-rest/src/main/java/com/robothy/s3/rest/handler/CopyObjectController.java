@@ -6,6 +6,7 @@ import com.robothy.netty.http.HttpResponse;
 import com.robothy.s3.core.exception.LocalS3InvalidArgumentException;
 import com.robothy.s3.core.model.answers.CopyObjectAns;
 import com.robothy.s3.core.model.request.CopyObjectOptions;
+import com.robothy.s3.core.service.BucketService;
 import com.robothy.s3.core.service.CopyObjectService;
 import com.robothy.s3.core.service.ObjectService;
 import com.robothy.s3.rest.assertions.RequestAssertions;
@@ -28,11 +29,14 @@ class CopyObjectController extends BaseController {
 
   private final CopyObjectService objectService;
 
+  private final BucketService bucketService;
+
   private final XmlMapper xmlMapper;
 
   CopyObjectController(ServiceFactory serviceFactory, final AuthHandlerService authHandlerService) {
     super(authHandlerService);
     this.objectService = serviceFactory.getInstance(ObjectService.class);
+    this.bucketService = serviceFactory.getInstance(BucketService.class);
     this.xmlMapper = serviceFactory.getInstance(XmlMapper.class);
   }
 
@@ -40,7 +44,17 @@ class CopyObjectController extends BaseController {
   public void handle0(HttpRequest request, HttpResponse response) throws Exception {
     String bucket = RequestAssertions.assertBucketNameProvided(request);
     String key = RequestAssertions.assertObjectKeyProvided(request);
-    CopyObjectOptions copyObjectOptions = parseCopyOptions(request);
+    CopyObjectOptions parsedOptions = parseCopyOptions(request);
+
+    // Copy the source content before locking the destination object key, but not into a missing bucket.
+    bucketService.getBucket(bucket);
+    CopyObjectOptions copyObjectOptions = CopyObjectOptions.builder()
+        .sourceBucket(parsedOptions.getSourceBucket())
+        .sourceKey(parsedOptions.getSourceKey())
+        .sourceVersion(parsedOptions.getSourceVersion().orElse(null))
+        .stagedObject(objectService.stageObjectCopy(parsedOptions.getSourceBucket(), parsedOptions.getSourceKey(),
+            parsedOptions.getSourceVersion().orElse(null)).orElse(null))
+        .build();
     CopyObjectAns copyObjectAns = objectService.copyObject(bucket, key, copyObjectOptions);
     CopyObjectResult result = CopyObjectResult.builder()
         .lastModified(Instant.ofEpochMilli(copyObjectAns.getLastModified()))
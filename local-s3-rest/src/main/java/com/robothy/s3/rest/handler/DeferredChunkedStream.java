@@ -0,0 +1,152 @@
+package com.robothy.s3.rest.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@linkplain ChunkedInput} that reads an {@linkplain InputStream} on a storage thread, one chunk ahead of
+ * the {@linkplain ChunkedWriteHandler}. The handler only asks for the next chunk while the channel is writable,
+ * so a download holds at most two chunks in memory, and neither the event loop nor a controller thread blocks
+ * on the storage. While the next chunk is read, no chunk is returned; the handler is resumed once it is read.
+ */
+@Slf4j
+final class DeferredChunkedStream implements ChunkedInput<ByteBuf> {
+
+  private final InputStream in;
+
+  private final int chunkSize;
+
+  private final Executor storageExecutor;
+
+  private final Runnable resume;
+
+  private ByteBuf next;
+
+  private Exception failure;
+
+  private boolean reading;
+
+  private boolean endOfInput;
+
+  private boolean closed;
+
+  private long progress;
+
+  /**
+   * Create an instance.
+   *
+   * @param in the stream to read; it is closed with this input.
+   * @param chunkSize the max size of each chunk.
+   * @param storageExecutor reads the chunks.
+   * @param resume resumes the writes once a chunk is read, e.g. {@linkplain ChunkedWriteHandler#resumeTransfer()}.
+   */
+  DeferredChunkedStream(InputStream in, int chunkSize, Executor storageExecutor, Runnable resume) {
+    this.in = in;
+    this.chunkSize = chunkSize;
+    this.storageExecutor = storageExecutor;
+    this.resume = resume;
+  }
+
+  @Override
+  public synchronized boolean isEndOfInput() {
+    return endOfInput && Objects.isNull(next);
+  }
+
+  @Override
+  public void close() throws Exception {
+    synchronized (this) {
+      closed = true;
+      if (Objects.nonNull(next)) {
+        next.release();
+        next = null;
+      }
+      if (reading) {
+        // The reader closes the stream once the read returns.
+        return;
+      }
+    }
+    in.close();
+  }
+
+  @Deprecated
+  @Override
+  public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+    return readChunk(ctx.alloc());
+  }
+
+  @Override
+  public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+    ByteBuf chunk;
+    synchronized (this) {
+      if (Objects.nonNull(failure)) {
+        throw failure;
+      }
+      chunk = next;
+      next = null;
+      if (Objects.nonNull(chunk)) {
+        progress += chunk.readableBytes();
+      }
+      if (endOfInput || reading || closed) {
+        return chunk;
+      }
+      reading = true;
+    }
+    storageExecutor.execute(this::readAhead);
+    return chunk;
+  }
+
+  private void readAhead() {
+    ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer(chunkSize, chunkSize);
+    boolean eof = false;
+    Exception error = null;
+    try {
+      while (chunk.isWritable() && !eof) {
+        eof = chunk.writeBytes(in, chunk.writableBytes()) < 0;
+      }
+    } catch (Exception e) {
+      error = e;
+    }
+
+    boolean close;
+    synchronized (this) {
+      reading = false;
+      close = closed;
+      if (close || Objects.nonNull(error) || !chunk.isReadable()) {
+        chunk.release();
+      } else {
+        next = chunk;
+      }
+      failure = error;
+      endOfInput = eof;
+    }
+
+    if (close) {
+      try {
+        in.close();
+      } catch (Exception e) {
+        log.warn("Failed to close the response body stream.", e);
+      }
+      return;
+    }
+    resume.run();
+  }
+
+  @Override
+  public long length() {
+    return -1;
+  }
+
+  @Override
+  public synchronized long progress() {
+    return progress;
+  }
+
+}
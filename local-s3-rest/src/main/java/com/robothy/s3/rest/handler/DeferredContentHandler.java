@@ -0,0 +1,171 @@
+package com.robothy.s3.rest.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the response bodies registered in {@linkplain DeferredContents} on a storage thread, so that
+ * the threads that run the controllers are not parked while objects are read. This handler must be
+ * placed right after the HTTP codec.
+ *
+ * <p>Requests are marked with an ID in {@linkplain DeferredContents#ACCEPT_HEADER}. Responses are matched
+ * to the requests in order; informational responses are skipped. When a response that references the
+ * deferred body of its request is written, the body is read by the storage executor; the response is
+ * written with the body once it is read. A response head that is not a {@linkplain FullHttpResponse}
+ * is written at once and the body follows it. Messages written meanwhile, e.g. responses to pipelined
+ * requests, are queued to keep their order. The channel is closed if the body cannot be read, as the
+ * response head has declared its length.
+ *
+ * <p>A body that is a {@linkplain FileRegion} or a {@linkplain ChunkedInput} is written after the response
+ * head instead of replacing the content of a {@linkplain FullHttpResponse}; a chunked body needs a
+ * {@linkplain io.netty.handler.stream.ChunkedWriteHandler} between the HTTP codec and this handler.
+ *
+ * <p>The body of a request whose response doesn't reference it, and the bodies of requests not answered
+ * when the channel is closed, are discarded.
+ */
+@Slf4j
+class DeferredContentHandler extends ChannelDuplexHandler {
+
+  private final Executor storageExecutor;
+
+  private final Deque<Object[]> queued = new ArrayDeque<>();
+
+  /**
+   * IDs of the requests to answer, in order.
+   */
+  private final Deque<String> pending = new ArrayDeque<>();
+
+  private boolean deferring;
+
+  DeferredContentHandler(Executor storageExecutor) {
+    this.storageExecutor = storageExecutor;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest) {
+      HttpRequest request = (HttpRequest) msg;
+      pending.add(DeferredContents.accept(request.headers()));
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    pending.forEach(DeferredContents::discard);
+    pending.clear();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (deferring) {
+      queued.add(new Object[] {msg, promise});
+      return;
+    }
+
+    Optional<DeferredContents.Content> content = Optional.empty();
+    if (msg instanceof HttpResponse) {
+      HttpResponse response = (HttpResponse) msg;
+      String token = response.headers().get(DeferredContents.HEADER);
+      response.headers().remove(DeferredContents.HEADER);
+      if (response.status().codeClass() != HttpStatusClass.INFORMATIONAL && !pending.isEmpty()) {
+        String id = pending.poll();
+        if (id.equals(token)) {
+          content = DeferredContents.take(id);
+        } else {
+          DeferredContents.discard(id);
+        }
+      }
+    }
+    if (!content.isPresent()) {
+      ctx.write(msg, promise);
+      return;
+    }
+
+    deferring = true;
+    if (!(msg instanceof FullHttpResponse)) {
+      ctx.write(msg, promise);
+    }
+    DeferredContents.Content body = content.get();
+    CompletableFuture.supplyAsync(() -> open(body, ctx), storageExecutor)
+        .whenComplete((opened, e) -> ctx.executor().execute(() -> onRead(ctx, msg, promise, opened, e)));
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) {
+    if (!deferring) {
+      ctx.flush();
+    }
+  }
+
+  private Object open(DeferredContents.Content content, ChannelHandlerContext ctx) {
+    try {
+      return content.open(ctx.pipeline(), storageExecutor);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void onRead(ChannelHandlerContext ctx, Object msg, ChannelPromise promise, Object body, Throwable e) {
+    if (Objects.nonNull(e)) {
+      log.error("Failed to read the response body.", e);
+      if (msg instanceof FullHttpResponse) {
+        ReferenceCountUtil.release(msg);
+        promise.tryFailure(e);
+      }
+      queued.forEach(write -> {
+        ReferenceCountUtil.release(write[0]);
+        ((ChannelPromise) write[1]).tryFailure(e);
+      });
+      queued.clear();
+      ctx.close();
+      return;
+    }
+
+    if (body instanceof ByteBuf && msg instanceof FullHttpResponse) {
+      FullHttpResponse response = (FullHttpResponse) msg;
+      ctx.write(response.replace((ByteBuf) body), promise);
+      response.release();
+    } else if (body instanceof ByteBuf) {
+      ctx.write(new DefaultHttpContent((ByteBuf) body));
+    } else if (msg instanceof FullHttpResponse) {
+      FullHttpResponse response = (FullHttpResponse) msg;
+      ctx.write(new DefaultHttpResponse(response.protocolVersion(), response.status(), response.headers()));
+      response.release();
+      ctx.write(body);
+      ctx.write(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+    } else {
+      ctx.write(body);
+    }
+
+    deferring = false;
+    while (!deferring && !queued.isEmpty()) {
+      Object[] write = queued.poll();
+      write(ctx, write[0], (ChannelPromise) write[1]);
+    }
+    flush(ctx);
+  }
+
+}
@@ -0,0 +1,238 @@
+package com.robothy.s3.rest.handler;
+
+import com.robothy.netty.http.HttpRequest;
+import com.robothy.s3.rest.utils.ByteBufUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands over response bodies that block while they are read from the storage to
+ * {@linkplain DeferredContentHandler}. A controller registers the body and puts the returned token in
+ * {@linkplain #HEADER} of the response instead of reading it; the handler reads the body on a storage
+ * thread and writes it once it is read. A body stored as a file is not read at all; it is written
+ * as a {@linkplain FileRegion} that the operating system sends from the file. A body read from a stream
+ * is written in chunks while the channel is writable, see {@linkplain DeferredChunkedStream}.
+ *
+ * <p>A body is registered for the request it answers; the token is the ID that the handler put in
+ * {@linkplain #ACCEPT_HEADER}. A body that is not taken with the response of its request, e.g. because
+ * an error response was written instead, or because the connection was closed, is discarded, so that
+ * the stream or file it holds is closed.
+ */
+@Slf4j
+final class DeferredContents {
+
+  /**
+   * Internal header that references a deferred response body. It is removed from the response.
+   */
+  static final String HEADER = "x-local-s3-deferred-content";
+
+  /**
+   * Internal header that holds the ID of a request whose response may defer its body. It is removed
+   * from all incoming requests and added by {@linkplain DeferredContentHandler}.
+   */
+  static final String ACCEPT_HEADER = "x-local-s3-deferred-content-accepted";
+
+  /**
+   * Size of the chunks that a stream, or a file that cannot be sent as a {@linkplain FileRegion}, is read in.
+   */
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Placeholder of a request that has not registered a body.
+   */
+  private static final Content NONE = (pipeline, storageExecutor) -> {
+    throw new IllegalStateException("No response body is registered.");
+  };
+
+  /**
+   * request ID - the registered body, or {@linkplain #NONE}.
+   */
+  private static final Map<String, Content> CONTENTS = new ConcurrentHashMap<>();
+
+  private DeferredContents() {
+
+  }
+
+  /**
+   * Whether the response of the request may defer its body.
+   */
+  static boolean isAccepted(HttpRequest request) {
+    return request.header(ACCEPT_HEADER).isPresent();
+  }
+
+  /**
+   * Register a response body.
+   *
+   * @param request the request that the body answers.
+   * @param content reads the response body; it may block.
+   * @return the token to put in {@linkplain #HEADER}.
+   */
+  static String register(HttpRequest request, Supplier<ByteBuf> content) {
+    return register(request, (pipeline, storageExecutor) -> content.get());
+  }
+
+  /**
+   * Register a response body that is read from a stream. The body is read in chunks of {@value #CHUNK_SIZE}
+   * bytes on a storage thread while the channel is writable, or read at once if the channel has no
+   * {@linkplain ChunkedWriteHandler}. The {@code content} is closed once the body is written or discarded.
+   *
+   * @param request the request that the body answers.
+   * @param content the stream to send.
+   * @return the token to put in {@linkplain #HEADER}.
+   */
+  static String registerStream(HttpRequest request, InputStream content) {
+    return register(request, new Content() {
+      @Override
+      public Object open(ChannelPipeline pipeline, Executor storageExecutor) {
+        ChunkedWriteHandler writer = pipeline.get(ChunkedWriteHandler.class);
+        if (Objects.isNull(writer)) {
+          return ByteBufUtils.fromInputStream(content);
+        }
+        return new DeferredChunkedStream(content, CHUNK_SIZE, storageExecutor, writer::resumeTransfer);
+      }
+
+      @Override
+      public void discard() throws IOException {
+        content.close();
+      }
+    });
+  }
+
+  /**
+   * Register a response body that is stored as a file. The body is written as a {@linkplain DefaultFileRegion},
+   * or in chunks by a {@linkplain ChunkedNioFile} if the channel encrypts the data. The {@code fileChannel}
+   * is closed once the body is written or discarded.
+   *
+   * @param request the request that the body answers.
+   * @param fileChannel the file to send.
+   * @param position the position of the body in the file.
+   * @param count the length of the body.
+   * @return the token to put in {@linkplain #HEADER}.
+   */
+  static String registerFile(HttpRequest request, FileChannel fileChannel, long position, long count) {
+    return register(request, new Content() {
+      @Override
+      public Object open(ChannelPipeline pipeline, Executor storageExecutor) throws IOException {
+        return Objects.isNull(pipeline.get(SslHandler.class))
+            ? new DefaultFileRegion(fileChannel, position, count)
+            : new ChunkedNioFile(fileChannel, position, count, CHUNK_SIZE);
+      }
+
+      @Override
+      public void discard() throws IOException {
+        fileChannel.close();
+      }
+    });
+  }
+
+  /**
+   * Register the body for the ID of the request. A body registered before for the request is discarded,
+   * and so is the {@code content} if the request was answered or its connection was closed.
+   */
+  private static String register(HttpRequest request, Content content) {
+    String id = request.header(ACCEPT_HEADER)
+        .orElseThrow(() -> new IllegalArgumentException("The response of the request cannot defer its body."));
+    Content[] replaced = {content};
+    CONTENTS.computeIfPresent(id, (key, previous) -> {
+      replaced[0] = previous;
+      return content;
+    });
+    discard(replaced[0]);
+    return id;
+  }
+
+  /**
+   * Mark the request as one whose response may defer its body.
+   *
+   * @param headers headers of the request; client values of the internal headers are removed.
+   * @return the ID of the request; its body must be taken or discarded once the request is answered.
+   */
+  static String accept(HttpHeaders headers) {
+    strip(headers);
+    String id = UUID.randomUUID().toString();
+    CONTENTS.put(id, NONE);
+    headers.set(ACCEPT_HEADER, id);
+    return id;
+  }
+
+  /**
+   * Remove {@linkplain #HEADER} and {@linkplain #ACCEPT_HEADER} from client headers,
+   * so that a client cannot reference a body.
+   */
+  static void strip(HttpHeaders headers) {
+    headers.remove(HEADER);
+    headers.remove(ACCEPT_HEADER);
+  }
+
+  /**
+   * Take the response body of a request.
+   *
+   * @param id the ID of the request.
+   * @return the reader of the body; or empty if no body was registered, or it was taken.
+   */
+  static Optional<Content> take(String id) {
+    return Optional.ofNullable(CONTENTS.remove(id)).filter(content -> content != NONE);
+  }
+
+  /**
+   * Discard the response body of a request, if any.
+   *
+   * @param id the ID of the request.
+   */
+  static void discard(String id) {
+    take(id).ifPresent(DeferredContents::discard);
+  }
+
+  private static void discard(Content content) {
+    try {
+      content.discard();
+    } catch (Exception e) {
+      log.warn("Failed to discard a response body.", e);
+    }
+  }
+
+  /**
+   * A deferred response body.
+   */
+  interface Content {
+
+    /**
+     * Read the body, or open it if it is written by the operating system or in chunks. It may block.
+     *
+     * @param pipeline the pipeline of the channel that the body is written to.
+     * @param storageExecutor runs blocking reads of the body.
+     * @return a {@linkplain ByteBuf}, a {@linkplain FileRegion}, or a {@linkplain ChunkedInput} of {@linkplain ByteBuf}.
+     * @throws Exception if the body cannot be read.
+     */
+    Object open(ChannelPipeline pipeline, Executor storageExecutor) throws Exception;
+
+    /**
+     * Release the resources of a body that is not written.
+     *
+     * @throws Exception if the resources cannot be released.
+     */
+    default void discard() throws Exception {
+
+    }
+
+  }
+
+}
@@ -2,6 +2,7 @@ package com.robothy.s3.rest.handler;
 
 import com.robothy.netty.http.HttpRequest;
 import com.robothy.netty.http.HttpResponse;
+import com.robothy.s3.core.model.ContentRange;
 import com.robothy.s3.core.model.answers.GetObjectAns;
 import com.robothy.s3.core.model.request.GetObjectOptions;
 import com.robothy.s3.core.service.ObjectService;
@@ -11,17 +12,25 @@ import com.robothy.s3.rest.handler.base.BaseController;
 import com.robothy.s3.rest.security.AuthHandlerService;
 import com.robothy.s3.rest.service.ServiceFactory;
 import com.robothy.s3.rest.utils.ByteBufUtils;
+import com.robothy.s3.rest.utils.RequestUtils;
 import com.robothy.s3.rest.utils.ResponseUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
 
 /**
  * Handle request of <a href="https://docs.aws.amazon.com/AmazonS3/latest/API/API_GetObject.html">GetObject</a>.
  */
 class GetObjectController extends BaseController {
 
+  private static final String PART_NUMBER = "partNumber";
+
   private final ObjectService objectService;
 
   GetObjectController(ServiceFactory serviceFactory, final AuthHandlerService authHandlerService) {
@@ -36,6 +45,8 @@ class GetObjectController extends BaseController {
 
     GetObjectOptions options = GetObjectOptions.builder()
         .versionId(request.parameter("versionId").orElse(null))
+        .range(request.header(HttpHeaderNames.RANGE.toString()).orElse(null))
+        .partNumber(RequestAssertions.assertIntegerParameterOrNull(request, PART_NUMBER))
         .build();
     GetObjectAns getObjectAns = objectService.getObject(bucket, key, options);
 
@@ -44,19 +55,28 @@ class GetObjectController extends BaseController {
       response.putHeader(HttpHeaderNames.ALLOW.toString(), HttpMethod.DELETE)
           .putHeader(AmzHeaderNames.X_AMZ_DELETE_MARKER, true);
     } else {
-      ByteBuf content = ByteBufUtils.fromInputStream(getObjectAns.getContent());
+      ByteBuf content = content(request, response, getObjectAns);
       ResponseUtils.addCommonHeaders(response);
       ResponseUtils.addETag(response, getObjectAns.getEtag());
-      response.status(HttpResponseStatus.OK)
+      Optional<ContentRange> contentRange = getObjectAns.getContentRange();
+      response.status(contentRange.isPresent() ? HttpResponseStatus.PARTIAL_CONTENT : HttpResponseStatus.OK)
           .write(content)
           .putHeader(HttpHeaderNames.CONTENT_TYPE.toString(), getObjectAns.getContentType())
-          .putHeader(HttpHeaderNames.CONTENT_LENGTH.toString(), getObjectAns.getSize());
+          .putHeader(HttpHeaderNames.CONTENT_LENGTH.toString(),
+              contentRange.map(ContentRange::length).orElse(getObjectAns.getSize()))
+          .putHeader(HttpHeaderNames.ACCEPT_RANGES.toString(), HttpHeaderValues.BYTES);
+      contentRange.ifPresent(range -> response.putHeader(HttpHeaderNames.CONTENT_RANGE.toString(), range.toHeaderValue()));
+      getObjectAns.getPartsCount().ifPresent(partsCount -> response.putHeader(AmzHeaderNames.X_AMZ_MP_PARTS_COUNT, partsCount));
 
       if (0 != getObjectAns.getTaggingCount()) {
         response.putHeader(AmzHeaderNames.X_AMZ_TAGGING_COUNT, getObjectAns.getTaggingCount());
       }
 
       getObjectAns.getUserMetadata().forEach((k, v) -> response.putHeader(AmzHeaderNames.X_AMZ_META_PREFIX + k, v));
+      // The checksum is of the whole object, it cannot verify a range.
+      if (RequestUtils.isChecksumModeEnabled(request) && !contentRange.isPresent()) {
+        ResponseUtils.addChecksum(response, getObjectAns.getChecksumAlgorithm().orElse(null), getObjectAns.getChecksum());
+      }
     }
 
     response.putHeader(AmzHeaderNames.X_AMZ_VERSION_ID, getObjectAns.getVersionId());
@@ -65,4 +85,31 @@ class GetObjectController extends BaseController {
     ResponseUtils.addServerHeader(response);
   }
 
+  /**
+   * Create the response body. Content backed by an in-memory buffer is sent without copying, and content
+   * backed by a file, or a range of it, is sent from the file by the operating system if the channel supports it. Other content
+   * is read from a stream in chunks on a storage thread if the channel supports it, see
+   * {@linkplain DeferredContents}; it is read at once otherwise.
+   */
+  private ByteBuf content(HttpRequest request, HttpResponse response, GetObjectAns getObjectAns) throws IOException {
+    if (getObjectAns.getContentBuffer().isPresent()) {
+      // The body keeps a reference to the memory until it is written.
+      ByteBuf body = getObjectAns.getContentBuffer().get().retainedDuplicate();
+      getObjectAns.getContent().close();
+      return body;
+    }
+    if (getObjectAns.getFileChannel().isPresent() && DeferredContents.isAccepted(request)) {
+      FileChannel fileChannel = getObjectAns.getFileChannel().get();
+      long length = getObjectAns.getContentRange().map(ContentRange::length).orElse(getObjectAns.getSize());
+      response.putHeader(DeferredContents.HEADER,
+          DeferredContents.registerFile(request, fileChannel, fileChannel.position(), length));
+      return Unpooled.EMPTY_BUFFER;
+    }
+    if (DeferredContents.isAccepted(request)) {
+      response.putHeader(DeferredContents.HEADER, DeferredContents.registerStream(request, getObjectAns.getContent()));
+      return Unpooled.EMPTY_BUFFER;
+    }
+    return ByteBufUtils.fromInputStream(getObjectAns.getContent());
+  }
+
 }
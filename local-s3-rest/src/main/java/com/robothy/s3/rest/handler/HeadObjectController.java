@@ -11,6 +11,7 @@ import com.robothy.s3.rest.constants.AmzHeaderNames;
 import com.robothy.s3.rest.handler.base.BaseController;
 import com.robothy.s3.rest.security.AuthHandlerService;
 import com.robothy.s3.rest.service.ServiceFactory;
+import com.robothy.s3.rest.utils.RequestUtils;
 import com.robothy.s3.rest.utils.ResponseUtils;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -49,6 +50,9 @@ class HeadObjectController extends BaseController {
           .putHeader(HttpHeaderNames.CONTENT_TYPE.toString(), object.getContentType());
       ResponseUtils.addETag(response, object.getEtag());
       object.getUserMetadata().forEach((k, v) -> response.putHeader(AmzHeaderNames.X_AMZ_META_PREFIX + k, v));
+      if (RequestUtils.isChecksumModeEnabled(request)) {
+        ResponseUtils.addChecksum(response, object.getChecksumAlgorithm().orElse(null), object.getChecksum());
+      }
       //.putHeader(HttpHeaderNames.CONTENT_ENCODING.toString(), )
     } else {
       response.status(HttpResponseStatus.METHOD_NOT_ALLOWED);
@@ -87,6 +87,24 @@ class LocalS3Router extends AbstractRouter {
     return getCandidateHandlers(pathRules, isBucketOperation);
   }
 
+  /**
+   * Whether the request path refers to an object rather than a bucket, following the same rules as
+   * {@linkplain #matchPath(Map, HttpRequest)}.
+   *
+   * @param path the raw request path.
+   * @param host the {@code Host} header value.
+   * @return {@code true} if the path refers to an object.
+   */
+  static boolean isObjectPath(String path, String host) {
+    Optional<BucketRegion> bucketRegion = VirtualHostParser.getBucketRegionFromHost(host);
+    if (bucketRegion.isPresent() && bucketRegion.get().getBucketName().isPresent()) {
+      return !"/".equals(path.trim());
+    }
+
+    int slashCount = StringUtils.countMatches(path, '/');
+    return !(slashCount == 1 || (slashCount == 2 && path.endsWith("/")));
+  }
+
   String trimPath(String path) {
     if ("/".equals(path)) {
       return path;
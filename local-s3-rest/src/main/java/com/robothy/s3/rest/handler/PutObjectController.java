@@ -3,8 +3,10 @@ package com.robothy.s3.rest.handler;
 import com.robothy.netty.http.HttpRequest;
 import com.robothy.netty.http.HttpResponse;
 import com.robothy.s3.core.model.answers.PutObjectAns;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.request.PutObjectOptions;
 import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import com.robothy.s3.rest.assertions.RequestAssertions;
 import com.robothy.s3.rest.constants.AmzHeaderNames;
 import com.robothy.s3.rest.handler.base.BaseController;
@@ -15,7 +17,9 @@ import com.robothy.s3.rest.utils.RequestUtils;
 import com.robothy.s3.rest.utils.ResponseUtils;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Handle <a href="https://docs.aws.amazon.com/AmazonS3/latest/API/API_PutObject.html">PutObject<a/>.
@@ -34,14 +38,29 @@ class PutObjectController extends BaseController {
     String bucketName = RequestAssertions.assertBucketNameProvided(request);
     String key = RequestAssertions.assertObjectKeyProvided(request);
 
-    DecodedAmzRequestBody decodedBody = RequestUtils.getBody(request);
+    String[][] tagging = RequestUtils.extractTagging(request).orElse(null);
+    Map<String, String> userMetadata = RequestUtils.extractUserMetadata(request);
+    PutObjectOptions.PutObjectOptionsBuilder optionsBuilder = PutObjectOptions.builder();
 
-    PutObjectOptions options = PutObjectOptions.builder()
+    // The body was streamed into the storage while it was received.
+    Optional<StagedObject> streamed = StreamedUploads.take(request);
+    if (streamed.isPresent()) {
+      optionsBuilder.size(streamed.get().getSize())
+          .stagedObject(streamed.get());
+    } else {
+      DecodedAmzRequestBody decodedBody = RequestUtils.getBody(request);
+      CheckSumAlgorithm checksumAlgorithm = RequestUtils.getChecksumAlgorithm(request).orElse(null);
+      // Write the content before locking the object key.
+      StagedObject stagedObject = objectService.stageObject(decodedBody.getDecodedBody(), checksumAlgorithm).orElse(null);
+      optionsBuilder.size(decodedBody.getDecodedContentLength())
+          .content(decodedBody.getDecodedBody())
+          .stagedObject(stagedObject);
+    }
+
+    PutObjectOptions options = optionsBuilder
         .contentType(request.header(HttpHeaderNames.CONTENT_TYPE).orElse(null))
-        .size(decodedBody.getDecodedContentLength())
-        .content(decodedBody.getDecodedBody())
-        .tagging(RequestUtils.extractTagging(request).orElse(null))
-        .userMetadata(RequestUtils.extractUserMetadata(request))
+        .tagging(tagging)
+        .userMetadata(userMetadata)
         .build();
 
     PutObjectAns ans = objectService.putObject(bucketName, key, options);
@@ -53,6 +72,7 @@ class PutObjectController extends BaseController {
     }
 
     ResponseUtils.addETag(response, ans.getEtag());
+    ResponseUtils.addChecksum(response, ans.getChecksumAlgorithm(), ans.getChecksum());
     ResponseUtils.addServerHeader(response);
     ResponseUtils.addDateHeader(response);
     ResponseUtils.addAmzRequestId(response);
@@ -0,0 +1,88 @@
+package com.robothy.s3.rest.handler;
+
+import com.robothy.netty.http.HttpRequest;
+import com.robothy.s3.core.model.internal.StagedObject;
+import com.robothy.s3.core.storage.Storage;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands over request bodies staged by {@linkplain StreamingUploadHandler} to the controllers.
+ * The aggregated request carries a random token in {@linkplain #HEADER}; the controller takes the staged
+ * object, or the failure of staging, with the token.
+ */
+final class StreamedUploads {
+
+  /**
+   * Internal header that references a streamed upload. It is removed from all incoming requests.
+   */
+  static final String HEADER = "x-local-s3-streamed-upload";
+
+  private static final Map<String, Object> UPLOADS = new ConcurrentHashMap<>();
+
+  private StreamedUploads() {
+
+  }
+
+  static String register(StagedObject stagedObject) {
+    return put(stagedObject);
+  }
+
+  static String registerFailure(Throwable failure) {
+    return put(failure);
+  }
+
+  private static String put(Object result) {
+    String token = UUID.randomUUID().toString();
+    UPLOADS.put(token, result);
+    return token;
+  }
+
+  /**
+   * Remove {@linkplain #HEADER} from client headers, so that a client cannot reference an upload.
+   */
+  static void strip(HttpHeaders headers) {
+    headers.remove(HEADER);
+  }
+
+  /**
+   * Take the staged object of the request.
+   *
+   * @param request the aggregated request.
+   * @return the staged object; or empty if the request body was not streamed.
+   * @throws RuntimeException the failure of staging the request body.
+   */
+  static Optional<StagedObject> take(HttpRequest request) {
+    Optional<String> token = request.header(HEADER);
+    if (!token.isPresent()) {
+      return Optional.empty();
+    }
+
+    Object result = UPLOADS.remove(token.get());
+    if (result instanceof StagedObject) {
+      return Optional.of((StagedObject) result);
+    }
+    if (result instanceof RuntimeException) {
+      throw (RuntimeException) result;
+    }
+    throw new IllegalStateException("Failed to receive the request body.", (Throwable) result);
+  }
+
+  /**
+   * Delete the staged object of {@code token} if no controller took it.
+   *
+   * @param token the token of a streamed upload.
+   * @param storage the storage where the object was staged.
+   */
+  static void discard(String token, Storage storage) {
+    Object result = UPLOADS.remove(token);
+    if (result instanceof StagedObject && Objects.nonNull(storage)) {
+      storage.delete(((StagedObject) result).getFileId());
+    }
+  }
+
+}
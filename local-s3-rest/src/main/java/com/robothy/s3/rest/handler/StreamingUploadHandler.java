@@ -0,0 +1,249 @@
+package com.robothy.s3.rest.handler;
+
+import com.robothy.s3.core.model.internal.StagedObject;
+import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
+import com.robothy.s3.rest.constants.AmzHeaderNames;
+import com.robothy.s3.rest.constants.AmzHeaderValues;
+import com.robothy.s3.rest.utils.AwsChunkedDecodingInputStream;
+import com.robothy.s3.rest.utils.HttpContentInputStream;
+import com.robothy.s3.rest.utils.RequestUtils;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams the bodies of PutObject and UploadPart requests into the storage while they are received,
+ * instead of aggregating them in memory. This handler must be placed between the HTTP decoder and
+ * the {@linkplain io.netty.handler.codec.http.HttpObjectAggregator}.
+ *
+ * <p>Content chunks are passed to a {@linkplain HttpContentInputStream}, which disables auto read
+ * of the channel while too many bytes are queued. A worker stages the stream via
+ * {@linkplain ObjectService#stageObject(InputStream, CheckSumAlgorithm)}. Once both the body is
+ * received and the staging is finished, the request head is passed on with an empty body and a
+ * {@linkplain StreamedUploads} token, and the controller commits the staged object.
+ *
+ * <p>Other requests pass through untouched and are aggregated as before.
+ *
+ * <p>A staged object that no controller took is deleted once the response to its request is written,
+ * or the channel is closed. Responses are written in the order of the requests, so the handler keeps
+ * the tokens of the passed on requests in order and matches each final response to the oldest one.
+ */
+class StreamingUploadHandler extends ChannelDuplexHandler {
+
+  static final int HIGH_WATER_MARK = 1024 * 1024;
+
+  static final int LOW_WATER_MARK = 256 * 1024;
+
+  /**
+   * Sub-resources of an object that are also written with {@code PUT}.
+   */
+  private static final Set<String> OBJECT_SUB_RESOURCES = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("acl", "legal-hold", "object-lock", "retention", "tagging")));
+
+  private final ObjectService objectService;
+
+  private final Executor uploadExecutor;
+
+  /**
+   * Marks a passed on request without a streamed upload in {@linkplain #answering}.
+   */
+  private static final String NO_UPLOAD = "";
+
+  private final Deque<Object> pending = new ArrayDeque<>();
+
+  /**
+   * Tokens of the passed on requests that are not answered yet, in order.
+   */
+  private final Deque<String> answering = new ArrayDeque<>();
+
+  private HttpRequest head;
+
+  private HttpContentInputStream body;
+
+  private boolean bodyReceived;
+
+  private String token;
+
+  private boolean inactive;
+
+  StreamingUploadHandler(ObjectService objectService, Executor uploadExecutor) {
+    this.objectService = objectService;
+    this.uploadExecutor = uploadExecutor;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (Objects.nonNull(head) && bodyReceived) {
+      // A pipelined request arrives before the current upload is passed on.
+      pending.add(msg);
+      return;
+    }
+
+    if (msg instanceof HttpRequest) {
+      HttpRequest request = (HttpRequest) msg;
+      StreamedUploads.strip(request.headers());
+      if (isStreamable(request)) {
+        startUpload(ctx, request);
+        return;
+      }
+      answering.add(NO_UPLOAD);
+    } else if (msg instanceof HttpContent && Objects.nonNull(body)) {
+      receive(ctx, (HttpContent) msg);
+      return;
+    }
+
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    inactive = true;
+    if (Objects.nonNull(body)) {
+      body.fail(new ClosedChannelException());
+    }
+    pending.forEach(ReferenceCountUtil::release);
+    pending.clear();
+    answering.forEach(this::discard);
+    answering.clear();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpResponse && !answering.isEmpty()
+        && ((HttpResponse) msg).status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+      // The controller has taken the staged object before it wrote the response, if it ever does.
+      discard(answering.poll());
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  /**
+   * Whether the body of the request is streamed into the storage.
+   */
+  boolean isStreamable(HttpRequest request) {
+    if (request instanceof FullHttpRequest || !HttpMethod.PUT.equals(request.method())
+        || request.decoderResult().isFailure() || request.headers().contains(AmzHeaderNames.X_AMZ_COPY_SOURCE)) {
+      return false;
+    }
+
+    QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+    if (!LocalS3Router.isObjectPath(decoder.rawPath(), request.headers().get(HttpHeaderNames.HOST))) {
+      return false;
+    }
+
+    Map<String, List<String>> params = decoder.parameters();
+    if (params.containsKey("uploadId") && params.containsKey("partNumber")) {
+      return true;
+    }
+    return params.keySet().stream().noneMatch(OBJECT_SUB_RESOURCES::contains);
+  }
+
+  private void startUpload(ChannelHandlerContext ctx, HttpRequest request) {
+    if (HttpUtil.is100ContinueExpected(request)) {
+      ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE,
+          Unpooled.EMPTY_BUFFER));
+      request.headers().remove(HttpHeaderNames.EXPECT);
+    }
+
+    head = request;
+    bodyReceived = false;
+    token = null;
+    body = new HttpContentInputStream(ctx.channel(), HIGH_WATER_MARK, LOW_WATER_MARK);
+    HttpContentInputStream content = body;
+    boolean awsChunked = AmzHeaderValues.STREAMING_AWS4_HMAC_SHA_256_PAYLOAD
+        .equals(request.headers().get(AmzHeaderNames.X_AMZ_CONTENT_SHA256));
+    uploadExecutor.execute(() -> {
+      String result;
+      try (InputStream in = awsChunked ? new AwsChunkedDecodingInputStream(content) : content) {
+        CheckSumAlgorithm checksumAlgorithm = RequestUtils.getChecksumAlgorithm(
+            name -> Optional.ofNullable(request.headers().get(name))).orElse(null);
+        StagedObject stagedObject = objectService.stageObject(in, checksumAlgorithm)
+            .orElseThrow(() -> new IllegalStateException("The object service doesn't support staging."));
+        result = StreamedUploads.register(stagedObject);
+      } catch (Throwable e) {
+        result = StreamedUploads.registerFailure(e);
+      }
+
+      String staged = result;
+      ctx.executor().execute(() -> onStaged(ctx, staged));
+    });
+  }
+
+  private void receive(ChannelHandlerContext ctx, HttpContent content) {
+    body.offer(content.content());
+    if (content instanceof LastHttpContent) {
+      body.complete();
+      body = null;
+      bodyReceived = true;
+      forwardIfReady(ctx);
+    }
+  }
+
+  private void onStaged(ChannelHandlerContext ctx, String staged) {
+    if (inactive) {
+      StreamedUploads.discard(staged, objectService.storage());
+      return;
+    }
+    token = staged;
+    forwardIfReady(ctx);
+  }
+
+  private void forwardIfReady(ChannelHandlerContext ctx) {
+    if (Objects.isNull(head) || !bodyReceived || Objects.isNull(token)) {
+      return;
+    }
+
+    HttpRequest request = head;
+    head = null;
+    answering.add(token);
+    request.headers().set(StreamedUploads.HEADER, token);
+    HttpUtil.setTransferEncodingChunked(request, false);
+    HttpUtil.setContentLength(request, 0);
+    ctx.fireChannelRead(request);
+    ctx.fireChannelRead(LastHttpContent.EMPTY_LAST_CONTENT);
+
+    while (!pending.isEmpty() && !(Objects.nonNull(head) && bodyReceived)) {
+      channelRead(ctx, pending.poll());
+    }
+  }
+
+  /**
+   * Delete the staged object of an answered request if the request didn't reach a controller that took it.
+   */
+  private void discard(String uploadToken) {
+    if (!NO_UPLOAD.equals(uploadToken)) {
+      StreamedUploads.discard(uploadToken, objectService.storage());
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+package com.robothy.s3.rest.handler;
+
+import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.rest.service.ServiceFactory;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Initializes a channel with the handlers of {@code httpServerInitializer} and inserts a
+ * {@linkplain StreamingUploadHandler} right after the HTTP decoder, so that object uploads
+ * are streamed into the storage instead of being aggregated. A {@linkplain DeferredContentHandler}
+ * is inserted before it, so that object downloads are read from the storage off the controller threads,
+ * and a {@linkplain ChunkedWriteHandler} before that, which writes the chunked response bodies.
+ */
+@Slf4j
+public class StreamingUploadInitializer extends ChannelInitializer<Channel> {
+
+  static final String HANDLER_NAME = "localS3StreamingUpload";
+
+  static final String DEFERRED_CONTENT_HANDLER_NAME = "localS3DeferredContent";
+
+  static final String CHUNKED_WRITE_HANDLER_NAME = "localS3ChunkedWrite";
+
+  private final ChannelHandler httpServerInitializer;
+
+  private final ObjectService objectService;
+
+  private final Executor storageExecutor;
+
+  private final boolean streamingUploads;
+
+  /**
+   * Create an instance.
+   *
+   * @param httpServerInitializer a sharable initializer that adds the HTTP server handlers.
+   * @param serviceFactory provides the {@linkplain ObjectService} that stages uploads.
+   * @param storageExecutor runs the workers that write request bodies into the storage and read
+   *     response bodies from it.
+   * @param streamingUploads whether request bodies are streamed; they are aggregated otherwise, e.g. if
+   *     the signature of the whole payload is verified.
+   */
+  public StreamingUploadInitializer(ChannelHandler httpServerInitializer, ServiceFactory serviceFactory,
+                                    Executor storageExecutor, boolean streamingUploads) {
+    this.httpServerInitializer = httpServerInitializer;
+    this.objectService = serviceFactory.getInstance(ObjectService.class);
+    this.storageExecutor = storageExecutor;
+    this.streamingUploads = streamingUploads;
+  }
+
+  @Override
+  protected void initChannel(Channel ch) {
+    ChannelPipeline pipeline = ch.pipeline();
+    pipeline.addLast(httpServerInitializer);
+
+    ChannelHandlerContext decoder = pipeline.context(HttpServerCodec.class);
+    if (Objects.isNull(decoder)) {
+      decoder = pipeline.context(HttpRequestDecoder.class);
+    }
+    if (Objects.isNull(decoder)) {
+      log.warn("No HTTP decoder found in the pipeline; request bodies are aggregated.");
+      return;
+    }
+    if (streamingUploads) {
+      pipeline.addAfter(decoder.name(), HANDLER_NAME, new StreamingUploadHandler(objectService, storageExecutor));
+    }
+    pipeline.addAfter(decoder.name(), DEFERRED_CONTENT_HANDLER_NAME, new DeferredContentHandler(storageExecutor));
+    pipeline.addAfter(decoder.name(), CHUNKED_WRITE_HANDLER_NAME, new ChunkedWriteHandler());
+  }
+
+}
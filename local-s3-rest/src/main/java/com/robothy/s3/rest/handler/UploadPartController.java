@@ -3,6 +3,7 @@ package com.robothy.s3.rest.handler;
 import com.robothy.netty.http.HttpRequest;
 import com.robothy.netty.http.HttpResponse;
 import com.robothy.s3.core.model.answers.UploadPartAns;
+import com.robothy.s3.core.model.internal.StagedObject;
 import com.robothy.s3.core.model.request.UploadPartOptions;
 import com.robothy.s3.core.service.ObjectService;
 import com.robothy.s3.core.service.UploadPartService;
@@ -13,6 +14,7 @@ import com.robothy.s3.rest.security.AuthHandlerService;
 import com.robothy.s3.rest.service.ServiceFactory;
 import com.robothy.s3.rest.utils.RequestUtils;
 import com.robothy.s3.rest.utils.ResponseUtils;
+import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -34,11 +36,25 @@ class UploadPartController extends BaseController {
     String key = RequestAssertions.assertObjectKeyProvided(request);
     int partNumber = RequestAssertions.assertPartNumberIsValid(request);
     String uploadId = RequestAssertions.assertUploadIdIsProvided(request);
-    DecodedAmzRequestBody decodedBody = RequestUtils.getBody(request);
-    UploadPartAns uploadPartAns = uploadPartService.uploadPart(bucket, key, uploadId, partNumber, UploadPartOptions.builder()
-        .contentLength(decodedBody.getDecodedContentLength())
-        .data(decodedBody.getDecodedBody())
-        .etag(RequestUtils.getETag(request).orElse(null))
+    String etag = RequestUtils.getETag(request).orElse(null);
+    UploadPartOptions.UploadPartOptionsBuilder optionsBuilder = UploadPartOptions.builder();
+
+    // The body was streamed into the storage while it was received.
+    Optional<StagedObject> streamed = StreamedUploads.take(request);
+    if (streamed.isPresent()) {
+      optionsBuilder.contentLength(streamed.get().getSize())
+          .stagedObject(streamed.get());
+    } else {
+      DecodedAmzRequestBody decodedBody = RequestUtils.getBody(request);
+      // Write the data before locking the object key.
+      StagedObject stagedObject = uploadPartService.stageObject(decodedBody.getDecodedBody()).orElse(null);
+      optionsBuilder.contentLength(decodedBody.getDecodedContentLength())
+          .data(decodedBody.getDecodedBody())
+          .stagedObject(stagedObject);
+    }
+
+    UploadPartAns uploadPartAns = uploadPartService.uploadPart(bucket, key, uploadId, partNumber, optionsBuilder
+        .etag(etag)
         .build());
 
     ResponseUtils.addCommonHeaders(response);
@@ -7,7 +7,7 @@ import com.robothy.s3.rest.constants.AmzHeaderValues;
 import com.robothy.s3.rest.model.request.DecodedAmzRequestBody;
 import com.robothy.s3.rest.model.security.S3AuthHeader;
 import com.robothy.s3.rest.model.security.enums.S3AuthType;
-import com.robothy.s3.rest.utils.AwsChunkedDecodingInputStream;
+import com.robothy.s3.rest.utils.AwsChunkedByteBufDecoder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -112,6 +112,13 @@ public class AuthHandlerService {
     }
 
     public boolean findIsAuthEnabled(){
+        return isAuthEnabled();
+    }
+
+    /**
+     * Whether requests are authenticated, i.e. the {@code AWS_S3_AUTH_ENABLED} environment variable is {@code true}.
+     */
+    public static boolean isAuthEnabled(){
         final String source = System.getenv("AWS_S3_AUTH_ENABLED");
         if(source != null && !source.isEmpty()){
             return Boolean.parseBoolean(source);
@@ -151,7 +158,7 @@ public class AuthHandlerService {
         final ByteBuf duplicate = request.getBody().duplicate();
         if (request.header(AmzHeaderNames.X_AMZ_CONTENT_SHA256)
                 .map(AmzHeaderValues.STREAMING_AWS4_HMAC_SHA_256_PAYLOAD::equals).orElse(false)) {
-            result.setDecodedBody(new AwsChunkedDecodingInputStream(new ByteBufInputStream(duplicate)));
+            result.setDecodedBody(new ByteBufInputStream(AwsChunkedByteBufDecoder.decode(duplicate)));
             result.setDecodedContentLength(request.header(AmzHeaderNames.X_AMZ_DECODED_CONTENT_LENGTH).map(Long::parseLong)
                     .orElseThrow(() -> new IllegalArgumentException(AmzHeaderNames.X_AMZ_DECODED_CONTENT_LENGTH + "header not exist.")));
         } else {
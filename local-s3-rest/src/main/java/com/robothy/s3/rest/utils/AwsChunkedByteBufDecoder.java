@@ -0,0 +1,69 @@
+package com.robothy.s3.rest.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes an aggregated aws-chunked payload by slicing the payload of each chunk out of the
+ * encoded buffer. Unlike {@linkplain AwsChunkedDecodingInputStream}, no byte is copied.
+ *
+ * @see AwsChunkedDecodingInputStream
+ */
+public class AwsChunkedByteBufDecoder {
+
+  /**
+   * Decode {@code encoded} without changing its indexes.
+   *
+   * <p>The result is a view of {@code encoded}: it is only valid while {@code encoded} is not
+   * released, and it must not be released by the caller.
+   *
+   * @param encoded the aws-chunked payload.
+   * @return the decoded payload.
+   * @throws IllegalArgumentException if the payload is malformed.
+   */
+  public static ByteBuf decode(ByteBuf encoded) {
+    List<ByteBuf> payloads = new ArrayList<>();
+    int index = encoded.readerIndex();
+    int end = encoded.writerIndex();
+    while (true) {
+      int delimiter = encoded.indexOf(index, end, (byte) ';');
+      if (delimiter < 0) {
+        if (encoded.toString(index, end - index, StandardCharsets.US_ASCII).trim().isEmpty()) {
+          break;
+        }
+        throw new IllegalArgumentException("Malformed aws-chunked payload: chunk signature not found.");
+      }
+
+      int size = Integer.parseInt(encoded.toString(index, delimiter - index, StandardCharsets.US_ASCII).trim(), 16);
+      int lineEnd = encoded.indexOf(delimiter, end, (byte) '\n');
+      if (lineEnd < 0) {
+        throw new IllegalArgumentException("Malformed aws-chunked payload: incomplete chunk header.");
+      }
+      if (size == 0) {
+        break;
+      }
+
+      int payloadStart = lineEnd + 1;
+      if (size > end - payloadStart) {
+        throw new IllegalArgumentException("Malformed aws-chunked payload: incomplete chunk.");
+      }
+      payloads.add(encoded.slice(payloadStart, size));
+      index = payloadStart + size;
+    }
+
+    if (payloads.isEmpty()) {
+      return Unpooled.EMPTY_BUFFER;
+    }
+    if (payloads.size() == 1) {
+      return payloads.get(0);
+    }
+    // Created without an allocator so that it isn't tracked by the leak detector; it owns no memory.
+    return new CompositeByteBuf(UnpooledByteBufAllocator.DEFAULT, false, payloads.size(), payloads);
+  }
+
+}
@@ -1,9 +1,11 @@
 package com.robothy.s3.rest.utils;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 /**
  * Skips V4 style signing metadata from input streams.
@@ -22,6 +24,7 @@ import java.nio.charset.StandardCharsets;
  * [payload-bytes-of-this-chunk][crlf]
  * </pre>
  *
+ * @see AwsChunkedByteBufDecoder
  * @see
  * <a href="http://docs.aws.amazon.com/AWSJavaSDK/latest/javadoc/com/amazonaws/auth/AwsChunkedEncodingInputStream.html">
  *     AwsChunkedEncodingInputStream</a>
@@ -41,6 +44,8 @@ public class AwsChunkedDecodingInputStream extends InputStream {
 
   private int remainingInChunk = 0;
 
+  private boolean finished;
+
   private final ByteBuffer byteBuffer = ByteBuffer.allocate(MAX_CHUNK_SIZE);
 
   /**
@@ -54,25 +59,91 @@ public class AwsChunkedDecodingInputStream extends InputStream {
 
   @Override
   public int read() throws IOException {
-    if (remainingInChunk == 0) {
-      final byte[] hexLengthBytes = readUntil(DELIMITER);
-      if (hexLengthBytes == null) {
-        return -1;
-      }
+    if (!nextChunkIfNeeded()) {
+      return -1;
+    }
+
+    remainingInChunk--;
+
+    return source.read();
+  }
+
+  /**
+   * Copy payload bytes of the current chunk in bulk, without going through {@linkplain #read()}.
+   */
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!nextChunkIfNeeded()) {
+      return -1;
+    }
 
-      remainingInChunk =
-          Integer.parseInt(new String(hexLengthBytes, StandardCharsets.UTF_8).trim(), 16);
+    final int n = source.read(b, off, Math.min(len, remainingInChunk));
+    if (n < 0) {
+      throw new EOFException("Unexpected end of the aws-chunked payload.");
+    }
+    remainingInChunk -= n;
+    return n;
+  }
 
-      if (remainingInChunk == 0) {
-        return -1;
+  @Override
+  public long skip(final long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && nextChunkIfNeeded()) {
+      long s = source.skip(Math.min(n - skipped, remainingInChunk));
+      if (s <= 0) {
+        if (source.read() < 0) {
+          throw new EOFException("Unexpected end of the aws-chunked payload.");
+        }
+        s = 1;
       }
+      remainingInChunk -= (int) s;
+      skipped += s;
+    }
+    return skipped;
+  }
+
+  /**
+   * Payload bytes of the current chunk that can be read without blocking.
+   */
+  @Override
+  public int available() throws IOException {
+    return Math.min(remainingInChunk, source.available());
+  }
 
-      readUntil(CRLF);
+  /**
+   * Read the header of the next chunk if the current chunk is consumed.
+   *
+   * @return {@code false} if the final chunk was reached.
+   */
+  private boolean nextChunkIfNeeded() throws IOException {
+    if (remainingInChunk > 0) {
+      return true;
+    }
+    if (finished) {
+      return false;
     }
 
-    remainingInChunk--;
+    final byte[] hexLengthBytes = readUntil(DELIMITER);
+    if (hexLengthBytes == null) {
+      finished = true;
+      return false;
+    }
 
-    return source.read();
+    remainingInChunk =
+        Integer.parseInt(new String(hexLengthBytes, StandardCharsets.UTF_8).trim(), 16);
+
+    if (remainingInChunk == 0) {
+      finished = true;
+      return false;
+    }
+
+    readUntil(CRLF);
+    return true;
   }
 
   @Override
@@ -1,6 +1,8 @@
 package com.robothy.s3.rest.utils;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.io.InputStream;
@@ -10,22 +12,44 @@ import java.io.InputStream;
  */
 public class ByteBufUtils {
 
+  /**
+   * Size of each chunk that {@linkplain #fromInputStream(InputStream)} reads into.
+   */
+  static final int CHUNK_SIZE = 64 * 1024;
+
   /**
    * Transfer all data from an {@linkplain InputStream} to a {@linkplain ByteBuf}.
    * The {@code  inputStream} will be closed.
    *
+   * <p>Data is read into pooled chunks of {@value #CHUNK_SIZE} bytes that are composed into the
+   * returned buffer, so the data is copied once and no large contiguous buffer is allocated.
+   *
    * @param inputStream input stream to read.
    * @return a {@linkplain ByteBuf} with data from the {@code inputStream}.
    */
   public static ByteBuf fromInputStream(InputStream inputStream) {
-    ByteBuf buffer = Unpooled.buffer();
+    CompositeByteBuf buffer = Unpooled.compositeBuffer(Integer.MAX_VALUE);
     try (InputStream in = inputStream) {
-      byte[] buf = new byte[8192];
-      int len;
-      while ((len = in.read(buf)) != -1) {
-        buffer.writeBytes(buf, 0, len);
+      boolean eof = false;
+      while (!eof) {
+        ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer(CHUNK_SIZE, CHUNK_SIZE);
+        try {
+          while (chunk.isWritable() && !eof) {
+            eof = chunk.writeBytes(in, chunk.writableBytes()) < 0;
+          }
+        } catch (IOException e) {
+          chunk.release();
+          throw e;
+        }
+
+        if (chunk.isReadable()) {
+          buffer.addComponent(true, chunk);
+        } else {
+          chunk.release();
+        }
       }
     } catch (IOException e) {
+      buffer.release();
       throw new IllegalStateException(e);
     }
     return buffer;
@@ -0,0 +1,158 @@
+package com.robothy.s3.rest.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * An {@linkplain InputStream} over HTTP content chunks that are received from a {@linkplain Channel}.
+ *
+ * <p>The event loop offers chunks while another thread reads them. Once the queued bytes reach the
+ * high water mark, auto read of the channel is disabled until the reader drains the queue to the
+ * low water mark, so the buffered content of a request is bounded regardless of its size.
+ */
+public class HttpContentInputStream extends InputStream {
+
+  private final Channel channel;
+
+  private final int highWaterMark;
+
+  private final int lowWaterMark;
+
+  private final Deque<ByteBuf> chunks = new ArrayDeque<>();
+
+  private long queuedBytes;
+
+  private boolean completed;
+
+  private boolean closed;
+
+  private Throwable failure;
+
+  /**
+   * Create an instance that reads chunks received from {@code channel}.
+   *
+   * @param channel the channel where chunks are received from.
+   * @param highWaterMark queued bytes that pause reading from the channel.
+   * @param lowWaterMark queued bytes that resume reading from the channel.
+   */
+  public HttpContentInputStream(Channel channel, int highWaterMark, int lowWaterMark) {
+    this.channel = channel;
+    this.highWaterMark = highWaterMark;
+    this.lowWaterMark = lowWaterMark;
+  }
+
+  /**
+   * Append a chunk. This stream takes the ownership of the chunk and releases it once read.
+   *
+   * @param chunk received content.
+   */
+  public synchronized void offer(ByteBuf chunk) {
+    if (closed || !chunk.isReadable()) {
+      chunk.release();
+      return;
+    }
+
+    chunks.add(chunk);
+    queuedBytes += chunk.readableBytes();
+    if (queuedBytes >= highWaterMark) {
+      channel.config().setAutoRead(false);
+    }
+    notifyAll();
+  }
+
+  /**
+   * Mark that all chunks were offered.
+   */
+  public synchronized void complete() {
+    completed = true;
+    notifyAll();
+  }
+
+  /**
+   * Mark that the content cannot be completed, e.g. the channel was closed.
+   * Subsequent reads throw an {@linkplain IOException}.
+   *
+   * @param cause the cause.
+   */
+  public synchronized void fail(Throwable cause) {
+    failure = cause;
+    notifyAll();
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public synchronized int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
+      return 0;
+    }
+
+    while (chunks.isEmpty() && !completed && Objects.isNull(failure) && !closed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for HTTP content.");
+      }
+    }
+
+    if (Objects.nonNull(failure)) {
+      throw new IOException("Failed to receive HTTP content.", failure);
+    }
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+    if (chunks.isEmpty()) {
+      return -1;
+    }
+
+    ByteBuf chunk = chunks.peek();
+    int n = Math.min(len, chunk.readableBytes());
+    chunk.readBytes(b, off, n);
+    if (!chunk.isReadable()) {
+      chunks.poll().release();
+    }
+
+    queuedBytes -= n;
+    if (queuedBytes <= lowWaterMark && !channel.config().isAutoRead()) {
+      channel.config().setAutoRead(true);
+    }
+    return n;
+  }
+
+  @Override
+  public synchronized int available() {
+    return (int) Math.min(Integer.MAX_VALUE, queuedBytes);
+  }
+
+  /**
+   * Release all queued chunks. Chunks offered later are released immediately, and reading from
+   * the channel is resumed so that the rest of the request can be drained.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    chunks.forEach(ByteBuf::release);
+    chunks.clear();
+    queuedBytes = 0;
+    channel.config().setAutoRead(true);
+    notifyAll();
+  }
+
+}
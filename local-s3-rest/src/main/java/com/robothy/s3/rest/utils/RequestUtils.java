@@ -5,6 +5,7 @@ import com.robothy.s3.core.exception.LocalS3InvalidArgumentException;
 import com.robothy.s3.rest.assertions.RequestAssertions;
 import com.robothy.s3.rest.constants.AmzHeaderNames;
 import com.robothy.s3.rest.constants.AmzHeaderValues;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import com.robothy.s3.rest.model.request.DecodedAmzRequestBody;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -12,6 +13,8 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -46,7 +49,7 @@ public class RequestUtils {
     DecodedAmzRequestBody result = new DecodedAmzRequestBody();
     if (request.header(AmzHeaderNames.X_AMZ_CONTENT_SHA256)
         .map(AmzHeaderValues.STREAMING_AWS4_HMAC_SHA_256_PAYLOAD::equals).orElse(false)) {
-      result.setDecodedBody(new AwsChunkedDecodingInputStream(new ByteBufInputStream(request.getBody())));
+      result.setDecodedBody(new ByteBufInputStream(AwsChunkedByteBufDecoder.decode(request.getBody())));
       result.setDecodedContentLength(request.header(AmzHeaderNames.X_AMZ_DECODED_CONTENT_LENGTH).map(Long::parseLong)
           .orElseThrow(() -> new IllegalArgumentException(AmzHeaderNames.X_AMZ_DECODED_CONTENT_LENGTH + "header not exist.")));
     } else {
@@ -61,6 +64,54 @@ public class RequestUtils {
     return request.header(HttpHeaderNames.ETAG.toString());
   }
 
+  /**
+   * Get the checksum algorithm of the request body from {@code x-amz-sdk-checksum-algorithm},
+   * {@code x-amz-checksum-algorithm} or a {@code x-amz-checksum-*} header.
+   *
+   * @param request HTTP request.
+   * @return the checksum algorithm.
+   */
+  public static Optional<CheckSumAlgorithm> getChecksumAlgorithm(HttpRequest request) {
+    return getChecksumAlgorithm(request::header);
+  }
+
+  /**
+   * Get the checksum algorithm of the request body from request headers.
+   *
+   * @param headers returns the value of a header name.
+   * @return the checksum algorithm.
+   * @see #getChecksumAlgorithm(HttpRequest)
+   */
+  public static Optional<CheckSumAlgorithm> getChecksumAlgorithm(Function<String, Optional<String>> headers) {
+    Optional<String> algorithmOpt = headers.apply(AmzHeaderNames.X_AMZ_SDK_CHECKSUM_ALGORITHM);
+    if (algorithmOpt.isEmpty()) {
+      algorithmOpt = headers.apply(AmzHeaderNames.X_AMZ_CHECKSUM_ALGORITHM);
+    }
+
+    if (algorithmOpt.isPresent()) {
+      String algorithm = algorithmOpt.get();
+      return Optional.of(Stream.of(CheckSumAlgorithm.values())
+          .filter(value -> value.name().equalsIgnoreCase(algorithm))
+          .findAny()
+          .orElseThrow(() -> new LocalS3InvalidArgumentException(AmzHeaderNames.X_AMZ_SDK_CHECKSUM_ALGORITHM,
+              algorithm, "Invalid checksum algorithm.")));
+    }
+
+    return Stream.of(CheckSumAlgorithm.values())
+        .filter(value -> headers.apply(AmzHeaderNames.X_AMZ_CHECKSUM_PREFIX + value.name().toLowerCase()).isPresent())
+        .findFirst();
+  }
+
+  /**
+   * Whether the client asks for the object checksum via {@code x-amz-checksum-mode: ENABLED}.
+   *
+   * @param request HTTP request.
+   * @return {@code true} if the checksum mode is enabled.
+   */
+  public static boolean isChecksumModeEnabled(HttpRequest request) {
+    return request.header(AmzHeaderNames.X_AMZ_CHECKSUM_MODE).map("ENABLED"::equalsIgnoreCase).orElse(false);
+  }
+
   /**
    * Extract tagging from the HTTP header.
    *
@@ -2,6 +2,7 @@ package com.robothy.s3.rest.utils;
 
 import com.robothy.netty.http.HttpResponse;
 import com.robothy.s3.core.util.IdUtils;
+import com.robothy.s3.datatypes.enums.CheckSumAlgorithm;
 import com.robothy.s3.rest.constants.AmzHeaderNames;
 import com.robothy.s3.rest.constants.LocalS3Constants;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -55,6 +56,19 @@ public class ResponseUtils {
     }
   }
 
+  /**
+   * Add the {@code x-amz-checksum-*} header if the checksum exists.
+   *
+   * @param response the response to add the checksum header.
+   * @param checksumAlgorithm the checksum algorithm.
+   * @param checksum the base64 encoded checksum.
+   */
+  public static void addChecksum(HttpResponse response, CheckSumAlgorithm checksumAlgorithm, String checksum) {
+    if (Objects.nonNull(checksumAlgorithm) && Objects.nonNull(checksum)) {
+      response.putHeader(AmzHeaderNames.X_AMZ_CHECKSUM_PREFIX + checksumAlgorithm.name().toLowerCase(), checksum);
+    }
+  }
+
   /**
    * Add common headers to the give response.
    *
@@ -0,0 +1,179 @@
+package com.robothy.s3.rest.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeferredContentHandlerTest {
+
+  @Test
+  void deferContent() {
+    EmbeddedChannel channel = new EmbeddedChannel(new DeferredContentHandler(Runnable::run));
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/bucket/key");
+    request.headers().set(DeferredContents.HEADER, "token");
+    channel.writeInbound(request);
+    HttpRequest received = channel.readInbound();
+    assertFalse(received.headers().contains(DeferredContents.HEADER));
+    assertTrue(received.headers().contains(DeferredContents.ACCEPT_HEADER));
+    channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/bucket/next"));
+    channel.readInbound();
+
+    FullHttpResponse deferred = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    deferred.headers().set(DeferredContents.HEADER, DeferredContents.register(
+        requestOf(received), () -> Unpooled.copiedBuffer("Hello", StandardCharsets.UTF_8)));
+    FullHttpResponse next = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+        Unpooled.copiedBuffer("World", StandardCharsets.UTF_8));
+    channel.write(deferred);
+    channel.write(next);
+    channel.flush();
+    assertNull(channel.readOutbound());
+
+    // The pipelined response is written after the deferred one.
+    channel.runPendingTasks();
+    FullHttpResponse first = channel.readOutbound();
+    assertFalse(first.headers().contains(DeferredContents.HEADER));
+    assertEquals("Hello", first.content().toString(StandardCharsets.UTF_8));
+    FullHttpResponse second = channel.readOutbound();
+    assertEquals("World", second.content().toString(StandardCharsets.UTF_8));
+    first.release();
+    second.release();
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  void deferFileContent(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("object");
+    Files.write(file, "Hello World".getBytes(StandardCharsets.UTF_8));
+    EmbeddedChannel channel = new EmbeddedChannel(new DeferredContentHandler(Runnable::run));
+    FullHttpResponse deferred = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    deferred.headers().set(HttpHeaderNames.CONTENT_LENGTH, 5);
+    deferred.headers().set(DeferredContents.HEADER,
+        DeferredContents.registerFile(accept(channel), FileChannel.open(file, StandardOpenOption.READ), 6, 5));
+    channel.writeAndFlush(deferred);
+    channel.runPendingTasks();
+
+    // The file is written as a region after the response head, and is never read into a buffer.
+    HttpResponse head = channel.readOutbound();
+    assertFalse(head instanceof FullHttpResponse);
+    assertEquals("5", head.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+    FileRegion region = channel.readOutbound();
+    assertEquals(6, region.position());
+    assertEquals(5, region.count());
+    region.release();
+    assertEquals(LastHttpContent.EMPTY_LAST_CONTENT, channel.readOutbound());
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  void deferStreamContent() {
+    byte[] data = new byte[3 * DeferredContents.CHUNK_SIZE + 7];
+    new Random(7).nextBytes(data);
+    EmbeddedChannel channel = new EmbeddedChannel(new ChunkedWriteHandler());
+    channel.pipeline().addLast(new DeferredContentHandler(channel.eventLoop()));
+    FullHttpResponse deferred = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    deferred.headers().set(DeferredContents.HEADER,
+        DeferredContents.registerStream(accept(channel), new ByteArrayInputStream(data)));
+    channel.writeAndFlush(deferred);
+    channel.runPendingTasks();
+
+    // The stream is written in chunks after the response head.
+    assertFalse(channel.<HttpResponse>readOutbound() instanceof FullHttpResponse);
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    Object msg;
+    int chunks = 0;
+    while (!((msg = channel.readOutbound()) instanceof LastHttpContent)) {
+      ByteBuf chunk = (ByteBuf) msg;
+      assertTrue(chunk.readableBytes() <= DeferredContents.CHUNK_SIZE);
+      chunks += chunk.isReadable() ? 1 : 0;
+      received.writeBytes(ByteBufUtil.getBytes(chunk));
+      chunk.release();
+    }
+    assertEquals(4, chunks);
+    assertArrayEquals(data, received.toByteArray());
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  void closeIfContentFails() {
+    EmbeddedChannel channel = new EmbeddedChannel(new DeferredContentHandler(Runnable::run));
+    FullHttpResponse deferred = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    deferred.headers().set(DeferredContents.HEADER, DeferredContents.register(accept(channel), () -> {
+      throw new IllegalStateException("Failed to read.");
+    }));
+    channel.writeAndFlush(deferred);
+    channel.runPendingTasks();
+    assertNull(channel.readOutbound());
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  void discardUnreferencedContent() throws Exception {
+    EmbeddedChannel channel = new EmbeddedChannel(new DeferredContentHandler(Runnable::run));
+    AtomicBoolean closed = new AtomicBoolean(false);
+    DeferredContents.registerStream(accept(channel), new ByteArrayInputStream(new byte[1]) {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    });
+
+    // An interim response doesn't answer the request; an error response that doesn't reference the body does.
+    channel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+    assertFalse(closed.get());
+    channel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND));
+    assertTrue(closed.get());
+    channel.<FullHttpResponse>readOutbound().release();
+    channel.<FullHttpResponse>readOutbound().release();
+
+    // The bodies of unanswered requests are discarded when the channel is closed, and so is a body
+    // registered afterwards.
+    com.robothy.netty.http.HttpRequest request = accept(channel);
+    FileChannel fileChannel = FileChannel.open(Files.createTempFile("deferred", null), StandardOpenOption.READ);
+    DeferredContents.registerFile(request, fileChannel, 0, 0);
+    channel.close();
+    assertFalse(fileChannel.isOpen());
+    fileChannel = FileChannel.open(Files.createTempFile("deferred", null), StandardOpenOption.READ);
+    DeferredContents.registerFile(request, fileChannel, 0, 0);
+    assertFalse(fileChannel.isOpen());
+  }
+
+  /**
+   * Pass a request through the handler, and get it as a controller does.
+   */
+  private com.robothy.netty.http.HttpRequest accept(EmbeddedChannel channel) {
+    channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/bucket/key"));
+    return requestOf(channel.readInbound());
+  }
+
+  private com.robothy.netty.http.HttpRequest requestOf(HttpRequest received) {
+    com.robothy.netty.http.HttpRequest request = com.robothy.netty.http.HttpRequest.builder().build();
+    request.getHeaders().put(DeferredContents.ACCEPT_HEADER, received.headers().get(DeferredContents.ACCEPT_HEADER));
+    return request;
+  }
+
+}
@@ -0,0 +1,161 @@
+package com.robothy.s3.rest.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import com.robothy.s3.core.model.internal.StagedObject;
+import com.robothy.s3.core.service.ObjectService;
+import com.robothy.s3.core.storage.Storage;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class StreamingUploadHandlerTest {
+
+  private final AtomicLong fileIds = new AtomicLong();
+
+  /**
+   * Staging workers; they run once the whole body is received, so that they never wait for content.
+   */
+  private final Deque<Runnable> uploadExecutor = new ArrayDeque<>();
+
+  private ObjectService objectService;
+
+  private Storage storage;
+
+  @BeforeEach
+  void setUp() {
+    storage = Mockito.mock(Storage.class);
+    objectService = Mockito.mock(ObjectService.class);
+    Mockito.when(objectService.storage()).thenReturn(storage);
+    Mockito.when(objectService.stageObject(any(InputStream.class), any())).thenAnswer(invocation -> {
+      byte[] content = invocation.<InputStream>getArgument(0).readAllBytes();
+      return Optional.of(StagedObject.builder()
+          .fileId(fileIds.incrementAndGet())
+          .size(content.length)
+          .build());
+    });
+  }
+
+  @Test
+  void handOverStagedObject() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StreamingUploadHandler(objectService, uploadExecutor::add));
+    upload(channel, "/bucket/key", "Hello");
+
+    HttpRequest forwarded = readForwarded(channel);
+    assertEquals("0", forwarded.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+    assertEquals(LastHttpContent.EMPTY_LAST_CONTENT, channel.readInbound());
+    StagedObject stagedObject = StreamedUploads.take(request(forwarded)).get();
+    assertEquals(1L, stagedObject.getFileId());
+    assertEquals(5, stagedObject.getSize());
+
+    // The controller took the staged object, so answering the request deletes nothing.
+    channel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    Mockito.verify(storage, Mockito.never()).delete(any());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void keepStagedObjectUntilAnswered() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StreamingUploadHandler(objectService, uploadExecutor::add));
+    upload(channel, "/bucket/key", "Hello");
+    HttpRequest forwarded = readForwarded(channel);
+    channel.readInbound();
+
+    // A pipelined request arrives before the controller has taken the staged object.
+    channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/bucket/key"));
+    assertInstanceOf(HttpRequest.class, channel.readInbound());
+    Mockito.verify(storage, Mockito.never()).delete(any());
+    assertTrue(StreamedUploads.take(request(forwarded)).isPresent());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void discardStagedObjectOnceAnswered() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StreamingUploadHandler(objectService, uploadExecutor::add));
+    upload(channel, "/bucket/key", "Hello");
+    HttpRequest forwarded = readForwarded(channel);
+
+    // An interim response doesn't answer the request.
+    channel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+    Mockito.verify(storage, Mockito.never()).delete(any());
+
+    // The request is answered, e.g. with an error, without taking the staged object.
+    channel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND));
+    Mockito.verify(storage).delete(1L);
+    assertThrows(IllegalStateException.class, () -> StreamedUploads.take(request(forwarded)));
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void discardStagedObjectOnClose() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StreamingUploadHandler(objectService, uploadExecutor::add));
+    upload(channel, "/bucket/key", "Hello");
+    readForwarded(channel);
+    channel.close();
+    Mockito.verify(storage).delete(1L);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void passThroughOtherRequests() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StreamingUploadHandler(objectService, uploadExecutor::add));
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.PUT, "/bucket/key?tagging");
+    request.headers().set(HttpHeaderNames.HOST, "localhost");
+    request.headers().set(StreamedUploads.HEADER, "forged");
+    channel.writeInbound(request);
+    HttpRequest received = channel.readInbound();
+    assertSame(request, received);
+    assertFalse(received.headers().contains(StreamedUploads.HEADER));
+    Mockito.verify(objectService, Mockito.never()).stageObject(any(InputStream.class), any());
+    channel.finishAndReleaseAll();
+  }
+
+  private static void upload(EmbeddedChannel channel, String uri, String content) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.PUT, uri);
+    request.headers().set(HttpHeaderNames.HOST, "localhost");
+    request.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.length());
+    channel.writeInbound(request);
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    channel.writeInbound(new DefaultHttpContent(Unpooled.wrappedBuffer(bytes, 0, 2)));
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(bytes, 2, bytes.length - 2)));
+  }
+
+  /**
+   * Run the staging workers and read the request that is passed on.
+   */
+  private HttpRequest readForwarded(EmbeddedChannel channel) {
+    assertNull(channel.readInbound());
+    while (!uploadExecutor.isEmpty()) {
+      uploadExecutor.poll().run();
+    }
+    channel.runPendingTasks();
+    HttpRequest forwarded = channel.readInbound();
+    assertTrue(forwarded.headers().contains(StreamedUploads.HEADER));
+    return forwarded;
+  }
+
+  private static com.robothy.netty.http.HttpRequest request(HttpRequest forwarded) {
+    com.robothy.netty.http.HttpRequest request = com.robothy.netty.http.HttpRequest.builder().build();
+    request.getHeaders().put(StreamedUploads.HEADER, forwarded.headers().get(StreamedUploads.HEADER));
+    return request;
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.robothy.s3.rest.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Measures the decoding throughput of aws-chunked payloads, as sent by the AWS SDKs with
+ * {@code STREAMING-AWS4-HMAC-SHA256-PAYLOAD}. It is not run with the tests.
+ *
+ * <p>Usage: {@code AwsChunkedDecodingInputStreamBenchmark [payloadMegabytes] [chunkKilobytes] [rounds]}, by default
+ * a 64 MB payload in 128 KB chunks, the chunk size of the AWS SDK for Java, decoded 10 times after as many warm-up
+ * rounds. It compares bulk reads of {@linkplain AwsChunkedDecodingInputStream}, reads of single bytes, which
+ * read the source byte by byte like the decoder did before, and {@linkplain AwsChunkedByteBufDecoder}.
+ */
+public class AwsChunkedDecodingInputStreamBenchmark {
+
+  private static final String SIGNATURE =
+      ";chunk-signature=7ece820edcf094ce1ef6d643c8db60b67913e28831d9b0430efd2b56a9deec5e\r\n";
+
+  private interface Decoder {
+
+    long decode(byte[] encoded) throws IOException;
+
+  }
+
+  public static void main(String[] args) throws IOException {
+    int payloadMegabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int chunkKilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    byte[] data = new byte[payloadMegabytes * 1024 * 1024];
+    new Random(42).nextBytes(data);
+    byte[] encoded = encode(data, chunkKilobytes * 1024);
+    System.out.printf("payload %d MB in %d KB chunks, %d rounds%n", payloadMegabytes, chunkKilobytes, rounds);
+
+    run("stream bulk reads", encoded, data.length, rounds, AwsChunkedDecodingInputStreamBenchmark::readBulk);
+    run("stream single-byte reads", encoded, data.length, rounds, AwsChunkedDecodingInputStreamBenchmark::readBytes);
+    run("ByteBuf decoder", encoded, data.length, rounds, AwsChunkedDecodingInputStreamBenchmark::decodeByteBuf);
+  }
+
+  private static void run(String name, byte[] encoded, long size, int rounds, Decoder decoder) throws IOException {
+    for (int i = 0; i < rounds; i++) {
+      check(decoder.decode(encoded), size);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      check(decoder.decode(encoded), size);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%s: %.1f MB/s%n", name, size * rounds / seconds / (1024 * 1024));
+  }
+
+  private static long readBulk(byte[] encoded) throws IOException {
+    long decoded = 0;
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new AwsChunkedDecodingInputStream(new ByteArrayInputStream(encoded))) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        decoded += n;
+      }
+    }
+    return decoded;
+  }
+
+  private static long readBytes(byte[] encoded) throws IOException {
+    long decoded = 0;
+    try (InputStream in = new AwsChunkedDecodingInputStream(new SingleByteInputStream(encoded))) {
+      while (in.read() != -1) {
+        decoded++;
+      }
+    }
+    return decoded;
+  }
+
+  private static long decodeByteBuf(byte[] encoded) {
+    ByteBuf decoded = AwsChunkedByteBufDecoder.decode(Unpooled.wrappedBuffer(encoded));
+    try {
+      return decoded.readableBytes();
+    } finally {
+      decoded.release();
+    }
+  }
+
+  private static void check(long decoded, long size) {
+    if (decoded != size) {
+      throw new IllegalStateException("Decoded " + decoded + " bytes, expected " + size + ".");
+    }
+  }
+
+  private static byte[] encode(byte[] data, int chunkSize) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + data.length / chunkSize * 100 + 100);
+    byte[] signature = SIGNATURE.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < data.length; i += chunkSize) {
+      int n = Math.min(chunkSize, data.length - i);
+      byte[] header = Integer.toHexString(n).getBytes(StandardCharsets.UTF_8);
+      out.write(header, 0, header.length);
+      out.write(signature, 0, signature.length);
+      out.write(data, i, n);
+      out.write('\r');
+      out.write('\n');
+    }
+    out.write('0');
+    out.write(signature, 0, signature.length);
+    out.write('\r');
+    out.write('\n');
+    return out.toByteArray();
+  }
+
+  /**
+   * A source that returns at most one byte per read, like a source that is read byte by byte.
+   */
+  private static class SingleByteInputStream extends ByteArrayInputStream {
+
+    SingleByteInputStream(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1));
+    }
+
+  }
+
+}
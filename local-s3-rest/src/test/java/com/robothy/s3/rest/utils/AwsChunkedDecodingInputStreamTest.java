@@ -0,0 +1,83 @@
+package com.robothy.s3.rest.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class AwsChunkedDecodingInputStreamTest {
+
+  private static final String SIGNATURE = ";chunk-signature=7ece820edcf094ce1ef6d643c8db60b67913e28831d9b0430efd2b56a9deec5e\r\n";
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1000, 64 * 1024 + 3})
+  void read(int size) throws IOException {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    byte[] encoded = encode(data, 8 * 1024);
+
+    assertArrayEquals(data, IOUtils.toByteArray(new AwsChunkedDecodingInputStream(new ByteArrayInputStream(encoded))));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new AwsChunkedDecodingInputStream(new ByteArrayInputStream(encoded))) {
+      int b;
+      while ((b = in.read()) != -1) {
+        out.write(b);
+      }
+      assertEquals(-1, in.read(new byte[1], 0, 1));
+    }
+    assertArrayEquals(data, out.toByteArray());
+
+    ByteBuf decoded = AwsChunkedByteBufDecoder.decode(Unpooled.wrappedBuffer(encoded));
+    assertArrayEquals(data, ByteBufUtil.getBytes(decoded));
+    assertArrayEquals(data, IOUtils.toByteArray(new ByteBufInputStream(decoded)));
+  }
+
+  @Test
+  void skipAndAvailable() throws IOException {
+    byte[] data = "Hello World, LocalS3!".getBytes(StandardCharsets.UTF_8);
+    InputStream in = new AwsChunkedDecodingInputStream(new ByteArrayInputStream(encode(data, 5)));
+    assertEquals(0, in.available());
+    assertEquals('H', in.read());
+    assertEquals(4, in.available());
+    assertEquals(12, in.skip(12));
+    assertEquals("LocalS3!", IOUtils.toString(in, StandardCharsets.UTF_8));
+    assertEquals(0, in.skip(1));
+  }
+
+  @Test
+  void decodeMalformed() {
+    byte[] encoded = "a;chunk-signature=abc\r\n12345".getBytes(StandardCharsets.UTF_8);
+    assertThrows(IllegalArgumentException.class, () -> AwsChunkedByteBufDecoder.decode(Unpooled.wrappedBuffer(encoded)));
+    assertThrows(IOException.class, () -> IOUtils.toByteArray(new AwsChunkedDecodingInputStream(new ByteArrayInputStream(encoded))));
+  }
+
+  private byte[] encode(byte[] data, int chunkSize) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < data.length; i += chunkSize) {
+      int n = Math.min(chunkSize, data.length - i);
+      out.write(Integer.toHexString(n).getBytes(StandardCharsets.UTF_8), 0, Integer.toHexString(n).length());
+      out.write(SIGNATURE.getBytes(StandardCharsets.UTF_8), 0, SIGNATURE.length());
+      out.write(data, i, n);
+      out.write('\r');
+      out.write('\n');
+    }
+    out.write('0');
+    out.write(SIGNATURE.getBytes(StandardCharsets.UTF_8), 0, SIGNATURE.length());
+    out.write('\r');
+    out.write('\n');
+    return out.toByteArray();
+  }
+
+}
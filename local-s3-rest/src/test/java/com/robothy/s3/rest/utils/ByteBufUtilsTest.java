@@ -0,0 +1,26 @@
+package com.robothy.s3.rest.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ByteBufUtilsTest {
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, ByteBufUtils.CHUNK_SIZE - 1, ByteBufUtils.CHUNK_SIZE, 3 * ByteBufUtils.CHUNK_SIZE + 7})
+  void fromInputStream(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    ByteBuf buffer = ByteBufUtils.fromInputStream(new ByteArrayInputStream(data));
+    try {
+      assertArrayEquals(data, ByteBufUtil.getBytes(buffer));
+    } finally {
+      buffer.release();
+    }
+  }
+
+}
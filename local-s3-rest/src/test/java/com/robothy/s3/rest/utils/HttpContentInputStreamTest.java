@@ -0,0 +1,53 @@
+package com.robothy.s3.rest.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+class HttpContentInputStreamTest {
+
+  @Test
+  void read() throws IOException {
+    EmbeddedChannel channel = new EmbeddedChannel();
+    HttpContentInputStream in = new HttpContentInputStream(channel, 8, 2);
+    in.offer(Unpooled.copiedBuffer("Hello", StandardCharsets.UTF_8));
+    assertTrue(channel.config().isAutoRead());
+    in.offer(Unpooled.copiedBuffer(" World", StandardCharsets.UTF_8));
+    assertFalse(channel.config().isAutoRead());
+    assertEquals(11, in.available());
+
+    byte[] buf = new byte[10];
+    assertEquals(5, in.read(buf, 0, 10));
+    assertFalse(channel.config().isAutoRead());
+    assertEquals(' ', in.read());
+    assertEquals(4, in.read(buf, 0, 4));
+    assertTrue(channel.config().isAutoRead());
+
+    in.complete();
+    assertEquals("d", IOUtils.toString(in, StandardCharsets.UTF_8));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  void failAndClose() {
+    EmbeddedChannel channel = new EmbeddedChannel();
+    HttpContentInputStream in = new HttpContentInputStream(channel, 8, 2);
+    ByteBuf chunk = Unpooled.copiedBuffer("Hello World", StandardCharsets.UTF_8);
+    in.offer(chunk);
+    in.fail(new IllegalStateException());
+    assertThrows(IOException.class, in::read);
+
+    in.close();
+    assertEquals(0, chunk.refCnt());
+    assertTrue(channel.config().isAutoRead());
+    ByteBuf late = Unpooled.copiedBuffer("!", StandardCharsets.UTF_8);
+    in.offer(late);
+    assertEquals(0, late.refCnt());
+  }
+
+}